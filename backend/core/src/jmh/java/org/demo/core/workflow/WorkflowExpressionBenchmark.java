@@ -0,0 +1,62 @@
+package org.demo.core.workflow;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 参数表达式求值基准
+ * 对比预编译后求值（工作流执行路径）与每次调用都编译（resolveExpression）的开销
+ *
+ * 运行：mvn -Pjmh -DskipTests verify -Djmh.args="WorkflowExpressionBenchmark"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class WorkflowExpressionBenchmark {
+
+    @Param({
+            "${input.portId}",
+            "${nodes.search.items[1].title}",
+            "${input['a:b']}",
+            "设备 ${input.name} 温度 ${nodes.sensor.value:0} 度"
+    })
+    public String expression;
+
+    private WorkflowContext context;
+    private WorkflowExpression compiled;
+
+    @Setup
+    public void setup() {
+        context = new WorkflowContext();
+        context.setInput(Map.of("portId", "led-1", "name", "客厅", "a:b", 42));
+
+        WorkflowContext.NodeScope search = context.scope("search");
+        search.setOutput(Map.of("items", List.of(Map.of("title", "first"), Map.of("title", "second"))));
+        search.commit();
+        WorkflowContext.NodeScope sensor = context.scope("sensor");
+        sensor.setOutput(Map.of("value", 23.5));
+        sensor.commit();
+
+        compiled = WorkflowExpression.compile(expression);
+    }
+
+    @Benchmark
+    public Object precompiled() {
+        return compiled.evaluate(context);
+    }
+
+    @Benchmark
+    public Object compileEachCall() {
+        return context.resolveExpression(expression);
+    }
+}
@@ -3,9 +3,11 @@ package org.demo.core;
 import org.mybatis.spring.annotation.MapperScan;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
 @MapperScan("org.demo.core.mapper")
+@EnableScheduling
 public class CoreApplication {
 
     public static void main(String[] args) {
@@ -2,20 +2,34 @@ package org.demo.core.agent;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.demo.core.cache.ChatConfigCache;
+import org.demo.core.model.entity.Agent;
 import org.demo.core.model.entity.Plugin;
 import org.demo.core.model.entity.PluginOperation;
 import org.demo.core.model.vo.PluginInvokeResult;
-import org.demo.core.service.PluginOperationService;
+import org.demo.core.plugin.ToolCatalog;
 import org.demo.core.service.PluginService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * Agent工具执行器
@@ -31,18 +45,42 @@ public class AgentToolExecutor {
     private PluginService pluginService;
 
     @Autowired
-    private PluginOperationService pluginOperationService;
+    private ToolCatalog toolCatalog;
+
+    @Autowired
+    private ChatConfigCache chatConfigCache;
 
     @Autowired
     private ObjectMapper objectMapper;
 
+    @Autowired
+    @Qualifier("toolCallExecutor")
+    private ExecutorService toolCallExecutor;
+
+    /**
+     * 单个工具调用超时时间
+     */
+    @Value("${agent.tool.call-timeout:PT30S}")
+    private Duration callTimeout;
+
+    /**
+     * 一轮工具调用的总截止时间，超过后未完成的调用全部取消
+     */
+    @Value("${agent.tool.turn-timeout:PT60S}")
+    private Duration turnTimeout;
+
     /**
-     * 工具名称到插件操作的映射缓存
-     * key: toolName (格式: plugin_{pluginId}_{operationId})
+     * 自定义工具（非插件来源）的名称映射
+     * key: toolName
      * value: ToolMapping
      */
     private final ConcurrentHashMap<String, ToolMapping> toolMappingCache = new ConcurrentHashMap<>();
 
+    /**
+     * 插件工具名称索引，随工具目录版本重建
+     */
+    private volatile ToolIndex toolIndex;
+
     /**
      * 工具映射信息
      */
@@ -58,7 +96,7 @@ public class AgentToolExecutor {
 
     /**
      * 获取Agent可用的所有工具定义
-     * 用于发送给LLM的tools参数
+     * 用于发送给LLM的tools参数，只包含智能体 toolsConfig 中绑定且已启用的插件
      *
      * @param agentId 智能体ID
      * @return 工具定义列表（OpenAI Function Calling格式）
@@ -66,58 +104,49 @@ public class AgentToolExecutor {
     public List<AgentToolDefinition> getAvailableTools(String agentId) {
         List<AgentToolDefinition> tools = new ArrayList<>();
 
-        // TODO: 根据agentId获取该智能体配置的插件列表
-        // 目前简化处理：获取所有启用的插件的所有操作
-
-        // 获取所有启用的插件及其操作
-        List<Plugin> plugins = pluginService.listPlugins(1, 100).getList().stream()
-                .map(vo -> {
-                    // 这里需要获取完整的Plugin信息，简化处理
-                    return pluginService.getPluginDetail(vo.getId());
-                })
-                .filter(detail -> Boolean.TRUE.equals(detail.getIsEnabled()))
-                .map(detail -> {
-                    Plugin p = new Plugin();
-                    p.setId(detail.getId());
-                    p.setName(detail.getName());
-                    return p;
-                })
-                .toList();
-
-        for (var pluginDetail : pluginService.listPlugins(1, 100).getList()) {
-            var detail = pluginService.getPluginDetail(pluginDetail.getId());
-            if (!Boolean.TRUE.equals(detail.getIsEnabled())) {
+        Agent agent = chatConfigCache.getAgent(agentId);
+        if (agent == null || agent.getToolsConfig() == null || agent.getToolsConfig().isEmpty()) {
+            return tools;
+        }
+
+        ToolIndex index = getToolIndex();
+        for (String pluginId : agent.getToolsConfig()) {
+            Plugin plugin = index.snapshot.getPlugin(pluginId);
+            if (plugin == null) {
+                logger.debug("插件不存在或已禁用: {}", pluginId);
                 continue;
             }
 
-            String pluginId = detail.getId();
-            String pluginName = detail.getName();
-
-            // 获取该插件的所有操作
-            var operations = pluginOperationService.listByPluginId(pluginId);
-
-            for (PluginOperation op : operations) {
-                // 生成唯一的工具名称
-                String toolName = generateToolName(pluginId, op.getOperationId());
-
+            for (PluginOperation op : index.snapshot.getOperations(pluginId)) {
                 // 创建工具定义
                 AgentToolDefinition tool = AgentToolDefinition.fromPluginOperation(
                         pluginId,
                         op.getOperationId(),
-                        toolName,
-                        buildToolDescription(pluginName, op),
+                        index.toolNameOf(pluginId, op.getOperationId()),
+                        buildToolDescription(plugin.getName(), op),
                         op.getInputSchema());
 
                 tools.add(tool);
-
-                // 缓存映射关系
-                toolMappingCache.put(toolName, new ToolMapping(pluginId, op.getOperationId()));
             }
         }
 
         return tools;
     }
 
+    /**
+     * 获取当前目录版本对应的工具名称索引，版本变化时重建
+     */
+    private ToolIndex getToolIndex() {
+        ToolCatalog.Snapshot snapshot = toolCatalog.getSnapshot();
+        ToolIndex index = toolIndex;
+        if (index != null && index.snapshot == snapshot) {
+            return index;
+        }
+        index = new ToolIndex(snapshot);
+        toolIndex = index;
+        return index;
+    }
+
     /**
      * 执行工具调用
      * 当LLM返回tool_calls时调用此方法
@@ -131,11 +160,10 @@ public class AgentToolExecutor {
         long startTime = System.currentTimeMillis();
 
         try {
-            // 1. 解析工具映射
-            ToolMapping mapping = toolMappingCache.get(toolName);
+            // 1. 解析工具映射（优先查插件工具索引，其次查自定义工具）
+            ToolMapping mapping = getToolIndex().byName.get(toolName);
             if (mapping == null) {
-                // 尝试从工具名称解析
-                mapping = parseToolNameToMapping(toolName);
+                mapping = toolMappingCache.get(toolName);
             }
 
             if (mapping == null) {
@@ -150,7 +178,7 @@ public class AgentToolExecutor {
                     mapping.pluginId,
                     mapping.operationId,
                     params,
-                    30000 // 默认30秒超时
+                    (int) callTimeout.toMillis()
             );
 
             long duration = System.currentTimeMillis() - startTime;
@@ -193,18 +221,120 @@ public class AgentToolExecutor {
     }
 
     /**
-     * 批量执行工具调用（支持并行调用）
+     * 批量执行工具调用（并行执行）
+     * 各调用相互独立，提交到工具调用线程池并发执行，结果按请求顺序返回；
+     * 单个调用从开始执行起超过 call-timeout（排队时间不计入），或整轮超过 turn-timeout 时取消该调用并返回失败结果；
+     * 线程池已满时该调用立即返回失败结果
      */
     public List<AgentToolCallResult> executeToolCalls(List<ToolCallRequest> toolCalls) {
-        // 简化处理：顺序执行
-        // TODO: 可优化为并行执行
-        List<AgentToolCallResult> results = new ArrayList<>();
+        if (toolCalls.size() <= 1) {
+            // 单个调用无需切换线程
+            List<AgentToolCallResult> results = new ArrayList<>();
+            for (ToolCallRequest call : toolCalls) {
+                results.add(executeToolCall(call.getId(), call.getName(), call.getArguments()));
+            }
+            return results;
+        }
+
+        long submitTime = System.nanoTime();
+        long turnDeadline = submitTime + turnTimeout.toNanos();
+
+        List<ToolCallTask> tasks = new ArrayList<>(toolCalls.size());
         for (ToolCallRequest call : toolCalls) {
-            results.add(executeToolCall(call.getId(), call.getName(), call.getArguments()));
+            ToolCallTask task = new ToolCallTask(call);
+            try {
+                toolCallExecutor.execute(task);
+            } catch (RejectedExecutionException e) {
+                logger.warn("工具调用线程池已满，拒绝调用: toolName={}", call.getName());
+                task.reject();
+            }
+            tasks.add(task);
+        }
+        List<AgentToolCallResult> results = new ArrayList<>(toolCalls.size());
+        for (int i = 0; i < toolCalls.size(); i++) {
+            ToolCallRequest call = toolCalls.get(i);
+            ToolCallTask task = tasks.get(i);
+            try {
+                results.add(await(task, turnDeadline));
+            } catch (TimeoutException e) {
+                task.cancel(true);
+                boolean turnExpired = turnDeadline - System.nanoTime() <= 0;
+                logger.warn("工具调用超时已取消: toolName={}, turnExpired={}", call.getName(), turnExpired);
+                AgentToolCallResult result = AgentToolCallResult.failure(call.getId(), call.getName(),
+                        turnExpired ? "本轮工具调用总时长超时，已取消" : "工具调用超时，已取消");
+                result.setDuration(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - task.startedAt(submitTime)));
+                results.add(result);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                tasks.forEach(t -> t.cancel(true));
+                logger.warn("工具调用等待被中断，取消剩余调用");
+                for (int j = i; j < toolCalls.size(); j++) {
+                    results.add(AgentToolCallResult.failure(toolCalls.get(j).getId(), toolCalls.get(j).getName(),
+                            "工具调用被中断"));
+                }
+                return results;
+            } catch (ExecutionException | CancellationException e) {
+                // executeToolCall 内部已捕获异常，这里仅兜底
+                logger.error("工具调用执行异常: toolName={}", call.getName(), e);
+                results.add(AgentToolCallResult.failure(call.getId(), call.getName(), "执行异常: " + e.getMessage()));
+            }
         }
         return results;
     }
 
+    /**
+     * 等待调用完成：期限为 开始执行时间 + call-timeout 与整轮截止时间中较早者；
+     * 仍在排队时按当前时间计算临时期限，到期后按实际开始时间重新计算
+     */
+    private AgentToolCallResult await(ToolCallTask task, long turnDeadline)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        while (true) {
+            long now = System.nanoTime();
+            boolean started = task.startNanos != 0;
+            long callDeadline = (started ? task.startNanos : now) + callTimeout.toNanos();
+            long waitNanos = Math.min(turnDeadline, callDeadline) - now;
+            try {
+                return task.get(Math.max(waitNanos, 0L), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                if (started || turnDeadline - System.nanoTime() <= 0) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * 线程池中的一次工具调用，记录实际开始执行的时间
+     */
+    private final class ToolCallTask extends FutureTask<AgentToolCallResult> {
+
+        private final ToolCallRequest call;
+        private volatile long startNanos;
+
+        ToolCallTask(ToolCallRequest call) {
+            super(() -> executeToolCall(call.getId(), call.getName(), call.getArguments()));
+            this.call = call;
+        }
+
+        @Override
+        public void run() {
+            startNanos = System.nanoTime();
+            super.run();
+        }
+
+        /**
+         * 线程池拒绝时直接以失败结果完成
+         */
+        void reject() {
+            set(AgentToolCallResult.failure(call.getId(), call.getName(), "工具调用繁忙，已拒绝，请稍后重试"));
+        }
+
+        long startedAt(long fallback) {
+            long start = startNanos;
+            return start != 0 ? start : fallback;
+        }
+    }
+
     /**
      * 工具调用请求
      */
@@ -250,7 +380,7 @@ public class AgentToolExecutor {
     /**
      * 生成工具名称
      */
-    private String generateToolName(String pluginId, String operationId) {
+    private static String generateToolName(String pluginId, String operationId) {
         // 格式: plugin_{简化pluginId}_{operationId}
         // 例如: plugin_66fd8f29_getSensorData
         String shortPluginId = pluginId.replace("plugin_", "");
@@ -274,22 +404,6 @@ public class AgentToolExecutor {
         return desc.toString();
     }
 
-    /**
-     * 从工具名称解析映射
-     */
-    private ToolMapping parseToolNameToMapping(String toolName) {
-        // 尝试解析格式: plugin_{pluginId}_{operationId}
-        if (!toolName.startsWith("plugin_")) {
-            return null;
-        }
-
-        // 这里需要更复杂的逻辑来反向查找pluginId
-        // 简化处理：遍历缓存
-        // 实际生产中应该建立反向索引
-
-        return null;
-    }
-
     /**
      * 解析参数JSON字符串
      */
@@ -311,6 +425,7 @@ public class AgentToolExecutor {
      */
     public void clearCache() {
         toolMappingCache.clear();
+        toolIndex = null;
     }
 
     /**
@@ -319,4 +434,45 @@ public class AgentToolExecutor {
     public void registerCustomTool(String toolName, String pluginId, String operationId) {
         toolMappingCache.put(toolName, new ToolMapping(pluginId, operationId));
     }
+
+    /**
+     * 工具名称索引
+     * 基于一个目录快照构建的 工具名称 <-> (pluginId, operationId) 双向映射
+     * byName 同时收录 pluginId__operationId 形式的函数名
+     */
+    private static class ToolIndex {
+        final ToolCatalog.Snapshot snapshot;
+        final Map<String, ToolMapping> byName;
+        /**
+         * pluginId -> (operationId -> toolName)
+         */
+        final Map<String, Map<String, String>> nameByOperation;
+
+        ToolIndex(ToolCatalog.Snapshot snapshot) {
+            this.snapshot = snapshot;
+            Map<String, ToolMapping> names = new HashMap<>();
+            Map<String, Map<String, String>> operationNames = new HashMap<>();
+            for (String pluginId : snapshot.plugins().keySet()) {
+                for (PluginOperation op : snapshot.getOperations(pluginId)) {
+                    String toolName = generateToolName(pluginId, op.getOperationId());
+                    if (names.containsKey(toolName)) {
+                        // 截断的插件ID冲突时退回完整插件ID
+                        toolName = "plugin_" + pluginId.replace("plugin_", "") + "_" + op.getOperationId();
+                    }
+                    ToolMapping mapping = new ToolMapping(pluginId, op.getOperationId());
+                    names.put(toolName, mapping);
+                    // AgentToolSet 发给模型的函数名（pluginId__operationId）
+                    names.putIfAbsent(pluginId + "__" + op.getOperationId(), mapping);
+                    operationNames.computeIfAbsent(pluginId, k -> new HashMap<>()).put(op.getOperationId(), toolName);
+                }
+            }
+            this.byName = Collections.unmodifiableMap(names);
+            this.nameByOperation = Collections.unmodifiableMap(operationNames);
+        }
+
+        String toolNameOf(String pluginId, String operationId) {
+            String name = nameByOperation.getOrDefault(pluginId, Collections.emptyMap()).get(operationId);
+            return name != null ? name : generateToolName(pluginId, operationId);
+        }
+    }
 }
@@ -0,0 +1,43 @@
+package org.demo.core.agent;
+
+import com.openai.models.chat.completions.ChatCompletionTool;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 智能体工具集
+ * 智能体绑定插件编译出的 tools 列表（OpenAI Function Calling JSON 结构），
+ * 构建后不再修改，可在多个线程间共享
+ *
+ * @param agentId        智能体ID
+ * @param catalogVersion 构建时的工具目录版本号
+ * @param toolsConfig    构建时智能体绑定的插件ID列表
+ * @param tools          tools 列表（只读），函数名格式为 pluginId__operationId
+ * @param chatTools      与 tools 对应的 SDK 请求对象（只读），可直接放入 ChatCompletionCreateParams
+ * @param functionNames  函数名列表（只读），与 tools 一一对应
+ * @param functionsByOperation operationId 到函数名列表的索引（只读）
+ */
+public record AgentToolSet(
+        String agentId,
+        long catalogVersion,
+        List<String> toolsConfig,
+        List<Map<String, Object>> tools,
+        List<ChatCompletionTool> chatTools,
+        List<String> functionNames,
+        Map<String, List<String>> functionsByOperation) {
+
+    /**
+     * 获取操作对应的函数名（不同插件可能有同名操作）
+     */
+    public List<String> functionsFor(String operationId) {
+        return functionsByOperation.getOrDefault(operationId, List.of());
+    }
+
+    /**
+     * 是否没有可用工具
+     */
+    public boolean isEmpty() {
+        return tools.isEmpty();
+    }
+}
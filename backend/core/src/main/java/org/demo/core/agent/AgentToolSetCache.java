@@ -0,0 +1,164 @@
+package org.demo.core.agent;
+
+import com.openai.core.JsonValue;
+import com.openai.models.FunctionDefinition;
+import com.openai.models.FunctionParameters;
+import com.openai.models.chat.completions.ChatCompletionFunctionTool;
+import com.openai.models.chat.completions.ChatCompletionTool;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.demo.core.cache.TtlCache;
+import org.demo.core.model.entity.Agent;
+import org.demo.core.model.entity.Plugin;
+import org.demo.core.model.entity.PluginOperation;
+import org.demo.core.plugin.ToolCatalog;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 智能体工具集缓存
+ * 按智能体缓存编译好的 tools 列表，每轮对话直接复用，组装成本与绑定插件数量无关
+ *
+ * 失效规则：
+ * - 工具目录版本变化（插件增删改、启停）时重建
+ * - 智能体绑定的插件列表变化时重建
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class AgentToolSetCache {
+
+    private final ToolCatalog toolCatalog;
+
+    @Value("${cache.agent-tools.max-size:1000}")
+    private int maxSize;
+
+    @Value("${cache.agent-tools.ttl:PT30M}")
+    private Duration ttl;
+
+    private TtlCache<String, AgentToolSet> cache;
+
+    @PostConstruct
+    public void init() {
+        cache = new TtlCache<>("agentTools", maxSize, ttl);
+    }
+
+    /**
+     * 获取智能体的工具集
+     */
+    public AgentToolSet get(Agent agent) {
+        ToolCatalog.Snapshot snapshot = toolCatalog.getSnapshot();
+        AgentToolSet toolSet = cache.get(agent.getId());
+        if (toolSet != null
+                && toolSet.catalogVersion() == snapshot.version()
+                && Objects.equals(toolSet.toolsConfig(), agent.getToolsConfig())) {
+            return toolSet;
+        }
+
+        toolSet = build(agent, snapshot);
+        cache.put(agent.getId(), toolSet);
+        return toolSet;
+    }
+
+    private AgentToolSet build(Agent agent, ToolCatalog.Snapshot snapshot) {
+        List<String> pluginIds = agent.getToolsConfig() != null
+                ? List.copyOf(agent.getToolsConfig())
+                : Collections.emptyList();
+
+        List<Map<String, Object>> tools = new ArrayList<>();
+        List<ChatCompletionTool> chatTools = new ArrayList<>();
+        List<String> functionNames = new ArrayList<>();
+        Map<String, List<String>> functionsByOperation = new LinkedHashMap<>();
+        for (String pluginId : pluginIds) {
+            Plugin plugin = snapshot.getPlugin(pluginId);
+            if (plugin == null) {
+                log.warn("插件不存在或已禁用: {}", pluginId);
+                continue;
+            }
+            for (PluginOperation op : snapshot.getOperations(pluginId)) {
+                Map<String, Object> tool = buildToolFromOperation(plugin, op);
+                tools.add(tool);
+                chatTools.add(toChatTool(tool));
+                String functionName = (String) ((Map<?, ?>) tool.get("function")).get("name");
+                functionNames.add(functionName);
+                functionsByOperation.computeIfAbsent(op.getOperationId(), k -> new ArrayList<>()).add(functionName);
+            }
+        }
+
+        functionsByOperation.replaceAll((op, names) -> Collections.unmodifiableList(names));
+
+        log.info("编译智能体工具集 - 智能体: {}, 目录版本: {}, 工具数: {}", agent.getId(), snapshot.version(), tools.size());
+        return new AgentToolSet(agent.getId(), snapshot.version(), pluginIds,
+                Collections.unmodifiableList(tools), Collections.unmodifiableList(chatTools),
+                Collections.unmodifiableList(functionNames),
+                Collections.unmodifiableMap(functionsByOperation));
+    }
+
+    /**
+     * 从插件操作构建单个 tool（JSON Map 格式）
+     */
+    private Map<String, Object> buildToolFromOperation(Plugin plugin, PluginOperation op) {
+        // 构建函数名：pluginId__operationId（使用双下划线分隔，便于后续解析）
+        String functionName = plugin.getId() + "__" + op.getOperationId();
+
+        // 构建函数描述
+        String description = String.format("[%s] %s", plugin.getName(),
+                op.getDescription() != null ? op.getDescription() : op.getName());
+
+        // 构建参数 schema
+        Map<String, Object> parameters = new LinkedHashMap<>();
+        parameters.put("type", "object");
+
+        Map<String, Object> inputSchema = op.getInputSchema();
+        if (inputSchema != null && inputSchema.containsKey("properties")) {
+            parameters.put("properties", inputSchema.get("properties"));
+
+            if (inputSchema.containsKey("required")) {
+                parameters.put("required", inputSchema.get("required"));
+            }
+        } else {
+            parameters.put("properties", Collections.emptyMap());
+        }
+
+        // 构建 function 对象
+        Map<String, Object> function = new LinkedHashMap<>();
+        function.put("name", functionName);
+        function.put("description", description);
+        function.put("parameters", Collections.unmodifiableMap(parameters));
+
+        // 构建 tool 对象
+        Map<String, Object> tool = new LinkedHashMap<>();
+        tool.put("type", "function");
+        tool.put("function", Collections.unmodifiableMap(function));
+
+        return Collections.unmodifiableMap(tool);
+    }
+
+    /**
+     * 将 tool（JSON Map 格式）转换为 SDK 的请求对象
+     */
+    @SuppressWarnings("unchecked")
+    private static ChatCompletionTool toChatTool(Map<String, Object> tool) {
+        Map<String, Object> function = (Map<String, Object>) tool.get("function");
+        Map<String, Object> parameters = (Map<String, Object>) function.get("parameters");
+
+        FunctionParameters.Builder parametersBuilder = FunctionParameters.builder();
+        parameters.forEach((key, value) -> parametersBuilder.putAdditionalProperty(key, JsonValue.from(value)));
+
+        FunctionDefinition definition = FunctionDefinition.builder()
+                .name((String) function.get("name"))
+                .description((String) function.get("description"))
+                .parameters(parametersBuilder.build())
+                .build();
+        return ChatCompletionTool.ofFunction(ChatCompletionFunctionTool.builder().function(definition).build());
+    }
+}
@@ -0,0 +1,131 @@
+package org.demo.core.agent;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.function.IntConsumer;
+
+/**
+ * Aho-Corasick 多关键词匹配自动机
+ * 构建后只读，可在多个线程间共享；匹配时对文本只扫描一遍，与关键词数量无关
+ *
+ * 关键词以构建时的下标作为ID回调给调用方
+ */
+public final class KeywordAutomaton {
+
+    private static final int[] EMPTY = new int[0];
+
+    /**
+     * 状态转移表，transitions.get(state) 为 字符 -> 下一状态
+     */
+    private final List<Map<Character, Integer>> transitions;
+
+    /**
+     * 失配指针
+     */
+    private final int[] fail;
+
+    /**
+     * 每个状态命中的关键词ID（已沿失配链合并）
+     */
+    private final int[][] outputs;
+
+    private KeywordAutomaton(List<Map<Character, Integer>> transitions, int[] fail, int[][] outputs) {
+        this.transitions = transitions;
+        this.fail = fail;
+        this.outputs = outputs;
+    }
+
+    /**
+     * 构建自动机
+     *
+     * @param keywords 关键词列表，空字符串会被忽略
+     */
+    public static KeywordAutomaton build(List<String> keywords) {
+        List<Map<Character, Integer>> trie = new ArrayList<>();
+        List<int[]> out = new ArrayList<>();
+        trie.add(new HashMap<>());
+        out.add(EMPTY);
+
+        // 1. 构建字典树
+        for (int id = 0; id < keywords.size(); id++) {
+            String keyword = keywords.get(id);
+            if (keyword == null || keyword.isEmpty()) {
+                continue;
+            }
+            int state = 0;
+            for (int i = 0; i < keyword.length(); i++) {
+                Integer next = trie.get(state).get(keyword.charAt(i));
+                if (next == null) {
+                    next = trie.size();
+                    trie.add(new HashMap<>());
+                    out.add(EMPTY);
+                    trie.get(state).put(keyword.charAt(i), next);
+                }
+                state = next;
+            }
+            out.set(state, append(out.get(state), id));
+        }
+
+        // 2. 广度优先计算失配指针，并合并输出
+        int[] fail = new int[trie.size()];
+        Queue<Integer> queue = new ArrayDeque<>();
+        for (int child : trie.get(0).values()) {
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            for (Map.Entry<Character, Integer> edge : trie.get(state).entrySet()) {
+                char c = edge.getKey();
+                int child = edge.getValue();
+                int f = fail[state];
+                while (f != 0 && !trie.get(f).containsKey(c)) {
+                    f = fail[f];
+                }
+                Integer target = trie.get(f).get(c);
+                fail[child] = target != null && target != child ? target : 0;
+                if (out.get(fail[child]).length > 0) {
+                    out.set(child, concat(out.get(child), out.get(fail[child])));
+                }
+                queue.add(child);
+            }
+        }
+
+        return new KeywordAutomaton(List.copyOf(trie), fail, out.toArray(new int[0][]));
+    }
+
+    /**
+     * 扫描文本，对每一处命中的关键词回调其ID（同一关键词出现多次会回调多次）
+     */
+    public void match(CharSequence text, IntConsumer onMatch) {
+        int state = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            Integer next = transitions.get(state).get(c);
+            while (next == null && state != 0) {
+                state = fail[state];
+                next = transitions.get(state).get(c);
+            }
+            state = next != null ? next : 0;
+            for (int id : outputs[state]) {
+                onMatch.accept(id);
+            }
+        }
+    }
+
+    private static int[] append(int[] array, int value) {
+        int[] result = Arrays.copyOf(array, array.length + 1);
+        result[array.length] = value;
+        return result;
+    }
+
+    private static int[] concat(int[] a, int[] b) {
+        int[] result = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, result, a.length, b.length);
+        return result;
+    }
+}
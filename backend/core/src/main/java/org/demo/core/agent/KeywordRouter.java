@@ -0,0 +1,156 @@
+package org.demo.core.agent;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.demo.core.model.entity.Plugin;
+import org.demo.core.plugin.ToolCatalog;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 关键词路由器
+ * 根据用户问题中的关键词确定要调用的插件操作，用于不依赖模型原生工具调用的自动调用模式
+ *
+ * 路由规则来源：
+ * 1. 内置默认规则（原有的关键词表）
+ * 2. 插件 openapi_spec.routingKeywords，格式：{"operationId": ["关键词1", "关键词2"]}
+ *
+ * 规则编译为 Aho-Corasick 自动机，一次扫描即可找出所有命中的关键词；
+ * 工具目录版本变化时重新编译，并整体替换，匹配过程中不会看到半成品
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class KeywordRouter {
+
+    /**
+     * 内置默认规则：关键词 -> operationId，按优先级排列
+     */
+    private static final List<Rule> DEFAULT_RULES = List.of(
+            // 传感器相关
+            new Rule("温度", "getSensorData"),
+            new Rule("湿度", "getSensorData"),
+            new Rule("传感器", "getSensorData"),
+            new Rule("环境", "getSensorData"),
+            new Rule("检测", "getSensorData"),
+            new Rule("测量", "getSensorData"),
+            new Rule("多少度", "getSensorData"),
+            new Rule("气温", "getSensorData"),
+            // LED相关 - lorem 插件使用 controlDevice 操作
+            new Rule("led", "controlDevice"),
+            new Rule("灯", "controlDevice"),
+            new Rule("开灯", "controlDevice"),
+            new Rule("关灯", "controlDevice"),
+            new Rule("亮", "controlDevice"),
+            new Rule("灭", "controlDevice"),
+            // 预设相关 - lorem 插件使用 executePreset 操作
+            new Rule("预设", "executePreset"),
+            new Rule("preset", "executePreset"),
+            new Rule("模式", "executePreset"));
+
+    private final ToolCatalog toolCatalog;
+    private final ObjectMapper objectMapper;
+
+    private final AtomicReference<CompiledRoutes> routes = new AtomicReference<>();
+
+    /**
+     * 匹配用户问题
+     *
+     * @param queryLower 小写后的用户问题
+     * @return 命中的 operationId 列表（去重，按规则优先级排序）
+     */
+    public List<String> match(String queryLower) {
+        CompiledRoutes compiled = getRoutes();
+        BitSet hits = new BitSet(compiled.rules.size());
+        compiled.automaton.match(queryLower, hits::set);
+        if (hits.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        Set<String> operations = new LinkedHashSet<>();
+        for (int id = hits.nextSetBit(0); id >= 0; id = hits.nextSetBit(id + 1)) {
+            Rule rule = compiled.rules.get(id);
+            if (operations.add(rule.operationId())) {
+                log.info("关键词命中: {} -> {}", rule.keyword(), rule.operationId());
+            }
+        }
+        return new ArrayList<>(operations);
+    }
+
+    private CompiledRoutes getRoutes() {
+        ToolCatalog.Snapshot snapshot = toolCatalog.getSnapshot();
+        CompiledRoutes current = routes.get();
+        if (current != null && current.catalogVersion == snapshot.version()) {
+            return current;
+        }
+        CompiledRoutes compiled = compile(snapshot);
+        routes.compareAndSet(current, compiled);
+        return compiled;
+    }
+
+    private CompiledRoutes compile(ToolCatalog.Snapshot snapshot) {
+        List<Rule> rules = new ArrayList<>(DEFAULT_RULES);
+        for (Plugin plugin : snapshot.plugins().values()) {
+            Map<String, List<String>> pluginRules = parseRoutingKeywords(plugin);
+            pluginRules.forEach((operationId, keywords) -> {
+                for (String keyword : keywords) {
+                    if (keyword != null && !keyword.isBlank()) {
+                        rules.add(new Rule(keyword.trim().toLowerCase(), operationId));
+                    }
+                }
+            });
+        }
+
+        List<String> keywords = rules.stream().map(Rule::keyword).toList();
+        log.info("编译关键词路由 - 目录版本: {}, 规则数: {}", snapshot.version(), rules.size());
+        return new CompiledRoutes(snapshot.version(), List.copyOf(rules), KeywordAutomaton.build(keywords));
+    }
+
+    /**
+     * 读取插件 openapi_spec 中的 routingKeywords
+     */
+    private Map<String, List<String>> parseRoutingKeywords(Plugin plugin) {
+        Object spec = plugin.getOpenapiSpec();
+        if (spec == null) {
+            return Collections.emptyMap();
+        }
+        try {
+            Map<String, Object> specMap = spec instanceof String str
+                    ? objectMapper.readValue(str, new TypeReference<Map<String, Object>>() {
+                    })
+                    : objectMapper.convertValue(spec, new TypeReference<Map<String, Object>>() {
+                    });
+            Object routing = specMap.get("routingKeywords");
+            if (routing == null) {
+                return Collections.emptyMap();
+            }
+            return objectMapper.convertValue(routing, new TypeReference<Map<String, List<String>>>() {
+            });
+        } catch (Exception e) {
+            log.warn("解析插件路由关键词失败: pluginId={}, error={}", plugin.getId(), e.getMessage());
+            return Collections.emptyMap();
+        }
+    }
+
+    /**
+     * 路由规则
+     */
+    private record Rule(String keyword, String operationId) {
+    }
+
+    /**
+     * 编译后的路由表，规则下标即自动机中的关键词ID
+     */
+    private record CompiledRoutes(long catalogVersion, List<Rule> rules, KeywordAutomaton automaton) {
+    }
+}
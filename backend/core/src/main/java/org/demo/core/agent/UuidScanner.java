@@ -0,0 +1,89 @@
+package org.demo.core.agent;
+
+/**
+ * 设备UUID扫描器
+ * 手写的线性扫描，替代每次调用都编译正则；除命中时生成结果字符串外不产生额外对象
+ *
+ * 识别规则与原正则保持一致：
+ * 1. 优先查找标准格式 8-4-4-4-12（不要求边界）
+ * 2. 其次查找恰好32个连续十六进制字符（前后不能紧跟十六进制字符），并转换为标准格式
+ */
+public final class UuidScanner {
+
+    private static final int STANDARD_LENGTH = 36;
+    private static final int SIMPLE_LENGTH = 32;
+
+    private UuidScanner() {
+    }
+
+    /**
+     * 在文本中查找第一个设备UUID
+     *
+     * @return 标准格式的UUID，未找到返回null
+     */
+    public static String find(CharSequence text) {
+        if (text == null || text.length() < SIMPLE_LENGTH) {
+            return null;
+        }
+        String standard = findStandard(text);
+        return standard != null ? standard : findSimple(text);
+    }
+
+    private static String findStandard(CharSequence text) {
+        int last = text.length() - STANDARD_LENGTH;
+        for (int start = 0; start <= last; start++) {
+            if (matchesStandardAt(text, start)) {
+                return text.subSequence(start, start + STANDARD_LENGTH).toString();
+            }
+        }
+        return null;
+    }
+
+    private static boolean matchesStandardAt(CharSequence text, int start) {
+        for (int i = 0; i < STANDARD_LENGTH; i++) {
+            char c = text.charAt(start + i);
+            if (i == 8 || i == 13 || i == 18 || i == 23) {
+                if (c != '-') {
+                    return false;
+                }
+            } else if (!isHex(c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String findSimple(CharSequence text) {
+        int length = text.length();
+        int runStart = -1;
+        for (int i = 0; i <= length; i++) {
+            boolean hex = i < length && isHex(text.charAt(i));
+            if (hex) {
+                if (runStart < 0) {
+                    runStart = i;
+                }
+            } else if (runStart >= 0) {
+                if (i - runStart == SIMPLE_LENGTH) {
+                    return toStandard(text, runStart);
+                }
+                runStart = -1;
+            }
+        }
+        return null;
+    }
+
+    private static String toStandard(CharSequence text, int start) {
+        StringBuilder sb = new StringBuilder(STANDARD_LENGTH);
+        for (int i = 0; i < SIMPLE_LENGTH; i++) {
+            if (i == 8 || i == 12 || i == 16 || i == 20) {
+                sb.append('-');
+            }
+            sb.append(text.charAt(start + i));
+        }
+        return sb.toString();
+    }
+
+    private static boolean isHex(char c) {
+        return (c >= '0' && c <= '9') || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+    }
+}
@@ -0,0 +1,29 @@
+package org.demo.core.cache;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * 在事务提交后执行缓存失效
+ *
+ * 事务内直接失效缓存时，提交前的并发读取会重新加载旧数据并写回缓存，直到TTL到期才纠正；
+ * 推迟到提交后失效，之后的读取一定能看到新数据。事务回滚时不失效；不在事务中时立即执行
+ */
+public final class AfterCommit {
+
+    private AfterCommit() {
+    }
+
+    public static void run(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+}
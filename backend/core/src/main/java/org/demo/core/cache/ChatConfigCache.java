@@ -0,0 +1,110 @@
+package org.demo.core.cache;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.demo.core.mapper.AgentMapper;
+import org.demo.core.mapper.LlmModelMapper;
+import org.demo.core.mapper.LlmProviderMapper;
+import org.demo.core.model.entity.Agent;
+import org.demo.core.model.entity.LlmModel;
+import org.demo.core.model.entity.LlmProvider;
+import org.demo.core.model.vo.CacheStatsVO;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * 对话配置缓存
+ * 缓存对话热路径上的 Agent、LlmModel、LlmProvider 查询结果，命中时一轮对话的配置解析不访问数据库
+ *
+ * 一致性保证：
+ * - AgentController / LlmController 修改数据后主动失效对应条目
+ * - 其他途径（如直接改库、多实例部署）的修改在TTL到期后生效
+ * - 查询不到的数据不缓存，新建的数据无需失效即可立即读到
+ *
+ * 注意：返回的是缓存中的共享对象，调用方不要修改
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ChatConfigCache {
+
+    private final AgentMapper agentMapper;
+    private final LlmModelMapper llmModelMapper;
+    private final LlmProviderMapper llmProviderMapper;
+
+    @Value("${cache.chat-config.max-size:1000}")
+    private int maxSize;
+
+    @Value("${cache.chat-config.ttl:PT5M}")
+    private Duration ttl;
+
+    private TtlCache<String, Agent> agentCache;
+    private TtlCache<String, LlmModel> llmModelCache;
+    private TtlCache<String, LlmProvider> providerCache;
+
+    @PostConstruct
+    public void init() {
+        agentCache = new TtlCache<>("agent", maxSize, ttl);
+        llmModelCache = new TtlCache<>("llmModel", maxSize, ttl);
+        providerCache = new TtlCache<>("llmProvider", maxSize, ttl);
+    }
+
+    /**
+     * 获取智能体
+     *
+     * @return 智能体，不存在返回null
+     */
+    public Agent getAgent(String agentId) {
+        return agentCache.get(agentId, agentMapper::selectById);
+    }
+
+    /**
+     * 获取LLM模型
+     *
+     * @return 模型，不存在返回null
+     */
+    public LlmModel getLlmModel(String llmModelId) {
+        return llmModelCache.get(llmModelId, llmModelMapper::selectById);
+    }
+
+    /**
+     * 按提供商代码获取提供商
+     *
+     * @return 提供商，不存在返回null
+     */
+    public LlmProvider getProviderByCode(String code) {
+        return providerCache.get(code, c -> {
+            QueryWrapper<LlmProvider> providerQuery = new QueryWrapper<>();
+            providerQuery.eq("code", c);
+            return llmProviderMapper.selectOne(providerQuery);
+        });
+    }
+
+    /**
+     * 智能体新增/修改/删除后调用
+     */
+    public void invalidateAgent(String agentId) {
+        agentCache.invalidate(agentId);
+        log.debug("失效智能体缓存: {}", agentId);
+    }
+
+    /**
+     * LLM模型新增/修改/删除后调用
+     */
+    public void invalidateLlmModel(String llmModelId) {
+        llmModelCache.invalidate(llmModelId);
+        log.debug("失效LLM模型缓存: {}", llmModelId);
+    }
+
+    /**
+     * 获取各缓存的命中统计
+     */
+    public List<CacheStatsVO> getStats() {
+        return List.of(agentCache.stats(), llmModelCache.stats(), providerCache.stats());
+    }
+}
@@ -0,0 +1,160 @@
+package org.demo.core.cache;
+
+import org.demo.core.model.vo.CacheStatsVO;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * 带过期时间的有界LRU缓存
+ * 超过容量时淘汰最久未访问的条目，条目超过TTL后视为失效
+ *
+ * 读穿透加载在锁外执行，加载期间若发生失效操作，加载结果不会写回缓存，
+ * 避免"读到旧值 -> 其他线程更新并失效 -> 旧值写回"导致的脏数据
+ */
+public class TtlCache<K, V> {
+
+    private final String name;
+    private final int maxSize;
+    private final long ttlMillis;
+
+    private final LinkedHashMap<K, CacheEntry<V>> entries;
+
+    /**
+     * 失效代数，每次失效操作自增，用于丢弃并发加载的旧结果
+     */
+    private long generation;
+
+    private long hitCount;
+    private long missCount;
+    private long evictCount;
+
+    public TtlCache(String name, int maxSize, Duration ttl) {
+        this.name = name;
+        this.maxSize = maxSize;
+        this.ttlMillis = ttl.toMillis();
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, CacheEntry<V>> eldest) {
+                if (size() > TtlCache.this.maxSize) {
+                    evictCount++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * 获取缓存值
+     *
+     * @return 缓存值，不存在或已过期返回null
+     */
+    public synchronized V get(K key) {
+        CacheEntry<V> entry = entries.get(key);
+        if (entry == null) {
+            missCount++;
+            return null;
+        }
+        if (entry.expireAt < System.currentTimeMillis()) {
+            entries.remove(key);
+            evictCount++;
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        return entry.value;
+    }
+
+    /**
+     * 读穿透获取：缓存未命中时调用loader加载并写入缓存
+     * loader返回null时不缓存
+     */
+    public V get(K key, Function<K, V> loader) {
+        long loadGeneration;
+        synchronized (this) {
+            V cached = get(key);
+            if (cached != null) {
+                return cached;
+            }
+            loadGeneration = generation;
+        }
+
+        V value = loader.apply(key);
+        if (value != null) {
+            synchronized (this) {
+                if (generation == loadGeneration) {
+                    entries.put(key, new CacheEntry<>(value, System.currentTimeMillis() + ttlMillis));
+                }
+            }
+        }
+        return value;
+    }
+
+    /**
+     * 原子地获取或创建：未命中时在锁内调用 factory 创建并写入，并发调用只会创建一个值
+     * factory 在锁内执行，只适合创建计数器等轻量对象，需要访问数据库的加载请用 get(key, loader)
+     */
+    public synchronized V getOrCreate(K key, Function<K, V> factory) {
+        V cached = get(key);
+        if (cached != null) {
+            return cached;
+        }
+        V value = factory.apply(key);
+        entries.put(key, new CacheEntry<>(value, System.currentTimeMillis() + ttlMillis));
+        return value;
+    }
+
+    /**
+     * 写入缓存
+     */
+    public synchronized void put(K key, V value) {
+        entries.put(key, new CacheEntry<>(value, System.currentTimeMillis() + ttlMillis));
+    }
+
+    /**
+     * 移除指定条目
+     */
+    public synchronized void invalidate(K key) {
+        generation++;
+        entries.remove(key);
+    }
+
+    /**
+     * 移除Key满足条件的所有条目
+     */
+    public synchronized void invalidateIf(Predicate<K> predicate) {
+        generation++;
+        entries.keySet().removeIf(predicate);
+    }
+
+    /**
+     * 清空缓存
+     */
+    public synchronized void invalidateAll() {
+        generation++;
+        entries.clear();
+    }
+
+    /**
+     * 获取缓存统计
+     */
+    public synchronized CacheStatsVO stats() {
+        CacheStatsVO stats = new CacheStatsVO();
+        stats.setName(name);
+        stats.setSize(entries.size());
+        stats.setMaxSize(maxSize);
+        stats.setHitCount(hitCount);
+        stats.setMissCount(missCount);
+        stats.setEvictCount(evictCount);
+        long total = hitCount + missCount;
+        stats.setHitRate(total == 0 ? 0.0 : (double) hitCount / total);
+        return stats;
+    }
+
+    private record CacheEntry<V>(V value, long expireAt) {
+    }
+}
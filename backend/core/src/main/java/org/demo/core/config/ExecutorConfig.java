@@ -0,0 +1,129 @@
+package org.demo.core.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 线程池配置类
+ */
+@Configuration
+public class ExecutorConfig {
+
+    /**
+     * 工具调用线程池
+     * 插件调用以等待远程HTTP响应为主，线程数可明显大于CPU核数；
+     * 核心线程数等于最大线程数，先起满线程再排队（ThreadPoolExecutor 只在队列满后才扩容），空闲线程超时回收；
+     * 队列很小，满时直接拒绝，由 AgentToolExecutor 立即返回失败结果，不占用请求线程执行插件调用
+     */
+    @Bean(name = "toolCallExecutor", destroyMethod = "shutdownNow")
+    public ExecutorService toolCallExecutor(
+            @Value("${agent.tool.executor.pool-size:32}") int poolSize,
+            @Value("${agent.tool.executor.queue-capacity:16}") int queueCapacity) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                poolSize,
+                poolSize,
+                60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                namedThreadFactory("tool-call-"),
+                new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * 会话摘要线程池
+     * 摘要压缩不在请求路径上，线程数很小；队列满时直接拒绝，由调用方放弃本次压缩，
+     * 后续对话会再次触发
+     */
+    @Bean(name = "summaryExecutor", destroyMethod = "shutdownNow")
+    public ExecutorService summaryExecutor(
+            @Value("${chat.summary.executor.core-size:2}") int coreSize,
+            @Value("${chat.summary.executor.max-size:4}") int maxSize,
+            @Value("${chat.summary.executor.queue-capacity:100}") int queueCapacity) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                coreSize,
+                maxSize,
+                60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                namedThreadFactory("conversation-summary-"),
+                new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * LLM对冲请求线程池
+     * 开启 llm.router.hedge-delay 时，首选模型请求在此线程池中发出，调用线程等待对冲延迟后决定是否再发一路；
+     * 队列满时由调用线程直接执行，此时退化为不对冲的普通调用
+     */
+    @Bean(name = "llmHedgeExecutor", destroyMethod = "shutdownNow")
+    public ExecutorService llmHedgeExecutor(
+            @Value("${llm.router.executor.core-size:8}") int coreSize,
+            @Value("${llm.router.executor.max-size:64}") int maxSize,
+            @Value("${llm.router.executor.queue-capacity:100}") int queueCapacity) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                coreSize,
+                maxSize,
+                60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                namedThreadFactory("llm-hedge-"),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * 工作流节点线程池
+     * 工作流中相互独立的插件节点在此并发执行，节点以等待插件HTTP响应为主；
+     * 队列满时拒绝提交，由 workflowRetryScheduler 稍后重新提交，不阻塞调度线程和定时器线程
+     */
+    @Bean(name = "workflowNodeExecutor", destroyMethod = "shutdownNow")
+    public ExecutorService workflowNodeExecutor(
+            @Value("${workflow.engine.executor.core-size:8}") int coreSize,
+            @Value("${workflow.engine.executor.max-size:32}") int maxSize,
+            @Value("${workflow.engine.executor.queue-capacity:200}") int queueCapacity) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                coreSize,
+                maxSize,
+                60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                namedThreadFactory("workflow-node-"),
+                new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * 工作流节点重试定时器
+     * 只负责在退避时间到期后把下一次尝试提交到 workflowNodeExecutor，本身不执行插件调用，
+     * 等待中的重试只是延迟队列中的一个条目，不占用线程
+     */
+    @Bean(name = "workflowRetryScheduler", destroyMethod = "shutdownNow")
+    public ScheduledExecutorService workflowRetryScheduler(
+            @Value("${workflow.engine.retry-scheduler-threads:1}") int threads) {
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(threads,
+                namedThreadFactory("workflow-retry-"));
+        // 节点取消后立即移出延迟队列
+        scheduler.setRemoveOnCancelPolicy(true);
+        return scheduler;
+    }
+
+    private static ThreadFactory namedThreadFactory(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -6,8 +6,12 @@ import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
 import org.demo.core.api.ApiResponse;
+import org.demo.core.cache.AfterCommit;
+import org.demo.core.cache.ChatConfigCache;
+import org.demo.core.llm.ResponseCache;
 import org.demo.core.mapper.AgentMapper;
 import org.demo.core.model.entity.Agent;
+import org.demo.core.model.vo.ResponseCacheStatsVO;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.*;
 
@@ -24,6 +28,8 @@ import java.util.List;
 public class AgentController {
 
     private final AgentMapper agentMapper;
+    private final ChatConfigCache chatConfigCache;
+    private final ResponseCache responseCache;
 
     /**
      * 查询所有智能体
@@ -70,6 +76,7 @@ public class AgentController {
         }
         int rows = agentMapper.insert(agent);
         if (rows > 0) {
+            AfterCommit.run(() -> chatConfigCache.invalidateAgent(agent.getId()));
             return ApiResponse.ok("创建成功", agent);
         }
         return ApiResponse.fail("创建失败");
@@ -95,6 +102,10 @@ public class AgentController {
         agent.setId(id);
         int rows = agentMapper.updateById(agent);
         if (rows > 0) {
+            AfterCommit.run(() -> {
+                chatConfigCache.invalidateAgent(id);
+                responseCache.invalidateAgent(id);
+            });
             return ApiResponse.ok("更新成功", agent);
         }
         return ApiResponse.fail("更新失败");
@@ -116,8 +127,23 @@ public class AgentController {
         }
         int rows = agentMapper.deleteById(id);
         if (rows > 0) {
+            AfterCommit.run(() -> {
+                chatConfigCache.invalidateAgent(id);
+                responseCache.invalidateAgent(id);
+            });
             return ApiResponse.ok("删除成功", null);
         }
         return ApiResponse.fail("删除失败");
     }
+
+    /**
+     * 查询回答缓存统计
+     *
+     * @return 各智能体的回答缓存命中统计
+     */
+    @Operation(summary = "查询回答缓存统计", description = "获取开启了回答缓存（model_config.responseCache.enabled）的智能体的精确命中、相似命中、未命中和因调用工具而绕过的次数及命中率")
+    @GetMapping("/response-cache/stats")
+    public ApiResponse<List<ResponseCacheStatsVO>> getResponseCacheStats() {
+        return ApiResponse.ok(responseCache.getStats());
+    }
 }
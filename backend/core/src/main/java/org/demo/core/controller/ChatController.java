@@ -1,20 +1,30 @@
 package org.demo.core.controller;
 
-import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.demo.core.api.ApiResponse;
-import org.demo.core.mapper.AgentConversationMapper;
+import org.demo.core.exception.LlmOverloadedException;
 import org.demo.core.model.entity.AgentConversation;
+import org.demo.core.model.vo.CacheStatsVO;
+import org.demo.core.model.vo.ConversationPageVO;
 import org.demo.core.model.vo.PluginInvokeResult;
+import org.demo.core.service.ChatStreamService;
+import org.demo.core.service.ConversationHistoryService;
+import org.demo.core.service.ConversationSummaryService;
 import org.demo.core.service.FunctionCallingService;
 import org.demo.core.service.LlmService;
 import org.demo.core.service.PluginService;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.HashMap;
 import java.util.List;
@@ -32,9 +42,11 @@ import java.util.UUID;
 @RequiredArgsConstructor
 public class ChatController {
 
-    private final AgentConversationMapper agentConversationMapper;
     private final LlmService llmService;
     private final FunctionCallingService functionCallingService;
+    private final ChatStreamService chatStreamService;
+    private final ConversationHistoryService conversationHistoryService;
+    private final ConversationSummaryService conversationSummaryService;
     private final PluginService pluginService;
     private final ObjectMapper objectMapper;
 
@@ -58,17 +70,71 @@ public class ChatController {
      * @param sessionId 会话ID
      * @return 该会话的所有消息历史
      */
-    @Operation(summary = "查看消息历史", description = "根据session_id查询指定会话的所有消息历史记录。返回该会话中的所有对话，包括用户提问、智能体回答、消息元数据等完整信息。消息按创建时间正序排列，便于查看对话流程")
+    @Operation(summary = "查看消息历史", description = "根据session_id查询指定会话的所有消息历史记录。返回该会话中的所有对话，包括用户提问、智能体回答、消息元数据等完整信息。消息按创建时间正序排列，便于查看对话流程。消息很多的会话请使用分页或导出接口")
     @GetMapping("/history/{sessionId}")
     public ApiResponse<List<AgentConversation>> getMessageHistory(
             @Parameter(description = "会话的唯一标识符session_id，用于查询特定会话的消息历史", required = true, example = "123e4567-e89b-12d3-a456-426614174000") @PathVariable String sessionId) {
-        QueryWrapper<AgentConversation> queryWrapper = new QueryWrapper<>();
-        queryWrapper.eq("session_id", sessionId)
-                .orderByAsc("create_time");
-        List<AgentConversation> conversations = agentConversationMapper.selectList(queryWrapper);
+        // 包含写后缓冲中尚未落库的记录
+        List<AgentConversation> conversations = conversationHistoryService.listConversations(sessionId);
         return ApiResponse.ok(conversations);
     }
 
+    /**
+     * 分页查看消息历史
+     *
+     * @param sessionId 会话ID
+     * @return 一页消息历史和下一页游标
+     */
+    @Operation(summary = "分页查看消息历史", description = "按 (create_time, id) 游标分页查询会话消息历史，适合长会话。首次请求不传cursor，之后传上一页返回的nextCursor，hasMore为false表示已到末尾。limit默认20、最大100；includeMetadata=false时不返回metadata，响应更小；order=desc时从最新的消息往前翻")
+    @GetMapping("/history/{sessionId}/page")
+    public ApiResponse<ConversationPageVO> getMessageHistoryPage(
+            @Parameter(description = "会话的唯一标识符session_id", required = true, example = "123e4567-e89b-12d3-a456-426614174000") @PathVariable String sessionId,
+            @Parameter(description = "分页游标，取上一页返回的nextCursor，首页不传") @RequestParam(required = false) String cursor,
+            @Parameter(description = "每页条数，默认20，最大100", example = "20") @RequestParam(required = false) Integer limit,
+            @Parameter(description = "是否返回metadata", example = "true") @RequestParam(defaultValue = "true") boolean includeMetadata,
+            @Parameter(description = "排序方向：asc（时间正序）或 desc（时间倒序）", example = "asc") @RequestParam(defaultValue = "asc") String order) {
+        boolean desc = "desc".equalsIgnoreCase(order);
+        if (!desc && !"asc".equalsIgnoreCase(order)) {
+            return ApiResponse.fail("order只能为asc或desc");
+        }
+        return ApiResponse.ok(conversationHistoryService.page(sessionId, cursor, limit, includeMetadata, desc));
+    }
+
+    /**
+     * 导出消息历史
+     *
+     * @param sessionId 会话ID
+     * @return 以流方式写出的JSON数组
+     */
+    @Operation(summary = "导出消息历史", description = "以流方式导出会话的全部消息历史（JSON数组，按时间正序），服务端分批查询并边查边写，适合导出消息很多的调试会话。includeMetadata=false时不包含metadata")
+    @GetMapping(value = "/history/{sessionId}/export", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportMessageHistory(
+            @Parameter(description = "会话的唯一标识符session_id", required = true, example = "123e4567-e89b-12d3-a456-426614174000") @PathVariable String sessionId,
+            @Parameter(description = "是否包含metadata", example = "true") @RequestParam(defaultValue = "true") boolean includeMetadata) {
+        StreamingResponseBody body = out -> conversationHistoryService.export(sessionId, includeMetadata, out);
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                        .filename("conversation-" + sessionId + ".json")
+                        .build()
+                        .toString())
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(body);
+    }
+
+    /**
+     * 查询会话缓存统计
+     *
+     * @return 会话设备UUID缓存、会话历史缓存、会话摘要缓存的条目数、命中和淘汰统计
+     */
+    @Operation(summary = "查询会话缓存统计", description = "获取会话级设备UUID缓存、会话历史尾部缓存和会话摘要缓存的条目数、容量上限、命中/未命中/淘汰次数和命中率，用于观察缓存容量和过期时间是否合适")
+    @GetMapping("/session-cache/stats")
+    public ApiResponse<List<CacheStatsVO>> getSessionCacheStats() {
+        return ApiResponse.ok(List.of(
+                functionCallingService.getSessionCacheStats(),
+                conversationHistoryService.getCacheStats(),
+                conversationSummaryService.getCacheStats()));
+    }
+
     /**
      * 发送消息
      *
@@ -80,31 +146,11 @@ public class ChatController {
     public ApiResponse<AgentConversation> sendMessage(
             @Parameter(description = "对话信息对象，需包含session_id、agent_id、user_id和query字段。其中query为用户的提问内容", required = true) @RequestBody AgentConversation conversation) {
         // 验证必填字段
-        if (conversation.getSessionId() == null || conversation.getSessionId().isEmpty()) {
-            return ApiResponse.fail("session_id不能为空");
-        }
-        if (conversation.getAgentId() == null || conversation.getAgentId().isEmpty()) {
-            return ApiResponse.fail("agent_id不能为空");
-        }
-        if (conversation.getQuery() == null || conversation.getQuery().isEmpty()) {
-            return ApiResponse.fail("query不能为空");
-        }
-
-        // 获取llmModelId
-        String llmModelId = null;
-        if (conversation.getMetadata() != null && conversation.getMetadata().getLlmModelId() != null) {
-            llmModelId = conversation.getMetadata().getLlmModelId();
-        }
-
-        if (llmModelId == null || llmModelId.isEmpty()) {
-            return ApiResponse.fail("metadata.llmModelId不能为空");
-        }
-
-        // 暂时写死 userId
-        // 确保 userId 有值（如果前端没传，使用默认测试用户）
-        if (conversation.getUserId() == null || conversation.getUserId().isEmpty()) {
-            conversation.setUserId("user-003-tester");
+        String validationError = validateMessage(conversation);
+        if (validationError != null) {
+            return ApiResponse.fail(validationError);
         }
+        String llmModelId = conversation.getMetadata().getLlmModelId();
 
         try {
             // 检查是否有手动指定的插件调用（兼容旧的前端调用方式）
@@ -141,36 +187,12 @@ public class ChatController {
                 answer = llmService.chat(
                         conversation.getAgentId(),
                         llmModelId,
-                        userQueryForLlm);
+                        userQueryForLlm,
+                        conversationHistoryService.loadHistory(conversation.getSessionId()));
             } else {
                 // 新方式：使用 Function Calling，让 LLM 自动决定是否调用插件
-                // 获取对话历史，用于提取之前使用过的设备 UUID
-                List<Map<String, String>> conversationHistory = new java.util.ArrayList<>();
-                try {
-                    QueryWrapper<AgentConversation> historyQuery = new QueryWrapper<>();
-                    historyQuery.eq("session_id", conversation.getSessionId())
-                            .orderByAsc("create_time");
-                    List<AgentConversation> historyList = agentConversationMapper.selectList(historyQuery);
-                    for (AgentConversation hist : historyList) {
-                        // 添加用户消息
-                        if (hist.getQuery() != null) {
-                            Map<String, String> userMsg = new HashMap<>();
-                            userMsg.put("role", "user");
-                            userMsg.put("content", hist.getQuery());
-                            conversationHistory.add(userMsg);
-                        }
-                        // 添加助手回答
-                        if (hist.getAnswer() != null) {
-                            Map<String, String> assistantMsg = new HashMap<>();
-                            assistantMsg.put("role", "assistant");
-                            assistantMsg.put("content", hist.getAnswer());
-                            conversationHistory.add(assistantMsg);
-                        }
-                    }
-                } catch (Exception ex) {
-                    // 如果查询历史失败，继续处理当前请求
-                    log.warn("获取对话历史失败: {}", ex.getMessage());
-                }
+                // 获取会话摘要和最近历史，放入提示并用于提取之前使用过的设备 UUID
+                List<Map<String, String>> conversationHistory = conversationHistoryService.loadHistory(conversation.getSessionId());
 
                 answer = functionCallingService.chatWithFunctions(
                         conversation.getAgentId(),
@@ -184,14 +206,66 @@ public class ChatController {
             conversation.setAnswer(answer);
 
             // 插入对话记录
-            int rows = agentConversationMapper.insert(conversation);
+            int rows = conversationHistoryService.save(conversation);
             if (rows > 0) {
                 return ApiResponse.ok("消息发送成功", conversation);
             }
             return ApiResponse.fail("消息发送失败");
 
+        } catch (LlmOverloadedException e) {
+            return ApiResponse.fail(429, e.getMessage());
         } catch (Exception e) {
             return ApiResponse.fail("调用大模型失败: " + e.getMessage());
         }
     }
+
+    /**
+     * 流式发送消息
+     *
+     * @param conversation 包含session_id、agent_id、user_id、query等信息的对话对象
+     * @return SSE事件流
+     */
+    @Operation(summary = "流式发送消息", description = "以Server-Sent Events方式发送消息，大模型生成的内容会通过delta事件逐段推送，无需等待完整回答。回答结束后保存对话记录并推送done事件（data为完整对话记录）；调用失败时推送error事件。客户端提前断开连接时会取消上游大模型请求，且不保存对话记录")
+    @PostMapping(value = "/message/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter sendMessageStream(
+            @Parameter(description = "对话信息对象，需包含session_id、agent_id、user_id和query字段，metadata.llmModelId指定使用的模型", required = true) @RequestBody AgentConversation conversation) {
+        String validationError = validateMessage(conversation);
+        if (validationError != null) {
+            return chatStreamService.error(validationError);
+        }
+
+        List<Map<String, String>> conversationHistory = conversationHistoryService.loadHistory(conversation.getSessionId());
+        return chatStreamService.stream(conversation, conversation.getMetadata().getLlmModelId(), conversationHistory);
+    }
+
+    /**
+     * 校验发送消息的必填字段，并补全默认userId
+     *
+     * @return 错误信息，校验通过返回null
+     */
+    private String validateMessage(AgentConversation conversation) {
+        if (conversation.getSessionId() == null || conversation.getSessionId().isEmpty()) {
+            return "session_id不能为空";
+        }
+        if (conversation.getAgentId() == null || conversation.getAgentId().isEmpty()) {
+            return "agent_id不能为空";
+        }
+        if (conversation.getQuery() == null || conversation.getQuery().isEmpty()) {
+            return "query不能为空";
+        }
+
+        // 获取llmModelId
+        if (conversation.getMetadata() == null
+                || conversation.getMetadata().getLlmModelId() == null
+                || conversation.getMetadata().getLlmModelId().isEmpty()) {
+            return "metadata.llmModelId不能为空";
+        }
+
+        // 暂时写死 userId
+        // 确保 userId 有值（如果前端没传，使用默认测试用户）
+        if (conversation.getUserId() == null || conversation.getUserId().isEmpty()) {
+            conversation.setUserId("user-003-tester");
+        }
+        return null;
+    }
 }
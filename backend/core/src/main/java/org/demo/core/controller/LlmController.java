@@ -6,13 +6,24 @@ import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
 import org.demo.core.api.ApiResponse;
+import org.demo.core.cache.AfterCommit;
+import org.demo.core.cache.ChatConfigCache;
+import org.demo.core.llm.LlmClientRegistry;
+import org.demo.core.llm.LlmRateLimiter;
+import org.demo.core.llm.ModelRouter;
+import org.demo.core.llm.TokenCounter;
 import org.demo.core.mapper.LlmModelMapper;
 import org.demo.core.mapper.LlmProviderMapper;
 import org.demo.core.model.entity.LlmModel;
 import org.demo.core.model.entity.LlmProvider;
+import org.demo.core.model.vo.CacheStatsVO;
+import org.demo.core.model.vo.LlmClientStatsVO;
+import org.demo.core.model.vo.LlmRateLimitStatsVO;
+import org.demo.core.model.vo.ModelHealthVO;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -27,6 +38,11 @@ public class LlmController {
 
     private final LlmModelMapper llmModelMapper;
     private final LlmProviderMapper llmProviderMapper;
+    private final LlmClientRegistry llmClientRegistry;
+    private final ChatConfigCache chatConfigCache;
+    private final TokenCounter tokenCounter;
+    private final ModelRouter modelRouter;
+    private final LlmRateLimiter llmRateLimiter;
 
     // ==================== LLM Model 相关接口 ====================
 
@@ -84,6 +100,11 @@ public class LlmController {
     ) {
         int rows = llmModelMapper.insert(model);
         if (rows > 0) {
+            // 事务提交后再失效，避免并发请求把旧数据重新加载进缓存
+            AfterCommit.run(() -> {
+                chatConfigCache.invalidateLlmModel(model.getId());
+                modelRouter.invalidate();
+            });
             return ApiResponse.ok("创建成功", model);
         }
         return ApiResponse.fail("创建失败");
@@ -115,6 +136,12 @@ public class LlmController {
         model.setId(id);
         int rows = llmModelMapper.updateById(model);
         if (rows > 0) {
+            // 配置（地址、密钥等）可能已变更，事务提交后失效缓存，下次调用时重建客户端
+            AfterCommit.run(() -> {
+                chatConfigCache.invalidateLlmModel(id);
+                llmClientRegistry.invalidateModel(id);
+                modelRouter.invalidate();
+            });
             return ApiResponse.ok("更新成功", model);
         }
         return ApiResponse.fail("更新失败");
@@ -141,6 +168,11 @@ public class LlmController {
         }
         int rows = llmModelMapper.deleteById(id);
         if (rows > 0) {
+            AfterCommit.run(() -> {
+                chatConfigCache.invalidateLlmModel(id);
+                llmClientRegistry.invalidateModel(id);
+                modelRouter.invalidate();
+            });
             return ApiResponse.ok("删除成功", null);
         }
         return ApiResponse.fail("删除失败");
@@ -162,4 +194,64 @@ public class LlmController {
         List<LlmProvider> providers = llmProviderMapper.selectList(new QueryWrapper<>());
         return ApiResponse.ok(providers);
     }
+
+    // ==================== LLM Client 相关接口 ====================
+
+    /**
+     * 查询LLM客户端池统计
+     *
+     * @return 客户端池统计信息
+     */
+    @Operation(
+            summary = "查询LLM客户端池统计",
+            description = "获取LLM客户端复用情况，包括当前缓存的客户端数量、复用/新建/回收次数，以及每个客户端对应的提供商、地址、创建时间和最近使用时间"
+    )
+    @GetMapping("/clients/stats")
+    public ApiResponse<LlmClientStatsVO> getClientStats() {
+        return ApiResponse.ok(llmClientRegistry.getStats());
+    }
+
+    /**
+     * 查询对话配置缓存统计
+     *
+     * @return 智能体、LLM模型、LLM提供商缓存的命中统计
+     */
+    @Operation(
+            summary = "查询对话配置缓存统计",
+            description = "获取对话热路径上智能体、LLM模型、LLM提供商三类配置缓存以及消息Token计数缓存的条目数、命中/未命中/淘汰次数和命中率"
+    )
+    @GetMapping("/config-cache/stats")
+    public ApiResponse<List<CacheStatsVO>> getConfigCacheStats() {
+        List<CacheStatsVO> stats = new ArrayList<>(chatConfigCache.getStats());
+        stats.add(tokenCounter.getCacheStats());
+        return ApiResponse.ok(stats);
+    }
+
+    /**
+     * 查询模型路由健康状态
+     *
+     * @return 各模型的熔断状态、成功/失败次数和 p95 延迟
+     */
+    @Operation(
+            summary = "查询模型路由健康状态",
+            description = "获取参与过路由的LLM模型的健康状态，包括所属路由组（config.routingGroup）、权重、是否处于熔断暂停期、连续失败次数、成功/失败/降级次数以及最近成功请求的p95延迟"
+    )
+    @GetMapping("/router/stats")
+    public ApiResponse<List<ModelHealthVO>> getRouterStats() {
+        return ApiResponse.ok(modelRouter.getStats());
+    }
+
+    /**
+     * 查询LLM限流统计
+     *
+     * @return 各提供商、模型的限流配置和放行/拒绝次数
+     */
+    @Operation(
+            summary = "查询LLM限流统计",
+            description = "获取按提供商和模型配置的限流器状态，包括每分钟请求数/Token数上限、最大并发数、当前进行中和排队中的请求数，以及累计放行和因超过排队期限被拒绝的请求数"
+    )
+    @GetMapping("/rate-limit/stats")
+    public ApiResponse<List<LlmRateLimitStatsVO>> getRateLimitStats() {
+        return ApiResponse.ok(llmRateLimiter.getStats());
+    }
 }
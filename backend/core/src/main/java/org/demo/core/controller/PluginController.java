@@ -11,10 +11,12 @@ import org.demo.core.model.dto.PluginOpenApiImportRequest;
 import org.demo.core.model.dto.PluginStatusUpdateRequest;
 import org.demo.core.model.dto.PluginUpdateRequest;
 import org.demo.core.model.vo.PageResult;
+import org.demo.core.model.vo.PluginCircuitBreakerVO;
 import org.demo.core.model.vo.PluginDetailVO;
 import org.demo.core.model.vo.PluginInvokeResult;
 import org.demo.core.model.vo.PluginListItemVO;
 import org.demo.core.model.vo.PluginOperationVO;
+import org.demo.core.plugin.PluginCircuitBreakerRegistry;
 import org.demo.core.service.PluginService;
 import org.springframework.web.bind.annotation.*;
 
@@ -31,6 +33,7 @@ import java.util.List;
 public class PluginController {
 
     private final PluginService pluginService;
+    private final PluginCircuitBreakerRegistry circuitBreakerRegistry;
 
     /**
      * 列表查询插件
@@ -198,4 +201,31 @@ public class PluginController {
             return ApiResponse.ok("调用失败", result);
         }
     }
+
+    /**
+     * 查询插件熔断状态
+     * GET /plugins/circuit-breakers
+     *
+     * @return 各插件熔断器状态
+     */
+    @Operation(summary = "查询插件熔断状态", description = "获取被调用过的插件的熔断器状态，包括CLOSED/OPEN/HALF_OPEN状态、熔断结束时间、滚动窗口内的调用数/失败数/失败率、累计熔断次数、被直接拒绝的调用数、重试次数和剩余重试预算")
+    @GetMapping("/circuit-breakers")
+    public ApiResponse<List<PluginCircuitBreakerVO>> listCircuitBreakers() {
+        return ApiResponse.ok("查询成功", circuitBreakerRegistry.getStats());
+    }
+
+    /**
+     * 重置插件熔断器
+     * POST /plugins/{pluginId}/circuit-breaker/reset
+     *
+     * @param pluginId 插件ID
+     * @return 重置结果
+     */
+    @Operation(summary = "重置插件熔断器", description = "插件后端恢复后手动将熔断器重置为正常状态，清空失败统计，后续调用立即放行")
+    @PostMapping("/{pluginId}/circuit-breaker/reset")
+    public ApiResponse<Void> resetCircuitBreaker(
+            @Parameter(description = "插件ID", required = true, example = "plugin_456") @PathVariable String pluginId) {
+        circuitBreakerRegistry.reset(pluginId);
+        return ApiResponse.ok("重置成功", null);
+    }
 }
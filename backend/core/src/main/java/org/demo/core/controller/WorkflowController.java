@@ -0,0 +1,198 @@
+package org.demo.core.controller;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import org.demo.core.api.ApiResponse;
+import org.demo.core.model.dto.WorkflowRunRequest;
+import org.demo.core.model.entity.Workflow;
+import org.demo.core.model.entity.WorkflowRun;
+import org.demo.core.model.vo.WorkflowRunResultVO;
+import org.demo.core.model.vo.WorkflowValidationVO;
+import org.demo.core.service.WorkflowService;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+/**
+ * 工作流控制器
+ * 提供工作流的CRUD、DAG校验、执行和执行记录接口
+ */
+@Tag(name = "工作流管理", description = "提供工作流的增删改查、DAG校验、执行和从检查点恢复执行的接口")
+@RestController
+@RequestMapping("/api/v1/workflows")
+@RequiredArgsConstructor
+public class WorkflowController {
+
+    private final WorkflowService workflowService;
+
+    /**
+     * 查询工作流列表
+     *
+     * @param agentId 所属智能体ID
+     * @return 工作流列表
+     */
+    @Operation(summary = "查询工作流列表", description = "获取工作流列表，可按所属智能体过滤，按更新时间倒序")
+    @GetMapping
+    public ApiResponse<List<Workflow>> list(
+            @Parameter(description = "所属智能体ID") @RequestParam(required = false) String agentId) {
+        return ApiResponse.ok(workflowService.list(agentId));
+    }
+
+    /**
+     * 根据ID查询工作流
+     *
+     * @param id 工作流ID
+     * @return 工作流信息
+     */
+    @Operation(summary = "根据ID查询工作流", description = "获取工作流的定义、画布数据和校验状态")
+    @GetMapping("/{id}")
+    public ApiResponse<Workflow> get(
+            @Parameter(description = "工作流ID", required = true) @PathVariable String id) {
+        Workflow workflow = workflowService.get(id);
+        if (workflow == null) {
+            return ApiResponse.fail("工作流不存在");
+        }
+        return ApiResponse.ok(workflow);
+    }
+
+    /**
+     * 创建工作流
+     *
+     * @param workflow 工作流信息
+     * @return 创建结果
+     */
+    @Operation(summary = "创建工作流", description = "创建工作流并校验DAG，校验结果写入 isValid；校验不通过的工作流可以保存但不能执行")
+    @PostMapping
+    public ApiResponse<Workflow> create(
+            @Parameter(description = "工作流信息，definition 包含 nodes 和 edges", required = true) @RequestBody Workflow workflow) {
+        // TODO: 从登录用户获取userId，当前使用默认值
+        if (workflow.getUserId() == null || workflow.getUserId().isEmpty()) {
+            workflow.setUserId("user-004-dev");
+        }
+        return ApiResponse.ok("创建成功", workflowService.create(workflow));
+    }
+
+    /**
+     * 更新工作流
+     *
+     * @param id       工作流ID
+     * @param workflow 工作流信息
+     * @return 更新结果
+     */
+    @Operation(summary = "更新工作流", description = "更新工作流信息，definition 变化时重新校验DAG并更新 isValid")
+    @PutMapping("/{id}")
+    public ApiResponse<Workflow> update(
+            @Parameter(description = "工作流ID", required = true) @PathVariable String id,
+            @Parameter(description = "更新后的工作流信息", required = true) @RequestBody Workflow workflow) {
+        Workflow updated = workflowService.update(id, workflow);
+        if (updated == null) {
+            return ApiResponse.fail("工作流不存在");
+        }
+        return ApiResponse.ok("更新成功", updated);
+    }
+
+    /**
+     * 删除工作流
+     *
+     * @param id 工作流ID
+     * @return 删除结果
+     */
+    @Operation(summary = "删除工作流", description = "根据ID删除工作流，执行历史随之级联删除")
+    @DeleteMapping("/{id}")
+    public ApiResponse<Void> delete(
+            @Parameter(description = "工作流ID", required = true) @PathVariable String id) {
+        if (workflowService.delete(id)) {
+            return ApiResponse.ok("删除成功", null);
+        }
+        return ApiResponse.fail("工作流不存在");
+    }
+
+    /**
+     * 校验工作流DAG
+     *
+     * @param id 工作流ID
+     * @return 校验结果
+     */
+    @Operation(summary = "校验工作流", description = "校验节点、连线、环路及节点间的参数引用，返回全部错误并更新 isValid")
+    @PostMapping("/{id}/validate")
+    public ApiResponse<WorkflowValidationVO> validate(
+            @Parameter(description = "工作流ID", required = true) @PathVariable String id) {
+        WorkflowValidationVO result = workflowService.validate(id);
+        if (result == null) {
+            return ApiResponse.fail("工作流不存在");
+        }
+        return ApiResponse.ok(result);
+    }
+
+    /**
+     * 执行工作流
+     *
+     * @param id      工作流ID
+     * @param request 执行请求
+     * @return 执行结果
+     */
+    @Operation(summary = "执行工作流", description = "按DAG执行工作流，相互独立的分支并行执行；返回各节点耗时、关键路径耗时和最终输出")
+    @PostMapping("/{id}/run")
+    public ApiResponse<WorkflowRunResultVO> run(
+            @Parameter(description = "工作流ID", required = true) @PathVariable String id,
+            @Parameter(description = "执行请求，包含输入参数") @RequestBody(required = false) WorkflowRunRequest request) {
+        // TODO: 从登录用户获取userId，当前使用默认值
+        String currentUserId = "user-004-dev";
+        WorkflowRunResultVO result = workflowService.run(id, request != null ? request.getInputs() : null, currentUserId);
+        if (result == null) {
+            return ApiResponse.fail("工作流不存在");
+        }
+        return ApiResponse.ok(result);
+    }
+
+    /**
+     * 查询工作流的执行记录
+     *
+     * @param id    工作流ID
+     * @param limit 返回条数
+     * @return 执行记录列表
+     */
+    @Operation(summary = "查询执行记录", description = "按创建时间倒序返回工作流最近的执行记录，包含状态、输出和节点检查点")
+    @GetMapping("/{id}/runs")
+    public ApiResponse<List<WorkflowRun>> listRuns(
+            @Parameter(description = "工作流ID", required = true) @PathVariable String id,
+            @Parameter(description = "返回条数，最多100") @RequestParam(defaultValue = "20") int limit) {
+        return ApiResponse.ok(workflowService.listRuns(id, limit));
+    }
+
+    /**
+     * 查询单条执行记录
+     *
+     * @param runId 执行记录ID
+     * @return 执行记录
+     */
+    @Operation(summary = "查询执行记录详情", description = "获取执行记录的状态、输入输出和各插件节点的检查点（node_states）")
+    @GetMapping("/runs/{runId}")
+    public ApiResponse<WorkflowRun> getRun(
+            @Parameter(description = "执行记录ID", required = true) @PathVariable String runId) {
+        WorkflowRun run = workflowService.getRun(runId);
+        if (run == null) {
+            return ApiResponse.fail("执行记录不存在");
+        }
+        return ApiResponse.ok(run);
+    }
+
+    /**
+     * 从检查点恢复执行
+     *
+     * @param runId 执行记录ID
+     * @return 执行结果
+     */
+    @Operation(summary = "恢复执行", description = "从检查点恢复失败、中断或因进程崩溃遗留的执行；已完成的插件节点直接使用检查点中的输出，不再调用插件")
+    @PostMapping("/runs/{runId}/resume")
+    public ApiResponse<WorkflowRunResultVO> resume(
+            @Parameter(description = "执行记录ID", required = true) @PathVariable String runId) {
+        WorkflowRunResultVO result = workflowService.resume(runId);
+        if (result == null) {
+            return ApiResponse.fail("执行记录不存在");
+        }
+        return ApiResponse.ok(result);
+    }
+}
@@ -18,6 +18,14 @@ public class GlobalExceptionHandler {
         return ApiResponse.fail(404, e.getMessage());
     }
 
+    /**
+     * 处理LLM请求过载异常
+     */
+    @ExceptionHandler(LlmOverloadedException.class)
+    public ApiResponse<Void> handleLlmOverloadedException(LlmOverloadedException e) {
+        return ApiResponse.fail(429, e.getMessage());
+    }
+
     /**
      * 处理参数校验异常
      */
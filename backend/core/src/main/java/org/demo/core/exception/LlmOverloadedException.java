@@ -0,0 +1,12 @@
+package org.demo.core.exception;
+
+/**
+ * LLM请求过载异常
+ * 提供商或模型的限流、并发配额在排队期限内无法满足时抛出，请求未发往模型
+ */
+public class LlmOverloadedException extends RuntimeException {
+
+    public LlmOverloadedException(String message) {
+        super(message);
+    }
+}
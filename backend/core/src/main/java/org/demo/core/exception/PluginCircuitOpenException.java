@@ -0,0 +1,13 @@
+package org.demo.core.exception;
+
+/**
+ * 插件熔断异常
+ * 插件后端失败率过高被熔断期间，调用在发出前直接失败
+ */
+public class PluginCircuitOpenException extends RuntimeException {
+
+    public PluginCircuitOpenException(String pluginId, long remainingMillis) {
+        super("插件服务暂不可用，已熔断: " + pluginId
+                + (remainingMillis > 0 ? "，约" + Math.max(1, remainingMillis / 1000) + "秒后重试" : ""));
+    }
+}
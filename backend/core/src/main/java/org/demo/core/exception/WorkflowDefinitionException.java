@@ -0,0 +1,21 @@
+package org.demo.core.exception;
+
+import java.util.List;
+
+/**
+ * 工作流定义校验异常
+ * 定义无法解析为合法的DAG时抛出，包含全部校验错误
+ */
+public class WorkflowDefinitionException extends IllegalArgumentException {
+
+    private final List<String> errors;
+
+    public WorkflowDefinitionException(List<String> errors) {
+        super("工作流定义校验失败: " + String.join("; ", errors));
+        this.errors = List.copyOf(errors);
+    }
+
+    public List<String> getErrors() {
+        return errors;
+    }
+}
@@ -0,0 +1,132 @@
+package org.demo.core.llm;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.demo.core.model.entity.LlmModel;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 对话上下文构建器
+ * 在模型的 token 预算内放入 系统提示词 + 历史对话 + 当前问题，超出预算时从最早的历史开始丢弃
+ *
+ * 预算计算：
+ * - 上下文窗口：llm_models.config.contextWindow，未配置取 llm.context.default-window
+ * - 预留给回答：llm_models.max_tokens，未配置取 llm.context.default-completion-reserve
+ * - 历史可用 = 上下文窗口 - 预留回答 - 系统提示词 - 当前问题 - 消息格式开销
+ *
+ * 历史开头的 system 消息视为会话摘要，裁剪时固定保留在最前面
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ContextBuilder {
+
+    /**
+     * 每条消息的格式开销（role、分隔符等），参考 OpenAI 的计数方式
+     */
+    private static final int TOKENS_PER_MESSAGE = 4;
+
+    /**
+     * 回答起始标记的开销
+     */
+    private static final int REPLY_PRIMING_TOKENS = 3;
+
+    private final TokenCounter tokenCounter;
+    private final ModelOptionsResolver modelOptionsResolver;
+
+    @Value("${llm.context.default-window:8192}")
+    private int defaultWindow;
+
+    @Value("${llm.context.default-completion-reserve:1024}")
+    private int defaultCompletionReserve;
+
+    /**
+     * 按 token 预算裁剪历史对话
+     *
+     * @param llmModel     模型配置
+     * @param systemPrompt 系统提示词（可为null）
+     * @param history      按时间正序排列的历史消息（可为null），可能以会话摘要开头
+     * @param userQuery    当前问题
+     * @return 可放入上下文的会话摘要和最近历史
+     */
+    public List<Map<String, String>> fitHistory(LlmModel llmModel, String systemPrompt,
+            List<Map<String, String>> history, String userQuery) {
+        if (history == null || history.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        String modelName = llmModel.getName();
+        int remaining = promptBudget(llmModel)
+                - REPLY_PRIMING_TOKENS
+                - messageTokens(modelName, systemPrompt)
+                - messageTokens(modelName, userQuery);
+
+        // 开头的 system 消息是会话摘要，优先保留；预算连摘要都放不下时才丢弃
+        int first = 0;
+        boolean keepSummary = false;
+        if ("system".equals(history.get(0).get("role"))) {
+            first = 1;
+            int tokens = messageTokens(modelName, history.get(0).get("content"));
+            if (tokens <= remaining) {
+                remaining -= tokens;
+                keepSummary = true;
+            }
+        }
+
+        // 从最新的消息往前累加，直到超出预算
+        int start = history.size();
+        while (start > first) {
+            int tokens = messageTokens(modelName, history.get(start - 1).get("content"));
+            if (tokens > remaining) {
+                break;
+            }
+            remaining -= tokens;
+            start--;
+        }
+
+        // 保证保留部分从用户消息开始，避免以孤立的助手回答开头
+        while (start < history.size() && !"user".equals(history.get(start).get("role"))) {
+            start++;
+        }
+
+        int dropped = start - first + (first > 0 && !keepSummary ? 1 : 0);
+        if (dropped > 0) {
+            log.info("历史对话超出上下文预算，丢弃最早的 {} 条消息 - 模型: {}", dropped, modelName);
+        }
+        if (!keepSummary || start == first) {
+            return keepSummary ? history : history.subList(start, history.size());
+        }
+        List<Map<String, String>> fitted = new ArrayList<>(history.size() - start + 1);
+        fitted.add(history.get(0));
+        fitted.addAll(history.subList(start, history.size()));
+        return fitted;
+    }
+
+    /**
+     * 计算提示词可用的 token 预算（上下文窗口 - 预留给回答的部分）
+     */
+    public int promptBudget(LlmModel llmModel) {
+        ModelOptions options = modelOptionsResolver.resolve(llmModel);
+        int window = options.contextWindow() != null ? options.contextWindow() : defaultWindow;
+        int reserve = llmModel.getMaxTokens() != null && llmModel.getMaxTokens() > 0
+                ? llmModel.getMaxTokens()
+                : defaultCompletionReserve;
+        return Math.max(0, window - reserve);
+    }
+
+    /**
+     * 单条消息的 token 数（含格式开销）
+     */
+    public int messageTokens(String modelName, String content) {
+        if (content == null || content.isEmpty()) {
+            return 0;
+        }
+        return TOKENS_PER_MESSAGE + tokenCounter.count(modelName, content);
+    }
+}
@@ -0,0 +1,244 @@
+package org.demo.core.llm;
+
+import com.openai.client.OpenAIClient;
+import com.openai.client.okhttp.OpenAIOkHttpClient;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.demo.core.model.entity.LlmModel;
+import org.demo.core.model.entity.LlmProvider;
+import org.demo.core.model.vo.LlmClientStatsVO;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * LLM客户端注册表
+ * 按 (提供商代码, apiBase, apiKey摘要) 复用 OpenAIClient，
+ * 同一组配置的所有请求共享一个 OkHttp 连接池和调度线程，避免每次对话都重新建连和握手
+ *
+ * 生命周期：
+ * 1. 首次使用时创建客户端并缓存
+ * 2. 空闲超过 llm.client.idle-timeout 的客户端会被回收
+ * 3. 模型配置更新/删除时，对应客户端立即从注册表移除，新请求会重建客户端
+ * 4. 被移除的客户端延迟 llm.client.close-grace 后再关闭，保证进行中的请求能正常结束
+ */
+@Slf4j
+@Component
+public class LlmClientRegistry {
+
+    @Value("${llm.client.idle-timeout:PT10M}")
+    private Duration idleTimeout;
+
+    @Value("${llm.client.close-grace:PT2M}")
+    private Duration closeGrace;
+
+    /**
+     * 已创建的客户端
+     */
+    private final Map<ClientKey, ClientEntry> clients = new ConcurrentHashMap<>();
+
+    /**
+     * 模型ID到客户端Key的映射，用于模型更新时定位需要重建的客户端
+     */
+    private final Map<String, ClientKey> modelKeys = new ConcurrentHashMap<>();
+
+    /**
+     * 已移出注册表、等待关闭的客户端
+     */
+    private final Queue<RetiredClient> retiredClients = new ConcurrentLinkedQueue<>();
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong createCount = new AtomicLong();
+    private final AtomicLong evictCount = new AtomicLong();
+    private final AtomicLong invalidateCount = new AtomicLong();
+
+    /**
+     * 获取（或创建）模型对应的客户端
+     *
+     * @param llmModel 模型配置
+     * @param provider 提供商配置
+     * @return 可复用的 OpenAIClient
+     */
+    public OpenAIClient getClient(LlmModel llmModel, LlmProvider provider) {
+        String apiKey = llmModel.getApiKey();
+        if (apiKey == null || apiKey.isEmpty()) {
+            throw new RuntimeException("API Key未配置");
+        }
+        String baseUrl = llmModel.getApiBase() != null ? llmModel.getApiBase() : provider.getDefaultApiBase();
+
+        ClientKey key = new ClientKey(provider.getCode(), baseUrl, digest(apiKey));
+        if (llmModel.getId() != null) {
+            modelKeys.put(llmModel.getId(), key);
+        }
+
+        ClientEntry entry = clients.get(key);
+        if (entry != null) {
+            hitCount.incrementAndGet();
+        } else {
+            entry = clients.computeIfAbsent(key, k -> {
+                createCount.incrementAndGet();
+                log.info("创建LLM客户端 - 提供商: {}, 地址: {}", k.providerCode(), k.baseUrl());
+                return new ClientEntry(OpenAIOkHttpClient.builder()
+                        .apiKey(apiKey)
+                        .baseUrl(baseUrl)
+                        .build());
+            });
+        }
+        entry.touch();
+        return entry.client;
+    }
+
+    /**
+     * 模型配置变更时调用，移除该模型正在使用的客户端
+     *
+     * @param llmModelId 模型ID
+     */
+    public void invalidateModel(String llmModelId) {
+        if (llmModelId == null) {
+            return;
+        }
+        ClientKey key = modelKeys.remove(llmModelId);
+        if (key == null) {
+            return;
+        }
+        ClientEntry entry = clients.remove(key);
+        if (entry != null) {
+            invalidateCount.incrementAndGet();
+            retire(entry);
+            log.info("模型配置变更，移除LLM客户端 - 模型: {}, 提供商: {}", llmModelId, key.providerCode());
+        }
+    }
+
+    /**
+     * 定期回收空闲客户端，并关闭已过宽限期的旧客户端
+     */
+    @Scheduled(fixedDelay = 60_000)
+    public void evictIdleClients() {
+        long now = System.currentTimeMillis();
+        long idleMillis = idleTimeout.toMillis();
+
+        Iterator<Map.Entry<ClientKey, ClientEntry>> it = clients.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<ClientKey, ClientEntry> e = it.next();
+            if (now - e.getValue().lastAccessTime > idleMillis && clients.remove(e.getKey(), e.getValue())) {
+                evictCount.incrementAndGet();
+                retire(e.getValue());
+                modelKeys.values().removeIf(e.getKey()::equals);
+                log.info("回收空闲LLM客户端 - 提供商: {}, 地址: {}", e.getKey().providerCode(), e.getKey().baseUrl());
+            }
+        }
+
+        long graceMillis = closeGrace.toMillis();
+        RetiredClient retired;
+        while ((retired = retiredClients.peek()) != null && now - retired.retiredTime >= graceMillis) {
+            if (retiredClients.remove(retired)) {
+                closeQuietly(retired.client);
+            }
+        }
+    }
+
+    /**
+     * 获取客户端池统计信息
+     */
+    public LlmClientStatsVO getStats() {
+        LlmClientStatsVO stats = new LlmClientStatsVO();
+        stats.setClientCount(clients.size());
+        stats.setHitCount(hitCount.get());
+        stats.setCreateCount(createCount.get());
+        stats.setEvictCount(evictCount.get());
+        stats.setInvalidateCount(invalidateCount.get());
+        stats.setPendingCloseCount(retiredClients.size());
+
+        List<LlmClientStatsVO.ClientInfo> infos = new ArrayList<>();
+        clients.forEach((key, entry) -> {
+            LlmClientStatsVO.ClientInfo info = new LlmClientStatsVO.ClientInfo();
+            info.setProviderCode(key.providerCode());
+            info.setBaseUrl(key.baseUrl());
+            info.setCreateTime(entry.createTime);
+            info.setLastAccessTime(entry.lastAccessTime);
+            info.setUseCount(entry.useCount.get());
+            infos.add(info);
+        });
+        stats.setClients(infos);
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        clients.values().forEach(entry -> closeQuietly(entry.client));
+        clients.clear();
+        RetiredClient retired;
+        while ((retired = retiredClients.poll()) != null) {
+            closeQuietly(retired.client);
+        }
+    }
+
+    private void retire(ClientEntry entry) {
+        retiredClients.add(new RetiredClient(entry.client, System.currentTimeMillis()));
+    }
+
+    private void closeQuietly(OpenAIClient client) {
+        try {
+            client.close();
+        } catch (Exception e) {
+            log.warn("关闭LLM客户端失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 计算 apiKey 摘要，避免明文密钥作为缓存Key常驻内存
+     */
+    private static String digest(String apiKey) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(md.digest(apiKey.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 客户端缓存Key
+     */
+    private record ClientKey(String providerCode, String baseUrl, String apiKeyDigest) {
+    }
+
+    /**
+     * 客户端缓存项
+     */
+    private static class ClientEntry {
+        final OpenAIClient client;
+        final long createTime = System.currentTimeMillis();
+        final AtomicLong useCount = new AtomicLong();
+        volatile long lastAccessTime = createTime;
+
+        ClientEntry(OpenAIClient client) {
+            this.client = client;
+        }
+
+        void touch() {
+            lastAccessTime = System.currentTimeMillis();
+            useCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * 等待关闭的客户端
+     */
+    private record RetiredClient(OpenAIClient client, long retiredTime) {
+    }
+}
@@ -0,0 +1,380 @@
+package org.demo.core.llm;
+
+import com.openai.models.chat.completions.ChatCompletionCreateParams;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.demo.core.exception.LlmOverloadedException;
+import org.demo.core.model.entity.LlmModel;
+import org.demo.core.model.entity.LlmProvider;
+import org.demo.core.model.vo.LlmRateLimitStatsVO;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LLM请求限流与并发隔离
+ * 按 llm_providers、llm_models 上配置的 rpm_limit / tpm_limit / max_concurrency，
+ * 分别对提供商和模型做令牌桶限流和并发限制，避免突发流量触发提供商大面积 429
+ *
+ * - 令牌桶：每分钟请求数、每分钟Token数各一个桶，允许透支后按速率等待；
+ *   Token 按 提示词（TokenCounter 本地估算）+ max_tokens 预扣，请求完成后按实际用量多退少补
+ * - 并发：公平信号量，排队人数不超过 llm.rate-limit.queue-size
+ * - 期限：预计等待超过 llm.rate-limit.max-wait 的请求直接拒绝，不再发往模型
+ *
+ * 配置变更后（缓存中的行数据刷新）自动按新值重建对应限流器
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class LlmRateLimiter {
+
+    private final TokenCounter tokenCounter;
+
+    @Value("${llm.rate-limit.max-wait:PT3S}")
+    private Duration maxWait;
+
+    @Value("${llm.rate-limit.queue-size:20}")
+    private int queueSize;
+
+    @Value("${llm.rate-limit.default-estimate-tokens:1000}")
+    private int defaultEstimateTokens;
+
+    /**
+     * 限流器，key 为 provider:代码 或 model:模型ID
+     */
+    private final Map<String, Limiter> limiters = new ConcurrentHashMap<>();
+
+    /**
+     * 获取一次请求的许可，调用结束后必须关闭
+     * 配置了 tpm_limit 时预扣 提示词Token + 回答Token；回答部分取 max_tokens，
+     * 未设置时按 llm.rate-limit.default-estimate-tokens 估算
+     *
+     * @param llmModel 模型
+     * @param provider 提供商
+     * @param params   请求参数，用于估算提示词Token数
+     * @return 许可
+     * @throws LlmOverloadedException 排队期限内无法获得许可
+     */
+    public Permit acquire(LlmModel llmModel, LlmProvider provider, ChatCompletionCreateParams params) {
+        List<Limiter> chain = new ArrayList<>(2);
+        addLimiter(chain, "provider", provider.getCode(), "提供商 " + provider.getCode(),
+                provider.getRpmLimit(), provider.getTpmLimit(), provider.getMaxConcurrency());
+        addLimiter(chain, "model", llmModel.getId(), "模型 " + llmModel.getName(),
+                llmModel.getRpmLimit(), llmModel.getTpmLimit(), llmModel.getMaxConcurrency());
+        if (chain.isEmpty()) {
+            return new Permit(0, 0);
+        }
+        // 只有Token桶需要估算，本地分词有开销，未配置 tpm_limit 时跳过
+        long promptTokens = 0;
+        long tokens = 0;
+        if (chain.stream().anyMatch(limiter -> limiter.tokenBucket != null)) {
+            promptTokens = tokenCounter.countPrompt(llmModel.getName(), params);
+            long completionTokens = params.maxCompletionTokens().filter(max -> max > 0).orElse((long) defaultEstimateTokens);
+            tokens = promptTokens + completionTokens;
+        }
+        Permit permit = new Permit(promptTokens, tokens);
+
+        long deadline = System.nanoTime() + maxWait.toNanos();
+        try {
+            // 1. 令牌桶：各层同时开始计时，按最长的等待时间等待
+            long waitNanos = 0;
+            for (Limiter limiter : chain) {
+                long wait = limiter.reserve(tokens, deadline - System.nanoTime());
+                if (wait < 0) {
+                    throw shed(limiter, "每分钟请求数或Token数已达上限");
+                }
+                permit.reserved.add(limiter);
+                waitNanos = Math.max(waitNanos, wait);
+            }
+            if (waitNanos > 0) {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            }
+
+            // 2. 并发：在剩余期限内公平排队
+            for (Limiter limiter : chain) {
+                if (!limiter.enter(deadline)) {
+                    throw shed(limiter, "并发请求已满");
+                }
+                permit.entered.add(limiter);
+            }
+            for (Limiter limiter : chain) {
+                limiter.acceptedCount.increment();
+            }
+            return permit;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            permit.abort();
+            throw new RuntimeException("等待模型请求配额被中断", e);
+        } catch (RuntimeException e) {
+            permit.abort();
+            throw e;
+        }
+    }
+
+    /**
+     * 获取各限流器的统计
+     */
+    public List<LlmRateLimitStatsVO> getStats() {
+        List<LlmRateLimitStatsVO> stats = new ArrayList<>(limiters.size());
+        for (Limiter limiter : limiters.values()) {
+            stats.add(limiter.toVO());
+        }
+        stats.sort(Comparator.comparing(LlmRateLimitStatsVO::getScope)
+                .thenComparing(LlmRateLimitStatsVO::getTarget));
+        return stats;
+    }
+
+    private void addLimiter(List<Limiter> chain, String scope, String target, String label,
+            Integer rpm, Integer tpm, Integer maxConcurrency) {
+        Integer rpmLimit = positive(rpm);
+        Integer tpmLimit = positive(tpm);
+        Integer concurrency = positive(maxConcurrency);
+        String key = scope + ":" + target;
+        if (rpmLimit == null && tpmLimit == null && concurrency == null) {
+            limiters.remove(key);
+            return;
+        }
+        Limiter limiter = limiters.compute(key, (k, existing) ->
+                existing != null && existing.sameConfig(rpmLimit, tpmLimit, concurrency)
+                        ? existing : new Limiter(scope, target, label, rpmLimit, tpmLimit, concurrency, queueSize));
+        chain.add(limiter);
+    }
+
+    private LlmOverloadedException shed(Limiter limiter, String reason) {
+        limiter.shedCount.increment();
+        log.warn("LLM请求被限流拒绝 - {}: {}", limiter.label, reason);
+        return new LlmOverloadedException(String.format("%s%s，排队超过%d毫秒，本次请求已拒绝，请稍后重试",
+                limiter.label, reason, maxWait.toMillis()));
+    }
+
+    private static Integer positive(Integer value) {
+        return value != null && value > 0 ? value : null;
+    }
+
+    /**
+     * 一次请求持有的许可
+     */
+    public static final class Permit implements AutoCloseable {
+
+        private final long promptTokens;
+        private final long estimatedTokens;
+        private final List<Limiter> reserved = new ArrayList<>(2);
+        private final List<Limiter> entered = new ArrayList<>(2);
+        private boolean closed;
+        private boolean settled;
+
+        private Permit(long promptTokens, long estimatedTokens) {
+            this.promptTokens = promptTokens;
+            this.estimatedTokens = estimatedTokens;
+        }
+
+        /**
+         * 按实际Token用量修正预扣值，只修正一次
+         */
+        public synchronized void settle(long actualTokens) {
+            if (settled) {
+                return;
+            }
+            settled = true;
+            for (Limiter limiter : reserved) {
+                limiter.settle(actualTokens - estimatedTokens);
+            }
+        }
+
+        /**
+         * 提供商未返回用量时，按预估的提示词Token + 本地统计的回答Token修正
+         */
+        public void settleCompletion(long completionTokens) {
+            settle(promptTokens + completionTokens);
+        }
+
+        /**
+         * 释放并发名额
+         */
+        @Override
+        public synchronized void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            for (Limiter limiter : entered) {
+                limiter.exit();
+            }
+        }
+
+        private void abort() {
+            for (Limiter limiter : reserved) {
+                limiter.refund(estimatedTokens);
+            }
+            close();
+        }
+    }
+
+    /**
+     * 单个提供商或模型的限流器
+     */
+    private static final class Limiter {
+
+        private final String scope;
+        private final String target;
+        private final String label;
+        private final Integer rpmLimit;
+        private final Integer tpmLimit;
+        private final Integer maxConcurrency;
+        private final int queueSize;
+
+        private final TokenBucket requestBucket;
+        private final TokenBucket tokenBucket;
+        private final Semaphore semaphore;
+        private final AtomicInteger waiting = new AtomicInteger();
+        private final LongAdder acceptedCount = new LongAdder();
+        private final LongAdder shedCount = new LongAdder();
+
+        Limiter(String scope, String target, String label, Integer rpmLimit, Integer tpmLimit,
+                Integer maxConcurrency, int queueSize) {
+            this.scope = scope;
+            this.target = target;
+            this.label = label;
+            this.rpmLimit = rpmLimit;
+            this.tpmLimit = tpmLimit;
+            this.maxConcurrency = maxConcurrency;
+            this.queueSize = queueSize;
+            this.requestBucket = rpmLimit != null ? new TokenBucket(rpmLimit) : null;
+            this.tokenBucket = tpmLimit != null ? new TokenBucket(tpmLimit) : null;
+            this.semaphore = maxConcurrency != null ? new Semaphore(maxConcurrency, true) : null;
+        }
+
+        boolean sameConfig(Integer rpm, Integer tpm, Integer concurrency) {
+            return Objects.equals(rpmLimit, rpm) && Objects.equals(tpmLimit, tpm)
+                    && Objects.equals(maxConcurrency, concurrency);
+        }
+
+        /**
+         * 在两个令牌桶上预约，返回需等待的纳秒数；超过期限时不预约并返回 -1
+         */
+        long reserve(long tokens, long maxWaitNanos) {
+            long requestWait = requestBucket != null ? requestBucket.reserve(1, maxWaitNanos) : 0;
+            if (requestWait < 0) {
+                return -1;
+            }
+            long tokenWait = tokenBucket != null ? tokenBucket.reserve(tokens, maxWaitNanos) : 0;
+            if (tokenWait < 0) {
+                if (requestBucket != null) {
+                    requestBucket.refund(1);
+                }
+                return -1;
+            }
+            return Math.max(requestWait, tokenWait);
+        }
+
+        void refund(long tokens) {
+            if (requestBucket != null) {
+                requestBucket.refund(1);
+            }
+            if (tokenBucket != null) {
+                tokenBucket.refund(tokens);
+            }
+        }
+
+        void settle(long tokenDelta) {
+            if (tokenBucket != null && tokenDelta != 0) {
+                tokenBucket.refund(-tokenDelta);
+            }
+        }
+
+        /**
+         * 在期限内获取并发名额；排队人数已满时立即返回 false
+         */
+        boolean enter(long deadlineNanos) throws InterruptedException {
+            if (semaphore == null) {
+                return true;
+            }
+            // 公平模式下 tryAcquire(0) 不会插队到已在排队的请求之前
+            if (semaphore.tryAcquire(0, TimeUnit.NANOSECONDS)) {
+                return true;
+            }
+            if (waiting.incrementAndGet() > queueSize) {
+                waiting.decrementAndGet();
+                return false;
+            }
+            try {
+                return semaphore.tryAcquire(Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } finally {
+                waiting.decrementAndGet();
+            }
+        }
+
+        void exit() {
+            if (semaphore != null) {
+                semaphore.release();
+            }
+        }
+
+        LlmRateLimitStatsVO toVO() {
+            LlmRateLimitStatsVO vo = new LlmRateLimitStatsVO();
+            vo.setScope(scope);
+            vo.setTarget(target);
+            vo.setRpmLimit(rpmLimit);
+            vo.setTpmLimit(tpmLimit);
+            vo.setMaxConcurrency(maxConcurrency);
+            vo.setInFlight(semaphore != null ? maxConcurrency - semaphore.availablePermits() : null);
+            vo.setWaiting(waiting.get());
+            vo.setAcceptedCount(acceptedCount.sum());
+            vo.setShedCount(shedCount.sum());
+            return vo;
+        }
+    }
+
+    /**
+     * 每分钟补满的令牌桶
+     * 预约可以透支，透支部分按补充速率折算为等待时间，后来者顺延
+     */
+    static final class TokenBucket {
+
+        private final double capacity;
+        private final double refillPerNano;
+        private double available;
+        private long lastRefill;
+
+        TokenBucket(int perMinute) {
+            this.capacity = perMinute;
+            this.refillPerNano = perMinute / (double) TimeUnit.MINUTES.toNanos(1);
+            this.available = perMinute;
+            this.lastRefill = System.nanoTime();
+        }
+
+        synchronized long reserve(long amount, long maxWaitNanos) {
+            refill();
+            // 单次请求超过桶容量时按容量计，避免永远无法满足
+            double cost = Math.min(amount, capacity);
+            long wait = available >= cost ? 0 : (long) Math.ceil((cost - available) / refillPerNano);
+            if (wait > maxWaitNanos) {
+                return -1;
+            }
+            available -= cost;
+            return wait;
+        }
+
+        synchronized void refund(double amount) {
+            refill();
+            available = Math.min(capacity, available + amount);
+        }
+
+        private void refill() {
+            long now = System.nanoTime();
+            available = Math.min(capacity, available + (now - lastRefill) * refillPerNano);
+            lastRefill = now;
+        }
+    }
+}
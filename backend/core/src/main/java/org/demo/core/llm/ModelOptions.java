@@ -0,0 +1,19 @@
+package org.demo.core.llm;
+
+/**
+ * 模型扩展配置
+ * 来自 llm_models.config（JSON字符串），未配置的项为null
+ *
+ * @param contextWindow 模型上下文窗口大小（token数），对应 config.contextWindow
+ * @param nativeTools   是否使用模型原生的 Function Calling，对应 config.nativeTools；
+ *                      不支持 tools 参数的模型配置为 false，退回关键词匹配
+ * @param routingGroup  路由组，对应 config.routingGroup；同组的启用模型视为等价，可互相分流和降级
+ * @param weight        组内分流权重，对应 config.weight，未配置时按1计算
+ */
+public record ModelOptions(Integer contextWindow, Boolean nativeTools, String routingGroup, Integer weight) {
+
+    /**
+     * 未配置任何扩展项
+     */
+    public static final ModelOptions EMPTY = new ModelOptions(null, null, null, null);
+}
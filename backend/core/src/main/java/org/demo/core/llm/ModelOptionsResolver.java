@@ -0,0 +1,73 @@
+package org.demo.core.llm;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.demo.core.model.entity.LlmModel;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 模型扩展配置解析器
+ * 按 config 原文缓存解析结果，同一份配置只解析一次
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ModelOptionsResolver {
+
+    /**
+     * 最多缓存的不同配置数，超过后清空重建（配置种类通常很少）
+     */
+    private static final int MAX_CACHED = 256;
+
+    private final ObjectMapper objectMapper;
+
+    private final Map<String, ModelOptions> cache = new ConcurrentHashMap<>();
+
+    /**
+     * 获取模型的扩展配置
+     */
+    public ModelOptions resolve(LlmModel llmModel) {
+        String config = llmModel.getConfig();
+        if (config == null || config.isBlank()) {
+            return ModelOptions.EMPTY;
+        }
+        ModelOptions options = cache.get(config);
+        if (options == null) {
+            if (cache.size() >= MAX_CACHED) {
+                cache.clear();
+            }
+            options = parse(llmModel.getId(), config);
+            cache.put(config, options);
+        }
+        return options;
+    }
+
+    private ModelOptions parse(String llmModelId, String config) {
+        try {
+            JsonNode root = objectMapper.readTree(config);
+            JsonNode nativeTools = root.get("nativeTools");
+            JsonNode routingGroup = root.get("routingGroup");
+            return new ModelOptions(positiveInt(root, "contextWindow"),
+                    nativeTools != null && nativeTools.isBoolean() ? nativeTools.asBoolean() : null,
+                    routingGroup != null && routingGroup.isTextual() && !routingGroup.asText().isBlank()
+                            ? routingGroup.asText().trim() : null,
+                    positiveInt(root, "weight"));
+        } catch (Exception e) {
+            log.warn("解析模型配置失败: llmModelId={}, error={}", llmModelId, e.getMessage());
+            return ModelOptions.EMPTY;
+        }
+    }
+
+    private static Integer positiveInt(JsonNode root, String field) {
+        JsonNode node = root.get(field);
+        if (node == null || !node.canConvertToInt() || node.asInt() <= 0) {
+            return null;
+        }
+        return node.asInt();
+    }
+}
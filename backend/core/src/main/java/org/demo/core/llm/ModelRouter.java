@@ -0,0 +1,459 @@
+package org.demo.core.llm;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.openai.client.OpenAIClient;
+import com.openai.errors.InternalServerException;
+import com.openai.errors.OpenAIIoException;
+import com.openai.errors.OpenAIServiceException;
+import com.openai.errors.RateLimitException;
+import com.openai.models.chat.completions.ChatCompletion;
+import com.openai.models.chat.completions.ChatCompletionCreateParams;
+import lombok.extern.slf4j.Slf4j;
+import org.demo.core.cache.ChatConfigCache;
+import org.demo.core.exception.LlmOverloadedException;
+import org.demo.core.mapper.LlmModelMapper;
+import org.demo.core.model.entity.LlmModel;
+import org.demo.core.model.entity.LlmProvider;
+import org.demo.core.model.vo.ModelHealthVO;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 多模型路由
+ * llm_models.config 中 routingGroup 相同的启用模型视为等价模型，对话请求在组内分流并互为降级
+ *
+ * - 选择：按 config.weight 加权随机，权重再按各模型最近 p95 延迟折算，越慢分到的流量越少
+ * - 降级：遇到 429、5xx、超时或本地限流拒绝时依次改用组内其他模型，其余错误（如参数错误）直接抛出
+ * - 健康：连续失败达到 llm.router.failure-threshold 次后暂停使用该模型 llm.router.cooldown，
+ *   到期后放行请求试探，成功即恢复
+ * - 对冲：配置 llm.router.hedge-delay 后，首选模型超过该时长未响应时向下一个模型并发请求，取先返回的结果
+ *
+ * 未配置 routingGroup 的模型只调用自身，行为与直接调用客户端一致
+ */
+@Slf4j
+@Component
+public class ModelRouter {
+
+    @Autowired
+    private LlmModelMapper llmModelMapper;
+
+    @Autowired
+    private ChatConfigCache chatConfigCache;
+
+    @Autowired
+    private LlmClientRegistry llmClientRegistry;
+
+    @Autowired
+    private ModelOptionsResolver modelOptionsResolver;
+
+    @Autowired
+    private LlmRateLimiter llmRateLimiter;
+
+    @Autowired
+    @Qualifier("llmHedgeExecutor")
+    private ExecutorService hedgeExecutor;
+
+    @Value("${llm.router.failure-threshold:3}")
+    private int failureThreshold;
+
+    @Value("${llm.router.cooldown:PT30S}")
+    private Duration cooldown;
+
+    @Value("${llm.router.latency-window:100}")
+    private int latencyWindow;
+
+    @Value("${llm.router.hedge-delay:PT0S}")
+    private Duration hedgeDelay;
+
+    @Value("${llm.router.group-refresh:PT1M}")
+    private Duration groupRefresh;
+
+    /**
+     * 路由组成员快照，为null时下次使用前重新加载
+     */
+    private volatile Groups groups;
+
+    /**
+     * 各模型的健康状态
+     */
+    private final Map<String, ModelHealth> healthMap = new ConcurrentHashMap<>();
+
+    /**
+     * 选择本次流式调用使用的模型
+     * 流式响应开始输出后无法切换模型，只在发起前按健康状态和延迟选择
+     *
+     * @param llmModelId 智能体配置的模型ID
+     * @return 选中的模型（未配置路由组时为模型本身）
+     */
+    public LlmModel select(String llmModelId) {
+        return candidates(llmModelId).get(0);
+    }
+
+    /**
+     * 发起一次对话请求，按路由组分流、降级和对冲
+     * 请求参数按智能体配置的模型构建，改用组内其他模型时只替换模型名称
+     *
+     * @param llmModelId 智能体配置的模型ID
+     * @param params     请求参数
+     * @return 首个成功的响应，实际使用的模型见 {@link ChatCompletion#model()}
+     */
+    public ChatCompletion complete(String llmModelId, ChatCompletionCreateParams params) {
+        Deque<LlmModel> queue = new ArrayDeque<>(candidates(llmModelId));
+        boolean first = true;
+        RuntimeException lastFailure = null;
+        while (!queue.isEmpty()) {
+            LlmModel candidate = queue.poll();
+            if (!first) {
+                health(candidate).recordFallback();
+                log.warn("模型调用失败，降级到同组模型 - 模型: {}, 原因: {}",
+                        candidate.getName(), lastFailure != null ? lastFailure.getMessage() : null);
+            }
+            first = false;
+            try {
+                if (!hedgeDelay.isZero() && !queue.isEmpty()) {
+                    return hedged(candidate, queue, params);
+                }
+                return call(candidate, params, null);
+            } catch (RuntimeException e) {
+                if (!isRetryable(e)) {
+                    throw e;
+                }
+                lastFailure = e;
+            }
+        }
+        throw lastFailure;
+    }
+
+    /**
+     * 模型配置变更后调用，下次路由时重新加载路由组
+     */
+    public void invalidate() {
+        groups = null;
+    }
+
+    /**
+     * 获取各模型的路由健康状态
+     */
+    public List<ModelHealthVO> getStats() {
+        long now = System.currentTimeMillis();
+        List<ModelHealthVO> stats = new ArrayList<>();
+        for (ModelHealth health : healthMap.values()) {
+            stats.add(health.toVO(now));
+        }
+        stats.sort(Comparator.comparing(ModelHealthVO::getRoutingGroup, Comparator.nullsLast(String::compareTo))
+                .thenComparing(ModelHealthVO::getModelName, Comparator.nullsLast(String::compareTo)));
+        return stats;
+    }
+
+    /**
+     * 首选模型先发出，超过对冲延迟仍未返回时再向队列中的下一个模型发出，取先成功的结果
+     * 两个请求都失败时抛出后一个失败，由调用方继续降级
+     *
+     * 结果确定后被取消的请求（通常是较慢的首选模型）以中断或IO异常结束，这不是模型故障，不计入健康状态
+     */
+    private ChatCompletion hedged(LlmModel primary, Deque<LlmModel> queue, ChatCompletionCreateParams params) {
+        CompletionService<ChatCompletion> completionService = new ExecutorCompletionService<>(hedgeExecutor);
+        List<Future<ChatCompletion>> futures = new ArrayList<>(2);
+        AtomicBoolean settled = new AtomicBoolean();
+        futures.add(completionService.submit(() -> call(primary, params, settled)));
+        try {
+            Future<ChatCompletion> done = completionService.poll(hedgeDelay.toMillis(), TimeUnit.MILLISECONDS);
+            if (done == null) {
+                LlmModel hedge = queue.poll();
+                health(hedge).recordFallback();
+                log.info("首选模型响应慢，发起对冲请求 - 首选: {}, 对冲: {}", primary.getName(), hedge.getName());
+                futures.add(completionService.submit(() -> call(hedge, params, settled)));
+            }
+            RuntimeException failure = null;
+            for (int received = 0; received < futures.size(); received++) {
+                Future<ChatCompletion> future = received == 0 && done != null ? done : completionService.take();
+                try {
+                    return future.get();
+                } catch (ExecutionException e) {
+                    failure = e.getCause() instanceof RuntimeException runtime
+                            ? runtime : new RuntimeException(e.getCause());
+                    if (!isRetryable(failure)) {
+                        throw failure;
+                    }
+                }
+            }
+            throw failure;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("等待模型响应被中断", e);
+        } finally {
+            settled.set(true);
+            for (Future<ChatCompletion> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * 调用单个模型并记录其健康状态
+     *
+     * @param settled 对冲请求的结果是否已确定，非对冲调用为null；确定后（即被取消时）的失败不计入健康状态
+     */
+    private ChatCompletion call(LlmModel llmModel, ChatCompletionCreateParams params, AtomicBoolean settled) {
+        LlmProvider provider = chatConfigCache.getProviderByCode(llmModel.getProvider());
+        if (provider == null) {
+            throw new RuntimeException("Provider不存在: " + llmModel.getProvider());
+        }
+        OpenAIClient client = llmClientRegistry.getClient(llmModel, provider);
+        ChatCompletionCreateParams routed = llmModel.getName().equals(params.model().asString())
+                ? params : params.toBuilder().model(llmModel.getName()).build();
+
+        // 本地限流拒绝不计入模型健康状态
+        try (LlmRateLimiter.Permit permit = llmRateLimiter.acquire(llmModel, provider, routed)) {
+            ModelHealth health = health(llmModel);
+            long start = System.nanoTime();
+            try {
+                ChatCompletion completion = client.chat().completions().create(routed);
+                health.recordSuccess(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                completion.usage().ifPresent(usage -> permit.settle(usage.totalTokens()));
+                return completion;
+            } catch (RuntimeException e) {
+                boolean cancelled = Thread.currentThread().isInterrupted() || settled != null && settled.get();
+                if (isRetryable(e) && !cancelled) {
+                    health.recordFailure(System.currentTimeMillis());
+                }
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * 本次请求的候选模型：首个为选中的模型，其余按 p95 延迟升序作为降级顺序
+     * 暂停中的模型不参与；组内全部暂停时仍按原顺序全部尝试，避免直接失败
+     */
+    private List<LlmModel> candidates(String llmModelId) {
+        LlmModel llmModel = chatConfigCache.getLlmModel(llmModelId);
+        if (llmModel == null) {
+            throw new RuntimeException("LLM模型不存在: " + llmModelId);
+        }
+        String group = modelOptionsResolver.resolve(llmModel).routingGroup();
+        if (group == null) {
+            return List.of(llmModel);
+        }
+
+        List<LlmModel> members = new ArrayList<>();
+        members.add(llmModel);
+        for (LlmModel member : groupMembers().getOrDefault(group, List.of())) {
+            if (!member.getId().equals(llmModel.getId())) {
+                members.add(member);
+            }
+        }
+        if (members.size() == 1) {
+            return members;
+        }
+
+        long now = System.currentTimeMillis();
+        List<LlmModel> available = new ArrayList<>(members.size());
+        for (LlmModel member : members) {
+            if (health(member).isAvailable(now)) {
+                available.add(member);
+            }
+        }
+        if (available.isEmpty()) {
+            return members;
+        }
+
+        // p95 未知的模型按当前最快的模型对待，保证新加入的模型也能分到流量
+        Map<String, Long> p95 = new HashMap<>();
+        long fastest = Long.MAX_VALUE;
+        for (LlmModel member : available) {
+            long value = health(member).p95();
+            p95.put(member.getId(), value);
+            if (value > 0) {
+                fastest = Math.min(fastest, value);
+            }
+        }
+        long baseline = fastest == Long.MAX_VALUE ? 1 : Math.max(1, fastest);
+        p95.replaceAll((id, value) -> value > 0 ? Math.max(1, value) : baseline);
+
+        double[] weights = new double[available.size()];
+        double total = 0;
+        for (int i = 0; i < available.size(); i++) {
+            LlmModel member = available.get(i);
+            Integer weight = modelOptionsResolver.resolve(member).weight();
+            weights[i] = (weight != null ? weight : 1) * (double) baseline / p95.get(member.getId());
+            total += weights[i];
+        }
+        double point = ThreadLocalRandom.current().nextDouble(total);
+        int chosen = available.size() - 1;
+        for (int i = 0; i < weights.length; i++) {
+            point -= weights[i];
+            if (point < 0) {
+                chosen = i;
+                break;
+            }
+        }
+
+        List<LlmModel> ordered = new ArrayList<>(available.size());
+        ordered.add(available.remove(chosen));
+        available.sort(Comparator.comparingLong(member -> p95.get(member.getId())));
+        ordered.addAll(available);
+        return ordered;
+    }
+
+    private Map<String, List<LlmModel>> groupMembers() {
+        Groups snapshot = groups;
+        long now = System.currentTimeMillis();
+        if (snapshot == null || now - snapshot.loadTime() > groupRefresh.toMillis()) {
+            snapshot = loadGroups(now);
+            groups = snapshot;
+        }
+        return snapshot.members();
+    }
+
+    private Groups loadGroups(long now) {
+        QueryWrapper<LlmModel> query = new QueryWrapper<>();
+        query.eq("is_active", true).orderByAsc("sort_order");
+        Map<String, List<LlmModel>> members = new HashMap<>();
+        for (LlmModel model : llmModelMapper.selectList(query)) {
+            String group = modelOptionsResolver.resolve(model).routingGroup();
+            if (group != null) {
+                members.computeIfAbsent(group, key -> new ArrayList<>()).add(model);
+            }
+        }
+        log.info("加载模型路由组 - 组数: {}", members.size());
+        return new Groups(members, now);
+    }
+
+    private ModelHealth health(LlmModel llmModel) {
+        ModelHealth health = healthMap.computeIfAbsent(llmModel.getId(), id -> new ModelHealth(id, latencyWindow));
+        ModelOptions options = modelOptionsResolver.resolve(llmModel);
+        health.describe(llmModel.getName(), options.routingGroup(), options.weight());
+        return health;
+    }
+
+    /**
+     * 是否为可降级的错误：限流、服务端错误、网络异常和超时
+     */
+    static boolean isRetryable(Throwable error) {
+        for (Throwable t = error; t != null; t = t.getCause() == t ? null : t.getCause()) {
+            if (t instanceof LlmOverloadedException || t instanceof RateLimitException || t instanceof InternalServerException
+                    || t instanceof OpenAIIoException || t instanceof InterruptedIOException
+                    || t instanceof TimeoutException) {
+                return true;
+            }
+            if (t instanceof OpenAIServiceException serviceException) {
+                int status = serviceException.statusCode();
+                return status == 429 || status >= 500;
+            }
+        }
+        return false;
+    }
+
+    private record Groups(Map<String, List<LlmModel>> members, long loadTime) {
+    }
+
+    /**
+     * 单个模型的健康状态：连续失败计数、暂停截止时间和最近成功请求的延迟环形缓冲
+     */
+    private final class ModelHealth {
+
+        private final String modelId;
+        private final long[] latencies;
+        private int next;
+        private int count;
+        private int consecutiveFailures;
+        private long openUntil;
+        private long successCount;
+        private long failureCount;
+        private long fallbackCount;
+
+        private volatile String modelName;
+        private volatile String routingGroup;
+        private volatile Integer weight;
+
+        ModelHealth(String modelId, int window) {
+            this.modelId = modelId;
+            this.latencies = new long[Math.max(1, window)];
+        }
+
+        void describe(String modelName, String routingGroup, Integer weight) {
+            this.modelName = modelName;
+            this.routingGroup = routingGroup;
+            this.weight = weight;
+        }
+
+        synchronized boolean isAvailable(long now) {
+            return openUntil <= now;
+        }
+
+        synchronized void recordSuccess(long millis) {
+            latencies[next] = millis;
+            next = (next + 1) % latencies.length;
+            count = Math.min(count + 1, latencies.length);
+            consecutiveFailures = 0;
+            openUntil = 0;
+            successCount++;
+        }
+
+        synchronized void recordFailure(long now) {
+            failureCount++;
+            if (++consecutiveFailures >= failureThreshold) {
+                openUntil = now + cooldown.toMillis();
+                log.warn("模型连续失败{}次，暂停路由 {} - 模型: {}", consecutiveFailures, cooldown, modelName);
+            }
+        }
+
+        synchronized void recordFallback() {
+            fallbackCount++;
+        }
+
+        /**
+         * 最近成功请求的 p95 延迟，尚无样本时返回 -1
+         */
+        synchronized long p95() {
+            if (count == 0) {
+                return -1;
+            }
+            long[] sorted = Arrays.copyOf(latencies, count);
+            Arrays.sort(sorted);
+            return sorted[Math.max(0, (int) Math.ceil(count * 0.95) - 1)];
+        }
+
+        synchronized ModelHealthVO toVO(long now) {
+            ModelHealthVO vo = new ModelHealthVO();
+            vo.setModelId(modelId);
+            vo.setModelName(modelName);
+            vo.setRoutingGroup(routingGroup);
+            vo.setWeight(weight != null ? weight : 1);
+            vo.setOpen(openUntil > now);
+            vo.setOpenUntil(openUntil > now ? openUntil : null);
+            vo.setConsecutiveFailures(consecutiveFailures);
+            vo.setSuccessCount(successCount);
+            vo.setFailureCount(failureCount);
+            vo.setFallbackCount(fallbackCount);
+            long p95 = p95();
+            vo.setP95Millis(p95 >= 0 ? p95 : null);
+            vo.setSampleCount(count);
+            return vo;
+        }
+    }
+}
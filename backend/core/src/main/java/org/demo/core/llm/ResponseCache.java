@@ -0,0 +1,379 @@
+package org.demo.core.llm;
+
+import com.openai.client.OpenAIClient;
+import com.openai.models.embeddings.EmbeddingCreateParams;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.demo.core.cache.ChatConfigCache;
+import org.demo.core.cache.TtlCache;
+import org.demo.core.model.entity.Agent;
+import org.demo.core.model.entity.LlmModel;
+import org.demo.core.model.entity.LlmProvider;
+import org.demo.core.model.vo.ResponseCacheStatsVO;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 智能体回答缓存
+ * 同一个已发布智能体反复被问到相同的常见问题时，直接返回之前的回答，不再调用大模型
+ *
+ * 按智能体在 model_config.responseCache 中开启（默认关闭），例如：
+ * {"responseCache": {"enabled": true, "ttlSeconds": 1800, "embeddingModelId": "xxx", "similarityThreshold": 0.92}}
+ *
+ * - 精确匹配：key = 智能体 + 提示词指纹 + 模型 + 归一化后的问题（去首尾空白、小写、合并空白、去掉结尾标点）
+ * - 相似匹配（可选）：配置了 embeddingModelId 和 similarityThreshold 时，精确未命中再用向量余弦相似度查找
+ * - 修改提示词后指纹变化，旧回答自然不再命中；智能体更新或删除时整体失效
+ * - 缓存只适合与上下文无关的问答：调用了工具或带会话历史的轮次一律绕过，既不读也不写；
+ *   原生 Function Calling 模式下绑定了工具的智能体由模型决定是否调用工具，整轮绕过
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ResponseCache {
+
+    private static final String CONFIG_KEY = "responseCache";
+
+    private final ChatConfigCache chatConfigCache;
+    private final LlmClientRegistry llmClientRegistry;
+
+    @Value("${cache.response.max-size:5000}")
+    private int maxSize;
+
+    /**
+     * 缓存条目的最长存活时间，智能体配置的 ttlSeconds 只能更短
+     */
+    @Value("${cache.response.ttl:PT1H}")
+    private Duration maxTtl;
+
+    @Value("${cache.response.max-vectors-per-agent:500}")
+    private int maxVectorsPerAgent;
+
+    private TtlCache<ExactKey, CachedAnswer> exactCache;
+
+    /**
+     * 相似匹配的向量索引，每个 (智能体, 提示词指纹, 模型) 一份
+     */
+    private final Map<Scope, VectorStore> vectorStores = new ConcurrentHashMap<>();
+
+    private final Map<String, AgentStats> statsByAgent = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        exactCache = new TtlCache<>("responseCache", maxSize, maxTtl);
+    }
+
+    /**
+     * 查找缓存的回答
+     *
+     * @param agent      智能体
+     * @param llmModelId 模型ID
+     * @param userQuery  用户问题
+     * @return 查找结果；未开启缓存时返回 Lookup.DISABLED，命中时 answer() 不为null
+     */
+    public Lookup lookup(Agent agent, String llmModelId, String userQuery) {
+        Options options = Options.of(agent.getModelConfig());
+        if (options == null) {
+            return Lookup.DISABLED;
+        }
+        AgentStats stats = stats(agent.getId());
+        Scope scope = new Scope(agent.getId(), fingerprint(agent.getPrompt()), llmModelId);
+        String normalized = normalize(userQuery);
+
+        // 1. 精确匹配
+        CachedAnswer cached = exactCache.get(new ExactKey(scope, normalized));
+        if (cached != null && cached.expireAt() > System.currentTimeMillis()) {
+            stats.exactHits.increment();
+            log.info("回答缓存精确命中 - 智能体: {}", agent.getId());
+            return new Lookup(options, scope, normalized, null, cached.answer());
+        }
+
+        // 2. 相似匹配
+        float[] vector = null;
+        if (options.semantic()) {
+            vector = embed(options.embeddingModelId(), normalized);
+            VectorStore store = vectorStores.get(scope);
+            if (vector != null && store != null) {
+                String answer = store.search(vector, options.similarityThreshold());
+                if (answer != null) {
+                    stats.semanticHits.increment();
+                    log.info("回答缓存相似命中 - 智能体: {}", agent.getId());
+                    return new Lookup(options, scope, normalized, vector, answer);
+                }
+            }
+        }
+
+        stats.misses.increment();
+        return new Lookup(options, scope, normalized, vector, null);
+    }
+
+    /**
+     * 缓存大模型的回答（未命中时调用）
+     */
+    public void store(Lookup lookup, String answer) {
+        if (lookup.options() == null || lookup.answer() != null || answer == null || answer.isBlank()) {
+            return;
+        }
+        long ttlMillis = Math.min(lookup.options().ttlMillis() != null ? lookup.options().ttlMillis() : Long.MAX_VALUE,
+                maxTtl.toMillis());
+        long expireAt = System.currentTimeMillis() + ttlMillis;
+        exactCache.put(new ExactKey(lookup.scope(), lookup.normalizedQuery()), new CachedAnswer(answer, expireAt));
+        if (lookup.vector() != null) {
+            vectorStores.computeIfAbsent(lookup.scope(), s -> new VectorStore(maxVectorsPerAgent))
+                    .put(lookup.normalizedQuery(), lookup.vector(), answer, expireAt);
+        }
+    }
+
+    /**
+     * 记录一次因调用工具而绕过缓存的轮次（每轮对话最多记录一次，且不再 lookup）
+     */
+    public void recordBypass(Agent agent) {
+        if (Options.of(agent.getModelConfig()) != null) {
+            stats(agent.getId()).bypasses.increment();
+        }
+    }
+
+    /**
+     * 智能体更新或删除时调用
+     */
+    public void invalidateAgent(String agentId) {
+        exactCache.invalidateIf(key -> key.scope().agentId().equals(agentId));
+        vectorStores.keySet().removeIf(scope -> scope.agentId().equals(agentId));
+    }
+
+    /**
+     * 获取各智能体的缓存命中统计
+     */
+    public List<ResponseCacheStatsVO> getStats() {
+        List<ResponseCacheStatsVO> result = new ArrayList<>(statsByAgent.size());
+        statsByAgent.forEach((agentId, stats) -> {
+            ResponseCacheStatsVO vo = new ResponseCacheStatsVO();
+            vo.setAgentId(agentId);
+            vo.setExactHits(stats.exactHits.sum());
+            vo.setSemanticHits(stats.semanticHits.sum());
+            vo.setMisses(stats.misses.sum());
+            vo.setBypasses(stats.bypasses.sum());
+            long hits = vo.getExactHits() + vo.getSemanticHits();
+            long total = hits + vo.getMisses();
+            vo.setHitRate(total == 0 ? 0.0 : (double) hits / total);
+            result.add(vo);
+        });
+        return result;
+    }
+
+    private AgentStats stats(String agentId) {
+        return statsByAgent.computeIfAbsent(agentId, id -> new AgentStats());
+    }
+
+    /**
+     * 计算问题的单位化向量，失败时返回null（退化为只做精确匹配）
+     */
+    private float[] embed(String embeddingModelId, String text) {
+        try {
+            LlmModel model = chatConfigCache.getLlmModel(embeddingModelId);
+            if (model == null) {
+                log.warn("回答缓存的向量模型不存在: {}", embeddingModelId);
+                return null;
+            }
+            LlmProvider provider = chatConfigCache.getProviderByCode(model.getProvider());
+            if (provider == null) {
+                log.warn("Provider不存在: {}", model.getProvider());
+                return null;
+            }
+            OpenAIClient client = llmClientRegistry.getClient(model, provider);
+            List<Float> embedding = client.embeddings().create(EmbeddingCreateParams.builder()
+                    .model(model.getName())
+                    .input(text)
+                    .build()).data().get(0).embedding();
+            return unit(embedding);
+        } catch (Exception e) {
+            log.warn("计算问题向量失败，跳过相似匹配: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private static float[] unit(List<Float> embedding) {
+        float[] vector = new float[embedding.size()];
+        double norm = 0;
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] = embedding.get(i);
+            norm += vector[i] * vector[i];
+        }
+        if (norm == 0) {
+            return vector;
+        }
+        float scale = (float) (1.0 / Math.sqrt(norm));
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] *= scale;
+        }
+        return vector;
+    }
+
+    /**
+     * 问题归一化：去首尾空白、转小写、合并连续空白、去掉结尾的标点
+     */
+    private static String normalize(String query) {
+        StringBuilder sb = new StringBuilder(query.length());
+        boolean space = false;
+        for (int i = 0; i < query.length(); i++) {
+            char c = query.charAt(i);
+            if (Character.isWhitespace(c)) {
+                space = sb.length() > 0;
+                continue;
+            }
+            if (space) {
+                sb.append(' ');
+                space = false;
+            }
+            sb.append(Character.toLowerCase(c));
+        }
+        int end = sb.length();
+        while (end > 0 && "?？!！。.，,~～".indexOf(sb.charAt(end - 1)) >= 0) {
+            end--;
+        }
+        sb.setLength(end);
+        return sb.toString();
+    }
+
+    private static String fingerprint(String prompt) {
+        if (prompt == null || prompt.isEmpty()) {
+            return "";
+        }
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(prompt.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 智能体的缓存配置
+     *
+     * @param ttlMillis           条目存活时间，null 表示使用 cache.response.ttl
+     * @param embeddingModelId    向量模型ID，null 表示不做相似匹配
+     * @param similarityThreshold 相似匹配的余弦相似度阈值
+     */
+    private record Options(Long ttlMillis, String embeddingModelId, double similarityThreshold) {
+
+        /**
+         * 解析 model_config.responseCache，未开启返回null
+         */
+        static Options of(Map<String, Object> modelConfig) {
+            if (modelConfig == null || !(modelConfig.get(CONFIG_KEY) instanceof Map<?, ?> config)
+                    || !Boolean.TRUE.equals(config.get("enabled"))) {
+                return null;
+            }
+            Long ttlMillis = config.get("ttlSeconds") instanceof Number ttl && ttl.longValue() > 0
+                    ? ttl.longValue() * 1000 : null;
+            String embeddingModelId = config.get("embeddingModelId") instanceof String id && !id.isBlank() ? id : null;
+            double threshold = config.get("similarityThreshold") instanceof Number t ? t.doubleValue() : 0;
+            return new Options(ttlMillis, embeddingModelId, threshold);
+        }
+
+        boolean semantic() {
+            return embeddingModelId != null && similarityThreshold > 0;
+        }
+    }
+
+    /**
+     * 查找结果，未命中时交给 store() 写入，避免重复计算归一化问题和向量
+     *
+     * @param answer 命中的回答，未命中为null
+     */
+    public record Lookup(Options options, Scope scope, String normalizedQuery, float[] vector, String answer) {
+
+        static final Lookup DISABLED = new Lookup(null, null, null, null, null);
+
+        /**
+         * 是否命中
+         */
+        public boolean isHit() {
+            return answer != null;
+        }
+    }
+
+    /**
+     * 缓存作用域：提示词或模型变化后不再共享回答
+     */
+    private record Scope(String agentId, String promptFingerprint, String llmModelId) {
+    }
+
+    private record ExactKey(Scope scope, String normalizedQuery) {
+    }
+
+    private record CachedAnswer(String answer, long expireAt) {
+    }
+
+    private static class AgentStats {
+        final LongAdder exactHits = new LongAdder();
+        final LongAdder semanticHits = new LongAdder();
+        final LongAdder misses = new LongAdder();
+        final LongAdder bypasses = new LongAdder();
+    }
+
+    /**
+     * 单个作用域的向量索引，按最近命中顺序淘汰（LRU），过期条目在扫描时移除
+     * 条目数很少（默认上限500），线性扫描即可
+     */
+    private static class VectorStore {
+        private final LinkedHashMap<String, VectorEntry> entries;
+
+        VectorStore(int maxEntries) {
+            this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, VectorEntry> eldest) {
+                    return size() > maxEntries;
+                }
+            };
+        }
+
+        synchronized void put(String query, float[] vector, String answer, long expireAt) {
+            entries.put(query, new VectorEntry(vector, answer, expireAt));
+        }
+
+        synchronized String search(float[] vector, double threshold) {
+            long now = System.currentTimeMillis();
+            String bestKey = null;
+            double bestScore = threshold;
+            Iterator<Map.Entry<String, VectorEntry>> it = entries.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<String, VectorEntry> e = it.next();
+                VectorEntry entry = e.getValue();
+                if (entry.expireAt() <= now) {
+                    it.remove();
+                    continue;
+                }
+                if (entry.vector().length != vector.length) {
+                    continue;
+                }
+                double score = 0;
+                for (int i = 0; i < vector.length; i++) {
+                    score += entry.vector()[i] * vector[i];
+                }
+                if (score >= bestScore) {
+                    bestScore = score;
+                    bestKey = e.getKey();
+                }
+            }
+            // get() 刷新访问顺序
+            return bestKey != null ? entries.get(bestKey).answer() : null;
+        }
+    }
+
+    private record VectorEntry(float[] vector, String answer, long expireAt) {
+    }
+}
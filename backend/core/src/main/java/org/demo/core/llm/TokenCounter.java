@@ -0,0 +1,110 @@
+package org.demo.core.llm;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.knuddels.jtokkit.Encodings;
+import com.knuddels.jtokkit.api.Encoding;
+import com.knuddels.jtokkit.api.EncodingRegistry;
+import com.knuddels.jtokkit.api.EncodingType;
+import com.openai.core.ObjectMappers;
+import com.openai.models.chat.completions.ChatCompletionCreateParams;
+import jakarta.annotation.PostConstruct;
+import org.demo.core.cache.TtlCache;
+import org.demo.core.model.vo.CacheStatsVO;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 本地Token计数器
+ * 使用 BPE 分词（jtokkit）在本地估算消息的 token 数，不需要调用模型接口
+ *
+ * - 按模型名选择编码，无法识别的模型（如国产模型）统一使用 cl100k_base 估算
+ * - 历史消息每轮都会重复计数，计数结果按 (编码, 文本的64位哈希, 长度) 缓存，不持有文本本身
+ */
+@Component
+public class TokenCounter {
+
+    private final EncodingRegistry registry = Encodings.newLazyEncodingRegistry();
+
+    private final Map<String, Encoding> encodingByModel = new ConcurrentHashMap<>();
+
+    @Value("${llm.context.token-cache-size:20000}")
+    private int cacheSize;
+
+    @Value("${llm.context.token-cache-ttl:PT1H}")
+    private Duration cacheTtl;
+
+    private TtlCache<CountKey, Integer> countCache;
+
+    @PostConstruct
+    public void init() {
+        countCache = new TtlCache<>("tokenCount", cacheSize, cacheTtl);
+    }
+
+    /**
+     * 计算文本的 token 数
+     *
+     * @param modelName 模型名称，用于选择编码
+     * @param text      文本
+     */
+    public int count(String modelName, String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        Encoding encoding = encodingFor(modelName);
+        CountKey key = new CountKey(encoding.getName(), hash64(text), text.length());
+        return countCache.get(key, k -> encoding.countTokensOrdinary(text));
+    }
+
+    /**
+     * 估算一次对话请求提示词部分的 token 数（全部消息和工具定义），用于限流预扣
+     * 按请求体中 messages、tools 的 JSON 计数，含格式开销，略高于实际值；每次请求内容不同，不经过缓存
+     *
+     * @param modelName 模型名称，用于选择编码
+     * @param params    请求参数
+     */
+    public int countPrompt(String modelName, ChatCompletionCreateParams params) {
+        Encoding encoding = encodingFor(modelName);
+        String json;
+        try {
+            json = ObjectMappers.jsonMapper().writeValueAsString(params.messages());
+            if (params.tools().isPresent()) {
+                json += ObjectMappers.jsonMapper().writeValueAsString(params.tools().get());
+            }
+        } catch (JsonProcessingException e) {
+            json = params.messages().toString();
+        }
+        return encoding.countTokensOrdinary(json);
+    }
+
+    /**
+     * 获取计数缓存统计
+     */
+    public CacheStatsVO getCacheStats() {
+        return countCache.stats();
+    }
+
+    private Encoding encodingFor(String modelName) {
+        String key = modelName != null ? modelName : "";
+        return encodingByModel.computeIfAbsent(key, name -> registry.getEncodingForModel(name)
+                .orElseGet(() -> registry.getEncoding(EncodingType.CL100K_BASE)));
+    }
+
+    /**
+     * FNV-1a 64位哈希，与长度一起作为缓存键，碰撞只会让一次估算不准
+     */
+    private static long hash64(String text) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < text.length(); i++) {
+            hash ^= text.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private record CountKey(String encodingName, long textHash, int length) {
+    }
+}
@@ -1,14 +1,37 @@
 package org.demo.core.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
 import org.demo.core.model.entity.AgentConversation;
 
+import java.util.List;
+
 /**
  * 智能体对话历史Mapper接口
  * 继承MyBatis Plus的BaseMapper，提供基础CRUD操作
  */
 @Mapper
 public interface AgentConversationMapper extends BaseMapper<AgentConversation> {
-    
+
+    /**
+     * 多行批量插入，主键已存在的行保持不变（用于写后缓冲落库和日志重放，重复写入是幂等的）
+     * 只对主键冲突做幂等处理，外键、非空等约束错误照常抛出，由调用方隔离失败行
+     * 调用方需预先填好 id 和 create_time
+     *
+     * @param list 对话记录
+     * @return MySQL 影响行数，已存在的行计为0
+     */
+    @Insert("<script>"
+            + "INSERT INTO agent_conversation "
+            + "(id, session_id, agent_id, user_id, query, answer, metadata, conversation_type, create_time) VALUES "
+            + "<foreach collection='list' item='item' separator=','>"
+            + "(#{item.id}, #{item.sessionId}, #{item.agentId}, #{item.userId}, #{item.query}, #{item.answer}, "
+            + "#{item.metadata, typeHandler=com.baomidou.mybatisplus.extension.handlers.JacksonTypeHandler}, "
+            + "#{item.conversationType}, #{item.createTime})"
+            + "</foreach>"
+            + " ON DUPLICATE KEY UPDATE id = id"
+            + "</script>")
+    int insertBatchIdempotent(@Param("list") List<AgentConversation> list);
 }
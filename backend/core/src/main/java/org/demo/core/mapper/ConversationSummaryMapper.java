@@ -0,0 +1,12 @@
+package org.demo.core.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Mapper;
+import org.demo.core.model.entity.ConversationSummary;
+
+/**
+ * 会话摘要 Mapper 接口
+ */
+@Mapper
+public interface ConversationSummaryMapper extends BaseMapper<ConversationSummary> {
+}
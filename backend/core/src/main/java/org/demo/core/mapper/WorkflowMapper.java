@@ -0,0 +1,12 @@
+package org.demo.core.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Mapper;
+import org.demo.core.model.entity.Workflow;
+
+/**
+ * 工作流Mapper接口
+ */
+@Mapper
+public interface WorkflowMapper extends BaseMapper<Workflow> {
+}
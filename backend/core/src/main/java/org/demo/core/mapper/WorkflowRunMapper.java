@@ -0,0 +1,12 @@
+package org.demo.core.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Mapper;
+import org.demo.core.model.entity.WorkflowRun;
+
+/**
+ * 工作流执行记录Mapper接口
+ */
+@Mapper
+public interface WorkflowRunMapper extends BaseMapper<WorkflowRun> {
+}
@@ -0,0 +1,22 @@
+package org.demo.core.model.dto;
+
+import java.util.Map;
+
+/**
+ * 工作流执行请求DTO
+ */
+public class WorkflowRunRequest {
+
+    /**
+     * 工作流输入参数，节点中通过 ${input.xxx} 引用
+     */
+    private Map<String, Object> inputs;
+
+    public Map<String, Object> getInputs() {
+        return inputs;
+    }
+
+    public void setInputs(Map<String, Object> inputs) {
+        this.inputs = inputs;
+    }
+}
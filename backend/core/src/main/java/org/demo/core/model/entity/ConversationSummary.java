@@ -0,0 +1,60 @@
+package org.demo.core.model.entity;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableField;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * 会话摘要实体类
+ * 对应数据库表: conversation_summary
+ */
+@Data
+@TableName("conversation_summary")
+public class ConversationSummary {
+
+    /**
+     * 会话ID
+     */
+    @TableId(value = "session_id", type = IdType.INPUT)
+    private String sessionId;
+
+    /**
+     * 智能体ID
+     */
+    @TableField("agent_id")
+    private String agentId;
+
+    /**
+     * 摘要内容
+     */
+    @TableField("summary")
+    private String summary;
+
+    /**
+     * 已纳入摘要的最后一条对话的创建时间
+     */
+    @TableField("covered_until")
+    private LocalDateTime coveredUntil;
+
+    /**
+     * 已纳入摘要的最后一条对话的ID，与 coveredUntil 组成 (create_time, id) 游标
+     */
+    @TableField("covered_until_id")
+    private String coveredUntilId;
+
+    /**
+     * 已纳入摘要的对话轮数
+     */
+    @TableField("covered_turns")
+    private Integer coveredTurns;
+
+    /**
+     * 更新时间
+     */
+    @TableField("update_time")
+    private LocalDateTime updateTime;
+}
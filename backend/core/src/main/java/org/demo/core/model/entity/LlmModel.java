@@ -106,6 +106,24 @@ public class LlmModel {
     @TableField("config")
     private String config;
 
+    /**
+     * 每分钟请求数上限，为空不限制
+     */
+    @TableField("rpm_limit")
+    private Integer rpmLimit;
+
+    /**
+     * 每分钟Token数上限，为空不限制
+     */
+    @TableField("tpm_limit")
+    private Integer tpmLimit;
+
+    /**
+     * 最大并发请求数，为空不限制
+     */
+    @TableField("max_concurrency")
+    private Integer maxConcurrency;
+
     /**
      * 模型描述
      */
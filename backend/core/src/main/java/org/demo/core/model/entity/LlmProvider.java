@@ -88,6 +88,24 @@ public class LlmProvider {
     @TableField("country")
     private String country;
 
+    /**
+     * 每分钟请求数上限，为空不限制
+     */
+    @TableField("rpm_limit")
+    private Integer rpmLimit;
+
+    /**
+     * 每分钟Token数上限，为空不限制
+     */
+    @TableField("tpm_limit")
+    private Integer tpmLimit;
+
+    /**
+     * 最大并发请求数，为空不限制
+     */
+    @TableField("max_concurrency")
+    private Integer maxConcurrency;
+
     /**
      * 排序顺序
      */
@@ -0,0 +1,86 @@
+package org.demo.core.model.entity;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableField;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import com.baomidou.mybatisplus.extension.handlers.JacksonTypeHandler;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+
+/**
+ * 工作流实体类
+ * 对应数据库表: workflow
+ */
+@Data
+@TableName(value = "workflow", autoResultMap = true)
+public class Workflow {
+
+    /**
+     * 工作流唯一标识
+     */
+    @TableId(value = "id", type = IdType.ASSIGN_ID)
+    private String id;
+
+    /**
+     * 所属智能体ID
+     */
+    @TableField("agent_id")
+    private String agentId;
+
+    /**
+     * 工作流名称
+     */
+    @TableField("name")
+    private String name;
+
+    /**
+     * 工作流描述
+     */
+    @TableField("description")
+    private String description;
+
+    /**
+     * 工作流定义（节点和连线），格式见 WorkflowGraph
+     */
+    @TableField(value = "definition", typeHandler = JacksonTypeHandler.class)
+    private Map<String, Object> definition;
+
+    /**
+     * 画布数据（前端节点坐标、连线信息）
+     */
+    @TableField(value = "graph_data", typeHandler = JacksonTypeHandler.class)
+    private Map<String, Object> graphData;
+
+    /**
+     * DAG校验是否通过
+     */
+    @TableField("is_valid")
+    private Boolean isValid;
+
+    /**
+     * 工作流状态（active/inactive）
+     */
+    @TableField("status")
+    private String status;
+
+    /**
+     * 创建者ID
+     */
+    @TableField("user_id")
+    private String userId;
+
+    /**
+     * 创建时间
+     */
+    @TableField("create_time")
+    private LocalDateTime createTime;
+
+    /**
+     * 更新时间
+     */
+    @TableField("update_time")
+    private LocalDateTime updateTime;
+}
@@ -0,0 +1,92 @@
+package org.demo.core.model.entity;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableField;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import com.baomidou.mybatisplus.extension.handlers.JacksonTypeHandler;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+
+/**
+ * 工作流执行记录实体类
+ * 对应数据库表: workflow_run
+ */
+@Data
+@TableName(value = "workflow_run", autoResultMap = true)
+public class WorkflowRun {
+
+    /**
+     * 执行记录ID，与执行上下文的 runId 相同
+     */
+    @TableId(value = "id", type = IdType.INPUT)
+    private String id;
+
+    /**
+     * 工作流ID
+     */
+    @TableField("workflow_id")
+    private String workflowId;
+
+    /**
+     * 执行者ID
+     */
+    @TableField("user_id")
+    private String userId;
+
+    /**
+     * 状态（pending/running/completed/failed/terminated）
+     */
+    @TableField("status")
+    private String status;
+
+    /**
+     * 初始输入
+     */
+    @TableField(value = "inputs", typeHandler = JacksonTypeHandler.class)
+    private Map<String, Object> inputs;
+
+    /**
+     * 最终输出（上下文变量）
+     */
+    @TableField(value = "outputs", typeHandler = JacksonTypeHandler.class)
+    private Map<String, Object> outputs;
+
+    /**
+     * 错误信息
+     */
+    @TableField("error")
+    private String error;
+
+    /**
+     * 节点执行快照，key 为节点ID，value 为 WorkflowNodeState
+     */
+    @TableField(value = "node_states", typeHandler = JacksonTypeHandler.class)
+    private Map<String, Object> nodeStates;
+
+    /**
+     * 类型（full/debug）
+     */
+    @TableField("run_type")
+    private String runType;
+
+    /**
+     * 开始时间
+     */
+    @TableField("start_time")
+    private LocalDateTime startTime;
+
+    /**
+     * 结束时间
+     */
+    @TableField("end_time")
+    private LocalDateTime endTime;
+
+    /**
+     * 创建时间
+     */
+    @TableField("create_time")
+    private LocalDateTime createTime;
+}
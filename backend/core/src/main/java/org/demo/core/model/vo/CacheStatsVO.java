@@ -0,0 +1,45 @@
+package org.demo.core.model.vo;
+
+import lombok.Data;
+
+/**
+ * 缓存统计VO
+ */
+@Data
+public class CacheStatsVO {
+
+    /**
+     * 缓存名称
+     */
+    private String name;
+
+    /**
+     * 当前条目数
+     */
+    private Integer size;
+
+    /**
+     * 最大条目数
+     */
+    private Integer maxSize;
+
+    /**
+     * 命中次数
+     */
+    private Long hitCount;
+
+    /**
+     * 未命中次数
+     */
+    private Long missCount;
+
+    /**
+     * 淘汰次数（容量淘汰 + 过期淘汰）
+     */
+    private Long evictCount;
+
+    /**
+     * 命中率
+     */
+    private Double hitRate;
+}
@@ -0,0 +1,28 @@
+package org.demo.core.model.vo;
+
+import lombok.Data;
+import org.demo.core.model.entity.AgentConversation;
+
+import java.util.List;
+
+/**
+ * 会话历史游标分页结果VO
+ */
+@Data
+public class ConversationPageVO {
+
+    /**
+     * 本页对话记录
+     */
+    private List<AgentConversation> list;
+
+    /**
+     * 下一页游标，没有更多数据时为null
+     */
+    private String nextCursor;
+
+    /**
+     * 是否还有更多数据
+     */
+    private Boolean hasMore;
+}
@@ -0,0 +1,78 @@
+package org.demo.core.model.vo;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * LLM客户端池统计VO
+ */
+@Data
+public class LlmClientStatsVO {
+
+    /**
+     * 当前缓存的客户端数量
+     */
+    private Integer clientCount;
+
+    /**
+     * 复用已有客户端的次数
+     */
+    private Long hitCount;
+
+    /**
+     * 新建客户端的次数
+     */
+    private Long createCount;
+
+    /**
+     * 因空闲被回收的客户端数量
+     */
+    private Long evictCount;
+
+    /**
+     * 因模型配置变更被移除的客户端数量
+     */
+    private Long invalidateCount;
+
+    /**
+     * 已移除、等待关闭的客户端数量
+     */
+    private Integer pendingCloseCount;
+
+    /**
+     * 各客户端详情
+     */
+    private List<ClientInfo> clients;
+
+    /**
+     * 单个客户端信息
+     */
+    @Data
+    public static class ClientInfo {
+        /**
+         * 提供商代码
+         */
+        private String providerCode;
+
+        /**
+         * API地址
+         */
+        private String baseUrl;
+
+        /**
+         * 创建时间（毫秒时间戳）
+         */
+        private Long createTime;
+
+        /**
+         * 最近使用时间（毫秒时间戳）
+         */
+        private Long lastAccessTime;
+
+        /**
+         * 累计使用次数
+         */
+        private Long useCount;
+    }
+}
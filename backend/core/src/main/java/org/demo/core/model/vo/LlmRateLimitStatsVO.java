@@ -0,0 +1,55 @@
+package org.demo.core.model.vo;
+
+import lombok.Data;
+
+/**
+ * LLM限流统计VO
+ */
+@Data
+public class LlmRateLimitStatsVO {
+
+    /**
+     * 限流范围：provider 或 model
+     */
+    private String scope;
+
+    /**
+     * 提供商代码或模型ID
+     */
+    private String target;
+
+    /**
+     * 每分钟请求数上限
+     */
+    private Integer rpmLimit;
+
+    /**
+     * 每分钟Token数上限
+     */
+    private Integer tpmLimit;
+
+    /**
+     * 最大并发请求数
+     */
+    private Integer maxConcurrency;
+
+    /**
+     * 当前进行中的请求数
+     */
+    private Integer inFlight;
+
+    /**
+     * 当前排队等待并发名额的请求数
+     */
+    private Integer waiting;
+
+    /**
+     * 累计放行的请求数
+     */
+    private Long acceptedCount;
+
+    /**
+     * 累计因超过排队期限被拒绝的请求数
+     */
+    private Long shedCount;
+}
@@ -0,0 +1,70 @@
+package org.demo.core.model.vo;
+
+import lombok.Data;
+
+/**
+ * 模型路由健康状态VO
+ */
+@Data
+public class ModelHealthVO {
+
+    /**
+     * 模型ID
+     */
+    private String modelId;
+
+    /**
+     * 模型名称
+     */
+    private String modelName;
+
+    /**
+     * 路由组，未配置时为null
+     */
+    private String routingGroup;
+
+    /**
+     * 组内分流权重
+     */
+    private Integer weight;
+
+    /**
+     * 是否处于熔断暂停期
+     */
+    private Boolean open;
+
+    /**
+     * 熔断暂停结束时间（毫秒时间戳），未熔断时为null
+     */
+    private Long openUntil;
+
+    /**
+     * 连续失败次数
+     */
+    private Integer consecutiveFailures;
+
+    /**
+     * 累计成功次数
+     */
+    private Long successCount;
+
+    /**
+     * 累计可重试失败次数（429、5xx、超时）
+     */
+    private Long failureCount;
+
+    /**
+     * 作为降级或对冲目标被调用的次数
+     */
+    private Long fallbackCount;
+
+    /**
+     * 最近成功请求的 p95 延迟（毫秒），尚无样本时为null
+     */
+    private Long p95Millis;
+
+    /**
+     * 计算 p95 的样本数
+     */
+    private Integer sampleCount;
+}
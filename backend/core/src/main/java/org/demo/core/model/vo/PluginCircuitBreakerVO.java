@@ -0,0 +1,60 @@
+package org.demo.core.model.vo;
+
+import lombok.Data;
+
+/**
+ * 插件熔断器状态VO
+ */
+@Data
+public class PluginCircuitBreakerVO {
+
+    /**
+     * 插件ID
+     */
+    private String pluginId;
+
+    /**
+     * 熔断状态：CLOSED（正常）、OPEN（熔断中）、HALF_OPEN（半开试探）
+     */
+    private String state;
+
+    /**
+     * 熔断结束时间（毫秒时间戳），未熔断时为null
+     */
+    private Long openUntil;
+
+    /**
+     * 滚动窗口内的调用数
+     */
+    private Integer windowCalls;
+
+    /**
+     * 滚动窗口内的失败数
+     */
+    private Integer windowFailures;
+
+    /**
+     * 滚动窗口内的失败率（百分比）
+     */
+    private Double failureRate;
+
+    /**
+     * 累计熔断次数
+     */
+    private Long openCount;
+
+    /**
+     * 因熔断被直接拒绝的调用数
+     */
+    private Long shortCircuitCount;
+
+    /**
+     * 累计重试次数
+     */
+    private Long retryCount;
+
+    /**
+     * 剩余重试预算
+     */
+    private Double retryBudget;
+}
@@ -45,6 +45,11 @@ public class PluginInvokeResult {
      */
     private String requestMethod;
 
+    /**
+     * 是否为网络错误（连接失败、连接重置等，可重试）；配置错误、熔断等为false
+     */
+    private boolean networkError;
+
     // =============== 静态工厂方法 ===============
 
     public static PluginInvokeResult success(int httpStatusCode, String rawBody, Object parsedData, long duration) {
@@ -65,6 +70,12 @@ public class PluginInvokeResult {
         return result;
     }
 
+    public static PluginInvokeResult networkError(String errorMessage, long duration) {
+        PluginInvokeResult result = error(errorMessage, duration);
+        result.setNetworkError(true);
+        return result;
+    }
+
     public static PluginInvokeResult timeout(String requestUrl, long duration) {
         PluginInvokeResult result = new PluginInvokeResult();
         result.setStatus("timeout");
@@ -140,6 +151,14 @@ public class PluginInvokeResult {
         this.requestMethod = requestMethod;
     }
 
+    public boolean isNetworkError() {
+        return networkError;
+    }
+
+    public void setNetworkError(boolean networkError) {
+        this.networkError = networkError;
+    }
+
     // =============== 便捷方法 ===============
 
     /**
@@ -0,0 +1,40 @@
+package org.demo.core.model.vo;
+
+import lombok.Data;
+
+/**
+ * 智能体回答缓存统计VO
+ */
+@Data
+public class ResponseCacheStatsVO {
+
+    /**
+     * 智能体ID
+     */
+    private String agentId;
+
+    /**
+     * 精确匹配命中次数
+     */
+    private Long exactHits;
+
+    /**
+     * 相似匹配命中次数
+     */
+    private Long semanticHits;
+
+    /**
+     * 未命中次数
+     */
+    private Long misses;
+
+    /**
+     * 因调用工具而绕过缓存的次数
+     */
+    private Long bypasses;
+
+    /**
+     * 命中率（精确 + 相似）/（命中 + 未命中）
+     */
+    private Double hitRate;
+}
@@ -0,0 +1,120 @@
+package org.demo.core.model.vo;
+
+import lombok.Data;
+import org.demo.core.workflow.WorkflowLogEvent;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 工作流执行结果VO
+ */
+@Data
+public class WorkflowRunResultVO {
+
+    /**
+     * 执行ID
+     */
+    private String runId;
+
+    /**
+     * 工作流ID
+     */
+    private String workflowId;
+
+    /**
+     * 执行状态（completed/failed/terminated）
+     */
+    private String status;
+
+    /**
+     * 错误信息（失败时）
+     */
+    private String error;
+
+    /**
+     * 上下文变量（各插件节点 outputMapping 写入的结果）
+     */
+    private Map<String, Object> outputs;
+
+    /**
+     * 各节点输出
+     */
+    private Map<String, Object> nodeOutputs;
+
+    /**
+     * 各节点执行情况，按开始时间排序
+     */
+    private List<NodeRun> nodes;
+
+    /**
+     * 执行总耗时（毫秒）
+     */
+    private Long duration;
+
+    /**
+     * 关键路径耗时（毫秒）：DAG 中节点耗时之和最大的一条路径，并行执行时总耗时接近该值
+     */
+    private Long criticalPathDuration;
+
+    /**
+     * 所有节点耗时之和（毫秒），即串行执行所需的时间
+     */
+    private Long totalNodeDuration;
+
+    /**
+     * 执行日志事件，按时间顺序，最多保留 workflow.engine.log-capacity 条
+     */
+    private List<WorkflowLogEvent> executionLog;
+
+    /**
+     * 超出容量被丢弃的最早日志数
+     */
+    private Long droppedLogCount;
+
+    /**
+     * 单个节点的执行情况
+     */
+    @Data
+    public static class NodeRun {
+        /**
+         * 节点ID
+         */
+        private String nodeId;
+
+        /**
+         * 节点类型
+         */
+        private String nodeType;
+
+        /**
+         * 节点状态（success/failed/cancelled/skipped）
+         */
+        private String status;
+
+        /**
+         * 相对工作流开始的启动时间（毫秒）
+         */
+        private Long startOffset;
+
+        /**
+         * 执行耗时（毫秒）
+         */
+        private Long duration;
+
+        /**
+         * 重试次数
+         */
+        private Integer retryCount;
+
+        /**
+         * 错误码（失败时）
+         */
+        private String errorCode;
+
+        /**
+         * 错误信息（失败时）
+         */
+        private String errorMessage;
+    }
+}
@@ -0,0 +1,37 @@
+package org.demo.core.model.vo;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 工作流DAG校验结果VO
+ */
+@Data
+public class WorkflowValidationVO {
+
+    /**
+     * 是否校验通过
+     */
+    private Boolean valid;
+
+    /**
+     * 校验错误，通过时为空列表
+     */
+    private List<String> errors;
+
+    /**
+     * 节点数
+     */
+    private Integer nodeCount;
+
+    /**
+     * 连线数
+     */
+    private Integer edgeCount;
+
+    /**
+     * 最长路径上的节点数
+     */
+    private Integer depth;
+}
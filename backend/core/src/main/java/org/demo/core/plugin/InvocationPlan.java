@@ -0,0 +1,44 @@
+package org.demo.core.plugin;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+
+import java.util.Map;
+
+/**
+ * 插件操作调用计划
+ * 由插件配置和操作定义一次性解析得到，调用时只需拼接查询参数和请求体，
+ * 不再查库、不再解析 openapi_spec / auth_config
+ *
+ * 不可变对象，可在多个线程间共享
+ *
+ * @param pluginId       插件ID
+ * @param operationId    操作ID
+ * @param enabled        插件是否启用
+ * @param endpointUrl    baseUrl + path（已规范化斜杠），插件未配置baseUrl时为null
+ * @param method         HTTP方法
+ * @param headers        请求头（含鉴权信息），只读
+ * @param inputSchema    操作的输入参数Schema，只读
+ * @param connectTimeout 插件配置的连接超时（毫秒），未配置为null
+ * @param readTimeout    插件配置的读超时（毫秒），未配置为null
+ * @param maxConnections 插件配置的最大连接数，未配置为null
+ */
+public record InvocationPlan(
+        String pluginId,
+        String operationId,
+        boolean enabled,
+        String endpointUrl,
+        HttpMethod method,
+        HttpHeaders headers,
+        Map<String, Object> inputSchema,
+        Integer connectTimeout,
+        Integer readTimeout,
+        Integer maxConnections) {
+
+    /**
+     * 是否为GET请求（参数拼接到URL而非请求体）
+     */
+    public boolean isGet() {
+        return HttpMethod.GET.equals(method);
+    }
+}
@@ -0,0 +1,351 @@
+package org.demo.core.plugin;
+
+import lombok.extern.slf4j.Slf4j;
+import org.demo.core.model.vo.PluginCircuitBreakerVO;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 插件熔断器注册表
+ * 每个插件一个熔断器，插件后端不可用时快速失败，不再让每轮对话都等满网络超时
+ *
+ * 状态转换：
+ * 1. CLOSED：正常放行，在 plugin.circuit-breaker.window 滚动窗口内统计失败率
+ * 2. 窗口内调用数不少于 minimum-calls 且失败率达到 failure-rate-threshold 时进入 OPEN，直接拒绝调用
+ * 3. OPEN 持续 open-duration 后进入 HALF_OPEN，最多放行 half-open-probes 个试探请求
+ * 4. 试探全部成功则回到 CLOSED，任一失败重新进入 OPEN
+ *
+ * 失败指网络异常、超时、5xx 和 429；其余 4xx 说明后端可用，按成功计
+ *
+ * 同时维护每个插件的重试预算：每次首次调用存入 plugin.retry.budget-ratio 个令牌（上限 budget-max），
+ * 每次重试消耗一个，后端大面积故障时重试量不超过正常流量的固定比例
+ */
+@Slf4j
+@Component
+public class PluginCircuitBreakerRegistry {
+
+    @Value("${plugin.circuit-breaker.window:PT30S}")
+    private Duration window;
+
+    @Value("${plugin.circuit-breaker.window-buckets:10}")
+    private int windowBuckets;
+
+    @Value("${plugin.circuit-breaker.minimum-calls:10}")
+    private int minimumCalls;
+
+    @Value("${plugin.circuit-breaker.failure-rate-threshold:50}")
+    private int failureRateThreshold;
+
+    @Value("${plugin.circuit-breaker.open-duration:PT30S}")
+    private Duration openDuration;
+
+    @Value("${plugin.circuit-breaker.half-open-probes:2}")
+    private int halfOpenProbes;
+
+    @Value("${plugin.retry.max-attempts:3}")
+    private int maxAttempts;
+
+    @Value("${plugin.retry.initial-backoff:PT0.2S}")
+    private Duration initialBackoff;
+
+    @Value("${plugin.retry.max-backoff:PT2S}")
+    private Duration maxBackoff;
+
+    @Value("${plugin.retry.budget-ratio:0.2}")
+    private double budgetRatio;
+
+    @Value("${plugin.retry.budget-max:10}")
+    private int budgetMax;
+
+    /**
+     * 插件ID到熔断器的映射
+     */
+    private final Map<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+
+    /**
+     * 申请一次调用
+     *
+     * @param pluginId 插件ID
+     * @param retry    是否为重试（重试不向预算存入令牌）
+     * @return 调用凭证，熔断中返回null；调用结束后必须调用凭证的 success/failure/ignore 之一
+     */
+    public Call tryAcquire(String pluginId, boolean retry) {
+        CircuitBreaker breaker = breakers.computeIfAbsent(pluginId, CircuitBreaker::new);
+        return breaker.tryAcquire(System.currentTimeMillis(), retry);
+    }
+
+    /**
+     * 尝试消耗一次重试预算
+     *
+     * @param attempt 已完成的尝试次数（含首次）
+     * @return 是否允许重试
+     */
+    public boolean tryRetry(String pluginId, int attempt) {
+        if (attempt >= maxAttempts) {
+            return false;
+        }
+        CircuitBreaker breaker = breakers.get(pluginId);
+        return breaker != null && breaker.withdrawRetry();
+    }
+
+    /**
+     * 第 attempt 次失败后的退避时间（毫秒）
+     * 指数增长并封顶，在 [0, 上限] 内随机取值（full jitter），避免大量请求同时重试
+     */
+    public long backoffMillis(int attempt) {
+        long cap = Math.min(maxBackoff.toMillis(),
+                initialBackoff.toMillis() << Math.min(Math.max(0, attempt - 1), 20));
+        return ThreadLocalRandom.current().nextLong(cap + 1);
+    }
+
+    /**
+     * 熔断中剩余的暂停时间（毫秒），未熔断时返回0
+     */
+    public long remainingOpenMillis(String pluginId) {
+        CircuitBreaker breaker = breakers.get(pluginId);
+        return breaker != null ? breaker.remainingOpenMillis(System.currentTimeMillis()) : 0;
+    }
+
+    /**
+     * 重置插件的熔断器，插件配置变更或人工恢复时调用
+     */
+    public void reset(String pluginId) {
+        if (breakers.remove(pluginId) != null) {
+            log.info("插件熔断器已重置: {}", pluginId);
+        }
+    }
+
+    /**
+     * 获取所有插件的熔断状态
+     */
+    public List<PluginCircuitBreakerVO> getStats() {
+        long now = System.currentTimeMillis();
+        List<PluginCircuitBreakerVO> stats = new ArrayList<>(breakers.size());
+        for (CircuitBreaker breaker : breakers.values()) {
+            stats.add(breaker.toVO(now));
+        }
+        stats.sort(Comparator.comparing(PluginCircuitBreakerVO::getPluginId));
+        return stats;
+    }
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    /**
+     * 一次调用的凭证
+     */
+    public static final class Call {
+
+        private final CircuitBreaker breaker;
+        private final boolean probe;
+        private boolean done;
+
+        private Call(CircuitBreaker breaker, boolean probe) {
+            this.breaker = breaker;
+            this.probe = probe;
+        }
+
+        /**
+         * 后端正常响应（含 4xx）
+         */
+        public void success() {
+            if (!done) {
+                done = true;
+                breaker.onResult(System.currentTimeMillis(), probe, false);
+            }
+        }
+
+        /**
+         * 后端不可用：网络异常、超时、5xx、429
+         */
+        public void failure() {
+            if (!done) {
+                done = true;
+                breaker.onResult(System.currentTimeMillis(), probe, true);
+            }
+        }
+
+        /**
+         * 与后端可用性无关的失败，只释放试探名额
+         */
+        public void ignore() {
+            if (!done) {
+                done = true;
+                breaker.onIgnored(probe);
+            }
+        }
+    }
+
+    /**
+     * 单个插件的熔断器，滚动窗口按时间分桶统计
+     */
+    private final class CircuitBreaker {
+
+        private final String pluginId;
+        private final long bucketMillis;
+        private final long[] bucketStart;
+        private final int[] bucketCalls;
+        private final int[] bucketFailures;
+
+        private State state = State.CLOSED;
+        private long openUntil;
+        private int probesInFlight;
+        private int probeSuccesses;
+        private double retryTokens;
+
+        private long shortCircuitCount;
+        private long retryCount;
+        private long openCount;
+
+        CircuitBreaker(String pluginId) {
+            int buckets = Math.max(1, windowBuckets);
+            this.pluginId = pluginId;
+            this.bucketMillis = Math.max(1, window.toMillis() / buckets);
+            this.bucketStart = new long[buckets];
+            this.bucketCalls = new int[buckets];
+            this.bucketFailures = new int[buckets];
+            this.retryTokens = budgetMax;
+        }
+
+        synchronized Call tryAcquire(long now, boolean retry) {
+            if (!retry) {
+                retryTokens = Math.min(budgetMax, retryTokens + budgetRatio);
+            }
+            if (state == State.OPEN) {
+                if (now < openUntil) {
+                    shortCircuitCount++;
+                    return null;
+                }
+                state = State.HALF_OPEN;
+                probeSuccesses = 0;
+                log.info("插件熔断器进入半开状态，放行试探请求: {}", pluginId);
+            }
+            if (state == State.HALF_OPEN) {
+                if (probesInFlight + probeSuccesses >= halfOpenProbes) {
+                    shortCircuitCount++;
+                    return null;
+                }
+                probesInFlight++;
+                return new Call(this, true);
+            }
+            return new Call(this, false);
+        }
+
+        synchronized void onResult(long now, boolean probe, boolean failed) {
+            if (probe) {
+                probesInFlight--;
+                if (state != State.HALF_OPEN) {
+                    return;
+                }
+                if (failed) {
+                    open(now);
+                } else if (++probeSuccesses >= halfOpenProbes) {
+                    state = State.CLOSED;
+                    clearWindow();
+                    log.info("插件熔断器已恢复: {}", pluginId);
+                }
+                return;
+            }
+            if (state != State.CLOSED) {
+                // 熔断前发出、熔断后才返回的请求不再计入
+                return;
+            }
+            int index = bucket(now);
+            bucketCalls[index]++;
+            if (failed) {
+                bucketFailures[index]++;
+                int calls = 0;
+                int failures = 0;
+                for (int i = 0; i < bucketCalls.length; i++) {
+                    if (now - bucketStart[i] < window.toMillis()) {
+                        calls += bucketCalls[i];
+                        failures += bucketFailures[i];
+                    }
+                }
+                if (calls >= minimumCalls && failures * 100L >= (long) failureRateThreshold * calls) {
+                    log.warn("插件失败率过高，熔断 {} - 插件: {}, 窗口调用数: {}, 失败数: {}",
+                            openDuration, pluginId, calls, failures);
+                    open(now);
+                }
+            }
+        }
+
+        synchronized void onIgnored(boolean probe) {
+            if (probe) {
+                probesInFlight--;
+            }
+        }
+
+        synchronized boolean withdrawRetry() {
+            if (state != State.CLOSED || retryTokens < 1) {
+                return false;
+            }
+            retryTokens -= 1;
+            retryCount++;
+            return true;
+        }
+
+        synchronized long remainingOpenMillis(long now) {
+            return state == State.OPEN ? Math.max(0, openUntil - now) : 0;
+        }
+
+        synchronized PluginCircuitBreakerVO toVO(long now) {
+            int calls = 0;
+            int failures = 0;
+            for (int i = 0; i < bucketCalls.length; i++) {
+                if (now - bucketStart[i] < window.toMillis()) {
+                    calls += bucketCalls[i];
+                    failures += bucketFailures[i];
+                }
+            }
+            PluginCircuitBreakerVO vo = new PluginCircuitBreakerVO();
+            vo.setPluginId(pluginId);
+            vo.setState(state == State.OPEN && now >= openUntil ? State.HALF_OPEN.name() : state.name());
+            vo.setOpenUntil(state == State.OPEN && now < openUntil ? openUntil : null);
+            vo.setWindowCalls(calls);
+            vo.setWindowFailures(failures);
+            vo.setFailureRate(calls > 0 ? failures * 100.0 / calls : 0.0);
+            vo.setOpenCount(openCount);
+            vo.setShortCircuitCount(shortCircuitCount);
+            vo.setRetryCount(retryCount);
+            vo.setRetryBudget(Math.floor(retryTokens * 100) / 100);
+            return vo;
+        }
+
+        private void open(long now) {
+            state = State.OPEN;
+            openUntil = now + openDuration.toMillis();
+            openCount++;
+            probeSuccesses = 0;
+            clearWindow();
+        }
+
+        private int bucket(long now) {
+            long start = now - now % bucketMillis;
+            int index = (int) ((now / bucketMillis) % bucketCalls.length);
+            if (bucketStart[index] != start) {
+                bucketStart[index] = start;
+                bucketCalls[index] = 0;
+                bucketFailures[index] = 0;
+            }
+            return index;
+        }
+
+        private void clearWindow() {
+            for (int i = 0; i < bucketCalls.length; i++) {
+                bucketStart[i] = 0;
+                bucketCalls[i] = 0;
+                bucketFailures[i] = 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package org.demo.core.plugin;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * 插件HTTP客户端注册表
+ * 每个插件独享一个带连接池的 HttpClient，慢插件占满自己的连接池也不会拖垮其他插件
+ *
+ * 超时规则（插件级配置见 InvocationPlan，来自 openapi_spec）：
+ * - 连接超时 / 获取连接超时：openapi_spec.connectTimeout（毫秒），否则取 plugin.http.connect-timeout
+ * - 读超时：调用方传入的 timeout，否则取 openapi_spec.readTimeout，否则取 plugin.http.read-timeout
+ * - 最大连接数：openapi_spec.maxConnections，否则取 plugin.http.max-connections
+ *
+ * 生命周期与 LlmClientRegistry 一致：空闲超时回收，插件变更时移出并延迟关闭
+ */
+@Slf4j
+@Component
+public class PluginHttpClientRegistry {
+
+    @Value("${plugin.http.connect-timeout:PT5S}")
+    private Duration defaultConnectTimeout;
+
+    @Value("${plugin.http.read-timeout:PT30S}")
+    private Duration defaultReadTimeout;
+
+    @Value("${plugin.http.max-connections:20}")
+    private int defaultMaxConnections;
+
+    @Value("${plugin.http.connection-idle-timeout:PT30S}")
+    private Duration connectionIdleTimeout;
+
+    @Value("${plugin.http.idle-timeout:PT10M}")
+    private Duration idleTimeout;
+
+    @Value("${plugin.http.close-grace:PT2M}")
+    private Duration closeGrace;
+
+    /**
+     * 插件ID到客户端的映射
+     */
+    private final Map<String, PluginClient> clients = new ConcurrentHashMap<>();
+
+    /**
+     * 已移出注册表、等待关闭的客户端
+     */
+    private final Queue<RetiredClient> retiredClients = new ConcurrentLinkedQueue<>();
+
+    /**
+     * 获取插件调用使用的 RestTemplate
+     *
+     * @param plan    插件操作调用计划
+     * @param timeout 本次调用的读超时（毫秒），为null或非正数时使用插件默认值
+     * @return 绑定了插件连接池和超时设置的 RestTemplate
+     */
+    public RestTemplate getRestTemplate(InvocationPlan plan, Integer timeout) {
+        String pluginId = plan.pluginId();
+        int connectTimeout = plan.connectTimeout() != null
+                ? plan.connectTimeout() : (int) defaultConnectTimeout.toMillis();
+        int maxConnections = plan.maxConnections() != null ? plan.maxConnections() : defaultMaxConnections;
+        int readTimeout;
+        if (timeout != null && timeout > 0) {
+            readTimeout = timeout;
+        } else {
+            readTimeout = plan.readTimeout() != null ? plan.readTimeout() : (int) defaultReadTimeout.toMillis();
+        }
+
+        PoolSettings settings = new PoolSettings(connectTimeout, maxConnections);
+        PluginClient client = clients.compute(pluginId, (id, existing) -> {
+            if (existing != null && existing.settings.equals(settings)) {
+                return existing;
+            }
+            if (existing != null) {
+                retire(existing);
+            }
+            log.info("创建插件HTTP客户端 - 插件: {}, 连接超时: {}ms, 最大连接数: {}", id, connectTimeout, maxConnections);
+            return new PluginClient(settings);
+        });
+        client.lastAccessTime = System.currentTimeMillis();
+        return client.restTemplate(readTimeout);
+    }
+
+    /**
+     * 插件配置变更或删除时调用
+     */
+    public void invalidate(String pluginId) {
+        PluginClient client = clients.remove(pluginId);
+        if (client != null) {
+            retire(client);
+            log.info("插件配置变更，移除插件HTTP客户端 - 插件: {}", pluginId);
+        }
+    }
+
+    /**
+     * 定期清理：关闭连接池中的空闲/过期连接，回收长期未使用的客户端，关闭已过宽限期的旧客户端
+     */
+    @Scheduled(fixedDelay = 30_000)
+    public void evictIdle() {
+        long now = System.currentTimeMillis();
+        long idleMillis = idleTimeout.toMillis();
+        TimeValue connectionIdle = TimeValue.ofMilliseconds(connectionIdleTimeout.toMillis());
+
+        Iterator<Map.Entry<String, PluginClient>> it = clients.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, PluginClient> e = it.next();
+            PluginClient client = e.getValue();
+            if (now - client.lastAccessTime > idleMillis && clients.remove(e.getKey(), client)) {
+                retire(client);
+                log.info("回收空闲插件HTTP客户端 - 插件: {}", e.getKey());
+                continue;
+            }
+            client.connectionManager.closeExpired();
+            client.connectionManager.closeIdle(connectionIdle);
+        }
+
+        long graceMillis = closeGrace.toMillis();
+        RetiredClient retired;
+        while ((retired = retiredClients.peek()) != null && now - retired.retiredTime >= graceMillis) {
+            if (retiredClients.remove(retired)) {
+                retired.client.close();
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        clients.values().forEach(PluginClient::close);
+        clients.clear();
+        RetiredClient retired;
+        while ((retired = retiredClients.poll()) != null) {
+            retired.client.close();
+        }
+    }
+
+    private void retire(PluginClient client) {
+        retiredClients.add(new RetiredClient(client, System.currentTimeMillis()));
+    }
+
+    /**
+     * 连接池级别的设置，变化时需要重建连接池
+     */
+    private record PoolSettings(int connectTimeout, int maxConnections) {
+    }
+
+    /**
+     * 单个插件的 HttpClient 及其连接池
+     * 读超时按请求区分，同一连接池上按读超时缓存 RestTemplate
+     */
+    private static class PluginClient {
+        final PoolSettings settings;
+        final PoolingHttpClientConnectionManager connectionManager;
+        final CloseableHttpClient httpClient;
+        final Map<Integer, RestTemplate> restTemplates = new ConcurrentHashMap<>();
+        volatile long lastAccessTime = System.currentTimeMillis();
+
+        PluginClient(PoolSettings settings) {
+            this.settings = settings;
+            Timeout connectTimeout = Timeout.ofMilliseconds(settings.connectTimeout());
+            this.connectionManager = PoolingHttpClientConnectionManagerBuilder.create()
+                    .setMaxConnTotal(settings.maxConnections())
+                    .setMaxConnPerRoute(settings.maxConnections())
+                    .setDefaultConnectionConfig(ConnectionConfig.custom()
+                            .setConnectTimeout(connectTimeout)
+                            .build())
+                    .build();
+            this.httpClient = HttpClients.custom()
+                    .setConnectionManager(connectionManager)
+                    .setDefaultRequestConfig(RequestConfig.custom()
+                            // 连接池耗尽时最多等待一个连接超时的时间
+                            .setConnectionRequestTimeout(connectTimeout)
+                            .build())
+                    .build();
+        }
+
+        RestTemplate restTemplate(int readTimeout) {
+            return restTemplates.computeIfAbsent(readTimeout, t -> {
+                HttpComponentsClientHttpRequestFactory factory = new HttpComponentsClientHttpRequestFactory(httpClient);
+                factory.setReadTimeout(t);
+                return new RestTemplate(factory);
+            });
+        }
+
+        void close() {
+            httpClient.close(CloseMode.GRACEFUL);
+        }
+    }
+
+    /**
+     * 等待关闭的客户端
+     */
+    private record RetiredClient(PluginClient client, long retiredTime) {
+    }
+}
@@ -0,0 +1,143 @@
+package org.demo.core.plugin;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.demo.core.mapper.PluginMapper;
+import org.demo.core.mapper.PluginOperationMapper;
+import org.demo.core.model.entity.Plugin;
+import org.demo.core.model.entity.PluginOperation;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 工具目录
+ * 维护所有已启用插件及其操作的只读快照，供智能体组装 tools 使用
+ *
+ * 快照加载只需两次查询：一次查已启用插件，一次用 IN 批量查这些插件的操作。
+ * 插件数据变更时调用 invalidate() 使版本号递增，下次访问时重建快照；
+ * 非本实例发起的修改（如直接改库）在 plugin.catalog.max-age 后被重新加载
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ToolCatalog {
+
+    private final PluginMapper pluginMapper;
+    private final PluginOperationMapper pluginOperationMapper;
+
+    @Value("${plugin.catalog.max-age:PT5M}")
+    private Duration maxAge;
+
+    /**
+     * 目录版本号，每次插件数据变更自增
+     */
+    private final AtomicLong version = new AtomicLong();
+
+    private volatile Snapshot snapshot;
+
+    /**
+     * 获取当前快照，快照失效时重新加载
+     */
+    public Snapshot getSnapshot() {
+        Snapshot current = snapshot;
+        if (isFresh(current)) {
+            return current;
+        }
+        synchronized (this) {
+            current = snapshot;
+            if (isFresh(current)) {
+                return current;
+            }
+            current = load(version.get());
+            snapshot = current;
+            return current;
+        }
+    }
+
+    /**
+     * 当前目录版本号
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * 插件或插件操作变更后调用
+     */
+    public void invalidate() {
+        version.incrementAndGet();
+    }
+
+    private boolean isFresh(Snapshot current) {
+        return current != null
+                && current.version() == version.get()
+                && System.currentTimeMillis() - current.loadTime() < maxAge.toMillis();
+    }
+
+    private Snapshot load(long loadVersion) {
+        LambdaQueryWrapper<Plugin> pluginQuery = new LambdaQueryWrapper<>();
+        pluginQuery.eq(Plugin::getIsEnabled, true);
+        List<Plugin> plugins = pluginMapper.selectList(pluginQuery);
+
+        Map<String, Plugin> pluginMap = new LinkedHashMap<>();
+        Map<String, List<PluginOperation>> operationMap = new LinkedHashMap<>();
+        for (Plugin plugin : plugins) {
+            pluginMap.put(plugin.getId(), plugin);
+            operationMap.put(plugin.getId(), new ArrayList<>());
+        }
+
+        if (!pluginMap.isEmpty()) {
+            LambdaQueryWrapper<PluginOperation> operationQuery = new LambdaQueryWrapper<>();
+            operationQuery.in(PluginOperation::getPluginId, pluginMap.keySet());
+            for (PluginOperation op : pluginOperationMapper.selectList(operationQuery)) {
+                List<PluginOperation> ops = operationMap.get(op.getPluginId());
+                if (ops != null) {
+                    ops.add(op);
+                }
+            }
+        }
+        operationMap.replaceAll((id, ops) -> Collections.unmodifiableList(ops));
+
+        log.info("加载工具目录 - 版本: {}, 插件数: {}", loadVersion, pluginMap.size());
+        return new Snapshot(loadVersion, System.currentTimeMillis(),
+                Collections.unmodifiableMap(pluginMap), Collections.unmodifiableMap(operationMap));
+    }
+
+    /**
+     * 工具目录快照（只读，调用方不要修改其中的实体对象）
+     *
+     * @param version    快照对应的目录版本号
+     * @param loadTime   加载时间
+     * @param plugins    已启用插件，key: pluginId
+     * @param operations 插件操作列表，key: pluginId
+     */
+    public record Snapshot(
+            long version,
+            long loadTime,
+            Map<String, Plugin> plugins,
+            Map<String, List<PluginOperation>> operations) {
+
+        /**
+         * 获取已启用的插件，插件不存在或已禁用返回null
+         */
+        public Plugin getPlugin(String pluginId) {
+            return plugins.get(pluginId);
+        }
+
+        /**
+         * 获取插件的操作列表
+         */
+        public List<PluginOperation> getOperations(String pluginId) {
+            return operations.getOrDefault(pluginId, Collections.emptyList());
+        }
+    }
+}
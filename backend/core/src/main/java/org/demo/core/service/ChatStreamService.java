@@ -0,0 +1,149 @@
+package org.demo.core.service;
+
+import com.openai.core.http.AsyncStreamResponse;
+import com.openai.models.chat.completions.ChatCompletionChunk;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.demo.core.api.ApiResponse;
+import org.demo.core.model.entity.AgentConversation;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 流式对话服务
+ * 将大模型的增量输出通过 SSE 逐段转发给前端
+ *
+ * 事件类型：
+ * - delta: 增量内容，data 为 {"content": "..."}
+ * - done: 回答完成并已保存，data 为包含完整对话记录的 ApiResponse
+ * - error: 调用失败，data 为 ApiResponse（code != 200）
+ *
+ * 客户端断开或 SSE 超时时会关闭上游流，停止向大模型拉取内容，此时不保存对话记录
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ChatStreamService {
+
+    private final LlmService llmService;
+    private final ConversationHistoryService conversationHistoryService;
+
+    @Value("${chat.stream.timeout:PT5M}")
+    private Duration streamTimeout;
+
+    /**
+     * 发起流式对话
+     *
+     * @param conversation        对话对象（包含 session_id、agent_id、query 等）
+     * @param llmModelId          LLM模型ID
+     * @param conversationHistory 会话历史
+     * @return SSE 发送器
+     */
+    public SseEmitter stream(AgentConversation conversation, String llmModelId,
+            List<Map<String, String>> conversationHistory) {
+        SseEmitter emitter = new SseEmitter(streamTimeout.toMillis());
+
+        AsyncStreamResponse<ChatCompletionChunk> response;
+        try {
+            response = llmService.chatStream(
+                    conversation.getAgentId(),
+                    llmModelId,
+                    conversation.getQuery(),
+                    conversationHistory);
+        } catch (Exception e) {
+            log.error("发起流式调用失败", e);
+            return error("调用大模型失败: " + e.getMessage());
+        }
+
+        // 流结束标记：正常完成、出错、客户端断开三者只处理一次
+        AtomicBoolean finished = new AtomicBoolean(false);
+        Runnable cancelUpstream = () -> {
+            if (finished.compareAndSet(false, true)) {
+                log.info("客户端已断开，取消上游流式调用 - sessionId: {}", conversation.getSessionId());
+                response.close();
+            }
+        };
+        emitter.onCompletion(cancelUpstream);
+        emitter.onTimeout(cancelUpstream);
+        emitter.onError(e -> cancelUpstream.run());
+
+        // SDK 按顺序回调 onNext，answer 只在回调线程中访问
+        StringBuilder answer = new StringBuilder();
+        response.subscribe(new AsyncStreamResponse.Handler<>() {
+            @Override
+            public void onNext(ChatCompletionChunk chunk) {
+                if (finished.get()) {
+                    return;
+                }
+                for (ChatCompletionChunk.Choice choice : chunk.choices()) {
+                    Optional<String> content = choice.delta().content();
+                    if (content.isEmpty() || content.get().isEmpty()) {
+                        continue;
+                    }
+                    answer.append(content.get());
+                    try {
+                        emitter.send(SseEmitter.event().name("delta").data(Map.of("content", content.get())));
+                    } catch (IOException | IllegalStateException e) {
+                        cancelUpstream.run();
+                        return;
+                    }
+                }
+            }
+
+            @Override
+            public void onComplete(Optional<Throwable> error) {
+                if (!finished.compareAndSet(false, true)) {
+                    // 已因客户端断开而取消
+                    return;
+                }
+                if (error.isPresent()) {
+                    log.error("流式调用LLM失败", error.get());
+                    sendAndComplete(emitter, "error", ApiResponse.fail("调用大模型失败: " + error.get().getMessage()));
+                    return;
+                }
+
+                conversation.setAnswer(answer.toString());
+                try {
+                    int rows = conversationHistoryService.save(conversation);
+                    if (rows > 0) {
+                        sendAndComplete(emitter, "done", ApiResponse.ok("消息发送成功", conversation));
+                    } else {
+                        sendAndComplete(emitter, "error", ApiResponse.fail("消息发送失败"));
+                    }
+                } catch (Exception e) {
+                    log.error("保存流式对话记录失败", e);
+                    sendAndComplete(emitter, "error", ApiResponse.fail("消息保存失败: " + e.getMessage()));
+                }
+            }
+        });
+
+        return emitter;
+    }
+
+    /**
+     * 创建一个只发送错误事件的 SSE 发送器（用于参数校验失败等场景）
+     */
+    public SseEmitter error(String message) {
+        SseEmitter emitter = new SseEmitter(streamTimeout.toMillis());
+        sendAndComplete(emitter, "error", ApiResponse.fail(message));
+        return emitter;
+    }
+
+    private void sendAndComplete(SseEmitter emitter, String eventName, Object data) {
+        try {
+            emitter.send(SseEmitter.event().name(eventName).data(data));
+            emitter.complete();
+        } catch (IOException | IllegalStateException e) {
+            log.warn("发送SSE事件失败: {}", e.getMessage());
+            emitter.completeWithError(e);
+        }
+    }
+}
@@ -0,0 +1,400 @@
+package org.demo.core.service;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.baomidou.mybatisplus.core.toolkit.IdWorker;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.demo.core.cache.TtlCache;
+import org.demo.core.mapper.AgentConversationMapper;
+import org.demo.core.model.entity.AgentConversation;
+import org.demo.core.model.vo.CacheStatsVO;
+import org.demo.core.model.vo.ConversationPageVO;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 会话历史服务
+ * 为对话提供最近 N 轮的历史窗口，并负责保存对话记录
+ *
+ * - 未命中缓存时按 idx_session_time 倒序取最近 N 条，只查询 query/answer 两列
+ * - 每个会话在内存中保留最近 N 轮的尾部缓存，保存新对话时直接追加，活跃会话不再回查数据库
+ * - 保存走 ConversationWriteBehind 写后缓冲，读取历史时合并缓冲中尚未落库的记录（读己之写）
+ * - 更早的轮次由 ConversationSummaryService 压缩为摘要，作为 system 消息放在历史最前面
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ConversationHistoryService {
+
+    /**
+     * 游标分页的排序：(create_time, id) 正序，与 SQL 的 ORDER BY create_time, id 一致
+     */
+    private static final Comparator<AgentConversation> PAGE_ORDER = Comparator
+            .comparing(AgentConversation::getCreateTime, Comparator.nullsFirst(Comparator.naturalOrder()))
+            .thenComparing(AgentConversation::getId, Comparator.nullsFirst(Comparator.naturalOrder()));
+
+    /**
+     * 不含 metadata 的轻量投影列
+     */
+    private static final String[] LIGHT_COLUMNS = {
+            "id", "session_id", "agent_id", "user_id", "query", "answer", "conversation_type", "create_time"};
+
+    /**
+     * 导出时每批查询的行数
+     */
+    private static final int EXPORT_BATCH_SIZE = 500;
+
+    private final AgentConversationMapper agentConversationMapper;
+    private final ConversationSummaryService conversationSummaryService;
+    private final ConversationWriteBehind conversationWriteBehind;
+    private final ObjectMapper objectMapper;
+
+    /**
+     * 历史窗口轮数（一轮 = 一问一答）
+     */
+    @Value("${chat.history.max-turns:20}")
+    private int maxTurns;
+
+    @Value("${chat.history.cache-size:5000}")
+    private int cacheSize;
+
+    @Value("${chat.history.cache-ttl:PT30M}")
+    private Duration cacheTtl;
+
+    @Value("${chat.history.page.default-size:20}")
+    private int pageDefaultSize;
+
+    @Value("${chat.history.page.max-size:100}")
+    private int pageMaxSize;
+
+    private TtlCache<String, SessionTail> tailCache;
+
+    @PostConstruct
+    public void init() {
+        tailCache = new TtlCache<>("sessionHistory", cacheSize, cacheTtl);
+    }
+
+    /**
+     * 加载会话最近的历史，转换为LLM消息格式
+     * 查询失败时返回空列表，不影响当前请求
+     *
+     * @param sessionId 会话ID
+     * @return 按时间正序排列的消息列表（只读），有会话摘要时第一条为摘要
+     */
+    public List<Map<String, String>> loadHistory(String sessionId) {
+        try {
+            SessionTail tail = tailCache.get(sessionId, this::loadTail);
+            List<Map<String, String>> messages = tail != null ? tail.messages() : Collections.emptyList();
+            String summary = conversationSummaryService.getSummary(sessionId);
+            if (summary == null) {
+                return messages;
+            }
+            List<Map<String, String>> withSummary = new ArrayList<>(messages.size() + 1);
+            withSummary.add(Map.of("role", "system", "content", "之前对话的摘要：" + summary));
+            withSummary.addAll(messages);
+            return Collections.unmodifiableList(withSummary);
+        } catch (Exception ex) {
+            // 如果查询历史失败，继续处理当前请求
+            log.warn("获取对话历史失败: {}", ex.getMessage());
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * 保存对话记录，并追加到会话的尾部缓存，累计到阈值时触发异步摘要压缩
+     * 优先进入写后缓冲，缓冲不可用时同步写库
+     *
+     * @return 影响行数
+     */
+    public int save(AgentConversation conversation) {
+        // 写后缓冲落库前就要能按 id/时间 读到记录，因此在这里预先生成
+        if (conversation.getId() == null) {
+            conversation.setId(IdWorker.getIdStr());
+        }
+        if (conversation.getCreateTime() == null) {
+            // create_time 为 DATETIME（秒精度），截断后内存中的值与落库后一致，游标分页不会因舍入错位
+            conversation.setCreateTime(LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS));
+        }
+
+        int rows = conversationWriteBehind.enqueue(conversation) ? 1 : agentConversationMapper.insert(conversation);
+        if (rows > 0) {
+            append(conversation.getSessionId(), conversation.getQuery(), conversation.getAnswer());
+            conversationSummaryService.onTurnSaved(conversation);
+        }
+        return rows;
+    }
+
+    /**
+     * 查询会话的全部对话记录，包含写后缓冲中尚未落库的记录
+     *
+     * @param sessionId 会话ID
+     * @return 按创建时间正序排列的对话记录
+     */
+    public List<AgentConversation> listConversations(String sessionId) {
+        // 先取缓冲快照再查库：快照之后才落库的记录一定在查询结果里
+        List<AgentConversation> buffered = conversationWriteBehind.pendingFor(sessionId);
+
+        QueryWrapper<AgentConversation> queryWrapper = new QueryWrapper<>();
+        queryWrapper.eq("session_id", sessionId)
+                .orderByAsc("create_time", "id");
+        return mergeBuffered(agentConversationMapper.selectList(queryWrapper), buffered);
+    }
+
+    /**
+     * 按 (create_time, id) 游标分页查询会话历史，包含写后缓冲中尚未落库的记录
+     * 每页只查询 limit + 1 行，走 idx_session_time（二级索引隐含主键 id），翻页成本与页码无关
+     *
+     * @param sessionId       会话ID
+     * @param cursor          上一页返回的 nextCursor，为空时从头开始
+     * @param limit           每页条数，为空取 chat.history.page.default-size，最大 chat.history.page.max-size
+     * @param includeMetadata 是否返回 metadata，为false时不查询该JSON列
+     * @param desc            是否按时间倒序（从最新的记录往前翻）
+     * @return 分页结果
+     */
+    public ConversationPageVO page(String sessionId, String cursor, Integer limit, boolean includeMetadata, boolean desc) {
+        int size = limit == null || limit <= 0 ? pageDefaultSize : Math.min(limit, pageMaxSize);
+        PageKey after = PageKey.decode(cursor);
+        List<AgentConversation> rows = fetchPage(sessionId, after, size + 1, includeMetadata, desc);
+
+        ConversationPageVO page = new ConversationPageVO();
+        boolean hasMore = rows.size() > size;
+        page.setList(hasMore ? new ArrayList<>(rows.subList(0, size)) : rows);
+        page.setHasMore(hasMore);
+        page.setNextCursor(hasMore ? PageKey.of(rows.get(size - 1)).encode() : null);
+        return page;
+    }
+
+    /**
+     * 按时间正序导出会话的全部对话记录为 JSON 数组
+     * 分批按游标查询并逐条写出，内存占用与会话长度无关，也不会长时间占用数据库连接
+     *
+     * @param sessionId       会话ID
+     * @param includeMetadata 是否包含 metadata
+     * @param out             输出流
+     */
+    public void export(String sessionId, boolean includeMetadata, OutputStream out) throws IOException {
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+            generator.writeStartArray();
+            PageKey after = null;
+            while (true) {
+                List<AgentConversation> rows = fetchPage(sessionId, after, EXPORT_BATCH_SIZE, includeMetadata, false);
+                for (AgentConversation row : rows) {
+                    generator.writeObject(row);
+                }
+                generator.flush();
+                if (rows.size() < EXPORT_BATCH_SIZE) {
+                    break;
+                }
+                after = PageKey.of(rows.get(rows.size() - 1));
+            }
+            generator.writeEndArray();
+        }
+    }
+
+    /**
+     * 获取历史缓存统计
+     */
+    public CacheStatsVO getCacheStats() {
+        return tailCache.stats();
+    }
+
+    /**
+     * 查询游标之后的一批记录并合并写后缓冲
+     */
+    private List<AgentConversation> fetchPage(String sessionId, PageKey after, int size,
+            boolean includeMetadata, boolean desc) {
+        Comparator<AgentConversation> order = desc ? PAGE_ORDER.reversed() : PAGE_ORDER;
+        List<AgentConversation> buffered = new ArrayList<>();
+        for (AgentConversation conversation : conversationWriteBehind.pendingFor(sessionId)) {
+            if (after == null || order.compare(conversation, after.toProbe()) > 0) {
+                buffered.add(includeMetadata ? conversation : withoutMetadata(conversation));
+            }
+        }
+
+        QueryWrapper<AgentConversation> pageQuery = new QueryWrapper<>();
+        if (!includeMetadata) {
+            pageQuery.select(LIGHT_COLUMNS);
+        }
+        pageQuery.eq("session_id", sessionId);
+        if (after != null) {
+            if (desc) {
+                pageQuery.and(w -> w.lt("create_time", after.createTime())
+                        .or(o -> o.eq("create_time", after.createTime()).lt("id", after.id())));
+            } else {
+                pageQuery.and(w -> w.gt("create_time", after.createTime())
+                        .or(o -> o.eq("create_time", after.createTime()).gt("id", after.id())));
+            }
+        }
+        pageQuery.orderBy(true, !desc, "create_time", "id")
+                .last("LIMIT " + size);
+        List<AgentConversation> rows = mergeBuffered(agentConversationMapper.selectList(pageQuery), buffered, order);
+        return rows.size() > size ? new ArrayList<>(rows.subList(0, size)) : rows;
+    }
+
+    private static AgentConversation withoutMetadata(AgentConversation conversation) {
+        AgentConversation copy = new AgentConversation();
+        copy.setId(conversation.getId());
+        copy.setSessionId(conversation.getSessionId());
+        copy.setAgentId(conversation.getAgentId());
+        copy.setUserId(conversation.getUserId());
+        copy.setQuery(conversation.getQuery());
+        copy.setAnswer(conversation.getAnswer());
+        copy.setConversationType(conversation.getConversationType());
+        copy.setCreateTime(conversation.getCreateTime());
+        return copy;
+    }
+
+    private void append(String sessionId, String query, String answer) {
+        SessionTail tail = tailCache.get(sessionId);
+        if (tail == null) {
+            // 未缓存的会话下次读取时从数据库加载；同时丢弃可能正在进行、且看不到本条记录的加载
+            tailCache.invalidate(sessionId);
+            return;
+        }
+        tail.append(query, answer);
+    }
+
+    private SessionTail loadTail(String sessionId) {
+        List<AgentConversation> buffered = conversationWriteBehind.pendingFor(sessionId);
+
+        QueryWrapper<AgentConversation> historyQuery = new QueryWrapper<>();
+        historyQuery.select("id", "query", "answer", "create_time")
+                .eq("session_id", sessionId)
+                .orderByDesc("create_time", "id")
+                .last("LIMIT " + maxTurns);
+        List<AgentConversation> latest = new ArrayList<>(agentConversationMapper.selectList(historyQuery));
+        Collections.reverse(latest);
+        List<AgentConversation> merged = mergeBuffered(latest, buffered);
+
+        SessionTail tail = new SessionTail(maxTurns);
+        for (AgentConversation conversation : merged.subList(Math.max(0, merged.size() - maxTurns), merged.size())) {
+            tail.append(conversation.getQuery(), conversation.getAnswer());
+        }
+        return tail;
+    }
+
+    /**
+     * 将缓冲中尚未落库的记录并入数据库查询结果（按 id 去重），默认按 (create_time, id) 正序排列
+     */
+    private static List<AgentConversation> mergeBuffered(List<AgentConversation> stored, List<AgentConversation> buffered) {
+        return mergeBuffered(stored, buffered, PAGE_ORDER);
+    }
+
+    private static List<AgentConversation> mergeBuffered(List<AgentConversation> stored, List<AgentConversation> buffered,
+            Comparator<AgentConversation> order) {
+        if (buffered.isEmpty()) {
+            return stored;
+        }
+        Set<String> storedIds = new HashSet<>();
+        for (AgentConversation conversation : stored) {
+            storedIds.add(conversation.getId());
+        }
+        List<AgentConversation> merged = new ArrayList<>(stored);
+        for (AgentConversation conversation : buffered) {
+            if (!storedIds.contains(conversation.getId())) {
+                merged.add(conversation);
+            }
+        }
+        merged.sort(order);
+        return merged;
+    }
+
+    /**
+     * 会话尾部缓存：最近 maxTurns 轮对话
+     * 每次追加后重新生成只读消息列表，读取时无需复制
+     */
+    private static class SessionTail {
+        private final int maxTurns;
+        private final Deque<Turn> turns = new ArrayDeque<>();
+        private volatile List<Map<String, String>> messages = Collections.emptyList();
+
+        SessionTail(int maxTurns) {
+            this.maxTurns = maxTurns;
+        }
+
+        synchronized void append(String query, String answer) {
+            turns.addLast(new Turn(query, answer));
+            while (turns.size() > maxTurns) {
+                turns.removeFirst();
+            }
+
+            List<Map<String, String>> list = new ArrayList<>(turns.size() * 2);
+            for (Turn turn : turns) {
+                // 添加用户消息
+                if (turn.query() != null) {
+                    list.add(Map.of("role", "user", "content", turn.query()));
+                }
+                // 添加助手回答
+                if (turn.answer() != null) {
+                    list.add(Map.of("role", "assistant", "content", turn.answer()));
+                }
+            }
+            messages = Collections.unmodifiableList(list);
+        }
+
+        List<Map<String, String>> messages() {
+            return messages;
+        }
+    }
+
+    private record Turn(String query, String answer) {
+    }
+
+    /**
+     * 分页游标：上一页最后一条记录的 (create_time, id)，对外编码为 Base64URL 字符串
+     */
+    private record PageKey(LocalDateTime createTime, String id) {
+
+        static PageKey of(AgentConversation conversation) {
+            return new PageKey(conversation.getCreateTime(), conversation.getId());
+        }
+
+        static PageKey decode(String cursor) {
+            if (cursor == null || cursor.isBlank()) {
+                return null;
+            }
+            try {
+                String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+                int sep = raw.indexOf('|');
+                return new PageKey(LocalDateTime.parse(raw.substring(0, sep)), raw.substring(sep + 1));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("分页游标无效: " + cursor);
+            }
+        }
+
+        String encode() {
+            String raw = createTime + "|" + id;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+
+        /**
+         * 用于和内存中的记录比较先后
+         */
+        AgentConversation toProbe() {
+            AgentConversation probe = new AgentConversation();
+            probe.setCreateTime(createTime);
+            probe.setId(id);
+            return probe;
+        }
+    }
+}
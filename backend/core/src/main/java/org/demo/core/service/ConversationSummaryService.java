@@ -0,0 +1,239 @@
+package org.demo.core.service;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.demo.core.cache.TtlCache;
+import org.demo.core.mapper.AgentConversationMapper;
+import org.demo.core.mapper.ConversationSummaryMapper;
+import org.demo.core.model.entity.AgentConversation;
+import org.demo.core.model.entity.ConversationSummary;
+import org.demo.core.model.vo.CacheStatsVO;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 会话摘要服务
+ * 长会话中超出历史窗口（chat.history.max-turns）的较早轮次被压缩为一段滚动摘要，
+ * 对话时发送 摘要 + 最近历史，而不是只丢弃较早的轮次
+ *
+ * - 每个会话保存 chat.summary.trigger-turns 轮后，在 summaryExecutor 中异步压缩一次，不占用请求线程
+ * - 压缩只处理已纳入摘要之后、且不在最近历史窗口内的对话，与旧摘要合并后写回 conversation_summary；
+ *   create_time 只有秒精度，按 (create_time, id) 游标推进，同一秒内的多轮不会因分批而漏掉
+ * - 同一会话同时只有一个压缩任务；线程池满时放弃本次压缩，后续对话会再次触发
+ */
+@Slf4j
+@Service
+public class ConversationSummaryService {
+
+    private static final String SUMMARY_PROMPT = "你是对话摘要助手。请将【已有摘要】与【新增对话】合并为一段新的摘要，"
+            + "保留用户的目标、偏好、已确认的事实和关键数据（如设备UUID、数值、结论），省略寒暄和重复内容。"
+            + "只输出摘要正文，不超过500字。";
+
+    /**
+     * 单条消息送入摘要的最大字符数，避免个别超长回答撑爆摘要请求
+     */
+    private static final int MAX_MESSAGE_CHARS = 2000;
+
+    @Autowired
+    private AgentConversationMapper agentConversationMapper;
+
+    @Autowired
+    private ConversationSummaryMapper conversationSummaryMapper;
+
+    @Autowired
+    private LlmService llmService;
+
+    @Autowired
+    @Qualifier("summaryExecutor")
+    private ExecutorService summaryExecutor;
+
+    @Value("${chat.summary.enabled:true}")
+    private boolean enabled;
+
+    /**
+     * 每累计多少轮新对话触发一次压缩
+     */
+    @Value("${chat.summary.trigger-turns:10}")
+    private int triggerTurns;
+
+    /**
+     * 单次压缩最多处理的轮数
+     */
+    @Value("${chat.summary.batch-turns:50}")
+    private int batchTurns;
+
+    @Value("${chat.history.max-turns:20}")
+    private int historyTurns;
+
+    @Value("${chat.summary.cache-size:5000}")
+    private int cacheSize;
+
+    @Value("${chat.summary.cache-ttl:PT30M}")
+    private Duration cacheTtl;
+
+    /**
+     * 会话摘要缓存，Optional.empty() 表示该会话暂无摘要
+     */
+    private TtlCache<String, Optional<String>> summaryCache;
+
+    /**
+     * 会话自上次压缩以来保存的轮数
+     */
+    private TtlCache<String, AtomicInteger> pendingTurns;
+
+    /**
+     * 正在压缩的会话
+     */
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+
+    @PostConstruct
+    public void init() {
+        summaryCache = new TtlCache<>("conversationSummary", cacheSize, cacheTtl);
+        pendingTurns = new TtlCache<>("summaryPendingTurns", cacheSize, cacheTtl);
+    }
+
+    /**
+     * 获取会话摘要
+     *
+     * @param sessionId 会话ID
+     * @return 摘要内容，没有摘要或未启用时返回null
+     */
+    public String getSummary(String sessionId) {
+        if (!enabled) {
+            return null;
+        }
+        Optional<String> summary = summaryCache.get(sessionId, id -> {
+            ConversationSummary record = conversationSummaryMapper.selectById(id);
+            return Optional.ofNullable(record != null ? record.getSummary() : null);
+        });
+        return summary != null ? summary.orElse(null) : null;
+    }
+
+    /**
+     * 对话保存后调用，累计到阈值时提交异步压缩
+     */
+    public void onTurnSaved(AgentConversation conversation) {
+        if (!enabled || conversation.getMetadata() == null || conversation.getMetadata().getLlmModelId() == null) {
+            return;
+        }
+        String sessionId = conversation.getSessionId();
+        AtomicInteger pending = pendingTurns.getOrCreate(sessionId, id -> new AtomicInteger());
+        if (pending.incrementAndGet() < triggerTurns || !inFlight.add(sessionId)) {
+            return;
+        }
+        pending.set(0);
+
+        String agentId = conversation.getAgentId();
+        String llmModelId = conversation.getMetadata().getLlmModelId();
+        try {
+            summaryExecutor.execute(() -> {
+                try {
+                    compact(sessionId, agentId, llmModelId);
+                } catch (Exception ex) {
+                    log.warn("会话摘要压缩失败 - 会话: {}, 原因: {}", sessionId, ex.getMessage());
+                } finally {
+                    inFlight.remove(sessionId);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            inFlight.remove(sessionId);
+            log.warn("摘要线程池已满，跳过本次压缩 - 会话: {}", sessionId);
+        }
+    }
+
+    /**
+     * 获取摘要缓存统计
+     */
+    public CacheStatsVO getCacheStats() {
+        return summaryCache.stats();
+    }
+
+    private void compact(String sessionId, String agentId, String llmModelId) {
+        // 1. 最近历史窗口内最早的一轮，排在它之前的对话才需要压缩
+        QueryWrapper<AgentConversation> cutoffQuery = new QueryWrapper<>();
+        cutoffQuery.select("id", "create_time")
+                .eq("session_id", sessionId)
+                .orderByDesc("create_time", "id")
+                .last("LIMIT " + Math.max(0, historyTurns - 1) + ", 1");
+        AgentConversation cutoff = agentConversationMapper.selectOne(cutoffQuery);
+        if (cutoff == null || cutoff.getCreateTime() == null) {
+            return;
+        }
+
+        // 2. 已纳入摘要之后、历史窗口之前的对话，按 (create_time, id) 比较
+        ConversationSummary existing = conversationSummaryMapper.selectById(sessionId);
+        QueryWrapper<AgentConversation> turnsQuery = new QueryWrapper<>();
+        turnsQuery.select("id", "query", "answer", "create_time")
+                .eq("session_id", sessionId);
+        if (existing != null && existing.getCoveredUntilId() != null) {
+            turnsQuery.and(w -> w.gt("create_time", existing.getCoveredUntil())
+                    .or(o -> o.eq("create_time", existing.getCoveredUntil()).gt("id", existing.getCoveredUntilId())));
+        } else if (existing != null) {
+            // 没有记录ID的旧摘要只能按时间继续
+            turnsQuery.gt("create_time", existing.getCoveredUntil());
+        }
+        turnsQuery.and(w -> w.lt("create_time", cutoff.getCreateTime())
+                        .or(o -> o.eq("create_time", cutoff.getCreateTime()).lt("id", cutoff.getId())))
+                .orderByAsc("create_time", "id")
+                .last("LIMIT " + batchTurns);
+        List<AgentConversation> turns = agentConversationMapper.selectList(turnsQuery);
+        if (turns.isEmpty()) {
+            return;
+        }
+
+        // 3. 与旧摘要合并
+        StringBuilder content = new StringBuilder();
+        content.append("【已有摘要】\n")
+                .append(existing != null ? existing.getSummary() : "无")
+                .append("\n\n【新增对话】\n");
+        for (AgentConversation turn : turns) {
+            content.append("用户: ").append(truncate(turn.getQuery())).append('\n');
+            content.append("助手: ").append(truncate(turn.getAnswer())).append('\n');
+        }
+        String summary = llmService.complete(llmModelId, SUMMARY_PROMPT, content.toString());
+        if (summary == null || summary.isBlank()) {
+            return;
+        }
+
+        // 4. 写回摘要
+        AgentConversation last = turns.get(turns.size() - 1);
+        ConversationSummary record = new ConversationSummary();
+        record.setSessionId(sessionId);
+        record.setAgentId(agentId);
+        record.setSummary(summary.trim());
+        record.setCoveredUntil(last.getCreateTime());
+        record.setCoveredUntilId(last.getId());
+        record.setCoveredTurns((existing != null && existing.getCoveredTurns() != null
+                ? existing.getCoveredTurns() : 0) + turns.size());
+        record.setUpdateTime(LocalDateTime.now());
+        if (existing != null) {
+            conversationSummaryMapper.updateById(record);
+        } else {
+            conversationSummaryMapper.insert(record);
+        }
+        summaryCache.put(sessionId, Optional.of(record.getSummary()));
+
+        log.info("会话摘要已更新 - 会话: {}, 本次压缩轮数: {}, 累计轮数: {}",
+                sessionId, turns.size(), record.getCoveredTurns());
+    }
+
+    private static String truncate(String text) {
+        if (text == null) {
+            return "";
+        }
+        return text.length() > MAX_MESSAGE_CHARS ? text.substring(0, MAX_MESSAGE_CHARS) + "…" : text;
+    }
+}
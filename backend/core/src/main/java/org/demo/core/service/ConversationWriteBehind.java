@@ -0,0 +1,558 @@
+package org.demo.core.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.demo.core.mapper.AgentConversationMapper;
+import org.demo.core.model.entity.AgentConversation;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 对话记录写后缓冲
+ * 对话记录先追加到本地日志文件并进入内存队列，由后台线程合并为多行 INSERT 批量落库，
+ * 请求线程不再等待数据库写入
+ *
+ * - 内存上限：最多缓冲 chat.write-behind.capacity 条，满时最多等待 offer-timeout，仍无空位则由调用方同步写库（背压）
+ * - 持久性：每条记录入队前先追加到 journal-dir 下的日志分段，分段内记录全部落库后删除分段；
+ *   进程崩溃后启动时重放残留分段，批量插入对主键冲突幂等，重复写入不会报错
+ * - 组提交：开启 fsync 时，追加在锁内完成，刷盘在锁外进行；同一时刻只有一个线程执行 force，
+ *   它返回时覆盖此前追加的全部记录，并发写入的请求共享一次 fsync
+ * - 失败隔离：批次落库失败时最多重试 max-retries 次，仍失败则对半拆分批次找出失败的记录，
+ *   单条仍失败的记录写入死信文件后跳过，不阻塞后续队列
+ * - 读己之写：尚未落库的记录按会话索引，pendingFor() 供历史查询合并
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ConversationWriteBehind {
+
+    private static final String SEGMENT_PREFIX = "conversation-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private static final String DEAD_LETTER_FILE = "dead-letter.log";
+
+    private static final long INITIAL_RETRY_BACKOFF_MILLIS = 500;
+    private static final long MAX_RETRY_BACKOFF_MILLIS = 30_000;
+
+    private final AgentConversationMapper agentConversationMapper;
+    private final ObjectMapper objectMapper;
+
+    @Value("${chat.write-behind.enabled:true}")
+    private boolean enabled;
+
+    @Value("${chat.write-behind.capacity:10000}")
+    private int capacity;
+
+    @Value("${chat.write-behind.batch-size:200}")
+    private int batchSize;
+
+    @Value("${chat.write-behind.flush-interval:PT0.5S}")
+    private Duration flushInterval;
+
+    @Value("${chat.write-behind.offer-timeout:PT2S}")
+    private Duration offerTimeout;
+
+    @Value("${chat.write-behind.journal-dir:data/conversation-journal}")
+    private String journalDir;
+
+    @Value("${chat.write-behind.segment-rows:1000}")
+    private int segmentRows;
+
+    @Value("${chat.write-behind.fsync:true}")
+    private boolean fsync;
+
+    @Value("${chat.write-behind.max-retries:3}")
+    private int maxRetries;
+
+    @Value("${chat.write-behind.shutdown-timeout:PT10S}")
+    private Duration shutdownTimeout;
+
+    /**
+     * 缓冲区空位
+     */
+    private Semaphore permits;
+
+    private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+
+    /**
+     * 尚未落库的记录，key: sessionId -> (id -> 记录)
+     */
+    private final Map<String, Map<String, AgentConversation>> pendingBySession = new ConcurrentHashMap<>();
+
+    /**
+     * 保护日志分段的追加和轮转
+     */
+    private final Object journalLock = new Object();
+
+    private Path journalPath;
+    private Segment activeSegment;
+    private long nextSegmentSeq;
+
+    /**
+     * 已追加到日志的记录序号（持有 journalLock 时访问）
+     */
+    private long appendedSeq;
+
+    /**
+     * 组提交状态：syncedSeq 之前的记录均已刷盘，syncing 表示有线程正在执行 force（持有 syncLock 时访问）
+     */
+    private final Object syncLock = new Object();
+    private long syncedSeq;
+    private boolean syncing;
+
+    private Thread flusher;
+    private volatile boolean running;
+
+    @PostConstruct
+    public void init() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        permits = new Semaphore(capacity);
+        journalPath = Paths.get(journalDir);
+        Files.createDirectories(journalPath);
+        recover();
+
+        running = true;
+        flusher = new Thread(this::flushLoop, "conversation-write-behind");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * 写入对话记录（id 和 create_time 需已填好）
+     *
+     * @return true 已进入缓冲区；false 未启用、缓冲区已满或写日志失败，调用方应同步写库
+     */
+    public boolean enqueue(AgentConversation conversation) {
+        if (!running) {
+            return false;
+        }
+        try {
+            if (!permits.tryAcquire(offerTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                log.warn("对话写缓冲已满，改为同步写库 - 会话: {}", conversation.getSessionId());
+                return false;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+
+        long seq;
+        try {
+            byte[] line = (objectMapper.writeValueAsString(conversation) + "\n").getBytes(StandardCharsets.UTF_8);
+            synchronized (journalLock) {
+                if (!running) {
+                    // 已开始停止，后台线程可能不再消费队列
+                    permits.release();
+                    return false;
+                }
+                Segment segment = currentSegment();
+                segment.append(line);
+                seq = ++appendedSeq;
+                segment.pending.incrementAndGet();
+                // 先建立会话索引再入队，保证落库前的任意时刻都能被读到
+                pendingBySession.compute(conversation.getSessionId(), (id, rows) -> {
+                    Map<String, AgentConversation> result = rows != null ? rows : new ConcurrentHashMap<>();
+                    result.put(conversation.getId(), conversation);
+                    return result;
+                });
+                queue.add(new Pending(conversation, segment, true));
+            }
+        } catch (IOException e) {
+            permits.release();
+            log.error("写入对话日志失败，改为同步写库", e);
+            return false;
+        }
+        if (fsync) {
+            awaitDurable(seq);
+        }
+        return true;
+    }
+
+    /**
+     * 等待序号 seq 之前的日志记录刷盘
+     * 没有线程在刷盘时由当前线程执行 force，否则等待正在进行的那次；
+     * 刷盘失败只记录日志，记录已在队列中，仍会落库，只是崩溃时可能丢失
+     */
+    private void awaitDurable(long seq) {
+        synchronized (syncLock) {
+            while (syncedSeq < seq && syncing) {
+                try {
+                    syncLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+            if (syncedSeq >= seq) {
+                return;
+            }
+            syncing = true;
+        }
+
+        long target;
+        FileChannel channel;
+        synchronized (journalLock) {
+            target = appendedSeq;
+            channel = activeSegment != null ? activeSegment.channel : null;
+        }
+        try {
+            if (channel != null) {
+                channel.force(false);
+            }
+        } catch (ClosedChannelException e) {
+            // 分段已轮转或关闭，关闭前已刷盘
+        } catch (IOException e) {
+            log.warn("对话日志刷盘失败，记录仍会落库 - 原因: {}", e.getMessage());
+        } finally {
+            synchronized (syncLock) {
+                syncing = false;
+                syncedSeq = Math.max(syncedSeq, target);
+                syncLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * 获取会话中尚未落库的记录
+     *
+     * @return 按创建时间正序排列的记录快照
+     */
+    public List<AgentConversation> pendingFor(String sessionId) {
+        Map<String, AgentConversation> rows = pendingBySession.get(sessionId);
+        if (rows == null || rows.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<AgentConversation> result = new ArrayList<>(rows.values());
+        result.sort(Comparator.comparing(AgentConversation::getCreateTime,
+                        Comparator.nullsFirst(Comparator.naturalOrder()))
+                .thenComparing(AgentConversation::getId));
+        return result;
+    }
+
+    /**
+     * 当前缓冲的记录数
+     */
+    public int getPendingCount() {
+        return queue.size();
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        if (!running) {
+            return;
+        }
+        running = false;
+        flusher.join(shutdownTimeout.toMillis());
+        synchronized (journalLock) {
+            if (activeSegment != null) {
+                activeSegment.close();
+                deleteIfDone(activeSegment);
+            }
+        }
+        if (!queue.isEmpty()) {
+            log.warn("停止时仍有 {} 条对话记录未落库，已保留在日志文件中，下次启动时重放", queue.size());
+        }
+    }
+
+    private void flushLoop() {
+        List<Pending> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                Pending first = queue.poll(flushInterval.toMillis(), TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                if (!persist(batch)) {
+                    // 停止过程中写库失败，剩余记录留在日志中
+                    return;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * 批量落库，失败时指数退避重试 max-retries 次，仍失败则拆分批次隔离失败记录；
+     * 停止过程中失败则放弃，剩余记录保留在日志中
+     *
+     * @return 是否已处理完整个批次
+     */
+    private boolean persist(List<Pending> batch) throws InterruptedException {
+        List<AgentConversation> rows = rowsOf(batch);
+        long backoff = INITIAL_RETRY_BACKOFF_MILLIS;
+        for (int attempt = 0; ; attempt++) {
+            try {
+                agentConversationMapper.insertBatchIdempotent(rows);
+                complete(batch, true);
+                return true;
+            } catch (Exception ex) {
+                if (!running) {
+                    log.error("停止过程中对话记录落库失败，保留在日志文件中 - 条数: {}", rows.size(), ex);
+                    return false;
+                }
+                if (attempt >= maxRetries) {
+                    log.warn("对话记录批量落库重试 {} 次仍失败，拆分批次定位失败记录 - 条数: {}, 原因: {}",
+                            maxRetries, rows.size(), ex.getMessage());
+                    return isolate(batch, ex);
+                }
+                log.warn("对话记录批量落库失败，{}ms 后重试 - 条数: {}, 原因: {}", backoff, rows.size(), ex.getMessage());
+                Thread.sleep(backoff);
+                backoff = Math.min(backoff * 2, MAX_RETRY_BACKOFF_MILLIS);
+            }
+        }
+    }
+
+    /**
+     * 对半拆分失败的批次分别写入，直到定位到单条失败记录并转入死信文件
+     *
+     * @return 是否已处理完整个批次（停止过程中失败返回false）
+     */
+    private boolean isolate(List<Pending> failed, Exception cause) {
+        if (failed.size() == 1) {
+            deadLetter(failed.get(0), cause);
+            return true;
+        }
+        int mid = failed.size() / 2;
+        for (List<Pending> part : List.of(failed.subList(0, mid), failed.subList(mid, failed.size()))) {
+            try {
+                agentConversationMapper.insertBatchIdempotent(rowsOf(part));
+                complete(part, true);
+            } catch (Exception ex) {
+                if (!running) {
+                    log.error("停止过程中对话记录落库失败，保留在日志文件中 - 条数: {}", part.size(), ex);
+                    return false;
+                }
+                if (!isolate(part, ex)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 把无法落库的记录追加到死信文件，之后不再重试
+     * 死信文件与日志分段格式相同，可排查后手工导入；写死信失败时保留原日志分段，下次启动时重放
+     */
+    private void deadLetter(Pending pending, Exception cause) {
+        AgentConversation conversation = pending.conversation();
+        boolean written = false;
+        try {
+            byte[] line = (objectMapper.writeValueAsString(conversation) + "\n").getBytes(StandardCharsets.UTF_8);
+            Files.write(journalPath.resolve(DEAD_LETTER_FILE), line,
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            written = true;
+            log.error("对话记录无法落库，已写入死信文件 - id: {}, 会话: {}, 原因: {}",
+                    conversation.getId(), conversation.getSessionId(), cause.getMessage());
+        } catch (IOException e) {
+            log.error("对话记录无法落库且写入死信文件失败，保留在日志分段中 - id: {}, 会话: {}, 原因: {}",
+                    conversation.getId(), conversation.getSessionId(), cause.getMessage(), e);
+        }
+        complete(List.of(pending), written);
+    }
+
+    /**
+     * 记录处理完毕：移出会话索引并释放缓冲区空位
+     *
+     * @param releaseSegment 是否计入所在分段的完成数，分段内记录全部完成后删除分段
+     */
+    private void complete(List<Pending> done, boolean releaseSegment) {
+        synchronized (journalLock) {
+            for (Pending pending : done) {
+                AgentConversation conversation = pending.conversation();
+                pendingBySession.computeIfPresent(conversation.getSessionId(), (id, sessionRows) -> {
+                    sessionRows.remove(conversation.getId());
+                    return sessionRows.isEmpty() ? null : sessionRows;
+                });
+                if (releaseSegment) {
+                    pending.segment().pending.decrementAndGet();
+                    deleteIfDone(pending.segment());
+                }
+                if (pending.counted()) {
+                    permits.release();
+                }
+            }
+        }
+    }
+
+    private static List<AgentConversation> rowsOf(List<Pending> batch) {
+        List<AgentConversation> rows = new ArrayList<>(batch.size());
+        for (Pending pending : batch) {
+            rows.add(pending.conversation());
+        }
+        return rows;
+    }
+
+    /**
+     * 当前可写入的日志分段，写满后轮转（需持有 journalLock）
+     */
+    private Segment currentSegment() throws IOException {
+        if (activeSegment != null && activeSegment.rows < segmentRows) {
+            return activeSegment;
+        }
+        if (activeSegment != null) {
+            activeSegment.close();
+            deleteIfDone(activeSegment);
+        }
+        Path file = journalPath.resolve(String.format("%s%012d%s", SEGMENT_PREFIX, nextSegmentSeq++, SEGMENT_SUFFIX));
+        activeSegment = new Segment(file, FileChannel.open(file,
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE, StandardOpenOption.APPEND));
+        return activeSegment;
+    }
+
+    /**
+     * 已关闭且记录全部落库的分段可以删除（需持有 journalLock）
+     */
+    private void deleteIfDone(Segment segment) {
+        if (!segment.closed || segment.pending.get() > 0 || segment.deleted) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(segment.file);
+            segment.deleted = true;
+        } catch (IOException e) {
+            log.warn("删除对话日志分段失败 - 文件: {}, 原因: {}", segment.file, e.getMessage());
+        }
+    }
+
+    /**
+     * 启动时重放上次未落库的日志分段
+     * 重放的记录直接进入队列，不占用缓冲区空位，避免残留过多时阻塞启动
+     */
+    private void recover() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(journalPath, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            stream.forEach(files::add);
+        }
+        files.sort(Comparator.naturalOrder());
+
+        int recovered = 0;
+        for (Path file : files) {
+            nextSegmentSeq = Math.max(nextSegmentSeq, parseSeq(file) + 1);
+
+            Segment segment = new Segment(file, null);
+            try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.isBlank()) {
+                        continue;
+                    }
+                    AgentConversation conversation;
+                    try {
+                        conversation = objectMapper.readValue(line, AgentConversation.class);
+                    } catch (IOException e) {
+                        // 崩溃时最后一行可能只写了一半
+                        log.warn("跳过无法解析的对话日志行 - 文件: {}", file);
+                        continue;
+                    }
+                    segment.pending.incrementAndGet();
+                    pendingBySession.computeIfAbsent(conversation.getSessionId(), id -> new ConcurrentHashMap<>())
+                            .put(conversation.getId(), conversation);
+                    queue.add(new Pending(conversation, segment, false));
+                    recovered++;
+                }
+            }
+            deleteIfDone(segment);
+        }
+        if (recovered > 0) {
+            log.info("重放对话日志 - 分段数: {}, 记录数: {}", files.size(), recovered);
+        }
+    }
+
+    private static long parseSeq(Path file) {
+        String name = file.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * 缓冲中的一条记录
+     *
+     * @param conversation 对话记录
+     * @param segment      所在日志分段
+     * @param counted      是否占用缓冲区空位（重放的记录不占用）
+     */
+    private record Pending(AgentConversation conversation, Segment segment, boolean counted) {
+    }
+
+    /**
+     * 日志分段
+     * rows/closed/deleted 只在持有 journalLock 时访问
+     */
+    private static class Segment {
+        final Path file;
+        final AtomicInteger pending = new AtomicInteger();
+        FileChannel channel;
+        int rows;
+        boolean closed;
+        boolean deleted;
+
+        Segment(Path file, FileChannel channel) {
+            this.file = file;
+            this.channel = channel;
+            this.closed = channel == null;
+        }
+
+        void append(byte[] line) throws IOException {
+            ByteBuffer buffer = ByteBuffer.wrap(line);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            rows++;
+        }
+
+        /**
+         * 关闭分段；关闭前刷盘，等待组提交的写入不会因分段轮转而丢失持久性
+         */
+        void close() {
+            closed = true;
+            if (channel != null) {
+                try {
+                    channel.force(false);
+                    channel.close();
+                } catch (IOException e) {
+                    log.warn("关闭对话日志分段失败 - 文件: {}", file);
+                }
+                channel = null;
+            }
+        }
+    }
+}
@@ -1,25 +1,39 @@
 package org.demo.core.service;
 
-import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
-import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.openai.client.OpenAIClient;
-import com.openai.client.okhttp.OpenAIOkHttpClient;
 import com.openai.models.chat.completions.ChatCompletion;
 import com.openai.models.chat.completions.ChatCompletionCreateParams;
+import com.openai.models.chat.completions.ChatCompletionMessage;
+import com.openai.models.chat.completions.ChatCompletionMessageFunctionToolCall;
+import com.openai.models.chat.completions.ChatCompletionMessageToolCall;
+import com.openai.models.chat.completions.ChatCompletionToolChoiceOption;
+import com.openai.models.chat.completions.ChatCompletionToolMessageParam;
+import com.openai.models.completions.CompletionUsage;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.demo.core.mapper.AgentMapper;
-import org.demo.core.mapper.LlmModelMapper;
-import org.demo.core.mapper.LlmProviderMapper;
-import org.demo.core.mapper.PluginMapper;
-import org.demo.core.mapper.PluginOperationMapper;
+import org.demo.core.agent.AgentToolCallResult;
+import org.demo.core.agent.AgentToolExecutor;
+import org.demo.core.agent.AgentToolSet;
+import org.demo.core.agent.AgentToolSetCache;
+import org.demo.core.agent.KeywordRouter;
+import org.demo.core.agent.UuidScanner;
+import org.demo.core.cache.ChatConfigCache;
+import org.demo.core.cache.TtlCache;
+import org.demo.core.exception.LlmOverloadedException;
+import org.demo.core.llm.ContextBuilder;
+import org.demo.core.llm.ModelOptionsResolver;
+import org.demo.core.llm.ModelRouter;
+import org.demo.core.llm.ResponseCache;
 import org.demo.core.model.entity.*;
+import org.demo.core.model.vo.CacheStatsVO;
 import org.demo.core.model.vo.PluginInvokeResult;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -27,56 +41,98 @@ import java.util.stream.Collectors;
  * Function Calling 服务
  * 支持 LLM 自动调用插件
  * 
- * 工作流程：
+ * 工作流程（原生模式，agent.function-calling.mode=native）：
  * 1. 构建 tools 列表（从智能体绑定的插件）
  * 2. 第一次调用 LLM，带上 tools 参数
- * 3. 如果 LLM 返回 tool_calls，执行插件调用
- * 4. 将工具结果作为 tool message 发给 LLM
- * 5. LLM 总结工具结果，生成最终回答
+ * 3. 如果 LLM 返回 tool_calls，通过 AgentToolExecutor 并行执行插件调用
+ * 4. 将工具结果作为 tool message 发给 LLM，重复 2-4 直到不再调用工具
+ * 5. 第 max-iterations 次请求、或累计 token 达到 max-total-tokens 后的下一次请求禁止调用工具，要求 LLM 直接回答，
+ *    一轮对话的 LLM 请求次数不超过 max-iterations
+ *
+ * 关键词模式（mode=keyword，或模型 config.nativeTools=false）：
+ * 按关键词匹配工具并直接执行，再把工具结果拼进问题调用一次 LLM，用于不支持 tools 参数的模型
+ *
+ * 两种模式都在当前问题前带上会话摘要和按 token 预算裁剪后的最近历史（与流式对话一致）
  */
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class FunctionCallingService {
 
-    private final LlmModelMapper llmModelMapper;
-    private final LlmProviderMapper llmProviderMapper;
-    private final AgentMapper agentMapper;
-    private final PluginMapper pluginMapper;
-    private final PluginOperationMapper pluginOperationMapper;
+    private final ChatConfigCache chatConfigCache;
+    private final AgentToolSetCache agentToolSetCache;
+    private final KeywordRouter keywordRouter;
     private final PluginService pluginService;
     private final ObjectMapper objectMapper;
+    private final ResponseCache responseCache;
+    private final AgentToolExecutor agentToolExecutor;
+    private final ModelOptionsResolver modelOptionsResolver;
+    private final ModelRouter modelRouter;
+    private final ContextBuilder contextBuilder;
 
     /**
-     * 会话级别的设备 UUID 缓存
-     * key: sessionId, value: 最近使用的设备 UUID
+     * 工具调用方式：native（模型原生 Function Calling）或 keyword（关键词匹配）
      */
-    private final Map<String, String> sessionDeviceUuidCache = new java.util.concurrent.ConcurrentHashMap<>();
+    @Value("${agent.function-calling.mode:native}")
+    private String mode;
+
+    /**
+     * 原生模式下一轮对话最多请求 LLM 的次数（含最后的回答）
+     */
+    @Value("${agent.function-calling.max-iterations:5}")
+    private int maxIterations;
+
+    /**
+     * 原生模式下一轮对话累计消耗的 token 上限
+     */
+    @Value("${agent.function-calling.max-total-tokens:20000}")
+    private long maxTotalTokens;
+
+    @Value("${cache.session-device.max-size:10000}")
+    private int sessionCacheMaxSize;
+
+    @Value("${cache.session-device.ttl:PT2H}")
+    private Duration sessionCacheTtl;
+
+    /**
+     * 会话级别的设备 UUID 缓存（有界，超过容量或过期后淘汰）
+     * key: sessionId, value: 会话状态（最近使用的设备 UUID，可能为空）
+     * 条目存在即表示该会话的历史已完整扫描过
+     */
+    private TtlCache<String, SessionDeviceState> sessionDeviceCache;
+
+    @PostConstruct
+    public void init() {
+        sessionDeviceCache = new TtlCache<>("sessionDevice", sessionCacheMaxSize, sessionCacheTtl);
+    }
 
     /**
      * 从历史对话中提取设备 UUID 并缓存
-     * 扫描 user 和 assistant 消息，提取最新的 UUID
+     * 会话首次出现时从新到旧扫描全部历史；之后只扫描最新一轮（上一轮的问题和回答）
      */
     private void extractAndCacheUuidFromHistory(String sessionId, List<Map<String, String>> conversationHistory) {
         if (sessionId == null || conversationHistory == null) {
             return;
         }
 
+        SessionDeviceState state = sessionDeviceCache.get(sessionId);
+        int oldest = state == null ? 0 : Math.max(0, conversationHistory.size() - 2);
+
         // 从历史对话中查找 UUID（从最新到最老）
-        for (int i = conversationHistory.size() - 1; i >= 0; i--) {
-            Map<String, String> msg = conversationHistory.get(i);
-            String content = msg.get("content");
-            if (content != null && !content.isEmpty()) {
-                String uuid = extractUuidFromQuery(content);
-                if (uuid != null) {
-                    log.info("从历史对话中提取到设备UUID: {} (sessionId: {})", uuid, sessionId);
-                    sessionDeviceUuidCache.put(sessionId, uuid);
-                    return;
-                }
+        for (int i = conversationHistory.size() - 1; i >= oldest; i--) {
+            String content = conversationHistory.get(i).get("content");
+            String uuid = UuidScanner.find(content);
+            if (uuid != null) {
+                log.info("从历史对话中提取到设备UUID: {} (sessionId: {})", uuid, sessionId);
+                sessionDeviceCache.put(sessionId, new SessionDeviceState(uuid));
+                return;
             }
         }
 
-        log.info("历史对话中未找到设备UUID (sessionId: {})", sessionId);
+        if (state == null) {
+            log.info("历史对话中未找到设备UUID (sessionId: {})", sessionId);
+            sessionDeviceCache.put(sessionId, new SessionDeviceState(null));
+        }
     }
 
     /**
@@ -86,13 +142,21 @@ public class FunctionCallingService {
         if (sessionId == null) {
             return null;
         }
-        String uuid = sessionDeviceUuidCache.get(sessionId);
+        SessionDeviceState state = sessionDeviceCache.get(sessionId);
+        String uuid = state != null ? state.deviceUuid() : null;
         if (uuid != null) {
             log.info("从缓存获取到设备UUID: {} (sessionId: {})", uuid, sessionId);
         }
         return uuid;
     }
 
+    /**
+     * 获取会话设备缓存统计
+     */
+    public CacheStatsVO getSessionCacheStats() {
+        return sessionDeviceCache.stats();
+    }
+
     /**
      * 支持 Function Calling 的聊天方法（带会话上下文）
      * 
@@ -100,7 +164,7 @@ public class FunctionCallingService {
      * @param llmModelId          LLM模型ID
      * @param userQuery           用户问题
      * @param sessionId           会话ID（用于缓存设备UUID）
-     * @param conversationHistory 历史对话（可选，用于提取之前的设备UUID）
+     * @param conversationHistory 历史对话（可选），可能以会话摘要开头；裁剪后放入提示，并从中提取之前的设备UUID
      * @return 大模型的回答（可能包含工具调用结果）
      */
     public String chatWithFunctions(String agentId, String llmModelId, String userQuery,
@@ -110,7 +174,7 @@ public class FunctionCallingService {
             extractAndCacheUuidFromHistory(sessionId, conversationHistory);
         }
 
-        return chatWithFunctionsInternal(agentId, llmModelId, userQuery, sessionId);
+        return chatWithFunctionsInternal(agentId, llmModelId, userQuery, sessionId, conversationHistory);
     }
 
     /**
@@ -122,53 +186,43 @@ public class FunctionCallingService {
      * @return 大模型的回答（可能包含工具调用结果）
      */
     public String chatWithFunctions(String agentId, String llmModelId, String userQuery) {
-        return chatWithFunctionsInternal(agentId, llmModelId, userQuery, null);
+        return chatWithFunctionsInternal(agentId, llmModelId, userQuery, null, null);
     }
 
     /**
      * 内部聊天方法
      */
-    private String chatWithFunctionsInternal(String agentId, String llmModelId, String userQuery, String sessionId) {
+    private String chatWithFunctionsInternal(String agentId, String llmModelId, String userQuery, String sessionId,
+            List<Map<String, String>> conversationHistory) {
         try {
-            // 1. 查询Agent获取系统提示词和绑定的插件
-            Agent agent = agentMapper.selectById(agentId);
+            // 1. 获取Agent的系统提示词和绑定的插件（优先走缓存，下同）
+            Agent agent = chatConfigCache.getAgent(agentId);
             if (agent == null) {
                 throw new RuntimeException("Agent不存在: " + agentId);
             }
 
-            // 2. 查询LlmModel信息
-            LlmModel llmModel = llmModelMapper.selectById(llmModelId);
+            // 2. 获取LlmModel信息
+            LlmModel llmModel = chatConfigCache.getLlmModel(llmModelId);
             if (llmModel == null) {
                 throw new RuntimeException("LLM模型不存在: " + llmModelId);
             }
 
-            // 3. 查询Provider信息
-            QueryWrapper<LlmProvider> providerQuery = new QueryWrapper<>();
-            providerQuery.eq("code", llmModel.getProvider());
-            LlmProvider provider = llmProviderMapper.selectOne(providerQuery);
-            if (provider == null) {
-                throw new RuntimeException("Provider不存在: " + llmModel.getProvider());
-            }
-
-            // 4. 构建OpenAI客户端
-            String apiKey = llmModel.getApiKey();
-            String baseUrl = llmModel.getApiBase() != null ? llmModel.getApiBase() : provider.getDefaultApiBase();
+            // 3. 获取智能体绑定插件编译好的 tools
+            AgentToolSet toolSet = agentToolSetCache.get(agent);
 
-            if (apiKey == null || apiKey.isEmpty()) {
-                throw new RuntimeException("API Key未配置");
+            // 原生模式：工具由模型决定是否调用，不需要工具的问题只请求一次 LLM
+            if (!toolSet.isEmpty() && useNativeTools(llmModel)) {
+                return runToolLoop(agent, llmModel, llmModelId, toolSet, userQuery, sessionId, conversationHistory);
             }
 
-            OpenAIClient client = OpenAIOkHttpClient.builder()
-                    .apiKey(apiKey)
-                    .baseUrl(baseUrl)
-                    .build();
-
-            // 5. 获取智能体绑定的插件操作，构建 tools JSON
-            List<Map<String, Object>> tools = buildToolsFromAgent(agent);
-
-            // 6. 智能检测是否需要调用工具（基于用户问题和可用工具）
+            // 4. 关键词模式：智能检测是否需要调用工具（基于用户问题和可用工具）
             // 先尝试自动匹配工具并执行，传入 sessionId 以支持从缓存获取 UUID
-            String autoToolResult = tryAutoToolCall(userQuery, tools, sessionId);
+            String autoToolResult = tryAutoToolCall(userQuery, toolSet, sessionId);
+
+            if (autoToolResult != null) {
+                // 调用了工具（或需要补充参数）的轮次回答依赖实时数据，不走回答缓存
+                responseCache.recordBypass(agent);
+            }
 
             // 检查是否需要用户提供 UUID
             if ("NEED_UUID".equals(autoToolResult)) {
@@ -193,6 +247,8 @@ public class FunctionCallingService {
                 String contextWithToolResult = String.format(
                         "用户问题：%s\n\n我已经通过物联网设备获取了真实数据：%s\n\n请根据这些真实数据，用自然、友好的语言回答用户的问题。不要编造数据，直接使用上面提供的真实数据。",
                         userQuery, autoToolResult);
+                addHistory(paramsBuilder, contextBuilder.fitHistory(
+                        llmModel, agent.getPrompt(), conversationHistory, contextWithToolResult));
                 paramsBuilder.addUserMessage(contextWithToolResult);
 
                 if (llmModel.getTemperature() != null) {
@@ -202,7 +258,7 @@ public class FunctionCallingService {
                     paramsBuilder.maxCompletionTokens(llmModel.getMaxTokens());
                 }
 
-                ChatCompletion completion = client.chat().completions().create(paramsBuilder.build());
+                ChatCompletion completion = modelRouter.complete(llmModelId, paramsBuilder.build());
 
                 String finalAnswer = completion.choices().stream()
                         .flatMap(choice -> choice.message().content().stream())
@@ -212,7 +268,21 @@ public class FunctionCallingService {
                 return finalAnswer;
             }
 
-            // 7. 没有匹配到工具，正常调用 LLM
+            // 5. 没有匹配到工具，先查回答缓存（智能体未开启时直接跳过）
+            // 带历史的回答依赖本会话上下文，既不读也不写缓存，避免返回给其他会话
+            List<Map<String, String>> history = contextBuilder.fitHistory(
+                    llmModel, agent.getPrompt(), conversationHistory, userQuery);
+            ResponseCache.Lookup cacheLookup = null;
+            if (history.isEmpty()) {
+                cacheLookup = responseCache.lookup(agent, llmModelId, userQuery);
+                if (cacheLookup.isHit()) {
+                    return cacheLookup.answer();
+                }
+            } else {
+                responseCache.recordBypass(agent);
+            }
+
+            // 6. 正常调用 LLM（配置了路由组时在同组模型间分流和降级，下同）
             ChatCompletionCreateParams.Builder paramsBuilder = ChatCompletionCreateParams.builder()
                     .model(llmModel.getName());
 
@@ -221,7 +291,8 @@ public class FunctionCallingService {
                 paramsBuilder.addSystemMessage(agent.getPrompt());
             }
 
-            // 添加用户问题
+            // 添加会话摘要、最近历史和用户问题
+            addHistory(paramsBuilder, history);
             paramsBuilder.addUserMessage(userQuery);
 
             // 设置温度等参数
@@ -232,7 +303,7 @@ public class FunctionCallingService {
                 paramsBuilder.maxCompletionTokens(llmModel.getMaxTokens());
             }
 
-            ChatCompletion completion = client.chat().completions().create(paramsBuilder.build());
+            ChatCompletion completion = modelRouter.complete(llmModelId, paramsBuilder.build());
 
             // 提取回答
             String answer = completion.choices().stream()
@@ -241,89 +312,183 @@ public class FunctionCallingService {
 
             log.info("LLM调用成功（无工具调用） - 模型: {}", llmModel.getName());
 
+            if (cacheLookup != null) {
+                responseCache.store(cacheLookup, answer);
+            }
             return answer;
 
+        } catch (LlmOverloadedException e) {
+            throw e;
         } catch (Exception e) {
             log.error("Function Calling 失败", e);
             throw new RuntimeException("调用大模型失败: " + e.getMessage(), e);
         }
     }
 
+    private boolean useNativeTools(LlmModel llmModel) {
+        Boolean nativeTools = modelOptionsResolver.resolve(llmModel).nativeTools();
+        return nativeTools != null ? nativeTools : !"keyword".equalsIgnoreCase(mode);
+    }
+
+    /**
+     * 原生 Function Calling 循环
+     * 不调用工具的问题只需一次 LLM 请求；每轮返回的多个 tool_calls 并行执行
+     * 一轮对话最多请求 max-iterations 次，最后一次请求禁止调用工具
+     *
+     * 是否调用工具由模型决定，且提示中带有会话相关的设备UUID，整轮不读写回答缓存
+     */
+    private String runToolLoop(Agent agent, LlmModel llmModel, String llmModelId, AgentToolSet toolSet,
+            String userQuery, String sessionId, List<Map<String, String>> conversationHistory) {
+        responseCache.recordBypass(agent);
+
+        ChatCompletionCreateParams.Builder paramsBuilder = ChatCompletionCreateParams.builder()
+                .model(llmModel.getName())
+                .tools(toolSet.chatTools());
+        if (agent.getPrompt() != null && !agent.getPrompt().isEmpty()) {
+            paramsBuilder.addSystemMessage(agent.getPrompt());
+        }
+        addHistory(paramsBuilder, contextBuilder.fitHistory(llmModel, agent.getPrompt(), conversationHistory, userQuery));
+        // 用户没有说明设备时，让模型沿用本会话最近使用的设备
+        String cachedUuid = getCachedUuid(sessionId);
+        if (cachedUuid != null) {
+            paramsBuilder.addSystemMessage("本会话最近使用的设备UUID为 " + cachedUuid + "，用户未指定设备时使用该UUID。");
+        }
+        paramsBuilder.addUserMessage(userQuery);
+        if (llmModel.getTemperature() != null) {
+            paramsBuilder.temperature(llmModel.getTemperature().doubleValue());
+        }
+        if (llmModel.getMaxTokens() != null) {
+            paramsBuilder.maxCompletionTokens(llmModel.getMaxTokens());
+        }
+
+        long usedTokens = 0;
+        int toolRounds = 0;
+        for (int iteration = 1; ; iteration++) {
+            boolean finalRequest = iteration >= maxIterations || usedTokens >= maxTotalTokens;
+            if (finalRequest) {
+                // 保留已有工具结果，要求模型直接回答
+                if (iteration > 1) {
+                    log.warn("工具调用达到上限，要求LLM直接回答 - 请求次数: {}, 累计Token: {}", iteration - 1, usedTokens);
+                    paramsBuilder.addSystemMessage("工具调用次数已达上限，请根据已获得的信息直接回答用户，不要再调用工具。");
+                }
+                paramsBuilder.toolChoice(ChatCompletionToolChoiceOption.Auto.NONE);
+            }
+
+            ChatCompletion completion = modelRouter.complete(llmModelId, paramsBuilder.build());
+            usedTokens += completion.usage().map(CompletionUsage::totalTokens).orElse(0L);
+            if (completion.choices().isEmpty()) {
+                // 内容被安全策略过滤或响应被截断时，提供商可能不返回任何候选回答
+                log.warn("LLM未返回候选回答 - 模型: {}, 请求次数: {}", llmModel.getName(), iteration);
+                throw new IllegalStateException("模型未返回有效回答，可能被内容安全策略拦截，请调整问题后重试");
+            }
+            ChatCompletionMessage message = completion.choices().get(0).message();
+            List<ChatCompletionMessageFunctionToolCall> toolCalls = message.toolCalls().orElse(List.of()).stream()
+                    .filter(ChatCompletionMessageToolCall::isFunction)
+                    .map(ChatCompletionMessageToolCall::asFunction)
+                    .collect(Collectors.toList());
+
+            if (toolCalls.isEmpty() || finalRequest) {
+                log.info("Function Calling 完成 - 模型: {}, 请求次数: {}, 工具轮次: {}, 累计Token: {}",
+                        llmModel.getName(), iteration, toolRounds, usedTokens);
+                return message.content().orElse("");
+            }
+
+            if (usedTokens >= maxTotalTokens) {
+                // 不再执行本次返回的工具调用，下一次请求即为最后一次
+                continue;
+            }
+
+            // 执行工具调用，结果按 tool_call_id 回填
+            toolRounds++;
+            paramsBuilder.addMessage(message);
+            List<AgentToolExecutor.ToolCallRequest> requests = new ArrayList<>(toolCalls.size());
+            for (ChatCompletionMessageFunctionToolCall call : toolCalls) {
+                log.info("LLM请求调用工具: {}, 参数: {}", call.function().name(), call.function().arguments());
+                requests.add(new AgentToolExecutor.ToolCallRequest(
+                        call.id(), call.function().name(), call.function().arguments()));
+                rememberUuid(sessionId, call.function().arguments());
+            }
+            for (AgentToolCallResult result : agentToolExecutor.executeToolCalls(requests)) {
+                paramsBuilder.addMessage(ChatCompletionToolMessageParam.builder()
+                        .toolCallId(result.getToolCallId())
+                        .content(result.getContent() != null ? result.getContent() : "")
+                        .build());
+            }
+        }
+    }
+
+    /**
+     * 按顺序加入已裁剪的会话摘要（system）和历史问答
+     */
+    private static void addHistory(ChatCompletionCreateParams.Builder paramsBuilder, List<Map<String, String>> history) {
+        for (Map<String, String> msg : history) {
+            String role = msg.get("role");
+            String content = msg.get("content");
+            if ("user".equals(role)) {
+                paramsBuilder.addUserMessage(content);
+            } else if ("system".equals(role)) {
+                paramsBuilder.addSystemMessage(content);
+            } else if ("assistant".equals(role)) {
+                paramsBuilder.addAssistantMessage(content);
+            }
+        }
+    }
+
+    /**
+     * 记录模型在工具参数中使用的设备 UUID，供本会话后续轮次沿用
+     */
+    private void rememberUuid(String sessionId, String arguments) {
+        if (sessionId == null || arguments == null) {
+            return;
+        }
+        String uuid = UuidScanner.find(arguments);
+        if (uuid != null) {
+            sessionDeviceCache.put(sessionId, new SessionDeviceState(uuid));
+        }
+    }
+
     /**
      * 智能检测并执行工具调用
-     * 基于用户问题关键词匹配可用工具
+     * 基于用户问题关键词匹配可用工具（关键词路由见 KeywordRouter）
      * 
      * @param userQuery 用户问题
-     * @param tools     可用工具列表
+     * @param toolSet   智能体可用工具集
      * @param sessionId 会话ID（用于获取缓存的UUID）
      * @return null: 未匹配到工具; "NEED_UUID": 需要用户提供设备UUID; 其他字符串: 工具调用结果
      */
-    private String tryAutoToolCall(String userQuery, List<Map<String, Object>> tools, String sessionId) {
-        if (tools.isEmpty()) {
+    private String tryAutoToolCall(String userQuery, AgentToolSet toolSet, String sessionId) {
+        if (toolSet.isEmpty()) {
             log.info("没有可用工具");
             return null;
         }
 
         String queryLower = userQuery.toLowerCase();
 
-        // 关键词到操作的映射
-        Map<String, String> keywordToOperation = new LinkedHashMap<>();
-        // 传感器相关
-        keywordToOperation.put("温度", "getSensorData");
-        keywordToOperation.put("湿度", "getSensorData");
-        keywordToOperation.put("传感器", "getSensorData");
-        keywordToOperation.put("环境", "getSensorData");
-        keywordToOperation.put("检测", "getSensorData");
-        keywordToOperation.put("测量", "getSensorData");
-        keywordToOperation.put("多少度", "getSensorData");
-        keywordToOperation.put("气温", "getSensorData");
-        // LED相关 - lorem 插件使用 controlDevice 操作
-        keywordToOperation.put("led", "controlDevice");
-        keywordToOperation.put("灯", "controlDevice");
-        keywordToOperation.put("开灯", "controlDevice");
-        keywordToOperation.put("关灯", "controlDevice");
-        keywordToOperation.put("亮", "controlDevice");
-        keywordToOperation.put("灭", "controlDevice");
-        // 预设相关 - lorem 插件使用 executePreset 操作
-        keywordToOperation.put("预设", "executePreset");
-        keywordToOperation.put("preset", "executePreset");
-        keywordToOperation.put("模式", "executePreset");
-
-        // 查找匹配的工具
-        for (Map.Entry<String, String> entry : keywordToOperation.entrySet()) {
-            if (queryLower.contains(entry.getKey())) {
-                String targetOperation = entry.getValue();
-
-                // 在工具列表中查找匹配的工具
-                for (Map<String, Object> tool : tools) {
-                    @SuppressWarnings("unchecked")
-                    Map<String, Object> function = (Map<String, Object>) tool.get("function");
-                    String functionName = (String) function.get("name");
-
-                    if (functionName.contains(targetOperation)) {
-                        log.info("智能匹配到工具: {} (关键词: {})", functionName, entry.getKey());
-
-                        // 构建参数，传入 sessionId 以便从缓存获取 UUID
-                        Map<String, Object> params = buildParams(targetOperation, queryLower, sessionId);
-
-                        // 检查是否缺少 UUID（如果从当前问题和缓存都找不到，才提示用户）
-                        if (isMissingUuid(params, targetOperation)) {
-                            log.info("缺少设备UUID，需要用户提供");
-                            return "NEED_UUID";
-                        }
-
-                        try {
-                            String argsJson = objectMapper.writeValueAsString(params);
-                            String result = executeToolCall(functionName, argsJson);
-
-                            // 如果调用成功，返回结果
-                            if (result != null && !result.startsWith("错误") && !result.startsWith("插件调用失败")) {
-                                return result;
-                            }
-                        } catch (JsonProcessingException e) {
-                            log.error("序列化参数失败", e);
-                        }
+        // 按优先级依次尝试命中的操作
+        for (String targetOperation : keywordRouter.match(queryLower)) {
+            // 在工具集中查找该操作对应的工具
+            for (String functionName : toolSet.functionsFor(targetOperation)) {
+                log.info("智能匹配到工具: {}", functionName);
+
+                // 构建参数，传入 sessionId 以便从缓存获取 UUID
+                Map<String, Object> params = buildParams(targetOperation, queryLower, sessionId);
+
+                // 检查是否缺少 UUID（如果从当前问题和缓存都找不到，才提示用户）
+                if (isMissingUuid(params, targetOperation)) {
+                    log.info("缺少设备UUID，需要用户提供");
+                    return "NEED_UUID";
+                }
+
+                try {
+                    String argsJson = objectMapper.writeValueAsString(params);
+                    String result = executeToolCall(functionName, argsJson);
+
+                    // 如果调用成功，返回结果
+                    if (result != null && !result.startsWith("错误") && !result.startsWith("插件调用失败")) {
+                        return result;
                     }
+                } catch (JsonProcessingException e) {
+                    log.error("序列化参数失败", e);
                 }
             }
         }
@@ -365,7 +530,7 @@ public class FunctionCallingService {
 
         // 如果找到了 UUID，同时更新缓存（确保最新使用的 UUID 被记录）
         if (uuid != null && sessionId != null) {
-            sessionDeviceUuidCache.put(sessionId, uuid);
+            sessionDeviceCache.put(sessionId, new SessionDeviceState(uuid));
         }
 
         if (uuid != null) {
@@ -430,35 +595,13 @@ public class FunctionCallingService {
      * - 关键词后面的 UUID: "设备xxx" "uuid:xxx" "uuid是xxx" "uuid=xxx"
      */
     private String extractUuidFromQuery(String query) {
-        if (query == null || query.isEmpty()) {
-            return null;
-        }
-
-        // 标准 UUID 格式（带连字符）
-        java.util.regex.Pattern standardUuidPattern = java.util.regex.Pattern.compile(
-                "[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}");
-        java.util.regex.Matcher standardMatcher = standardUuidPattern.matcher(query);
-        if (standardMatcher.find()) {
-            String uuid = standardMatcher.group();
-            log.info("从用户问题中提取到标准UUID: {}", uuid);
-            return uuid;
-        }
-
-        // 简化 UUID 格式（32个连续十六进制字符）
-        java.util.regex.Pattern simpleUuidPattern = java.util.regex.Pattern.compile(
-                "(?<![0-9a-fA-F])[0-9a-fA-F]{32}(?![0-9a-fA-F])");
-        java.util.regex.Matcher simpleMatcher = simpleUuidPattern.matcher(query);
-        if (simpleMatcher.find()) {
-            String uuid = simpleMatcher.group();
-            // 转换为标准格式
-            String standardUuid = uuid.substring(0, 8) + "-" + uuid.substring(8, 12) + "-"
-                    + uuid.substring(12, 16) + "-" + uuid.substring(16, 20) + "-" + uuid.substring(20);
-            log.info("从用户问题中提取到简化UUID: {} -> {}", uuid, standardUuid);
-            return standardUuid;
+        String uuid = UuidScanner.find(query);
+        if (uuid != null) {
+            log.info("从用户问题中提取到设备UUID: {}", uuid);
+        } else {
+            log.info("用户问题中未找到设备UUID");
         }
-
-        log.info("用户问题中未找到设备UUID");
-        return null;
+        return uuid;
     }
 
     /**
@@ -473,102 +616,6 @@ public class FunctionCallingService {
         return false;
     }
 
-    /**
-     * 根据智能体绑定的插件构建 tools 列表
-     */
-    private List<Map<String, Object>> buildToolsFromAgent(Agent agent) {
-        List<Map<String, Object>> tools = new ArrayList<>();
-
-        List<String> pluginIds = agent.getToolsConfig();
-        if (pluginIds == null || pluginIds.isEmpty()) {
-            log.info("智能体没有绑定插件");
-            return tools;
-        }
-
-        log.info("智能体绑定了 {} 个插件: {}", pluginIds.size(), pluginIds);
-
-        for (String pluginId : pluginIds) {
-            try {
-                // 查询插件
-                Plugin plugin = pluginMapper.selectById(pluginId);
-                if (plugin == null) {
-                    log.warn("插件不存在: {}", pluginId);
-                    continue;
-                }
-                if (!Boolean.TRUE.equals(plugin.getIsEnabled())) {
-                    log.warn("插件已禁用: {}", pluginId);
-                    continue;
-                }
-
-                // 查询插件的所有操作
-                LambdaQueryWrapper<PluginOperation> queryWrapper = new LambdaQueryWrapper<>();
-                queryWrapper.eq(PluginOperation::getPluginId, pluginId);
-                List<PluginOperation> operations = pluginOperationMapper.selectList(queryWrapper);
-
-                log.info("插件 {} 有 {} 个操作", plugin.getName(), operations.size());
-
-                for (PluginOperation op : operations) {
-                    Map<String, Object> tool = buildToolFromOperation(plugin, op);
-                    if (tool != null) {
-                        tools.add(tool);
-                        log.info("添加工具: {}", tool.get("function"));
-                    }
-                }
-            } catch (Exception e) {
-                log.warn("构建插件工具失败: pluginId={}, error={}", pluginId, e.getMessage());
-            }
-        }
-
-        log.info("为智能体构建了 {} 个工具", tools.size());
-        return tools;
-    }
-
-    /**
-     * 从插件操作构建单个 tool（JSON Map 格式）
-     */
-    private Map<String, Object> buildToolFromOperation(Plugin plugin, PluginOperation op) {
-        try {
-            // 构建函数名：pluginId__operationId（使用双下划线分隔，便于后续解析）
-            String functionName = plugin.getId() + "__" + op.getOperationId();
-
-            // 构建函数描述
-            String description = String.format("[%s] %s", plugin.getName(),
-                    op.getDescription() != null ? op.getDescription() : op.getName());
-
-            // 构建参数 schema
-            Map<String, Object> parameters = new LinkedHashMap<>();
-            parameters.put("type", "object");
-
-            Map<String, Object> inputSchema = op.getInputSchema();
-            if (inputSchema != null && inputSchema.containsKey("properties")) {
-                parameters.put("properties", inputSchema.get("properties"));
-
-                if (inputSchema.containsKey("required")) {
-                    parameters.put("required", inputSchema.get("required"));
-                }
-            } else {
-                parameters.put("properties", new HashMap<>());
-            }
-
-            // 构建 function 对象
-            Map<String, Object> function = new LinkedHashMap<>();
-            function.put("name", functionName);
-            function.put("description", description);
-            function.put("parameters", parameters);
-
-            // 构建 tool 对象
-            Map<String, Object> tool = new LinkedHashMap<>();
-            tool.put("type", "function");
-            tool.put("function", function);
-
-            return tool;
-
-        } catch (Exception e) {
-            log.warn("构建工具定义失败: operationId={}, error={}", op.getOperationId(), e.getMessage());
-            return null;
-        }
-    }
-
     /**
      * 执行工具调用
      * 
@@ -629,4 +676,12 @@ public class FunctionCallingService {
             return "工具调用失败: " + e.getMessage();
         }
     }
+
+    /**
+     * 会话设备状态
+     *
+     * @param deviceUuid 最近使用的设备 UUID，未找到为null
+     */
+    private record SessionDeviceState(String deviceUuid) {
+    }
 }
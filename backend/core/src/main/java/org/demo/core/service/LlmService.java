@@ -1,16 +1,21 @@
 package org.demo.core.service;
 
-import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.openai.client.OpenAIClient;
-import com.openai.client.okhttp.OpenAIOkHttpClient;
-import com.openai.models.ChatModel;
+import com.openai.core.http.AsyncStreamResponse;
 import com.openai.models.chat.completions.ChatCompletion;
+import com.openai.models.chat.completions.ChatCompletionChunk;
 import com.openai.models.chat.completions.ChatCompletionCreateParams;
+import com.openai.models.chat.completions.ChatCompletionStreamOptions;
+import com.openai.models.completions.CompletionUsage;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.demo.core.mapper.AgentMapper;
-import org.demo.core.mapper.LlmModelMapper;
-import org.demo.core.mapper.LlmProviderMapper;
+import org.demo.core.cache.ChatConfigCache;
+import org.demo.core.exception.LlmOverloadedException;
+import org.demo.core.llm.ContextBuilder;
+import org.demo.core.llm.LlmClientRegistry;
+import org.demo.core.llm.LlmRateLimiter;
+import org.demo.core.llm.ModelRouter;
+import org.demo.core.llm.TokenCounter;
 import org.demo.core.model.entity.Agent;
 import org.demo.core.model.entity.LlmModel;
 import org.demo.core.model.entity.LlmProvider;
@@ -18,6 +23,9 @@ import org.springframework.stereotype.Service;
 
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.stream.Collectors;
 
 /**
@@ -29,9 +37,12 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class LlmService {
 
-    private final LlmModelMapper llmModelMapper;
-    private final LlmProviderMapper llmProviderMapper;
-    private final AgentMapper agentMapper;
+    private final ChatConfigCache chatConfigCache;
+    private final LlmClientRegistry llmClientRegistry;
+    private final ContextBuilder contextBuilder;
+    private final ModelRouter modelRouter;
+    private final LlmRateLimiter llmRateLimiter;
+    private final TokenCounter tokenCounter;
 
     /**
      * 调用大模型获取回答
@@ -44,88 +55,30 @@ public class LlmService {
      */
     public String chat(String agentId, String llmModelId, String userQuery, List<Map<String, String>> conversationHistory) {
         try {
-            // 1. 查询Agent获取系统提示词
-            Agent agent = agentMapper.selectById(agentId);
-            if (agent == null) {
-                throw new RuntimeException("Agent不存在: " + agentId);
-            }
-
-            // 2. 查询LlmModel信息
-            LlmModel llmModel = llmModelMapper.selectById(llmModelId);
-            if (llmModel == null) {
-                throw new RuntimeException("LLM模型不存在: " + llmModelId);
-            }
-
-            // 3. 查询Provider信息
-            QueryWrapper<LlmProvider> providerQuery = new QueryWrapper<>();
-            providerQuery.eq("code", llmModel.getProvider());
-            LlmProvider provider = llmProviderMapper.selectOne(providerQuery);
-            if (provider == null) {
-                throw new RuntimeException("Provider不存在: " + llmModel.getProvider());
-            }
-
-            // 4. 构建OpenAI客户端
-            String apiKey = llmModel.getApiKey();
-            String baseUrl = llmModel.getApiBase() != null ? llmModel.getApiBase() : provider.getDefaultApiBase();
-            
-            if (apiKey == null || apiKey.isEmpty()) {
-                throw new RuntimeException("API Key未配置");
-            }
-
-            OpenAIClient client = OpenAIOkHttpClient.builder()
-                    .apiKey(apiKey)
-                    .baseUrl(baseUrl)
-                    .build();
-
-            // 5. 构建请求参数
-            ChatCompletionCreateParams.Builder paramsBuilder = ChatCompletionCreateParams.builder()
-                    .model(llmModel.getName()); // 使用模型名称，如 "gpt-4"
-
-            // 添加系统提示词
-            if (agent.getPrompt() != null && !agent.getPrompt().isEmpty()) {
-                paramsBuilder.addSystemMessage(agent.getPrompt());
-            }
+            // 1. 获取Agent、LlmModel信息（优先走缓存）
+            Agent agent = getAgent(agentId);
+            LlmModel llmModel = getLlmModel(llmModelId);
 
-            // 添加历史对话（如果有）
-            if (conversationHistory != null && !conversationHistory.isEmpty()) {
-                for (Map<String, String> msg : conversationHistory) {
-                    String role = msg.get("role");
-                    String content = msg.get("content");
-                    if ("user".equals(role)) {
-                        paramsBuilder.addUserMessage(content);
-                    } else if ("assistant".equals(role)) {
-                        paramsBuilder.addAssistantMessage(content);
-                    }
-                }
-            }
+            // 2. 构建请求参数
+            ChatCompletionCreateParams params = buildChatParams(agent, llmModel, userQuery, conversationHistory);
 
-            // 添加当前用户问题
-            paramsBuilder.addUserMessage(userQuery);
-
-            // 设置温度等参数（如果有配置）
-            if (llmModel.getTemperature() != null) {
-                paramsBuilder.temperature(llmModel.getTemperature().doubleValue());
-            }
-            if (llmModel.getMaxTokens() != null) {
-                paramsBuilder.maxCompletionTokens(llmModel.getMaxTokens());
-            }
+            // 3. 调用大模型API（配置了路由组时在同组模型间分流和降级）
+            ChatCompletion completion = modelRouter.complete(llmModelId, params);
 
-            // 6. 调用大模型API
-            ChatCompletionCreateParams params = paramsBuilder.build();
-            ChatCompletion completion = client.chat().completions().create(params);
-
-            // 7. 提取回答
+            // 4. 提取回答
             String answer = completion.choices().stream()
                     .flatMap(choice -> choice.message().content().stream())
                     .collect(Collectors.joining());
 
-            log.info("LLM调用成功 - 模型: {}, 输入Token: {}, 输出Token: {}", 
-                    llmModel.getName(),
+            log.info("LLM调用成功 - 模型: {}, 输入Token: {}, 输出Token: {}",
+                    completion.model(),
                     completion.usage().map(u -> u.promptTokens()).orElse(null),
                     completion.usage().map(u -> u.completionTokens()).orElse(null));
 
             return answer;
 
+        } catch (LlmOverloadedException e) {
+            throw e;
         } catch (Exception e) {
             log.error("调用LLM失败", e);
             throw new RuntimeException("调用大模型失败: " + e.getMessage(), e);
@@ -138,4 +91,209 @@ public class LlmService {
     public String chat(String agentId, String llmModelId, String userQuery) {
         return chat(agentId, llmModelId, userQuery, null);
     }
+
+    /**
+     * 不依赖智能体的单轮调用，用于摘要等内部任务
+     *
+     * @param llmModelId LLM模型ID
+     * @param systemPrompt 系统提示词
+     * @param userContent 用户消息内容
+     * @return 大模型的回答
+     */
+    public String complete(String llmModelId, String systemPrompt, String userContent) {
+        LlmModel llmModel = getLlmModel(llmModelId);
+
+        ChatCompletionCreateParams.Builder paramsBuilder = ChatCompletionCreateParams.builder()
+                .model(llmModel.getName())
+                .addSystemMessage(systemPrompt)
+                .addUserMessage(userContent);
+        if (llmModel.getMaxTokens() != null) {
+            paramsBuilder.maxCompletionTokens(llmModel.getMaxTokens());
+        }
+
+        ChatCompletion completion = modelRouter.complete(llmModelId, paramsBuilder.build());
+        return completion.choices().stream()
+                .flatMap(choice -> choice.message().content().stream())
+                .collect(Collectors.joining());
+    }
+
+    /**
+     * 以流式方式调用大模型
+     * 返回的响应需由调用方订阅，调用 close() 可取消上游请求
+     *
+     * @param agentId 智能体ID
+     * @param llmModelId LLM模型ID
+     * @param userQuery 用户问题
+     * @param conversationHistory 会话历史（可选）
+     * @return 增量响应流
+     */
+    public AsyncStreamResponse<ChatCompletionChunk> chatStream(String agentId, String llmModelId, String userQuery,
+            List<Map<String, String>> conversationHistory) {
+        Agent agent = getAgent(agentId);
+        // 流式输出开始后无法切换模型，只在发起前按路由组选择
+        LlmModel llmModel = modelRouter.select(llmModelId);
+        LlmProvider provider = getProvider(llmModel);
+
+        OpenAIClient client = llmClientRegistry.getClient(llmModel, provider);
+        // 要求在最后一个分片返回用量，用于修正限流预扣的Token
+        ChatCompletionCreateParams params = buildChatParams(agent, llmModel, userQuery, conversationHistory).toBuilder()
+                .streamOptions(ChatCompletionStreamOptions.builder().includeUsage(true).build())
+                .build();
+
+        // 并发名额在流结束（完成、出错或被取消）后释放
+        LlmRateLimiter.Permit permit = llmRateLimiter.acquire(llmModel, provider, params);
+        log.info("开始流式调用LLM - 模型: {}", llmModel.getName());
+        try {
+            AsyncStreamResponse<ChatCompletionChunk> response =
+                    client.async().chat().completions().createStreaming(params);
+            response.onCompleteFuture().whenComplete((ignored, error) -> permit.close());
+            return new MeteredStream(response, permit, llmModel.getName());
+        } catch (RuntimeException e) {
+            permit.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 构建对话请求参数（系统提示词 + 历史对话 + 当前问题）
+     * 历史对话按模型的 token 预算裁剪，超出时丢弃最早的轮次
+     */
+    private ChatCompletionCreateParams buildChatParams(Agent agent, LlmModel llmModel, String userQuery,
+            List<Map<String, String>> conversationHistory) {
+        ChatCompletionCreateParams.Builder paramsBuilder = ChatCompletionCreateParams.builder()
+                .model(llmModel.getName()); // 使用模型名称，如 "gpt-4"
+
+        // 添加系统提示词
+        if (agent.getPrompt() != null && !agent.getPrompt().isEmpty()) {
+            paramsBuilder.addSystemMessage(agent.getPrompt());
+        }
+
+        // 添加历史对话（如果有）
+        List<Map<String, String>> fittedHistory = contextBuilder.fitHistory(
+                llmModel, agent.getPrompt(), conversationHistory, userQuery);
+        if (!fittedHistory.isEmpty()) {
+            for (Map<String, String> msg : fittedHistory) {
+                String role = msg.get("role");
+                String content = msg.get("content");
+                if ("user".equals(role)) {
+                    paramsBuilder.addUserMessage(content);
+                } else if ("system".equals(role)) {
+                    // 会话摘要
+                    paramsBuilder.addSystemMessage(content);
+                } else if ("assistant".equals(role)) {
+                    paramsBuilder.addAssistantMessage(content);
+                }
+            }
+        }
+
+        // 添加当前用户问题
+        paramsBuilder.addUserMessage(userQuery);
+
+        // 设置温度等参数（如果有配置）
+        if (llmModel.getTemperature() != null) {
+            paramsBuilder.temperature(llmModel.getTemperature().doubleValue());
+        }
+        if (llmModel.getMaxTokens() != null) {
+            paramsBuilder.maxCompletionTokens(llmModel.getMaxTokens());
+        }
+
+        return paramsBuilder.build();
+    }
+
+    /**
+     * 流式响应包装：订阅时记录用量，流结束后修正限流预扣的Token
+     * 提供商未返回用量（不支持 include_usage 或被取消）时，按本地统计的已输出内容估算
+     */
+    private final class MeteredStream implements AsyncStreamResponse<ChatCompletionChunk> {
+
+        private final AsyncStreamResponse<ChatCompletionChunk> delegate;
+        private final LlmRateLimiter.Permit permit;
+        private final String modelName;
+
+        MeteredStream(AsyncStreamResponse<ChatCompletionChunk> delegate, LlmRateLimiter.Permit permit,
+                String modelName) {
+            this.delegate = delegate;
+            this.permit = permit;
+            this.modelName = modelName;
+        }
+
+        @Override
+        public AsyncStreamResponse<ChatCompletionChunk> subscribe(Handler<? super ChatCompletionChunk> handler) {
+            delegate.subscribe(meter(handler));
+            return this;
+        }
+
+        @Override
+        public AsyncStreamResponse<ChatCompletionChunk> subscribe(Handler<? super ChatCompletionChunk> handler,
+                Executor executor) {
+            delegate.subscribe(meter(handler), executor);
+            return this;
+        }
+
+        @Override
+        public CompletableFuture<Void> onCompleteFuture() {
+            return delegate.onCompleteFuture();
+        }
+
+        @Override
+        public void close() {
+            delegate.close();
+        }
+
+        /**
+         * SDK 按顺序回调，usage/content 只在回调线程中访问
+         */
+        private Handler<ChatCompletionChunk> meter(Handler<? super ChatCompletionChunk> handler) {
+            return new Handler<>() {
+                private CompletionUsage usage;
+                private final StringBuilder content = new StringBuilder();
+
+                @Override
+                public void onNext(ChatCompletionChunk chunk) {
+                    chunk.usage().ifPresent(value -> usage = value);
+                    for (ChatCompletionChunk.Choice choice : chunk.choices()) {
+                        choice.delta().content().ifPresent(content::append);
+                    }
+                    handler.onNext(chunk);
+                }
+
+                @Override
+                public void onComplete(Optional<Throwable> error) {
+                    try {
+                        if (usage != null) {
+                            permit.settle(usage.totalTokens());
+                        } else {
+                            permit.settleCompletion(tokenCounter.count(modelName, content.toString()));
+                        }
+                    } finally {
+                        handler.onComplete(error);
+                    }
+                }
+            };
+        }
+    }
+
+    private Agent getAgent(String agentId) {
+        Agent agent = chatConfigCache.getAgent(agentId);
+        if (agent == null) {
+            throw new RuntimeException("Agent不存在: " + agentId);
+        }
+        return agent;
+    }
+
+    private LlmModel getLlmModel(String llmModelId) {
+        LlmModel llmModel = chatConfigCache.getLlmModel(llmModelId);
+        if (llmModel == null) {
+            throw new RuntimeException("LLM模型不存在: " + llmModelId);
+        }
+        return llmModel;
+    }
+
+    private LlmProvider getProvider(LlmModel llmModel) {
+        LlmProvider provider = chatConfigCache.getProviderByCode(llmModel.getProvider());
+        if (provider == null) {
+            throw new RuntimeException("Provider不存在: " + llmModel.getProvider());
+        }
+        return provider;
+    }
 }
@@ -94,9 +94,25 @@ public interface PluginService {
      * @param pluginId    插件ID
      * @param operationId 操作ID（对应plugin_operation表的operation_id字段）
      * @param params      调用参数
-     * @param timeout     超时时间（毫秒），null则使用默认值30秒
+     * @param timeout     读超时时间（毫秒），null则使用插件配置的 readTimeout，未配置时默认30秒
+     * @return 调用结果
+     */
+    default PluginInvokeResult invokeOperation(String pluginId, String operationId, Map<String, Object> params,
+            Integer timeout) {
+        return invokeOperation(pluginId, operationId, params, timeout, true);
+    }
+
+    /**
+     * 调用插件操作
+     *
+     * @param pluginId    插件ID
+     * @param operationId 操作ID（对应plugin_operation表的operation_id字段）
+     * @param params      调用参数
+     * @param timeout     读超时时间（毫秒），null则使用插件配置的 readTimeout，未配置时默认30秒
+     * @param retry       GET 请求失败时是否在本次调用内退避重试；调用方自行调度重试时（如工作流节点）传false，
+     *                    避免在调用线程中休眠以及两层重试次数相乘
      * @return 调用结果
      */
     PluginInvokeResult invokeOperation(String pluginId, String operationId, Map<String, Object> params,
-            Integer timeout);
+            Integer timeout, boolean retry);
 }
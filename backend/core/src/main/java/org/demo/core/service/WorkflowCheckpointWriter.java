@@ -0,0 +1,168 @@
+package org.demo.core.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.demo.core.mapper.WorkflowRunMapper;
+import org.demo.core.model.entity.WorkflowRun;
+import org.demo.core.workflow.WorkflowNodeState;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 工作流节点检查点批量写入
+ * 节点结束时只更新内存中该次执行的节点状态，由后台线程每隔 workflow.checkpoint.flush-interval
+ * 把有变化的执行记录的 node_states 整体写回一次；同一间隔内完成的多个节点合并为一次 UPDATE，
+ * 调度线程不等待数据库写入
+ *
+ * 进程崩溃时最多丢失最近一个间隔内的检查点，恢复执行时这些节点会重新调用插件
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class WorkflowCheckpointWriter {
+
+    private final WorkflowRunMapper workflowRunMapper;
+
+    @Value("${workflow.checkpoint.flush-interval:PT1S}")
+    private Duration flushInterval;
+
+    /**
+     * 执行中的记录，key: runId
+     */
+    private final Map<String, RunCheckpoint> runs = new ConcurrentHashMap<>();
+
+    private Thread flusher;
+    private volatile boolean running;
+
+    @PostConstruct
+    public void init() {
+        running = true;
+        flusher = new Thread(this::flushLoop, "workflow-checkpoint-writer");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * 开始跟踪一次执行
+     *
+     * @param runId    执行记录ID
+     * @param restored 恢复执行时已有的节点状态，写回时一并保留
+     */
+    public void open(String runId, Map<String, WorkflowNodeState> restored) {
+        runs.put(runId, new RunCheckpoint(runId, restored));
+    }
+
+    /**
+     * 记录节点状态，不访问数据库
+     */
+    public void record(String runId, String nodeId, WorkflowNodeState state) {
+        RunCheckpoint checkpoint = runs.get(runId);
+        if (checkpoint != null) {
+            checkpoint.states.put(nodeId, state);
+            checkpoint.version.incrementAndGet();
+        }
+    }
+
+    /**
+     * 结束执行：停止跟踪，并把最终状态与全部节点状态同步写回
+     *
+     * @param finalRun 需要更新的最终字段（status、outputs、error、end_time 等），id 必须已设置
+     */
+    public void close(WorkflowRun finalRun) {
+        RunCheckpoint checkpoint = runs.remove(finalRun.getId());
+        if (checkpoint == null) {
+            workflowRunMapper.updateById(finalRun);
+            return;
+        }
+        synchronized (checkpoint) {
+            checkpoint.closed = true;
+            finalRun.setNodeStates(new LinkedHashMap<>(checkpoint.states));
+            workflowRunMapper.updateById(finalRun);
+        }
+    }
+
+    /**
+     * 是否为本实例正在执行的记录
+     */
+    public boolean isActive(String runId) {
+        return runs.containsKey(runId);
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        flusher.interrupt();
+        flusher.join(flushInterval.toMillis() * 2);
+        // 停止前把已完成节点全部写回，重启后可从这里恢复
+        flushAll();
+    }
+
+    private void flushLoop() {
+        while (running) {
+            try {
+                Thread.sleep(flushInterval.toMillis());
+            } catch (InterruptedException e) {
+                return;
+            }
+            flushAll();
+        }
+    }
+
+    private void flushAll() {
+        int written = 0;
+        for (RunCheckpoint checkpoint : runs.values()) {
+            try {
+                if (checkpoint.flush()) {
+                    written++;
+                }
+            } catch (Exception e) {
+                // 保留变化，下个间隔重试
+                log.warn("工作流检查点写入失败，稍后重试 - runId: {}, 原因: {}", checkpoint.runId, e.getMessage());
+            }
+        }
+        if (written > 0) {
+            log.debug("工作流检查点已写入 - 执行记录数: {}", written);
+        }
+    }
+
+    /**
+     * 单次执行的检查点
+     * states 由调度线程写入；flush 与 close 互斥，关闭后不再写回，避免旧状态覆盖最终结果
+     */
+    private final class RunCheckpoint {
+
+        private final String runId;
+        private final Map<String, WorkflowNodeState> states = new ConcurrentHashMap<>();
+        private final AtomicLong version = new AtomicLong();
+        private long flushedVersion;
+        private boolean closed;
+
+        RunCheckpoint(String runId, Map<String, WorkflowNodeState> restored) {
+            this.runId = runId;
+            if (restored != null) {
+                states.putAll(restored);
+            }
+        }
+
+        synchronized boolean flush() {
+            long current = version.get();
+            if (closed || current == flushedVersion) {
+                return false;
+            }
+            WorkflowRun update = new WorkflowRun();
+            update.setId(runId);
+            update.setNodeStates(new LinkedHashMap<>(states));
+            workflowRunMapper.updateById(update);
+            flushedVersion = current;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,336 @@
+package org.demo.core.service;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.baomidou.mybatisplus.core.conditions.update.UpdateWrapper;
+import com.baomidou.mybatisplus.core.toolkit.IdWorker;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.demo.core.cache.TtlCache;
+import org.demo.core.exception.WorkflowDefinitionException;
+import org.demo.core.mapper.WorkflowMapper;
+import org.demo.core.mapper.WorkflowRunMapper;
+import org.demo.core.model.entity.Workflow;
+import org.demo.core.model.entity.WorkflowRun;
+import org.demo.core.model.vo.WorkflowRunResultVO;
+import org.demo.core.model.vo.WorkflowValidationVO;
+import org.demo.core.workflow.WorkflowContext;
+import org.demo.core.workflow.WorkflowEngine;
+import org.demo.core.workflow.WorkflowGraph;
+import org.demo.core.workflow.WorkflowNodeState;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 工作流服务
+ * 负责工作流定义的保存与DAG校验（结果写入 is_valid），以及按DAG并行执行工作流
+ *
+ * 每次执行写入一条 workflow_run，插件节点结束时的检查点由 WorkflowCheckpointWriter 批量写入 node_states；
+ * 失败、中断或进程崩溃的执行可以 resume，已完成的插件节点从检查点恢复输出，不再重复调用设备接口
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class WorkflowService {
+
+    private static final String STATUS_ACTIVE = "active";
+    private static final String RUN_STATUS_RUNNING = "running";
+    private static final String RUN_TYPE_FULL = "full";
+
+    private final WorkflowMapper workflowMapper;
+    private final WorkflowRunMapper workflowRunMapper;
+    private final WorkflowCheckpointWriter checkpointWriter;
+    private final WorkflowEngine workflowEngine;
+    private final ObjectMapper objectMapper;
+
+    @Value("${workflow.engine.log-capacity:500}")
+    private int logCapacity;
+
+    @Value("${workflow.engine.run-timeout:PT5M}")
+    private Duration runTimeout;
+
+    @Value("${cache.workflow-graph.max-size:500}")
+    private int maxSize;
+
+    @Value("${cache.workflow-graph.ttl:PT30M}")
+    private Duration ttl;
+
+    /**
+     * 已解析的DAG，定义未变化时多次执行共享同一份
+     */
+    private TtlCache<String, CachedGraph> graphCache;
+
+    @PostConstruct
+    public void init() {
+        graphCache = new TtlCache<>("workflowGraph", maxSize, ttl);
+    }
+
+    /**
+     * 查询工作流列表
+     *
+     * @param agentId 所属智能体ID，为空时查询全部
+     */
+    public List<Workflow> list(String agentId) {
+        QueryWrapper<Workflow> wrapper = new QueryWrapper<>();
+        if (agentId != null && !agentId.isEmpty()) {
+            wrapper.eq("agent_id", agentId);
+        }
+        wrapper.orderByDesc("update_time");
+        return workflowMapper.selectList(wrapper);
+    }
+
+    public Workflow get(String id) {
+        return workflowMapper.selectById(id);
+    }
+
+    /**
+     * 创建工作流，保存前校验DAG并写入 is_valid
+     * 校验不通过仍然保存（画布编辑中的草稿），但不能执行
+     */
+    public Workflow create(Workflow workflow) {
+        if (workflow.getName() == null || workflow.getName().isBlank()) {
+            throw new IllegalArgumentException("工作流名称不能为空");
+        }
+        if (workflow.getDefinition() == null) {
+            throw new IllegalArgumentException("工作流定义不能为空");
+        }
+        if (workflow.getStatus() == null) {
+            workflow.setStatus(STATUS_ACTIVE);
+        }
+        workflow.setIsValid(check(workflow).getValid());
+        workflowMapper.insert(workflow);
+        return workflow;
+    }
+
+    /**
+     * 更新工作流，定义变化时重新校验
+     */
+    public Workflow update(String id, Workflow workflow) {
+        Workflow existing = workflowMapper.selectById(id);
+        if (existing == null) {
+            return null;
+        }
+        workflow.setId(id);
+        if (workflow.getDefinition() != null) {
+            workflow.setIsValid(check(workflow).getValid());
+        }
+        workflowMapper.updateById(workflow);
+        graphCache.invalidate(id);
+        return workflowMapper.selectById(id);
+    }
+
+    public boolean delete(String id) {
+        graphCache.invalidate(id);
+        return workflowMapper.deleteById(id) > 0;
+    }
+
+    /**
+     * 校验工作流DAG并更新 is_valid
+     *
+     * @return 校验结果，工作流不存在返回null
+     */
+    public WorkflowValidationVO validate(String id) {
+        Workflow workflow = workflowMapper.selectById(id);
+        if (workflow == null) {
+            return null;
+        }
+        WorkflowValidationVO result = check(workflow);
+        if (!Objects.equals(workflow.getIsValid(), result.getValid())) {
+            Workflow update = new Workflow();
+            update.setId(id);
+            update.setIsValid(result.getValid());
+            workflowMapper.updateById(update);
+        }
+        return result;
+    }
+
+    /**
+     * 执行工作流
+     *
+     * @param id     工作流ID
+     * @param inputs 输入参数
+     * @param userId 执行者ID
+     * @return 执行结果，工作流不存在返回null
+     * @throws WorkflowDefinitionException 工作流定义不合法
+     */
+    public WorkflowRunResultVO run(String id, Map<String, Object> inputs, String userId) {
+        Workflow workflow = workflowMapper.selectById(id);
+        if (workflow == null) {
+            return null;
+        }
+        if (!STATUS_ACTIVE.equals(workflow.getStatus())) {
+            throw new IllegalArgumentException("工作流未启用: " + workflow.getName());
+        }
+
+        WorkflowGraph graph = graphOf(workflow);
+        WorkflowContext context = new WorkflowContext(logCapacity);
+        context.setRunId(IdWorker.getIdStr());
+        context.setWorkflowId(id);
+        context.setUserId(userId);
+        context.setInput(inputs);
+
+        WorkflowRun run = new WorkflowRun();
+        run.setId(context.getRunId());
+        run.setWorkflowId(id);
+        run.setUserId(userId);
+        run.setStatus(RUN_STATUS_RUNNING);
+        run.setInputs(context.getInput());
+        run.setRunType(RUN_TYPE_FULL);
+        run.setStartTime(LocalDateTime.now());
+        workflowRunMapper.insert(run);
+
+        log.info("执行工作流 - workflowId: {}, runId: {}, 节点数: {}, 最长路径节点数: {}",
+                id, context.getRunId(), graph.nodes().size(), graph.depth());
+        return execute(graph, context, Collections.emptyMap());
+    }
+
+    /**
+     * 从检查点恢复执行
+     * 可恢复的执行：failed、terminated，以及进程崩溃后遗留的 running（非本实例执行且已超过执行超时时间）
+     *
+     * @param runId 执行记录ID
+     * @return 执行结果，执行记录不存在返回null
+     */
+    public WorkflowRunResultVO resume(String runId) {
+        WorkflowRun run = workflowRunMapper.selectById(runId);
+        if (run == null) {
+            return null;
+        }
+        if (!isResumable(run)) {
+            throw new IllegalArgumentException("执行记录当前状态不能恢复: " + run.getStatus());
+        }
+        Workflow workflow = workflowMapper.selectById(run.getWorkflowId());
+        if (workflow == null) {
+            throw new IllegalArgumentException("工作流不存在: " + run.getWorkflowId());
+        }
+        if (!STATUS_ACTIVE.equals(workflow.getStatus())) {
+            throw new IllegalArgumentException("工作流未启用: " + workflow.getName());
+        }
+
+        WorkflowGraph graph = graphOf(workflow);
+        Map<String, WorkflowNodeState> restored = new LinkedHashMap<>();
+        if (run.getNodeStates() != null) {
+            run.getNodeStates().forEach((nodeId, state) ->
+                    restored.put(nodeId, objectMapper.convertValue(state, WorkflowNodeState.class)));
+        }
+
+        WorkflowContext context = new WorkflowContext(logCapacity);
+        context.setRunId(runId);
+        context.setWorkflowId(run.getWorkflowId());
+        context.setUserId(run.getUserId());
+        context.setInput(run.getInputs());
+
+        // 以原状态为条件更新，避免同一记录被并发恢复两次
+        int updated = workflowRunMapper.update(null, new UpdateWrapper<WorkflowRun>()
+                .eq("id", runId)
+                .eq("status", run.getStatus())
+                .set("status", RUN_STATUS_RUNNING)
+                .set("error", null)
+                .set("start_time", LocalDateTime.now())
+                .set("end_time", null));
+        if (updated == 0) {
+            throw new IllegalArgumentException("执行记录正在被恢复，请稍后查看");
+        }
+
+        log.info("恢复执行工作流 - workflowId: {}, runId: {}, 检查点节点数: {}",
+                run.getWorkflowId(), runId, restored.size());
+        return execute(graph, context, restored);
+    }
+
+    public WorkflowRun getRun(String runId) {
+        return workflowRunMapper.selectById(runId);
+    }
+
+    /**
+     * 查询工作流最近的执行记录
+     */
+    public List<WorkflowRun> listRuns(String workflowId, int limit) {
+        return workflowRunMapper.selectList(new QueryWrapper<WorkflowRun>()
+                .eq("workflow_id", workflowId)
+                .orderByDesc("create_time")
+                .last("LIMIT " + Math.max(1, Math.min(limit, 100))));
+    }
+
+    /**
+     * 执行DAG，节点检查点批量写入，结束时同步写入最终状态
+     */
+    private WorkflowRunResultVO execute(WorkflowGraph graph, WorkflowContext context,
+            Map<String, WorkflowNodeState> restored) {
+        String runId = context.getRunId();
+        checkpointWriter.open(runId, restored);
+        WorkflowRun finalRun = new WorkflowRun();
+        finalRun.setId(runId);
+        try {
+            WorkflowRunResultVO result = workflowEngine.run(graph, context, restored,
+                    (nodeId, state) -> checkpointWriter.record(runId, nodeId, state));
+            finalRun.setStatus(result.getStatus());
+            finalRun.setOutputs(result.getOutputs());
+            finalRun.setError(result.getError());
+            return result;
+        } catch (RuntimeException e) {
+            finalRun.setStatus(WorkflowEngine.STATUS_FAILED);
+            finalRun.setError("执行异常: " + e.getMessage());
+            throw e;
+        } finally {
+            finalRun.setEndTime(LocalDateTime.now());
+            checkpointWriter.close(finalRun);
+        }
+    }
+
+    private boolean isResumable(WorkflowRun run) {
+        if (WorkflowEngine.STATUS_FAILED.equals(run.getStatus())
+                || WorkflowEngine.STATUS_TERMINATED.equals(run.getStatus())) {
+            return true;
+        }
+        // 本实例中没有在执行，且超过了执行超时时间，说明执行它的进程已经退出
+        return RUN_STATUS_RUNNING.equals(run.getStatus())
+                && !checkpointWriter.isActive(run.getId())
+                && (run.getStartTime() == null
+                || run.getStartTime().plus(runTimeout).isBefore(LocalDateTime.now()));
+    }
+
+    private WorkflowValidationVO check(Workflow workflow) {
+        WorkflowValidationVO result = new WorkflowValidationVO();
+        try {
+            WorkflowGraph graph = parse(workflow);
+            result.setValid(true);
+            result.setErrors(List.of());
+            result.setNodeCount(graph.nodes().size());
+            result.setEdgeCount(graph.edgeCount());
+            result.setDepth(graph.depth());
+        } catch (WorkflowDefinitionException e) {
+            result.setValid(false);
+            result.setErrors(e.getErrors());
+        }
+        return result;
+    }
+
+    private WorkflowGraph graphOf(Workflow workflow) {
+        CachedGraph cached = graphCache.get(workflow.getId());
+        if (cached != null && Objects.equals(cached.definition(), workflow.getDefinition())) {
+            return cached.graph();
+        }
+        WorkflowGraph graph = parse(workflow);
+        graphCache.put(workflow.getId(), new CachedGraph(workflow.getDefinition(), graph));
+        return graph;
+    }
+
+    private WorkflowGraph parse(Workflow workflow) {
+        return WorkflowGraph.parse(objectMapper.valueToTree(workflow.getDefinition()), objectMapper);
+    }
+
+    /**
+     * 缓存的DAG，连同解析时的定义一起保存，其他实例修改定义后不会用到旧图
+     */
+    private record CachedGraph(Map<String, Object> definition, WorkflowGraph graph) {
+    }
+}
@@ -4,6 +4,11 @@ import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.demo.core.cache.AfterCommit;
+import org.demo.core.cache.TtlCache;
+import org.demo.core.exception.PluginCircuitOpenException;
 import org.demo.core.exception.PluginNotFoundException;
 import org.demo.core.mapper.PluginMapper;
 import org.demo.core.model.dto.PluginCreateRequest;
@@ -16,9 +21,14 @@ import org.demo.core.model.vo.PluginDetailVO;
 import org.demo.core.model.vo.PluginListItemVO;
 import org.demo.core.model.vo.PluginOperationVO;
 import org.demo.core.model.vo.PluginInvokeResult;
+import org.demo.core.plugin.InvocationPlan;
+import org.demo.core.plugin.PluginCircuitBreakerRegistry;
+import org.demo.core.plugin.PluginHttpClientRegistry;
+import org.demo.core.plugin.ToolCatalog;
 import org.demo.core.service.PluginOperationService;
 import org.demo.core.service.PluginService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
@@ -32,9 +42,12 @@ import org.springframework.web.client.ResourceAccessException;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.util.UriComponentsBuilder;
 
+import java.io.InterruptedIOException;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -45,6 +58,7 @@ import java.util.stream.Collectors;
 /**
  * 插件服务实现类
  */
+@Slf4j
 @Service
 public class PluginServiceImpl implements PluginService {
 
@@ -59,15 +73,29 @@ public class PluginServiceImpl implements PluginService {
     @Autowired
     private ObjectMapper objectMapper;
 
-    @Autowired(required = false)
-    private RestTemplate restTemplate;
+    @Autowired
+    private PluginHttpClientRegistry pluginHttpClientRegistry;
 
-    // 如果没有配置RestTemplate，则使用默认的
-    private RestTemplate getRestTemplate() {
-        if (restTemplate == null) {
-            restTemplate = new RestTemplate();
-        }
-        return restTemplate;
+    @Autowired
+    private PluginCircuitBreakerRegistry circuitBreakerRegistry;
+
+    @Autowired
+    private ToolCatalog toolCatalog;
+
+    @Value("${cache.invocation-plan.max-size:2000}")
+    private int planCacheMaxSize;
+
+    @Value("${cache.invocation-plan.ttl:PT10M}")
+    private Duration planCacheTtl;
+
+    /**
+     * 调用计划缓存，key: (pluginId, operationId)
+     */
+    private TtlCache<PlanKey, InvocationPlan> invocationPlanCache;
+
+    @PostConstruct
+    public void init() {
+        invocationPlanCache = new TtlCache<>("invocationPlan", planCacheMaxSize, planCacheTtl);
     }
 
     @Override
@@ -150,6 +178,7 @@ public class PluginServiceImpl implements PluginService {
         plugin.setUpdateTime(now);
 
         pluginMapper.insert(plugin);
+        onPluginChanged(plugin.getId());
 
         return convertToDetailVO(plugin, new ArrayList<>());
     }
@@ -201,6 +230,7 @@ public class PluginServiceImpl implements PluginService {
         plugin.setUpdateTime(LocalDateTime.now());
 
         pluginMapper.updateById(plugin);
+        onPluginChanged(pluginId);
 
         // 获取更新后的操作列表
         List<PluginOperation> operations = pluginOperationService.listByPluginId(pluginId);
@@ -218,6 +248,7 @@ public class PluginServiceImpl implements PluginService {
         pluginOperationService.deleteByPluginId(pluginId);
         // 再删除插件
         pluginMapper.deleteById(pluginId);
+        onPluginChanged(pluginId);
     }
 
     /**
@@ -467,6 +498,7 @@ public class PluginServiceImpl implements PluginService {
         if (!operations.isEmpty()) {
             pluginOperationService.saveBatch(operations);
         }
+        onPluginChanged(pluginId);
 
         return convertToDetailVO(plugin, operations);
     }
@@ -499,6 +531,7 @@ public class PluginServiceImpl implements PluginService {
         plugin.setUpdateTime(LocalDateTime.now());
 
         pluginMapper.updateById(plugin);
+        onPluginChanged(pluginId);
 
         // 获取操作列表
         List<PluginOperation> operations = pluginOperationService.listByPluginId(pluginId);
@@ -507,55 +540,36 @@ public class PluginServiceImpl implements PluginService {
 
     @Override
     public PluginInvokeResult invokeOperation(String pluginId, String operationId, Map<String, Object> params,
-            Integer timeout) {
+            Integer timeout, boolean retry) {
         long startTime = System.currentTimeMillis();
 
         try {
-            // 1. 获取插件信息
-            Plugin plugin = pluginMapper.selectById(pluginId);
-            if (plugin == null) {
-                throw new PluginNotFoundException(pluginId);
+            // 1. 获取调用计划（命中缓存时不查库、不解析配置）
+            InvocationPlan plan = getInvocationPlan(pluginId, operationId);
+            if (plan == null) {
+                return PluginInvokeResult.error("操作不存在: " + operationId, System.currentTimeMillis() - startTime);
             }
 
             // 检查插件是否启用
-            if (!Boolean.TRUE.equals(plugin.getIsEnabled())) {
+            if (!plan.enabled()) {
                 return PluginInvokeResult.error("插件已禁用", System.currentTimeMillis() - startTime);
             }
-
-            // 2. 获取操作信息
-            PluginOperation operation = pluginOperationService.getByPluginIdAndOperationId(pluginId, operationId);
-            if (operation == null) {
-                return PluginInvokeResult.error("操作不存在: " + operationId, System.currentTimeMillis() - startTime);
-            }
-
-            // 3. 从openapi_spec中获取baseUrl
-            Map<String, Object> openapiSpec = parseOpenapiSpec(plugin.getOpenapiSpec());
-            String baseUrl = openapiSpec != null ? (String) openapiSpec.get("baseUrl") : null;
-            if (baseUrl == null || baseUrl.trim().isEmpty()) {
+            if (plan.endpointUrl() == null) {
                 return PluginInvokeResult.error("插件未配置baseUrl", System.currentTimeMillis() - startTime);
             }
 
-            // 4. 构建请求URL
-            String fullUrl = buildRequestUrl(baseUrl, operation.getPath(), operation.getMethod(), params);
+            // 2. 构建请求URL
+            String fullUrl = buildRequestUrl(plan, params);
 
-            // 5. 构建请求头（含鉴权信息）
-            HttpHeaders headers = buildHttpHeaders(plugin.getAuthType(), parseAuthConfig(plugin.getAuthConfig()));
+            // 3. 构建请求体（请求头已在调用计划中预先计算）
+            HttpEntity<?> requestEntity = buildRequestEntity(plan, params);
 
-            // 6. 构建请求体
-            HttpEntity<?> requestEntity = buildRequestEntity(operation.getMethod(), params, headers);
-
-            // 7. 发送HTTP请求
-            HttpMethod httpMethod = HttpMethod.valueOf(operation.getMethod().toUpperCase());
-
-            ResponseEntity<String> response = getRestTemplate().exchange(
-                    fullUrl,
-                    httpMethod,
-                    requestEntity,
-                    String.class);
+            // 4. 发送HTTP请求（使用插件独立的连接池，超时优先取调用参数，其次取插件配置；经过熔断器，GET 失败可重试）
+            ResponseEntity<String> response = exchange(plan, timeout, fullUrl, requestEntity, retry);
 
             long duration = System.currentTimeMillis() - startTime;
 
-            // 8. 解析响应
+            // 5. 解析响应
             String rawBody = response.getBody();
             Object parsedData = null;
             try {
@@ -573,7 +587,7 @@ public class PluginServiceImpl implements PluginService {
                     parsedData,
                     duration);
             result.setRequestUrl(fullUrl);
-            result.setRequestMethod(operation.getMethod());
+            result.setRequestMethod(plan.method().name());
             return result;
 
         } catch (HttpClientErrorException | HttpServerErrorException e) {
@@ -589,46 +603,188 @@ public class PluginServiceImpl implements PluginService {
         } catch (ResourceAccessException e) {
             // 连接超时或网络错误
             long duration = System.currentTimeMillis() - startTime;
-            if (e.getMessage() != null && e.getMessage().contains("timeout")) {
+            if (isTimeout(e)) {
                 return PluginInvokeResult.timeout("请求超时", duration);
             }
-            return PluginInvokeResult.error("网络错误: " + e.getMessage(), duration);
+            return PluginInvokeResult.networkError("网络错误: " + e.getMessage(), duration);
 
         } catch (PluginNotFoundException e) {
             return PluginInvokeResult.error(e.getMessage(), System.currentTimeMillis() - startTime);
 
+        } catch (PluginCircuitOpenException e) {
+            return PluginInvokeResult.error(e.getMessage(), System.currentTimeMillis() - startTime);
+
         } catch (Exception e) {
             return PluginInvokeResult.error("调用失败: " + e.getMessage(), System.currentTimeMillis() - startTime);
         }
     }
 
     /**
-     * 构建请求URL
+     * 经熔断器发送请求
+     * 熔断中直接失败；幂等的 GET 请求遇到连接失败、5xx、429 时按指数退避加随机抖动重试，
+     * 受 plugin.retry.max-attempts 和插件重试预算限制。超时不重试，避免一次调用等待数倍超时时间；
+     * retry 为false时只发送一次
+     */
+    private ResponseEntity<String> exchange(InvocationPlan plan, Integer timeout, String url,
+            HttpEntity<?> requestEntity, boolean retry) {
+        String pluginId = plan.pluginId();
+        RestTemplate restTemplate = pluginHttpClientRegistry.getRestTemplate(plan, timeout);
+        for (int attempt = 1; ; attempt++) {
+            PluginCircuitBreakerRegistry.Call call = circuitBreakerRegistry.tryAcquire(pluginId, attempt > 1);
+            if (call == null) {
+                throw new PluginCircuitOpenException(pluginId, circuitBreakerRegistry.remainingOpenMillis(pluginId));
+            }
+            try {
+                ResponseEntity<String> response = restTemplate.exchange(url, plan.method(), requestEntity, String.class);
+                call.success();
+                return response;
+            } catch (HttpServerErrorException | HttpClientErrorException.TooManyRequests | ResourceAccessException e) {
+                call.failure();
+                boolean retryable = retry && plan.method() == HttpMethod.GET && !isTimeout(e);
+                if (!retryable || !circuitBreakerRegistry.tryRetry(pluginId, attempt)) {
+                    throw e;
+                }
+                long backoff = circuitBreakerRegistry.backoffMillis(attempt);
+                log.warn("插件调用失败，{}毫秒后重试 - 插件: {}, 第{}次, 原因: {}", backoff, pluginId, attempt, e.getMessage());
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            } catch (HttpClientErrorException e) {
+                call.success();
+                throw e;
+            } catch (RuntimeException e) {
+                call.ignore();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * 判断网络异常是否由超时引起（连接超时、读超时、等待连接池超时均为 InterruptedIOException）
+     */
+    private boolean isTimeout(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof InterruptedIOException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 获取调用计划，未命中时查库构建并缓存
+     *
+     * @return 调用计划，操作不存在返回null
+     * @throws PluginNotFoundException 插件不存在
      */
-    private String buildRequestUrl(String baseUrl, String path, String method, Map<String, Object> params) {
-        // 去除baseUrl末尾的斜杠
-        if (baseUrl.endsWith("/")) {
-            baseUrl = baseUrl.substring(0, baseUrl.length() - 1);
+    private InvocationPlan getInvocationPlan(String pluginId, String operationId) {
+        return invocationPlanCache.get(new PlanKey(pluginId, operationId), key -> {
+            Plugin plugin = pluginMapper.selectById(pluginId);
+            if (plugin == null) {
+                throw new PluginNotFoundException(pluginId);
+            }
+            PluginOperation operation = pluginOperationService.getByPluginIdAndOperationId(pluginId, operationId);
+            if (operation == null) {
+                return null;
+            }
+            return buildInvocationPlan(plugin, operation);
+        });
+    }
+
+    /**
+     * 由插件和操作定义构建调用计划
+     */
+    private InvocationPlan buildInvocationPlan(Plugin plugin, PluginOperation operation) {
+        Map<String, Object> openapiSpec = parseOpenapiSpec(plugin.getOpenapiSpec());
+        String baseUrl = openapiSpec != null ? (String) openapiSpec.get("baseUrl") : null;
+
+        String endpointUrl = null;
+        if (baseUrl != null && !baseUrl.trim().isEmpty()) {
+            // 去除baseUrl末尾的斜杠
+            if (baseUrl.endsWith("/")) {
+                baseUrl = baseUrl.substring(0, baseUrl.length() - 1);
+            }
+            // 确保path以斜杠开头
+            String path = operation.getPath() != null ? operation.getPath() : "";
+            if (!path.startsWith("/")) {
+                path = "/" + path;
+            }
+            endpointUrl = baseUrl + path;
         }
-        // 确保path以斜杠开头
-        if (!path.startsWith("/")) {
-            path = "/" + path;
+
+        HttpHeaders headers = buildHttpHeaders(plugin.getAuthType(), parseAuthConfig(plugin.getAuthConfig()));
+        Map<String, Object> inputSchema = operation.getInputSchema() != null
+                ? Collections.unmodifiableMap(operation.getInputSchema())
+                : Collections.emptyMap();
+
+        return new InvocationPlan(
+                plugin.getId(),
+                operation.getOperationId(),
+                Boolean.TRUE.equals(plugin.getIsEnabled()),
+                endpointUrl,
+                HttpMethod.valueOf(operation.getMethod().toUpperCase()),
+                HttpHeaders.readOnlyHttpHeaders(headers),
+                inputSchema,
+                readPositiveInt(openapiSpec, "connectTimeout"),
+                readPositiveInt(openapiSpec, "readTimeout"),
+                readPositiveInt(openapiSpec, "maxConnections"));
+    }
+
+    /**
+     * 从openapi_spec中读取正整数配置
+     *
+     * @return 配置值，未配置或格式不正确返回null
+     */
+    private static Integer readPositiveInt(Map<String, Object> openapiSpec, String key) {
+        if (openapiSpec == null) {
+            return null;
+        }
+        Object value = openapiSpec.get(key);
+        if (value instanceof Number number && number.intValue() > 0) {
+            return number.intValue();
+        }
+        if (value instanceof String str) {
+            try {
+                int parsed = Integer.parseInt(str.trim());
+                return parsed > 0 ? parsed : null;
+            } catch (NumberFormatException ignored) {
+                // 配置格式不正确时使用默认值
+            }
         }
+        return null;
+    }
 
-        String fullUrl = baseUrl + path;
+    /**
+     * 插件数据变更后调用，失效依赖插件配置的缓存
+     * 在事务提交后执行，避免提交前的并发调用把旧配置重新写回缓存
+     */
+    private void onPluginChanged(String pluginId) {
+        AfterCommit.run(() -> {
+            invocationPlanCache.invalidateIf(key -> key.pluginId().equals(pluginId));
+            pluginHttpClientRegistry.invalidate(pluginId);
+            circuitBreakerRegistry.reset(pluginId);
+            toolCatalog.invalidate();
+        });
+    }
 
+    /**
+     * 构建请求URL
+     */
+    private String buildRequestUrl(InvocationPlan plan, Map<String, Object> params) {
         // 如果是GET请求，将参数拼接到URL
-        if ("GET".equalsIgnoreCase(method) && params != null && !params.isEmpty()) {
-            UriComponentsBuilder builder = UriComponentsBuilder.fromHttpUrl(fullUrl);
+        if (plan.isGet() && params != null && !params.isEmpty()) {
+            UriComponentsBuilder builder = UriComponentsBuilder.fromHttpUrl(plan.endpointUrl());
             for (Map.Entry<String, Object> entry : params.entrySet()) {
                 if (entry.getValue() != null) {
                     builder.queryParam(entry.getKey(), entry.getValue().toString());
                 }
             }
-            fullUrl = builder.toUriString();
+            return builder.toUriString();
         }
-
-        return fullUrl;
+        return plan.endpointUrl();
     }
 
     /**
@@ -690,18 +846,18 @@ public class PluginServiceImpl implements PluginService {
     /**
      * 构建请求实体
      */
-    private HttpEntity<?> buildRequestEntity(String method, Map<String, Object> params, HttpHeaders headers) {
+    private HttpEntity<?> buildRequestEntity(InvocationPlan plan, Map<String, Object> params) {
         // GET请求不需要body
-        if ("GET".equalsIgnoreCase(method)) {
-            return new HttpEntity<>(headers);
+        if (plan.isGet()) {
+            return new HttpEntity<>(plan.headers());
         }
 
         // POST/PUT/PATCH请求将参数放到body
         if (params != null && !params.isEmpty()) {
-            return new HttpEntity<>(params, headers);
+            return new HttpEntity<>(params, plan.headers());
         }
 
-        return new HttpEntity<>(headers);
+        return new HttpEntity<>(plan.headers());
     }
 
     /**
@@ -871,4 +1027,10 @@ public class PluginServiceImpl implements PluginService {
         }
         return null;
     }
+
+    /**
+     * 调用计划缓存Key
+     */
+    private record PlanKey(String pluginId, String operationId) {
+    }
 }
@@ -0,0 +1,72 @@
+package org.demo.core.workflow;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+
+/**
+ * 一次插件节点执行的句柄
+ * 节点的多次尝试分别提交到线程池，尝试之间的等待由定时器负责，不占用线程；
+ * 句柄记录当前正在执行或等待中的任务，取消时一并取消
+ */
+public final class NodeExecution {
+
+    private final CompletableFuture<PluginNodeResult> result = new CompletableFuture<>();
+
+    private final WorkflowContext.NodeScope scope;
+
+    /**
+     * 当前的尝试任务或等待中的定时任务
+     */
+    private volatile Future<?> current;
+
+    private volatile boolean cancelled;
+
+    /**
+     * @param scope 节点的写入范围，节点未能开始执行时为null
+     */
+    public NodeExecution(WorkflowContext.NodeScope scope) {
+        this.scope = scope;
+    }
+
+    /**
+     * 节点最终结果，所有重试结束（或取消）后完成
+     */
+    public CompletableFuture<PluginNodeResult> result() {
+        return result;
+    }
+
+    /**
+     * 取消执行：中断正在进行的尝试，撤销等待中的重试
+     */
+    public void cancel() {
+        cancelled = true;
+        Future<?> task = current;
+        if (task != null) {
+            task.cancel(true);
+        }
+        result.complete(PluginNodeResult.failure("CANCELLED", "节点执行已取消"));
+    }
+
+    /**
+     * 节点的写入范围，result() 完成后可读取节点提交的输出和变量
+     */
+    public WorkflowContext.NodeScope scope() {
+        return scope;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    void setCurrent(Future<?> task) {
+        current = task;
+        // 与 cancel() 并发时，保证新任务也被取消
+        if (cancelled) {
+            task.cancel(true);
+        }
+    }
+
+    void complete(PluginNodeResult nodeResult) {
+        result.complete(nodeResult);
+    }
+}
@@ -19,12 +19,22 @@ import java.util.Map;
  * "port_id": "${input.portId}",
  * "action": "${input.action}"
  * },
- * "outputMapping": "pluginResult"
+ * "outputMapping": "pluginResult",
+ * "retryCount": 3,
+ * "retryInterval": 1000,
+ * "retryBackoffMultiplier": 2.0,
+ * "retryMaxInterval": 30000,
+ * "retryJitter": 0.5
  * }
  * }
  */
 public class PluginNodeConfig {
 
+    public static final int DEFAULT_RETRY_INTERVAL = 1000;
+    public static final double DEFAULT_RETRY_BACKOFF_MULTIPLIER = 2.0;
+    public static final int DEFAULT_RETRY_MAX_INTERVAL = 30000;
+    public static final double DEFAULT_RETRY_JITTER = 0.5;
+
     /**
      * 节点ID（工作流中唯一标识）
      */
@@ -48,6 +58,9 @@ public class PluginNodeConfig {
      * - 上下文变量: "${context.xxx}"
      * - 输入参数: "${input.xxx}"
      * - 上一节点输出: "${nodes.nodeId.outputField}"
+     * - 数组下标与默认值: "${nodes.nodeId.items[0].id:0}"
+     * - 字符串插值: "设备 ${input.name} 已${input.action}"
+     * 解析工作流定义时预编译，见 WorkflowExpression
      */
     private Map<String, Object> paramMappings;
 
@@ -73,10 +86,30 @@ public class PluginNodeConfig {
     private Integer retryCount;
 
     /**
-     * 重试间隔（毫秒）
+     * 首次重试前的等待时间（毫秒），默认1000
      */
     private Integer retryInterval;
 
+    /**
+     * 退避倍数，每次重试的等待时间乘以该值，默认2.0（不小于1）
+     */
+    private Double retryBackoffMultiplier;
+
+    /**
+     * 单次等待时间上限（毫秒），默认30000
+     */
+    private Integer retryMaxInterval;
+
+    /**
+     * 随机抖动比例（0~1），等待时间在 [(1-jitter)×退避值, 退避值] 内随机，默认0.5
+     */
+    private Double retryJitter;
+
+    /**
+     * 4xx（408、429除外）是否重试，默认否：参数错误重试也不会成功
+     */
+    private Boolean retryOnClientError;
+
     // =============== Getters and Setters ===============
 
     public String getNodeId() {
@@ -157,4 +190,43 @@ public class PluginNodeConfig {
     public void setRetryInterval(Integer retryInterval) {
         this.retryInterval = retryInterval;
     }
+
+    public Double getRetryBackoffMultiplier() {
+        return retryBackoffMultiplier;
+    }
+
+    public void setRetryBackoffMultiplier(Double retryBackoffMultiplier) {
+        this.retryBackoffMultiplier = retryBackoffMultiplier;
+    }
+
+    public Integer getRetryMaxInterval() {
+        return retryMaxInterval;
+    }
+
+    public void setRetryMaxInterval(Integer retryMaxInterval) {
+        this.retryMaxInterval = retryMaxInterval;
+    }
+
+    public Double getRetryJitter() {
+        return retryJitter;
+    }
+
+    public void setRetryJitter(Double retryJitter) {
+        this.retryJitter = retryJitter;
+    }
+
+    public Boolean getRetryOnClientError() {
+        return retryOnClientError;
+    }
+
+    public void setRetryOnClientError(Boolean retryOnClientError) {
+        this.retryOnClientError = retryOnClientError;
+    }
+
+    /**
+     * 便捷方法：4xx 是否重试
+     */
+    public boolean isRetryOnClientError() {
+        return Boolean.TRUE.equals(retryOnClientError);
+    }
 }
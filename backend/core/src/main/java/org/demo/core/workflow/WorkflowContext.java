@@ -1,14 +1,28 @@
 package org.demo.core.workflow;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
  * 工作流执行上下文
- * 在工作流执行过程中传递数据
+ * 在工作流执行过程中传递数据，并行分支的节点共享同一个上下文
+ *
+ * - 写时复制：变量和节点输出保存在不可变的 Snapshot 中，每次写入复制后整体替换，
+ *   读取只是一次 volatile 读，不加锁，读到的始终是某个完整版本
+ * - 按节点隔离写入：节点通过 scope(nodeId) 获得 NodeScope，只能写自己的输出和变量，
+ *   执行结束时 commit() 一次性发布；被取消或失败终止的节点不提交，不会留下半截结果
+ * - 快照：snapshot() 直接返回当前不可变版本，可用于返回结果或保存检查点
+ * - 日志：固定容量的环形缓冲区，保存结构化的 WorkflowLogEvent，超出容量时丢弃最早的事件
+ *
+ * 节点输出对象本身不做深拷贝，写入上下文后不应再修改
  */
 public class WorkflowContext {
 
+    public static final int DEFAULT_LOG_CAPACITY = 500;
+
     /**
      * 工作流运行ID
      */
@@ -25,136 +39,123 @@ public class WorkflowContext {
     private String userId;
 
     /**
-     * 工作流输入参数
+     * 工作流输入参数（只读）
      */
-    private Map<String, Object> input;
+    private volatile Map<String, Object> input = Collections.emptyMap();
 
     /**
-     * 全局上下文变量（可跨节点共享）
+     * 当前版本的变量和节点输出
      */
-    private Map<String, Object> variables;
+    private volatile Snapshot state = new Snapshot(0, Collections.emptyMap(), Collections.emptyMap());
 
     /**
-     * 各节点的执行结果
-     * key: nodeId
-     * value: 该节点的输出结果
+     * 执行日志环形缓冲区
      */
-    private Map<String, Object> nodeOutputs;
+    private final WorkflowLogEvent[] logBuffer;
+    private long logCount;
+
+    public WorkflowContext() {
+        this(DEFAULT_LOG_CAPACITY);
+    }
 
     /**
-     * 执行日志
+     * @param logCapacity 最多保留的日志事件数
      */
-    private StringBuilder executionLog;
-
-    public WorkflowContext() {
-        this.input = new HashMap<>();
-        this.variables = new HashMap<>();
-        this.nodeOutputs = new HashMap<>();
-        this.executionLog = new StringBuilder();
+    public WorkflowContext(int logCapacity) {
+        this.logBuffer = new WorkflowLogEvent[Math.max(1, logCapacity)];
     }
 
     /**
      * 解析参数表达式，获取实际值
-     * 支持格式:
-     * - 字面量: 直接返回
-     * - ${input.xxx}: 从输入参数获取
-     * - ${context.xxx}: 从上下文变量获取
-     * - ${nodes.nodeId.field}: 从指定节点输出获取
+     * 语法见 WorkflowExpression；表达式每次调用时编译，
+     * 工作流节点参数在解析定义时已预编译，执行时不经过这里
+     *
+     * @throws IllegalArgumentException 表达式语法错误
      */
-    @SuppressWarnings("unchecked")
     public Object resolveExpression(Object expression) {
-        if (expression == null) {
-            return null;
-        }
-
-        if (!(expression instanceof String)) {
-            // 非字符串，直接返回字面量
-            return expression;
-        }
+        return WorkflowExpression.compile(expression).evaluate(this);
+    }
 
-        String expr = (String) expression;
+    /**
+     * 获取节点的写入范围
+     */
+    public NodeScope scope(String nodeId) {
+        return new NodeScope(nodeId);
+    }
 
-        // 检查是否是表达式格式 ${...}
-        if (!expr.startsWith("${") || !expr.endsWith("}")) {
-            // 普通字符串字面量
-            return expr;
-        }
+    /**
+     * 设置工作流级上下文变量（不属于任何节点）
+     */
+    public void setVariable(String key, Object value) {
+        publish(null, null, false, Collections.singletonMap(key, value));
+    }
 
-        // 解析表达式
-        String path = expr.substring(2, expr.length() - 1); // 去掉 ${ 和 }
-        String[] parts = path.split("\\.", 2);
+    /**
+     * 当前版本的不可变快照
+     */
+    public Snapshot snapshot() {
+        return state;
+    }
 
-        if (parts.length < 2) {
-            return null;
+    private synchronized void publish(String nodeId, Object output, boolean hasOutput, Map<String, Object> variables) {
+        Snapshot current = state;
+        Map<String, Object> nextVariables = current.variables();
+        if (!variables.isEmpty()) {
+            Map<String, Object> copy = new LinkedHashMap<>(nextVariables);
+            copy.putAll(variables);
+            nextVariables = Collections.unmodifiableMap(copy);
         }
-
-        String source = parts[0];
-        String field = parts[1];
-
-        switch (source) {
-            case "input":
-                return getNestedValue(input, field);
-            case "context":
-                return getNestedValue(variables, field);
-            case "nodes":
-                // 格式: nodes.nodeId.field
-                String[] nodeParts = field.split("\\.", 2);
-                if (nodeParts.length < 2) {
-                    return nodeOutputs.get(field);
-                }
-                Object nodeOutput = nodeOutputs.get(nodeParts[0]);
-                if (nodeOutput instanceof Map) {
-                    return getNestedValue((Map<String, Object>) nodeOutput, nodeParts[1]);
-                }
-                return null;
-            default:
-                return null;
+        Map<String, Object> nextOutputs = current.nodeOutputs();
+        if (hasOutput) {
+            Map<String, Object> copy = new LinkedHashMap<>(nextOutputs);
+            copy.put(nodeId, output);
+            nextOutputs = Collections.unmodifiableMap(copy);
         }
+        state = new Snapshot(current.version() + 1, nextVariables, nextOutputs);
     }
 
     /**
-     * 从嵌套Map中获取值，支持点号分隔的路径
+     * 追加工作流级执行日志
      */
-    @SuppressWarnings("unchecked")
-    private Object getNestedValue(Map<String, Object> map, String path) {
-        if (map == null || path == null) {
-            return null;
-        }
-
-        String[] parts = path.split("\\.");
-        Object current = map;
-
-        for (String part : parts) {
-            if (current instanceof Map) {
-                current = ((Map<String, Object>) current).get(part);
-            } else {
-                return null;
-            }
-        }
-
-        return current;
+    public void log(String message) {
+        log(null, WorkflowLogEvent.INFO, message);
     }
 
     /**
-     * 设置节点输出
+     * 追加执行日志
+     *
+     * @param nodeId 节点ID，工作流级日志传null
+     * @param level  WorkflowLogEvent.INFO/WARN/ERROR
      */
-    public void setNodeOutput(String nodeId, Object output) {
-        nodeOutputs.put(nodeId, output);
+    public void log(String nodeId, String level, String message) {
+        WorkflowLogEvent event = new WorkflowLogEvent(System.currentTimeMillis(), nodeId, level, message);
+        synchronized (logBuffer) {
+            logBuffer[(int) (logCount % logBuffer.length)] = event;
+            logCount++;
+        }
     }
 
     /**
-     * 设置上下文变量
+     * 按时间顺序返回保留的日志事件
      */
-    public void setVariable(String key, Object value) {
-        variables.put(key, value);
+    public List<WorkflowLogEvent> getExecutionLog() {
+        synchronized (logBuffer) {
+            int size = (int) Math.min(logCount, logBuffer.length);
+            List<WorkflowLogEvent> events = new ArrayList<>(size);
+            for (long i = logCount - size; i < logCount; i++) {
+                events.add(logBuffer[(int) (i % logBuffer.length)]);
+            }
+            return events;
+        }
     }
 
     /**
-     * 追加执行日志
+     * 因超出容量被丢弃的日志事件数
      */
-    public void log(String message) {
-        executionLog.append("[").append(System.currentTimeMillis()).append("] ")
-                .append(message).append("\n");
+    public long getDroppedLogCount() {
+        synchronized (logBuffer) {
+            return Math.max(0, logCount - logBuffer.length);
+        }
     }
 
     // =============== Getters and Setters ===============
@@ -188,26 +189,104 @@ public class WorkflowContext {
     }
 
     public void setInput(Map<String, Object> input) {
-        this.input = input;
+        this.input = input != null ? Collections.unmodifiableMap(new LinkedHashMap<>(input)) : Collections.emptyMap();
     }
 
+    /**
+     * 当前版本的上下文变量（只读）
+     */
     public Map<String, Object> getVariables() {
-        return variables;
-    }
-
-    public void setVariables(Map<String, Object> variables) {
-        this.variables = variables;
+        return state.variables();
     }
 
+    /**
+     * 当前版本的节点输出（只读）
+     * key: nodeId
+     * value: 该节点的输出结果
+     */
     public Map<String, Object> getNodeOutputs() {
-        return nodeOutputs;
+        return state.nodeOutputs();
     }
 
-    public void setNodeOutputs(Map<String, Object> nodeOutputs) {
-        this.nodeOutputs = nodeOutputs;
+    /**
+     * 上下文的不可变版本
+     *
+     * @param version     版本号，每次提交加一
+     * @param variables   上下文变量
+     * @param nodeOutputs 各节点输出
+     */
+    public record Snapshot(long version, Map<String, Object> variables, Map<String, Object> nodeOutputs) {
     }
 
-    public String getExecutionLog() {
-        return executionLog.toString();
+    /**
+     * 单个节点的写入范围
+     * 写入先暂存在本地，commit() 时一次性发布到上下文，只能提交一次；
+     * 节点的各次尝试依次使用，同一时刻只有一个线程访问
+     */
+    public final class NodeScope {
+
+        private final String nodeId;
+        private final Map<String, Object> variables = new LinkedHashMap<>();
+        private Object output;
+        private boolean hasOutput;
+        private boolean committed;
+
+        private NodeScope(String nodeId) {
+            this.nodeId = nodeId;
+        }
+
+        public String getNodeId() {
+            return nodeId;
+        }
+
+        /**
+         * 本节点设置的输出，未设置时为null
+         */
+        public Object getOutput() {
+            return output;
+        }
+
+        /**
+         * 本节点设置的上下文变量
+         */
+        public Map<String, Object> getVariables() {
+            return Collections.unmodifiableMap(variables);
+        }
+
+        /**
+         * 设置本节点的输出
+         */
+        public void setOutput(Object output) {
+            this.output = output;
+            this.hasOutput = true;
+        }
+
+        /**
+         * 设置上下文变量，提交后对下游节点可见
+         */
+        public void setVariable(String key, Object value) {
+            variables.put(key, value);
+        }
+
+        /**
+         * 发布本节点的写入
+         */
+        public void commit() {
+            if (committed) {
+                throw new IllegalStateException("节点 " + nodeId + " 的写入已提交");
+            }
+            committed = true;
+            if (hasOutput || !variables.isEmpty()) {
+                publish(nodeId, output, hasOutput, variables);
+            }
+        }
+
+        public void log(String message) {
+            WorkflowContext.this.log(nodeId, WorkflowLogEvent.INFO, message);
+        }
+
+        public void warn(String message) {
+            WorkflowContext.this.log(nodeId, WorkflowLogEvent.WARN, message);
+        }
     }
 }
@@ -0,0 +1,339 @@
+package org.demo.core.workflow;
+
+import lombok.extern.slf4j.Slf4j;
+import org.demo.core.model.vo.WorkflowRunResultVO;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * 工作流DAG执行引擎
+ * 所有上游节点完成后节点即进入就绪状态，就绪的插件节点经 WorkflowPluginExecutor 异步提交到 workflowNodeExecutor，
+ * 相互独立的分支同时等待各自的插件响应，总耗时接近关键路径耗时而不是所有节点耗时之和
+ *
+ * - 调用线程负责调度：提交就绪节点、等待任一节点完成、释放其下游节点；
+ *   节点重试的等待由定时器负责，等待期间不占用工作线程
+ * - 单次执行同时运行的节点数不超过 workflow.engine.max-parallel-nodes，避免一次执行占满线程池
+ * - 节点失败且未配置 continueOnError 时不再提交新节点，等待已在执行的节点结束后返回 failed
+ * - 插件节点结束时通过回调保存检查点，恢复执行时已完成的节点直接从检查点写回上下文，不再调用插件
+ * - 超过 workflow.engine.run-timeout 时取消仍在执行的节点；节点通过上下文的 NodeScope 提交输出，被取消的节点不会改动结果
+ */
+@Slf4j
+@Service
+public class WorkflowEngine {
+
+    public static final String STATUS_COMPLETED = "completed";
+    public static final String STATUS_FAILED = "failed";
+    public static final String STATUS_TERMINATED = "terminated";
+
+    private static final String NODE_SUCCESS = "success";
+    private static final String NODE_FAILED = "failed";
+    private static final String NODE_CANCELLED = "cancelled";
+    private static final String NODE_SKIPPED = "skipped";
+    private static final String NODE_RESTORED = "restored";
+
+    @Autowired
+    private WorkflowPluginExecutor pluginExecutor;
+
+    @Value("${workflow.engine.max-parallel-nodes:8}")
+    private int maxParallelNodes;
+
+    @Value("${workflow.engine.run-timeout:PT5M}")
+    private Duration runTimeout;
+
+    /**
+     * 执行工作流
+     *
+     * @param graph   已校验的工作流DAG
+     * @param context 执行上下文（已设置 runId、workflowId、输入参数）
+     * @return 执行结果
+     */
+    public WorkflowRunResultVO run(WorkflowGraph graph, WorkflowContext context) {
+        return run(graph, context, Collections.emptyMap(), null);
+    }
+
+    /**
+     * 执行或从检查点恢复执行工作流
+     *
+     * @param graph      已校验的工作流DAG
+     * @param context    执行上下文
+     * @param restored   上次执行保存的节点检查点；已完成且上游均已完成的插件节点不再调用插件，输出直接写回上下文
+     * @param checkpoint 插件节点结束（成功或失败）时回调，用于保存检查点，可为null；在调度线程中调用，不应阻塞
+     * @return 执行结果
+     */
+    public WorkflowRunResultVO run(WorkflowGraph graph, WorkflowContext context,
+            Map<String, WorkflowNodeState> restored, BiConsumer<String, WorkflowNodeState> checkpoint) {
+        long startMillis = System.currentTimeMillis();
+        long deadline = startMillis + runTimeout.toMillis();
+
+        Map<String, WorkflowRunResultVO.NodeRun> runs = new LinkedHashMap<>();
+        Set<String> done = restore(graph, context, restored, runs);
+        Map<String, Integer> remaining = new HashMap<>();
+        Deque<String> ready = new ArrayDeque<>();
+        for (String id : graph.topologicalOrder()) {
+            if (done.contains(id)) {
+                continue;
+            }
+            int inDegree = 0;
+            for (String parent : graph.predecessors(id)) {
+                if (!done.contains(parent)) {
+                    inDegree++;
+                }
+            }
+            remaining.put(id, inDegree);
+            if (inDegree == 0) {
+                ready.add(id);
+            }
+        }
+
+        Map<String, Long> startTimes = new HashMap<>();
+        BlockingQueue<NodeOutcome> completed = new LinkedBlockingQueue<>();
+        Map<String, NodeExecution> running = new HashMap<>();
+        String status = STATUS_COMPLETED;
+        String error = null;
+
+        context.log("开始执行工作流: " + context.getWorkflowId() + "，节点数: " + graph.nodes().size());
+        try {
+            while (true) {
+                // 1. 提交就绪节点；出现失败后不再提交，只等待已在执行的节点
+                while (error == null && !ready.isEmpty() && running.size() < maxParallelNodes) {
+                    String id = ready.poll();
+                    WorkflowNode node = graph.node(id);
+                    long now = System.currentTimeMillis();
+                    if (!node.isPlugin()) {
+                        // 空节点不占用线程，直接完成
+                        runs.put(id, nodeRun(node, NODE_SUCCESS, now - startMillis, 0L, null));
+                        release(graph, id, remaining, ready);
+                        continue;
+                    }
+                    startTimes.put(id, now);
+                    running.put(id, submitNode(node, context, completed));
+                }
+                if (running.isEmpty()) {
+                    break;
+                }
+
+                // 2. 等待任一节点完成
+                long wait = deadline - System.currentTimeMillis();
+                NodeOutcome outcome = wait > 0 ? completed.poll(wait, TimeUnit.MILLISECONDS) : null;
+                if (outcome == null) {
+                    status = STATUS_FAILED;
+                    error = "工作流执行超时（" + runTimeout.toSeconds() + "秒）";
+                    break;
+                }
+                NodeExecution execution = running.remove(outcome.nodeId());
+                WorkflowNode node = graph.node(outcome.nodeId());
+                PluginNodeResult result = outcome.result();
+                WorkflowRunResultVO.NodeRun nodeRun = nodeRun(node, result.isSuccess() ? NODE_SUCCESS : NODE_FAILED,
+                        startTimes.get(node.id()) - startMillis, result.getDuration(), result);
+                runs.put(node.id(), nodeRun);
+                boolean completedNode = result.isSuccess() || node.pluginConfig().isContinueOnError();
+                if (checkpoint != null) {
+                    saveCheckpoint(checkpoint, node.id(), result, execution, completedNode);
+                }
+
+                // 3. 释放下游节点
+                if (completedNode) {
+                    release(graph, node.id(), remaining, ready);
+                } else if (error == null) {
+                    status = STATUS_FAILED;
+                    error = "节点 " + node.id() + " 执行失败: " + result.getErrorMessage();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            status = STATUS_TERMINATED;
+            error = "工作流执行被中断";
+        } finally {
+            long now = System.currentTimeMillis();
+            for (Map.Entry<String, NodeExecution> entry : running.entrySet()) {
+                entry.getValue().cancel();
+                Long started = startTimes.get(entry.getKey());
+                runs.put(entry.getKey(), nodeRun(graph.node(entry.getKey()), NODE_CANCELLED,
+                        started - startMillis, now - started, null));
+            }
+        }
+
+        return buildResult(graph, context, runs, status, error, System.currentTimeMillis() - startMillis);
+    }
+
+    /**
+     * 异步提交插件节点，完成（含全部重试）后把结果放入 completed
+     */
+    private NodeExecution submitNode(WorkflowNode node, WorkflowContext context, BlockingQueue<NodeOutcome> completed) {
+        NodeExecution execution;
+        try {
+            execution = pluginExecutor.executeAsync(node.pluginConfig(), node.params(), context);
+        } catch (RuntimeException e) {
+            log.error("工作流节点提交失败: nodeId={}", node.id(), e);
+            execution = new NodeExecution(null);
+            execution.cancel();
+            completed.add(new NodeOutcome(node.id(), PluginNodeResult.failure("EXECUTION_ERROR", "执行异常: " + e.getMessage())));
+            return execution;
+        }
+        execution.result().whenComplete((result, e) -> completed.add(new NodeOutcome(node.id(), result != null
+                ? result : PluginNodeResult.failure("EXECUTION_ERROR", "执行异常: " + e.getMessage()))));
+        return execution;
+    }
+
+    /**
+     * 按拓扑序恢复检查点：插件节点需已完成，且所有上游节点都已恢复（定义变化后不会跳过新的上游）
+     *
+     * @return 已恢复的节点ID
+     */
+    private Set<String> restore(WorkflowGraph graph, WorkflowContext context, Map<String, WorkflowNodeState> restored,
+            Map<String, WorkflowRunResultVO.NodeRun> runs) {
+        Set<String> done = new HashSet<>();
+        if (restored == null || restored.isEmpty()) {
+            return done;
+        }
+        int pluginNodes = 0;
+        for (String id : graph.topologicalOrder()) {
+            if (!done.containsAll(graph.predecessors(id))) {
+                continue;
+            }
+            WorkflowNode node = graph.node(id);
+            if (!node.isPlugin()) {
+                runs.put(id, nodeRun(node, NODE_SUCCESS, 0L, 0L, null));
+                done.add(id);
+                continue;
+            }
+            WorkflowNodeState state = restored.get(id);
+            if (state == null || !state.completed()) {
+                continue;
+            }
+            WorkflowContext.NodeScope scope = context.scope(id);
+            if (state.output() != null) {
+                scope.setOutput(state.output());
+            }
+            if (state.variables() != null) {
+                state.variables().forEach(scope::setVariable);
+            }
+            scope.commit();
+
+            WorkflowRunResultVO.NodeRun run = nodeRun(node, NODE_RESTORED, 0L, 0L, null);
+            run.setRetryCount(state.retryCount());
+            run.setErrorCode(state.errorCode());
+            run.setErrorMessage(state.errorMessage());
+            runs.put(id, run);
+            done.add(id);
+            pluginNodes++;
+        }
+        context.log("从检查点恢复执行，跳过已完成的插件节点 " + pluginNodes + " 个");
+        return done;
+    }
+
+    private static void saveCheckpoint(BiConsumer<String, WorkflowNodeState> checkpoint, String nodeId,
+            PluginNodeResult result, NodeExecution execution, boolean completed) {
+        WorkflowContext.NodeScope scope = completed && execution != null ? execution.scope() : null;
+        WorkflowNodeState state = new WorkflowNodeState(
+                result.isSuccess() ? WorkflowNodeState.SUCCESS : WorkflowNodeState.FAILED,
+                completed,
+                scope != null ? scope.getOutput() : null,
+                scope != null && !scope.getVariables().isEmpty() ? new LinkedHashMap<>(scope.getVariables()) : null,
+                result.getErrorCode(),
+                result.getErrorMessage(),
+                result.getHttpStatus(),
+                result.getRetryCount(),
+                result.getDuration(),
+                System.currentTimeMillis());
+        try {
+            checkpoint.accept(nodeId, state);
+        } catch (RuntimeException e) {
+            log.error("保存工作流节点检查点失败: nodeId={}", nodeId, e);
+        }
+    }
+
+    private static void release(WorkflowGraph graph, String id, Map<String, Integer> remaining, Deque<String> ready) {
+        for (String next : graph.successors(id)) {
+            if (remaining.merge(next, -1, Integer::sum) == 0) {
+                ready.add(next);
+            }
+        }
+    }
+
+    private static WorkflowRunResultVO.NodeRun nodeRun(WorkflowNode node, String status, Long startOffset,
+            Long duration, PluginNodeResult result) {
+        WorkflowRunResultVO.NodeRun run = new WorkflowRunResultVO.NodeRun();
+        run.setNodeId(node.id());
+        run.setNodeType(node.type());
+        run.setStatus(status);
+        run.setStartOffset(startOffset);
+        run.setDuration(duration);
+        if (result != null) {
+            run.setRetryCount(result.getRetryCount());
+            run.setErrorCode(result.getErrorCode());
+            run.setErrorMessage(result.getErrorMessage());
+        }
+        return run;
+    }
+
+    private WorkflowRunResultVO buildResult(WorkflowGraph graph, WorkflowContext context,
+            Map<String, WorkflowRunResultVO.NodeRun> runs, String status, String error, long duration) {
+        // 关键路径：按拓扑序累加节点耗时，取最大值
+        Map<String, Long> finish = new HashMap<>();
+        long criticalPath = 0;
+        long totalNodeDuration = 0;
+        for (String id : graph.topologicalOrder()) {
+            WorkflowRunResultVO.NodeRun run = runs.get(id);
+            long nodeDuration = run != null && run.getDuration() != null ? run.getDuration() : 0;
+            long start = 0;
+            for (String parent : graph.predecessors(id)) {
+                start = Math.max(start, finish.get(parent));
+            }
+            finish.put(id, start + nodeDuration);
+            criticalPath = Math.max(criticalPath, start + nodeDuration);
+            totalNodeDuration += nodeDuration;
+        }
+
+        List<WorkflowRunResultVO.NodeRun> nodes = new ArrayList<>(runs.values());
+        nodes.sort(Comparator.comparing(WorkflowRunResultVO.NodeRun::getStartOffset));
+        for (String id : graph.topologicalOrder()) {
+            if (!runs.containsKey(id)) {
+                nodes.add(nodeRun(graph.node(id), NODE_SKIPPED, null, null, null));
+            }
+        }
+
+        context.log("工作流执行结束，状态: " + status + "，耗时: " + duration + "ms，关键路径: " + criticalPath
+                + "ms，节点耗时合计: " + totalNodeDuration + "ms");
+        log.info("工作流执行结束 - workflowId: {}, runId: {}, 状态: {}, 耗时: {}ms, 关键路径: {}ms, 节点耗时合计: {}ms",
+                context.getWorkflowId(), context.getRunId(), status, duration, criticalPath, totalNodeDuration);
+
+        WorkflowRunResultVO result = new WorkflowRunResultVO();
+        result.setRunId(context.getRunId());
+        result.setWorkflowId(context.getWorkflowId());
+        result.setStatus(status);
+        result.setError(error);
+        // 快照不可变，被取消的节点之后不会再改动结果
+        WorkflowContext.Snapshot snapshot = context.snapshot();
+        result.setOutputs(snapshot.variables());
+        result.setNodeOutputs(snapshot.nodeOutputs());
+        result.setNodes(nodes);
+        result.setDuration(duration);
+        result.setCriticalPathDuration(criticalPath);
+        result.setTotalNodeDuration(totalNodeDuration);
+        result.setExecutionLog(context.getExecutionLog());
+        result.setDroppedLogCount(context.getDroppedLogCount());
+        return result;
+    }
+
+    private record NodeOutcome(String nodeId, PluginNodeResult result) {
+    }
+}
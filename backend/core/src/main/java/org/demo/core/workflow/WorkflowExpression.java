@@ -0,0 +1,338 @@
+package org.demo.core.workflow;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * 预编译的参数表达式
+ * 工作流定义解析时把 paramMappings 中的每个值编译一次，执行时只按访问链取值，不再切分字符串
+ *
+ * 支持格式:
+ * - 字面量: "led", 1, true，原样返回
+ * - 单个引用: "${input.portId}"，返回引用值本身（保留类型）
+ * - 字符串插值: "设备 ${input.name} 状态"，引用值按 toString 拼接，空值拼为空串
+ * - 来源: input（输入参数）、context（上下文变量）、nodes（节点输出，首段为节点ID）
+ * - 数组下标: "${nodes.search.items[0].title}"，下标越界返回空值
+ * - 含点号的键: "${input['a.b']}"
+ * - 默认值: "${input.limit:10}"，取值为空时使用；true/false 和数字按对应类型返回，可用引号包裹字符串
+ *
+ * 引号（单引号或双引号，不支持转义）内的 : } ] 不作为分隔符，如 "${input['a:b']}"、"${input.x:'{}'}"
+ */
+public final class WorkflowExpression {
+
+    private static final String SOURCE_INPUT = "input";
+    private static final String SOURCE_CONTEXT = "context";
+    private static final String SOURCE_NODES = "nodes";
+
+    private static final Pattern INTEGER = Pattern.compile("-?\\d+");
+    private static final Pattern DECIMAL = Pattern.compile("-?\\d+\\.\\d+");
+
+    /**
+     * 字面量，非字面量表达式为null
+     */
+    private final Object literal;
+
+    /**
+     * 整个值是单个引用时的引用
+     */
+    private final Reference reference;
+
+    /**
+     * 插值模板的片段，元素为 String 或 Reference
+     */
+    private final Object[] parts;
+
+    private WorkflowExpression(Object literal, Reference reference, Object[] parts) {
+        this.literal = literal;
+        this.reference = reference;
+        this.parts = parts;
+    }
+
+    /**
+     * 编译参数映射
+     *
+     * @return 参数名到表达式的映射，保持原顺序
+     * @throws IllegalArgumentException 存在语法错误的表达式，消息中包含参数名
+     */
+    public static Map<String, WorkflowExpression> compileAll(Map<String, Object> paramMappings) {
+        if (paramMappings == null || paramMappings.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<String, WorkflowExpression> compiled = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> entry : paramMappings.entrySet()) {
+            try {
+                compiled.put(entry.getKey(), compile(entry.getValue()));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("参数 " + entry.getKey() + " 的表达式不正确: " + e.getMessage());
+            }
+        }
+        return Collections.unmodifiableMap(compiled);
+    }
+
+    /**
+     * 编译单个表达式
+     *
+     * @throws IllegalArgumentException 表达式语法错误
+     */
+    public static WorkflowExpression compile(Object expression) {
+        if (!(expression instanceof String text) || !text.contains("${")) {
+            return new WorkflowExpression(expression, null, null);
+        }
+
+        List<Object> parts = new ArrayList<>();
+        int pos = 0;
+        while (pos < text.length()) {
+            int start = text.indexOf("${", pos);
+            if (start < 0) {
+                parts.add(text.substring(pos));
+                break;
+            }
+            int end = indexOfUnquoted(text, start + 2, '}');
+            if (end < 0) {
+                throw new IllegalArgumentException("缺少右花括号: " + text);
+            }
+            if (start > pos) {
+                parts.add(text.substring(pos, start));
+            }
+            parts.add(Reference.parse(text.substring(start + 2, end)));
+            pos = end + 1;
+        }
+
+        if (parts.size() == 1 && parts.get(0) instanceof Reference single) {
+            return new WorkflowExpression(null, single, null);
+        }
+        return new WorkflowExpression(null, null, parts.toArray());
+    }
+
+    /**
+     * 查找引号和方括号之外的第一个 target 字符
+     *
+     * @return 下标，找不到返回 -1
+     */
+    private static int indexOfUnquoted(String text, int from, char target) {
+        int depth = 0;
+        for (int i = from; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\'' || c == '"') {
+                int close = text.indexOf(c, i + 1);
+                if (close < 0) {
+                    return -1;
+                }
+                i = close;
+            } else if (c == '[') {
+                depth++;
+            } else if (c == ']' && depth > 0) {
+                depth--;
+            } else if (c == target && depth == 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 在上下文中求值
+     */
+    public Object evaluate(WorkflowContext context) {
+        if (reference != null) {
+            return reference.evaluate(context);
+        }
+        if (parts == null) {
+            return literal;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (Object part : parts) {
+            if (part instanceof Reference ref) {
+                Object value = ref.evaluate(context);
+                if (value != null) {
+                    sb.append(value);
+                }
+            } else {
+                sb.append((String) part);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 表达式引用的节点ID
+     */
+    public Set<String> nodeReferences() {
+        Set<String> nodeIds = new LinkedHashSet<>();
+        if (reference != null) {
+            reference.collectNode(nodeIds);
+        } else if (parts != null) {
+            for (Object part : parts) {
+                if (part instanceof Reference ref) {
+                    ref.collectNode(nodeIds);
+                }
+            }
+        }
+        return nodeIds;
+    }
+
+    /**
+     * 一个 ${...} 引用：来源 + 访问链 + 默认值
+     */
+    private static final class Reference {
+
+        private final String source;
+        private final Step[] steps;
+        private final Object defaultValue;
+
+        private Reference(String source, Step[] steps, Object defaultValue) {
+            this.source = source;
+            this.steps = steps;
+            this.defaultValue = defaultValue;
+        }
+
+        static Reference parse(String body) {
+            String path = body;
+            Object defaultValue = null;
+            int colon = indexOfUnquoted(body, 0, ':');
+            if (colon >= 0) {
+                path = body.substring(0, colon);
+                defaultValue = parseDefault(body.substring(colon + 1));
+            }
+            path = path.trim();
+
+            int i = 0;
+            while (i < path.length() && path.charAt(i) != '.' && path.charAt(i) != '[') {
+                i++;
+            }
+            String source = path.substring(0, i);
+            if (!SOURCE_INPUT.equals(source) && !SOURCE_CONTEXT.equals(source) && !SOURCE_NODES.equals(source)) {
+                throw new IllegalArgumentException("不支持的来源 '" + source + "'，只能是 input、context 或 nodes: ${" + body + "}");
+            }
+
+            List<Step> steps = new ArrayList<>();
+            while (i < path.length()) {
+                char c = path.charAt(i);
+                if (c == '.') {
+                    int next = i + 1;
+                    while (next < path.length() && path.charAt(next) != '.' && path.charAt(next) != '[') {
+                        next++;
+                    }
+                    if (next == i + 1) {
+                        throw new IllegalArgumentException("字段名为空: ${" + body + "}");
+                    }
+                    steps.add(Step.key(path.substring(i + 1, next)));
+                    i = next;
+                } else if (c == '[') {
+                    int close = indexOfUnquoted(path, i + 1, ']');
+                    if (close < 0) {
+                        throw new IllegalArgumentException("缺少右方括号: ${" + body + "}");
+                    }
+                    String inner = path.substring(i + 1, close).trim();
+                    if (isQuoted(inner)) {
+                        steps.add(Step.key(inner.substring(1, inner.length() - 1)));
+                    } else if (INTEGER.matcher(inner).matches() && !inner.startsWith("-")) {
+                        steps.add(Step.index(Integer.parseInt(inner)));
+                    } else {
+                        throw new IllegalArgumentException("下标必须是非负整数或带引号的键名: ${" + body + "}");
+                    }
+                    i = close + 1;
+                } else {
+                    throw new IllegalArgumentException("无法解析的路径: ${" + body + "}");
+                }
+            }
+            if (steps.isEmpty()) {
+                throw new IllegalArgumentException("缺少字段路径: ${" + body + "}");
+            }
+            if (SOURCE_NODES.equals(source) && steps.get(0).key == null) {
+                throw new IllegalArgumentException("nodes 后应为节点ID: ${" + body + "}");
+            }
+            return new Reference(source, steps.toArray(new Step[0]), defaultValue);
+        }
+
+        Object evaluate(WorkflowContext context) {
+            Object current = switch (source) {
+                case SOURCE_INPUT -> context.getInput();
+                case SOURCE_CONTEXT -> context.getVariables();
+                default -> context.getNodeOutputs();
+            };
+            for (Step step : steps) {
+                current = step.apply(current);
+                if (current == null) {
+                    break;
+                }
+            }
+            return current != null ? current : defaultValue;
+        }
+
+        void collectNode(Set<String> nodeIds) {
+            if (SOURCE_NODES.equals(source)) {
+                nodeIds.add(steps[0].key);
+            }
+        }
+
+        private static Object parseDefault(String text) {
+            String value = text.trim();
+            if (isQuoted(value)) {
+                return value.substring(1, value.length() - 1);
+            }
+            if ("true".equals(value) || "false".equals(value)) {
+                return Boolean.valueOf(value);
+            }
+            if (INTEGER.matcher(value).matches()) {
+                try {
+                    return Long.valueOf(value);
+                } catch (NumberFormatException e) {
+                    return value;
+                }
+            }
+            if (DECIMAL.matcher(value).matches()) {
+                return Double.valueOf(value);
+            }
+            return value;
+        }
+
+        private static boolean isQuoted(String value) {
+            return value.length() >= 2
+                    && (value.charAt(0) == '\'' || value.charAt(0) == '"')
+                    && value.charAt(value.length() - 1) == value.charAt(0);
+        }
+    }
+
+    /**
+     * 访问链中的一步：按键取 Map 的值，或按下标取 List/数组的元素
+     */
+    private static final class Step {
+
+        private final String key;
+        private final int index;
+
+        private Step(String key, int index) {
+            this.key = key;
+            this.index = index;
+        }
+
+        static Step key(String key) {
+            return new Step(key, -1);
+        }
+
+        static Step index(int index) {
+            return new Step(null, index);
+        }
+
+        Object apply(Object current) {
+            if (key != null) {
+                return current instanceof Map<?, ?> map ? map.get(key) : null;
+            }
+            if (current instanceof List<?> list) {
+                return index < list.size() ? list.get(index) : null;
+            }
+            if (current != null && current.getClass().isArray()) {
+                return index < Array.getLength(current) ? Array.get(current, index) : null;
+            }
+            return null;
+        }
+    }
+}
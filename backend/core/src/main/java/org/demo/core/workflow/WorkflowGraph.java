@@ -0,0 +1,304 @@
+package org.demo.core.workflow;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.demo.core.exception.WorkflowDefinitionException;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+
+/**
+ * 工作流DAG
+ * 由 workflow.definition 解析并校验得到，构建后只读，可在多次执行间共享
+ *
+ * definition 格式：
+ * {
+ * "nodes": [
+ * {"nodeId": "start", "nodeType": "start"},
+ * {"nodeId": "n1", "nodeType": "plugin", "pluginConfig": {"pluginId": "...", "operationId": "...", ...}},
+ * "end"
+ * ],
+ * "edges": [{"source": "start", "target": "n1"}, {"source": "n1", "target": "end"}]
+ * }
+ * 节点可以只写ID字符串（视为空节点）；nodeId/nodeType 也可写作 id/type，带 pluginConfig 时类型默认为 plugin
+ *
+ * 校验规则：节点ID非空且唯一、节点类型受支持、插件节点配置完整、连线两端节点存在、无自环和环路，
+ * 参数表达式语法正确（见 WorkflowExpression），
+ * 以及参数中引用的 ${nodes.xxx} 必须是当前节点的上游节点（并行执行时非上游节点的输出不保证已产生）
+ */
+public final class WorkflowGraph {
+
+    private static final Set<String> SUPPORTED_TYPES = Set.of(
+            WorkflowNode.TYPE_START, WorkflowNode.TYPE_END, WorkflowNode.TYPE_NOOP, WorkflowNode.TYPE_PLUGIN);
+
+    private final Map<String, WorkflowNode> nodes;
+    private final Map<String, List<String>> successors;
+    private final Map<String, List<String>> predecessors;
+    private final List<String> topologicalOrder;
+    private final int edgeCount;
+
+    private WorkflowGraph(Map<String, WorkflowNode> nodes, Map<String, List<String>> successors,
+            Map<String, List<String>> predecessors, List<String> topologicalOrder, int edgeCount) {
+        this.nodes = nodes;
+        this.successors = successors;
+        this.predecessors = predecessors;
+        this.topologicalOrder = topologicalOrder;
+        this.edgeCount = edgeCount;
+    }
+
+    /**
+     * 解析并校验工作流定义
+     *
+     * @param definition   workflow.definition
+     * @param objectMapper 用于转换插件节点配置
+     * @throws WorkflowDefinitionException 定义不合法，包含全部校验错误
+     */
+    public static WorkflowGraph parse(JsonNode definition, ObjectMapper objectMapper) {
+        List<String> errors = new ArrayList<>();
+        if (definition == null || !definition.path("nodes").isArray() || definition.path("nodes").isEmpty()) {
+            throw new WorkflowDefinitionException(List.of("definition.nodes 不能为空"));
+        }
+
+        // 1. 节点
+        Map<String, WorkflowNode> nodes = new LinkedHashMap<>();
+        int index = 0;
+        for (JsonNode item : definition.get("nodes")) {
+            WorkflowNode node = parseNode(item, index++, objectMapper, errors);
+            if (node == null) {
+                continue;
+            }
+            if (nodes.putIfAbsent(node.id(), node) != null) {
+                errors.add("节点ID重复: " + node.id());
+            }
+        }
+
+        // 2. 连线
+        Map<String, List<String>> successors = new HashMap<>();
+        Map<String, List<String>> predecessors = new HashMap<>();
+        for (String id : nodes.keySet()) {
+            successors.put(id, new ArrayList<>());
+            predecessors.put(id, new ArrayList<>());
+        }
+        int edgeCount = 0;
+        JsonNode edges = definition.path("edges");
+        if (!edges.isMissingNode() && !edges.isNull() && !edges.isArray()) {
+            errors.add("definition.edges 必须是数组");
+        } else if (edges.isArray()) {
+            for (JsonNode edge : edges) {
+                String source = edge.path("source").asText(null);
+                String target = edge.path("target").asText(null);
+                if (source == null || target == null) {
+                    errors.add("连线缺少 source 或 target: " + edge);
+                } else if (!nodes.containsKey(source) || !nodes.containsKey(target)) {
+                    errors.add("连线引用了不存在的节点: " + source + " -> " + target);
+                } else if (source.equals(target)) {
+                    errors.add("节点不能连向自身: " + source);
+                } else if (!successors.get(source).contains(target)) {
+                    successors.get(source).add(target);
+                    predecessors.get(target).add(source);
+                    edgeCount++;
+                }
+            }
+        }
+        if (!errors.isEmpty()) {
+            throw new WorkflowDefinitionException(errors);
+        }
+
+        // 3. 拓扑排序（Kahn），剩余节点即在环上
+        Map<String, Integer> inDegrees = new HashMap<>();
+        Queue<String> queue = new ArrayDeque<>();
+        for (String id : nodes.keySet()) {
+            inDegrees.put(id, predecessors.get(id).size());
+            if (predecessors.get(id).isEmpty()) {
+                queue.add(id);
+            }
+        }
+        List<String> order = new ArrayList<>(nodes.size());
+        while (!queue.isEmpty()) {
+            String id = queue.poll();
+            order.add(id);
+            for (String next : successors.get(id)) {
+                if (inDegrees.merge(next, -1, Integer::sum) == 0) {
+                    queue.add(next);
+                }
+            }
+        }
+        if (order.size() < nodes.size()) {
+            List<String> cyclic = new ArrayList<>();
+            for (String id : nodes.keySet()) {
+                if (inDegrees.get(id) > 0) {
+                    cyclic.add(id);
+                }
+            }
+            throw new WorkflowDefinitionException(List.of("工作流存在环路，涉及节点: " + cyclic));
+        }
+
+        // 4. ${nodes.xxx} 只能引用上游节点
+        Map<String, Integer> position = new HashMap<>();
+        for (int i = 0; i < order.size(); i++) {
+            position.put(order.get(i), i);
+        }
+        Map<String, BitSet> ancestors = new HashMap<>();
+        for (String id : order) {
+            BitSet set = new BitSet(order.size());
+            for (String parent : predecessors.get(id)) {
+                set.set(position.get(parent));
+                set.or(ancestors.get(parent));
+            }
+            ancestors.put(id, set);
+        }
+        for (WorkflowNode node : nodes.values()) {
+            for (WorkflowExpression expression : node.params().values()) {
+                for (String referenced : expression.nodeReferences()) {
+                    Integer pos = position.get(referenced);
+                    if (pos == null) {
+                        errors.add("节点 " + node.id() + " 引用了不存在的节点: " + referenced);
+                    } else if (!ancestors.get(node.id()).get(pos)) {
+                        errors.add("节点 " + node.id() + " 引用的节点 " + referenced + " 不是其上游节点");
+                    }
+                }
+            }
+        }
+        if (!errors.isEmpty()) {
+            throw new WorkflowDefinitionException(errors);
+        }
+
+        successors.replaceAll((id, list) -> List.copyOf(list));
+        predecessors.replaceAll((id, list) -> List.copyOf(list));
+        return new WorkflowGraph(Collections.unmodifiableMap(nodes), Map.copyOf(successors),
+                Map.copyOf(predecessors), List.copyOf(order), edgeCount);
+    }
+
+    private static WorkflowNode parseNode(JsonNode item, int index, ObjectMapper objectMapper, List<String> errors) {
+        if (item.isTextual()) {
+            String id = item.asText().trim();
+            if (id.isEmpty()) {
+                errors.add("第" + (index + 1) + "个节点ID为空");
+                return null;
+            }
+            return new WorkflowNode(id, WorkflowNode.TYPE_NOOP, null, Map.of());
+        }
+        if (!item.isObject()) {
+            errors.add("第" + (index + 1) + "个节点格式不正确");
+            return null;
+        }
+
+        String id = textOf(item, "nodeId", "id");
+        if (id == null) {
+            errors.add("第" + (index + 1) + "个节点缺少 nodeId");
+            return null;
+        }
+        JsonNode pluginNode = item.get("pluginConfig");
+        String type = textOf(item, "nodeType", "type");
+        if (type == null) {
+            type = pluginNode != null && pluginNode.isObject() ? WorkflowNode.TYPE_PLUGIN : WorkflowNode.TYPE_NOOP;
+        }
+        type = type.toLowerCase();
+        if (!SUPPORTED_TYPES.contains(type)) {
+            errors.add("节点 " + id + " 的类型不受支持: " + type);
+            return null;
+        }
+        if (!WorkflowNode.TYPE_PLUGIN.equals(type)) {
+            return new WorkflowNode(id, type, null, Map.of());
+        }
+
+        if (pluginNode == null || !pluginNode.isObject()) {
+            errors.add("插件节点 " + id + " 缺少 pluginConfig");
+            return null;
+        }
+        PluginNodeConfig config;
+        try {
+            config = objectMapper.treeToValue(pluginNode, PluginNodeConfig.class);
+        } catch (Exception e) {
+            errors.add("插件节点 " + id + " 的 pluginConfig 格式不正确: " + e.getMessage());
+            return null;
+        }
+        if (config.getPluginId() == null || config.getPluginId().isBlank()) {
+            errors.add("插件节点 " + id + " 缺少 pluginId");
+        }
+        if (config.getOperationId() == null || config.getOperationId().isBlank()) {
+            errors.add("插件节点 " + id + " 缺少 operationId");
+        }
+        config.setNodeId(id);
+        if (config.getRetryCount() == null || config.getRetryCount() < 0) {
+            config.setRetryCount(0);
+        }
+        if (config.getRetryInterval() == null || config.getRetryInterval() < 0) {
+            config.setRetryInterval(PluginNodeConfig.DEFAULT_RETRY_INTERVAL);
+        }
+        if (config.getRetryMaxInterval() != null && config.getRetryMaxInterval() < 0) {
+            errors.add("插件节点 " + id + " 的 retryMaxInterval 不能为负数");
+        }
+        if (config.getRetryJitter() != null && (config.getRetryJitter() < 0 || config.getRetryJitter() > 1)) {
+            errors.add("插件节点 " + id + " 的 retryJitter 必须在 0 到 1 之间");
+        }
+        Map<String, WorkflowExpression> params;
+        try {
+            params = WorkflowExpression.compileAll(config.getParamMappings());
+        } catch (IllegalArgumentException e) {
+            errors.add("插件节点 " + id + " " + e.getMessage());
+            return null;
+        }
+        return new WorkflowNode(id, type, config, params);
+    }
+
+    private static String textOf(JsonNode item, String name, String alias) {
+        JsonNode value = item.hasNonNull(name) ? item.get(name) : item.get(alias);
+        if (value == null || !value.isValueNode() || value.asText().isBlank()) {
+            return null;
+        }
+        return value.asText().trim();
+    }
+
+    public Map<String, WorkflowNode> nodes() {
+        return nodes;
+    }
+
+    public WorkflowNode node(String id) {
+        return nodes.get(id);
+    }
+
+    public List<String> successors(String id) {
+        return successors.get(id);
+    }
+
+    public List<String> predecessors(String id) {
+        return predecessors.get(id);
+    }
+
+    /**
+     * 拓扑序，同一层内保持定义中的顺序
+     */
+    public List<String> topologicalOrder() {
+        return topologicalOrder;
+    }
+
+    public int edgeCount() {
+        return edgeCount;
+    }
+
+    /**
+     * 最长路径上的节点数
+     */
+    public int depth() {
+        Map<String, Integer> level = new HashMap<>();
+        int depth = 0;
+        for (String id : topologicalOrder) {
+            int value = 1;
+            for (String parent : predecessors.get(id)) {
+                value = Math.max(value, level.get(parent) + 1);
+            }
+            level.put(id, value);
+            depth = Math.max(depth, value);
+        }
+        return depth;
+    }
+}
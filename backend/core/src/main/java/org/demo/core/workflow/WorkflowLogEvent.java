@@ -0,0 +1,16 @@
+package org.demo.core.workflow;
+
+/**
+ * 工作流执行日志事件
+ *
+ * @param timestamp 时间戳（毫秒）
+ * @param nodeId    产生日志的节点ID，工作流级日志为null
+ * @param level     级别：INFO、WARN、ERROR
+ * @param message   日志内容
+ */
+public record WorkflowLogEvent(long timestamp, String nodeId, String level, String message) {
+
+    public static final String INFO = "INFO";
+    public static final String WARN = "WARN";
+    public static final String ERROR = "ERROR";
+}
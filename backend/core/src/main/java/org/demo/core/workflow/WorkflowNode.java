@@ -0,0 +1,27 @@
+package org.demo.core.workflow;
+
+import java.util.Map;
+
+/**
+ * 工作流节点
+ *
+ * @param id           节点ID
+ * @param type         节点类型：start、end、noop 为空节点，plugin 为插件节点
+ * @param pluginConfig 插件节点配置，其他类型为null
+ * @param params       由 pluginConfig.paramMappings 预编译的参数表达式，其他类型为空
+ */
+public record WorkflowNode(String id, String type, PluginNodeConfig pluginConfig,
+        Map<String, WorkflowExpression> params) {
+
+    public static final String TYPE_START = "start";
+    public static final String TYPE_END = "end";
+    public static final String TYPE_NOOP = "noop";
+    public static final String TYPE_PLUGIN = "plugin";
+
+    /**
+     * 是否为需要执行的插件节点
+     */
+    public boolean isPlugin() {
+        return TYPE_PLUGIN.equals(type);
+    }
+}
@@ -0,0 +1,25 @@
+package org.demo.core.workflow;
+
+import java.util.Map;
+
+/**
+ * 插件节点的执行检查点，保存在 workflow_run.node_states 中（key 为节点ID）
+ * 恢复执行时，completed 的节点不再调用插件，直接把 output 和 variables 写回上下文
+ *
+ * @param status       节点状态：success、failed
+ * @param completed    是否计为已完成（成功，或失败但配置了 continueOnError），下游节点已据此执行
+ * @param output       写入 nodeOutputs 的节点输出
+ * @param variables    节点写入的上下文变量（outputMapping）
+ * @param errorCode    错误码
+ * @param errorMessage 错误信息
+ * @param httpStatus   插件返回的HTTP状态码
+ * @param retryCount   重试次数
+ * @param duration     节点耗时（毫秒，含重试等待）
+ * @param finishedAt   完成时间戳（毫秒）
+ */
+public record WorkflowNodeState(String status, boolean completed, Object output, Map<String, Object> variables,
+        String errorCode, String errorMessage, Integer httpStatus, int retryCount, long duration, long finishedAt) {
+
+    public static final String SUCCESS = "success";
+    public static final String FAILED = "failed";
+}
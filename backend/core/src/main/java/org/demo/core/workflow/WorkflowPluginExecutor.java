@@ -5,154 +5,269 @@ import org.demo.core.service.PluginService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
 /**
  * 工作流插件节点执行器
  * 负责在工作流中执行插件节点
+ *
+ * 每次尝试作为独立任务提交到 workflowNodeExecutor，失败后按节点的重试策略计算退避时间，
+ * 由 workflowRetryScheduler 定时器到期后再提交下一次尝试；等待重试期间不占用任何工作线程。
+ * 线程池已满时同样交给定时器稍后重新提交，不阻塞提交方。
+ * 插件调用本身不做重试（invokeOperation 的 retry=false），退避等待全部由定时器负责
  */
 @Service
 public class WorkflowPluginExecutor {
 
     private static final Logger logger = LoggerFactory.getLogger(WorkflowPluginExecutor.class);
 
+    /**
+     * 线程池已满时重新提交的间隔（毫秒）
+     */
+    private static final long RESUBMIT_DELAY_MILLIS = 50;
+
     @Autowired
     private PluginService pluginService;
 
+    @Autowired
+    @Qualifier("workflowNodeExecutor")
+    private ExecutorService nodeExecutor;
+
+    @Autowired
+    @Qualifier("workflowRetryScheduler")
+    private ScheduledExecutorService retryScheduler;
+
     /**
-     * 执行插件节点
+     * 执行插件节点，参数映射在本次调用时编译
      *
      * @param nodeConfig 节点配置
      * @param context    工作流上下文
      * @return 执行结果
      */
     public PluginNodeResult execute(PluginNodeConfig nodeConfig, WorkflowContext context) {
-        LocalDateTime startTime = LocalDateTime.now();
-        long startMillis = System.currentTimeMillis();
-
-        String pluginId = nodeConfig.getPluginId();
-        String operationId = nodeConfig.getOperationId();
-        String nodeId = nodeConfig.getNodeId();
-
-        context.log("开始执行插件节点: " + nodeId + " (plugin=" + pluginId + ", operation=" + operationId + ")");
-
-        int retryCount = 0;
-        PluginNodeResult result = null;
-
-        // 重试循环
-        do {
-            try {
-                // 1. 解析参数映射，将表达式转换为实际值
-                Map<String, Object> resolvedParams = resolveParams(nodeConfig.getParamMappings(), context);
-                context.log("解析后的参数: " + resolvedParams);
-
-                // 2. 调用插件服务执行操作
-                PluginInvokeResult invokeResult = pluginService.invokeOperation(
-                        pluginId,
-                        operationId,
-                        resolvedParams,
-                        nodeConfig.getTimeout());
-
-                // 3. 转换结果
-                result = convertToNodeResult(invokeResult, startTime, startMillis, retryCount);
-
-                if (result.isSuccess()) {
-                    // 成功，跳出重试循环
-                    context.log("插件节点执行成功，耗时: " + result.getDuration() + "ms");
-
-                    // 4. 将结果存储到上下文
-                    storeResult(nodeConfig, context, result);
-                    break;
-                } else {
-                    // 失败，检查是否需要重试
-                    context.log("插件节点执行失败: " + result.getErrorMessage());
-                    retryCount++;
-
-                    if (retryCount <= nodeConfig.getRetryCount()) {
-                        context.log("准备第 " + retryCount + " 次重试，等待 " + nodeConfig.getRetryInterval() + "ms");
-                        Thread.sleep(nodeConfig.getRetryInterval());
-                    }
-                }
-
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                result = PluginNodeResult.failure("INTERRUPTED", "执行被中断");
-                break;
-            } catch (Exception e) {
-                logger.error("插件节点执行异常: nodeId={}, error={}", nodeId, e.getMessage(), e);
-                result = PluginNodeResult.failure("EXECUTION_ERROR", "执行异常: " + e.getMessage());
-                retryCount++;
-
-                if (retryCount <= nodeConfig.getRetryCount()) {
-                    try {
-                        context.log("执行异常，准备第 " + retryCount + " 次重试");
-                        Thread.sleep(nodeConfig.getRetryInterval());
-                    } catch (InterruptedException ie) {
-                        Thread.currentThread().interrupt();
-                        break;
-                    }
-                }
-            }
-        } while (retryCount <= nodeConfig.getRetryCount());
-
-        // 设置最终的计时信息
-        LocalDateTime endTime = LocalDateTime.now();
-        long duration = System.currentTimeMillis() - startMillis;
-        result = result.withTiming(startTime, endTime, duration);
-        result.setRetryCount(retryCount > 0 ? retryCount - 1 : 0);
+        Map<String, WorkflowExpression> params;
+        try {
+            params = WorkflowExpression.compileAll(nodeConfig.getParamMappings());
+        } catch (IllegalArgumentException e) {
+            context.log(nodeConfig.getNodeId(), WorkflowLogEvent.ERROR, "插件节点参数表达式不正确: " + e.getMessage());
+            return PluginNodeResult.failure("INVALID_EXPRESSION", e.getMessage());
+        }
+        return execute(nodeConfig, params, context);
+    }
+
+    /**
+     * 执行插件节点并等待结果
+     *
+     * @param nodeConfig 节点配置
+     * @param params     预编译的参数表达式（WorkflowGraph 解析定义时生成）
+     * @param context    工作流上下文
+     * @return 执行结果
+     */
+    public PluginNodeResult execute(PluginNodeConfig nodeConfig, Map<String, WorkflowExpression> params,
+            WorkflowContext context) {
+        NodeExecution execution = executeAsync(nodeConfig, params, context);
+        try {
+            return execution.result().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            execution.cancel();
+            return PluginNodeResult.failure("INTERRUPTED", "执行被中断");
+        } catch (ExecutionException e) {
+            return PluginNodeResult.failure("EXECUTION_ERROR", "执行异常: " + e.getCause().getMessage());
+        }
+    }
+
+    /**
+     * 异步执行插件节点，立即返回
+     *
+     * @param nodeConfig 节点配置
+     * @param params     预编译的参数表达式
+     * @param context    工作流上下文
+     * @return 执行句柄，所有重试结束后完成；节点输出在完成前已提交到上下文
+     */
+    public NodeExecution executeAsync(PluginNodeConfig nodeConfig, Map<String, WorkflowExpression> params,
+            WorkflowContext context) {
+        NodeRun run = new NodeRun(nodeConfig, params, context);
+        run.scope.log("开始执行插件节点: " + nodeConfig.getNodeId() + " (plugin=" + nodeConfig.getPluginId()
+                + ", operation=" + nodeConfig.getOperationId() + ")");
+        submit(run);
+        return run.execution;
+    }
 
-        // 处理失败情况
-        if (!result.isSuccess()) {
-            if (nodeConfig.isContinueOnError()) {
-                context.log("节点执行失败，但配置了continueOnError，工作流继续执行");
-                // 即使失败，也将错误信息存储到上下文
-                storeErrorResult(nodeConfig, context, result);
-            } else {
-                context.log("节点执行失败，工作流将终止");
-            }
+    /**
+     * 提交一次尝试；线程池已满时交给定时器稍后重试提交
+     */
+    private void submit(NodeRun run) {
+        if (run.execution.isCancelled()) {
+            return;
         }
+        try {
+            run.execution.setCurrent(nodeExecutor.submit(() -> attempt(run)));
+        } catch (RejectedExecutionException e) {
+            schedule(run, RESUBMIT_DELAY_MILLIS);
+        }
+    }
 
-        return result;
+    /**
+     * delayMillis 后提交下一次尝试，等待期间只占用定时器中的一个条目
+     */
+    private void schedule(NodeRun run, long delayMillis) {
+        try {
+            run.execution.setCurrent(retryScheduler.schedule(() -> submit(run), delayMillis, TimeUnit.MILLISECONDS));
+        } catch (RejectedExecutionException e) {
+            // 应用关闭中
+            finish(run, PluginNodeResult.failure("REJECTED", "工作流执行器已关闭"));
+        }
     }
 
     /**
-     * 解析参数映射，将表达式转换为实际值
+     * 执行一次尝试，失败时决定是否安排重试
      */
-    private Map<String, Object> resolveParams(Map<String, Object> paramMappings, WorkflowContext context) {
-        if (paramMappings == null || paramMappings.isEmpty()) {
-            return new HashMap<>();
+    private void attempt(NodeRun run) {
+        PluginNodeConfig nodeConfig = run.config;
+        PluginNodeResult result;
+        try {
+            // 1. 按预编译的表达式求值，得到实际参数
+            Map<String, Object> resolvedParams = resolveParams(run.params, run.context);
+            run.scope.log("解析后的参数: " + resolvedParams);
+
+            // 2. 调用插件服务执行操作，重试由节点的重试策略负责
+            PluginInvokeResult invokeResult = pluginService.invokeOperation(
+                    nodeConfig.getPluginId(),
+                    nodeConfig.getOperationId(),
+                    resolvedParams,
+                    nodeConfig.getTimeout(),
+                    false);
+
+            // 3. 转换结果
+            result = convertToNodeResult(invokeResult, run.retries);
+        } catch (Exception e) {
+            logger.error("插件节点执行异常: nodeId={}, error={}", nodeConfig.getNodeId(), e.getMessage(), e);
+            result = PluginNodeResult.failure("EXECUTION_ERROR", "执行异常: " + e.getMessage());
         }
 
-        Map<String, Object> resolved = new HashMap<>();
-        for (Map.Entry<String, Object> entry : paramMappings.entrySet()) {
-            String paramName = entry.getKey();
-            Object expression = entry.getValue();
+        if (result.isSuccess()) {
+            run.scope.log("插件节点执行成功，耗时: " + result.getDuration() + "ms");
+            finish(run, result);
+            return;
+        }
+        run.scope.warn("插件节点执行失败: " + result.getErrorMessage());
+        if (run.execution.isCancelled()) {
+            return;
+        }
 
-            // 使用上下文解析表达式
-            Object resolvedValue = context.resolveExpression(expression);
-            resolved.put(paramName, resolvedValue);
+        // 4. 按重试策略安排下一次尝试
+        int maxRetries = nodeConfig.getRetryCount() != null ? nodeConfig.getRetryCount() : 0;
+        if (run.retries < maxRetries && isRetryable(nodeConfig, result)) {
+            run.retries++;
+            long delay = backoffMillis(nodeConfig, run.retries);
+            run.scope.log("准备第 " + run.retries + " 次重试，等待 " + delay + "ms");
+            schedule(run, delay);
+            return;
+        }
+        finish(run, result);
+    }
+
+    /**
+     * 结束节点执行：补全计时，提交节点输出，完成句柄
+     */
+    private void finish(NodeRun run, PluginNodeResult result) {
+        LocalDateTime endTime = LocalDateTime.now();
+        long duration = System.currentTimeMillis() - run.startMillis;
+        result = result.withTiming(run.startTime, endTime, duration);
+        result.setRetryCount(run.retries);
+
+        if (result.isSuccess()) {
+            // 将结果写入本节点的范围
+            storeResult(run.config, run.scope, result);
+        } else if (run.config.isContinueOnError()) {
+            run.scope.warn("节点执行失败，但配置了continueOnError，工作流继续执行");
+            // 即使失败，也将错误信息存储到上下文
+            storeErrorResult(run.scope, result);
+        } else {
+            run.scope.warn("节点执行失败，工作流将终止");
+        }
+
+        // 已取消的节点不再改动上下文
+        if (!run.execution.isCancelled()) {
+            run.scope.commit();
+        }
+        run.execution.complete(result);
+    }
+
+    /**
+     * 判断失败是否值得重试：超时、网络异常、5xx、408、429 总是重试；
+     * 其余 4xx 通常是参数问题，只有节点配置 retryOnClientError 时才重试；
+     * 没有HTTP状态的其他失败（操作不存在、插件已禁用、未配置地址、熔断中、参数求值异常等）重试也不会成功，直接失败
+     */
+    private static boolean isRetryable(PluginNodeConfig nodeConfig, PluginNodeResult result) {
+        if ("TIMEOUT".equals(result.getErrorCode()) || "NETWORK_ERROR".equals(result.getErrorCode())) {
+            return true;
         }
+        Integer status = result.getHttpStatus();
+        if (status == null) {
+            return false;
+        }
+        if (status >= 500 || status == 408 || status == 429) {
+            return true;
+        }
+        return status >= 400 && nodeConfig.isRetryOnClientError();
+    }
 
+    /**
+     * 第 retry 次重试前的等待时间（毫秒）
+     * retryInterval × retryBackoffMultiplier^(retry-1)，不超过 retryMaxInterval，
+     * 再按 retryJitter 比例随机缩短，避免同一设备接口的大量重试同时到达
+     */
+    static long backoffMillis(PluginNodeConfig nodeConfig, int retry) {
+        double interval = nodeConfig.getRetryInterval() != null
+                ? nodeConfig.getRetryInterval() : PluginNodeConfig.DEFAULT_RETRY_INTERVAL;
+        double multiplier = nodeConfig.getRetryBackoffMultiplier() != null
+                ? Math.max(1.0, nodeConfig.getRetryBackoffMultiplier()) : PluginNodeConfig.DEFAULT_RETRY_BACKOFF_MULTIPLIER;
+        double maxInterval = nodeConfig.getRetryMaxInterval() != null
+                ? nodeConfig.getRetryMaxInterval() : PluginNodeConfig.DEFAULT_RETRY_MAX_INTERVAL;
+        double jitter = nodeConfig.getRetryJitter() != null
+                ? Math.min(1.0, Math.max(0.0, nodeConfig.getRetryJitter())) : PluginNodeConfig.DEFAULT_RETRY_JITTER;
+
+        double delay = Math.min(maxInterval, interval * Math.pow(multiplier, retry - 1));
+        delay *= 1 - jitter * ThreadLocalRandom.current().nextDouble();
+        return Math.max(0, (long) delay);
+    }
+
+    /**
+     * 对参数表达式求值
+     */
+    private Map<String, Object> resolveParams(Map<String, WorkflowExpression> params, WorkflowContext context) {
+        Map<String, Object> resolved = new HashMap<>(Math.max(16, params.size() * 2));
+        for (Map.Entry<String, WorkflowExpression> entry : params.entrySet()) {
+            resolved.put(entry.getKey(), entry.getValue().evaluate(context));
+        }
         return resolved;
     }
 
     /**
      * 将PluginInvokeResult转换为PluginNodeResult
      */
-    private PluginNodeResult convertToNodeResult(PluginInvokeResult invokeResult,
-            LocalDateTime startTime,
-            long startMillis,
-            int retryCount) {
+    private PluginNodeResult convertToNodeResult(PluginInvokeResult invokeResult, int retryCount) {
         PluginNodeResult result;
 
         if (invokeResult.isSuccess()) {
             result = PluginNodeResult.success(invokeResult.getParsedData());
         } else if (invokeResult.isTimeout()) {
             result = PluginNodeResult.timeout(invokeResult.getErrorMessage());
+        } else if (invokeResult.isNetworkError()) {
+            result = PluginNodeResult.networkError(invokeResult.getErrorMessage());
         } else {
             result = PluginNodeResult.failure(
                     invokeResult.getHttpStatusCode() != null ? "HTTP_" + invokeResult.getHttpStatusCode()
@@ -168,27 +283,23 @@ public class WorkflowPluginExecutor {
     }
 
     /**
-     * 将成功结果存储到工作流上下文
+     * 将成功结果写入节点范围
      */
-    private void storeResult(PluginNodeConfig nodeConfig, WorkflowContext context, PluginNodeResult result) {
-        String nodeId = nodeConfig.getNodeId();
-
+    private void storeResult(PluginNodeConfig nodeConfig, WorkflowContext.NodeScope scope, PluginNodeResult result) {
         // 1. 始终将完整结果存储到nodeOutputs
-        context.setNodeOutput(nodeId, result.getData());
+        scope.setOutput(result.getData());
 
         // 2. 根据outputMapping将特定字段映射到上下文变量
         String outputMapping = nodeConfig.getOutputMapping();
         if (outputMapping != null && !outputMapping.isEmpty()) {
-            context.setVariable(outputMapping, result.getData());
+            scope.setVariable(outputMapping, result.getData());
         }
     }
 
     /**
-     * 将失败结果存储到工作流上下文
+     * 将失败结果写入节点范围
      */
-    private void storeErrorResult(PluginNodeConfig nodeConfig, WorkflowContext context, PluginNodeResult result) {
-        String nodeId = nodeConfig.getNodeId();
-
+    private void storeErrorResult(WorkflowContext.NodeScope scope, PluginNodeResult result) {
         // 存储错误信息到nodeOutputs
         Map<String, Object> errorOutput = new HashMap<>();
         errorOutput.put("success", false);
@@ -196,6 +307,29 @@ public class WorkflowPluginExecutor {
         errorOutput.put("errorMessage", result.getErrorMessage());
         errorOutput.put("httpStatus", result.getHttpStatus());
 
-        context.setNodeOutput(nodeId, errorOutput);
+        scope.setOutput(errorOutput);
+    }
+
+    /**
+     * 一次节点执行的状态，依次由各次尝试所在的线程访问
+     */
+    private static final class NodeRun {
+
+        private final PluginNodeConfig config;
+        private final Map<String, WorkflowExpression> params;
+        private final WorkflowContext context;
+        private final WorkflowContext.NodeScope scope;
+        private final NodeExecution execution;
+        private final LocalDateTime startTime = LocalDateTime.now();
+        private final long startMillis = System.currentTimeMillis();
+        private int retries;
+
+        NodeRun(PluginNodeConfig config, Map<String, WorkflowExpression> params, WorkflowContext context) {
+            this.config = config;
+            this.params = params;
+            this.context = context;
+            this.scope = context.scope(config.getNodeId());
+            this.execution = new NodeExecution(scope);
+        }
     }
 }
@@ -0,0 +1,91 @@
+package org.demo.core.agent;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class KeywordAutomatonTest {
+
+    @Test
+    void reportsOverlappingAndNestedKeywords() {
+        KeywordAutomaton automaton = KeywordAutomaton.build(List.of("he", "she", "his", "hers"));
+
+        assertEquals(List.of(1, 0, 3), matches(automaton, "ushers"));
+        assertEquals(List.of(2), matches(automaton, "this"));
+    }
+
+    @Test
+    void followsFailureLinksAcrossPartialMatches() {
+        KeywordAutomaton automaton = KeywordAutomaton.build(List.of("abcd", "bce", "c"));
+
+        // abc 未能走到 abcd，失配后应从 bc 继续并命中 bce
+        assertEquals(List.of(2, 1), matches(automaton, "abce"));
+    }
+
+    @Test
+    void reportsEveryOccurrence() {
+        KeywordAutomaton automaton = KeywordAutomaton.build(List.of("开灯", "灯"));
+
+        assertEquals(List.of(0, 1, 0, 1), matches(automaton, "请开灯，再开灯"));
+    }
+
+    @Test
+    void ignoresEmptyKeywordsAndKeepsIds() {
+        KeywordAutomaton automaton = KeywordAutomaton.build(Arrays.asList("", null, "ab"));
+
+        assertEquals(List.of(2), matches(automaton, "xaby"));
+        assertTrue(matches(KeywordAutomaton.build(List.of()), "anything").isEmpty());
+    }
+
+    @Test
+    void duplicateKeywordsReportEachId() {
+        KeywordAutomaton automaton = KeywordAutomaton.build(List.of("温度", "温度"));
+
+        assertEquals(List.of(0, 1), matches(automaton, "温度"));
+    }
+
+    @Test
+    void agreesWithNaiveSearch() {
+        Random random = new Random(42);
+        for (int round = 0; round < 200; round++) {
+            List<String> keywords = new ArrayList<>();
+            for (int i = 0; i < 6; i++) {
+                keywords.add(randomText(random, 1 + random.nextInt(4)));
+            }
+            String text = randomText(random, 40);
+
+            List<Integer> expected = new ArrayList<>();
+            for (int i = 0; i < keywords.size(); i++) {
+                String keyword = keywords.get(i);
+                for (int from = text.indexOf(keyword); from >= 0; from = text.indexOf(keyword, from + 1)) {
+                    expected.add(i);
+                }
+            }
+            List<Integer> actual = matches(KeywordAutomaton.build(keywords), text);
+            Collections.sort(expected);
+            Collections.sort(actual);
+            assertEquals(expected, actual, "keywords=" + keywords + ", text=" + text);
+        }
+    }
+
+    private static List<Integer> matches(KeywordAutomaton automaton, String text) {
+        List<Integer> ids = new ArrayList<>();
+        automaton.match(text, ids::add);
+        return ids;
+    }
+
+    private static String randomText(Random random, int length) {
+        StringBuilder builder = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            builder.append((char) ('a' + random.nextInt(3)));
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,71 @@
+package org.demo.core.llm;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 桶容量取每分钟60个，每秒只补充1个，测试期间的补充量可以忽略
+ */
+class TokenBucketTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    void grantsImmediatelyWithinCapacity() {
+        LlmRateLimiter.TokenBucket bucket = new LlmRateLimiter.TokenBucket(60);
+
+        assertEquals(0, bucket.reserve(40, 0));
+        assertEquals(0, bucket.reserve(20, 0));
+    }
+
+    @Test
+    void overdraftIsConvertedToWaitAndQueuesLaterCallers() {
+        LlmRateLimiter.TokenBucket bucket = new LlmRateLimiter.TokenBucket(60);
+        bucket.reserve(60, 0);
+
+        assertAbout(30 * SECOND, bucket.reserve(30, Long.MAX_VALUE));
+        // 后来者排在透支部分之后
+        assertAbout(40 * SECOND, bucket.reserve(10, Long.MAX_VALUE));
+    }
+
+    @Test
+    void rejectsWithoutConsumingWhenWaitExceedsLimit() {
+        LlmRateLimiter.TokenBucket bucket = new LlmRateLimiter.TokenBucket(60);
+        bucket.reserve(50, 0);
+
+        assertEquals(-1, bucket.reserve(20, SECOND));
+        assertEquals(0, bucket.reserve(10, 0));
+    }
+
+    @Test
+    void capsCostAtCapacity() {
+        LlmRateLimiter.TokenBucket bucket = new LlmRateLimiter.TokenBucket(60);
+
+        // 超过容量的请求按容量计，满桶时可以立即通过
+        assertEquals(0, bucket.reserve(1000, 0));
+        assertAbout(60 * SECOND, bucket.reserve(1000, Long.MAX_VALUE));
+    }
+
+    @Test
+    void refundReturnsTokensUpToCapacity() {
+        LlmRateLimiter.TokenBucket bucket = new LlmRateLimiter.TokenBucket(60);
+        bucket.reserve(60, 0);
+        bucket.refund(20);
+
+        assertEquals(0, bucket.reserve(20, 0));
+
+        bucket.refund(1000);
+        assertEquals(0, bucket.reserve(60, 0));
+        assertTrue(bucket.reserve(1, 0) < 0);
+    }
+
+    private static void assertAbout(long expectedNanos, long actualNanos) {
+        // 测试执行期间补充的令牌会让等待略短
+        assertTrue(actualNanos <= expectedNanos && actualNanos > expectedNanos - SECOND / 2,
+                "expected about " + expectedNanos + " but was " + actualNanos);
+    }
+}
@@ -0,0 +1,181 @@
+package org.demo.core.plugin;
+
+import org.demo.core.model.vo.PluginCircuitBreakerVO;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PluginCircuitBreakerRegistryTest {
+
+    private static final String PLUGIN = "plugin-1";
+    private static final long OPEN_MILLIS = 100;
+
+    private PluginCircuitBreakerRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        registry = new PluginCircuitBreakerRegistry();
+        ReflectionTestUtils.setField(registry, "window", Duration.ofSeconds(30));
+        ReflectionTestUtils.setField(registry, "windowBuckets", 10);
+        ReflectionTestUtils.setField(registry, "minimumCalls", 4);
+        ReflectionTestUtils.setField(registry, "failureRateThreshold", 50);
+        ReflectionTestUtils.setField(registry, "openDuration", Duration.ofMillis(OPEN_MILLIS));
+        ReflectionTestUtils.setField(registry, "halfOpenProbes", 2);
+        ReflectionTestUtils.setField(registry, "maxAttempts", 3);
+        ReflectionTestUtils.setField(registry, "initialBackoff", Duration.ofMillis(200));
+        ReflectionTestUtils.setField(registry, "maxBackoff", Duration.ofSeconds(2));
+        ReflectionTestUtils.setField(registry, "budgetRatio", 0.2);
+        ReflectionTestUtils.setField(registry, "budgetMax", 1);
+    }
+
+    @Test
+    void staysClosedBelowMinimumCalls() {
+        for (int i = 0; i < 3; i++) {
+            registry.tryAcquire(PLUGIN, false).failure();
+        }
+
+        assertNotNull(registry.tryAcquire(PLUGIN, false));
+        assertEquals("CLOSED", stats().getState());
+        assertEquals(3, stats().getWindowFailures());
+    }
+
+    @Test
+    void opensWhenFailureRateReachesThreshold() {
+        registry.tryAcquire(PLUGIN, false).success();
+        registry.tryAcquire(PLUGIN, false).success();
+        registry.tryAcquire(PLUGIN, false).failure();
+        assertEquals("CLOSED", stats().getState());
+        registry.tryAcquire(PLUGIN, false).failure();
+
+        assertNull(registry.tryAcquire(PLUGIN, false));
+        assertTrue(registry.remainingOpenMillis(PLUGIN) > 0);
+        PluginCircuitBreakerVO stats = stats();
+        assertEquals("OPEN", stats.getState());
+        assertEquals(1, stats.getOpenCount());
+        assertEquals(1, stats.getShortCircuitCount());
+        assertEquals(0, stats.getWindowCalls());
+    }
+
+    @Test
+    void closesAfterAllProbesSucceed() throws InterruptedException {
+        trip();
+        Thread.sleep(OPEN_MILLIS + 50);
+
+        PluginCircuitBreakerRegistry.Call first = registry.tryAcquire(PLUGIN, false);
+        PluginCircuitBreakerRegistry.Call second = registry.tryAcquire(PLUGIN, false);
+        assertNotNull(first);
+        assertNotNull(second);
+        // 试探名额用完
+        assertNull(registry.tryAcquire(PLUGIN, false));
+        assertEquals("HALF_OPEN", stats().getState());
+
+        first.success();
+        assertNull(registry.tryAcquire(PLUGIN, false));
+        second.success();
+
+        assertEquals("CLOSED", stats().getState());
+        assertNotNull(registry.tryAcquire(PLUGIN, false));
+        assertNotNull(registry.tryAcquire(PLUGIN, false));
+    }
+
+    @Test
+    void reopensWhenProbeFails() throws InterruptedException {
+        trip();
+        Thread.sleep(OPEN_MILLIS + 50);
+
+        PluginCircuitBreakerRegistry.Call probe = registry.tryAcquire(PLUGIN, false);
+        PluginCircuitBreakerRegistry.Call other = registry.tryAcquire(PLUGIN, false);
+        probe.failure();
+
+        assertEquals("OPEN", stats().getState());
+        assertEquals(2, stats().getOpenCount());
+        assertNull(registry.tryAcquire(PLUGIN, false));
+        // 重新熔断后才返回的试探不改变状态
+        other.success();
+        assertEquals("OPEN", stats().getState());
+    }
+
+    @Test
+    void ignoredProbeReleasesItsSlot() throws InterruptedException {
+        trip();
+        Thread.sleep(OPEN_MILLIS + 50);
+
+        PluginCircuitBreakerRegistry.Call first = registry.tryAcquire(PLUGIN, false);
+        registry.tryAcquire(PLUGIN, false);
+        assertNull(registry.tryAcquire(PLUGIN, false));
+
+        first.ignore();
+        assertNotNull(registry.tryAcquire(PLUGIN, false));
+        assertEquals("HALF_OPEN", stats().getState());
+    }
+
+    @Test
+    void resultIsRecordedOnlyOnce() {
+        PluginCircuitBreakerRegistry.Call call = registry.tryAcquire(PLUGIN, false);
+        call.failure();
+        call.failure();
+        call.success();
+
+        assertEquals(1, stats().getWindowCalls());
+        assertEquals(1, stats().getWindowFailures());
+    }
+
+    @Test
+    void retryBudgetLimitsRetries() {
+        registry.tryAcquire(PLUGIN, false).failure();
+
+        assertTrue(registry.tryRetry(PLUGIN, 1));
+        // 预算上限为1，每次首次调用只存入0.2个令牌，攒够一次重试需要5次以上首次调用
+        assertFalse(registry.tryRetry(PLUGIN, 1));
+        for (int i = 0; i < 4; i++) {
+            registry.tryAcquire(PLUGIN, false).success();
+        }
+        assertFalse(registry.tryRetry(PLUGIN, 1));
+        for (int i = 0; i < 2; i++) {
+            registry.tryAcquire(PLUGIN, false).success();
+        }
+        assertTrue(registry.tryRetry(PLUGIN, 1));
+        assertEquals(2, stats().getRetryCount());
+
+        // 达到最大尝试次数时不再重试
+        registry.reset(PLUGIN);
+        registry.tryAcquire(PLUGIN, false);
+        assertFalse(registry.tryRetry(PLUGIN, 3));
+    }
+
+    @Test
+    void noRetryWhileOpen() {
+        trip();
+
+        assertFalse(registry.tryRetry(PLUGIN, 1));
+    }
+
+    @Test
+    void resetClosesBreaker() {
+        trip();
+
+        registry.reset(PLUGIN);
+
+        assertNotNull(registry.tryAcquire(PLUGIN, false));
+        assertEquals(0, registry.remainingOpenMillis(PLUGIN));
+    }
+
+    private void trip() {
+        for (int i = 0; i < 4; i++) {
+            registry.tryAcquire(PLUGIN, false).failure();
+        }
+        assertEquals("OPEN", stats().getState());
+    }
+
+    private PluginCircuitBreakerVO stats() {
+        return registry.getStats().get(0);
+    }
+}
@@ -0,0 +1,245 @@
+package org.demo.core.workflow;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.demo.core.model.vo.WorkflowRunResultVO;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * WorkflowEngine 调度测试
+ * 插件执行器由测试替换：每个插件节点按 outcomes 中的结果在 delay 后完成，或在 outcomes 中缺失时永不完成
+ */
+class WorkflowEngineTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(4);
+
+    private final Map<String, PluginNodeResult> outcomes = new ConcurrentHashMap<>();
+    private final Map<String, NodeExecution> executions = new ConcurrentHashMap<>();
+    private final List<String> submitted = Collections.synchronizedList(new ArrayList<>());
+    private final Map<String, Integer> inFlightAtSubmit = new ConcurrentHashMap<>();
+    private long delayMillis = 100;
+
+    private WorkflowEngine engine;
+
+    @BeforeEach
+    void setUp() {
+        WorkflowPluginExecutor pluginExecutor = mock(WorkflowPluginExecutor.class);
+        when(pluginExecutor.executeAsync(any(), any(), any())).thenAnswer(invocation -> {
+            PluginNodeConfig config = invocation.getArgument(0);
+            WorkflowContext context = invocation.getArgument(2);
+            String nodeId = config.getNodeId();
+            NodeExecution execution = new NodeExecution(context.scope(nodeId));
+            executions.put(nodeId, execution);
+            submitted.add(nodeId);
+            inFlightAtSubmit.put(nodeId, (int) executions.values().stream().filter(e -> !e.result().isDone()).count());
+
+            PluginNodeResult outcome = outcomes.get(nodeId);
+            if (outcome != null) {
+                scheduler.schedule(() -> {
+                    if (outcome.isSuccess()) {
+                        execution.scope().setOutput(outcome.getData());
+                    }
+                    if (!execution.isCancelled()) {
+                        execution.scope().commit();
+                    }
+                    outcome.setDuration(delayMillis);
+                    execution.complete(outcome);
+                }, delayMillis, TimeUnit.MILLISECONDS);
+            }
+            return execution;
+        });
+
+        engine = new WorkflowEngine();
+        ReflectionTestUtils.setField(engine, "pluginExecutor", pluginExecutor);
+        ReflectionTestUtils.setField(engine, "maxParallelNodes", 8);
+        ReflectionTestUtils.setField(engine, "runTimeout", Duration.ofSeconds(5));
+    }
+
+    @AfterEach
+    void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    void runsIndependentBranchesInParallel() throws Exception {
+        WorkflowGraph graph = parse("""
+                {"nodes": ["start", %s, %s, %s, "end"],
+                 "edges": [{"source": "start", "target": "a"}, {"source": "start", "target": "b"},
+                           {"source": "a", "target": "c"}, {"source": "b", "target": "c"},
+                           {"source": "c", "target": "end"}]}
+                """.formatted(plugin("a", null), plugin("b", null),
+                plugin("c", "{\"left\": \"${nodes.a.v}\", \"right\": \"${nodes.b.v}\"}")));
+        outcomes.put("a", PluginNodeResult.success(Map.of("v", 1)));
+        outcomes.put("b", PluginNodeResult.success(Map.of("v", 2)));
+        outcomes.put("c", PluginNodeResult.success(Map.of("v", 3)));
+
+        WorkflowRunResultVO result = engine.run(graph, newContext());
+
+        assertEquals(WorkflowEngine.STATUS_COMPLETED, result.getStatus());
+        // a、b 同时在执行；c 在两者都完成后才提交
+        assertEquals(List.of("a", "b", "c"), submitted);
+        assertEquals(2, inFlightAtSubmit.get("b"));
+        assertEquals(1, inFlightAtSubmit.get("c"));
+        // 关键路径 a|b -> c 为两个节点的耗时，而不是三个节点之和
+        assertEquals(2 * delayMillis, result.getCriticalPathDuration());
+        assertEquals(3 * delayMillis, result.getTotalNodeDuration());
+        assertEquals(Map.of("v", 3), result.getNodeOutputs().get("c"));
+        assertEquals("success", statusOf(result).get("end"));
+    }
+
+    @Test
+    void stopsSubmittingAfterFailure() throws Exception {
+        WorkflowGraph graph = parse("""
+                {"nodes": ["start", %s, %s, %s],
+                 "edges": [{"source": "start", "target": "a"}, {"source": "start", "target": "b"},
+                           {"source": "a", "target": "c"}]}
+                """.formatted(plugin("a", null), plugin("b", null), plugin("c", null)));
+        outcomes.put("a", PluginNodeResult.failure("HTTP_500", "boom"));
+        outcomes.put("b", PluginNodeResult.success(Map.of("v", 2)));
+        outcomes.put("c", PluginNodeResult.success(Map.of("v", 3)));
+
+        WorkflowRunResultVO result = engine.run(graph, newContext());
+
+        assertEquals(WorkflowEngine.STATUS_FAILED, result.getStatus());
+        assertEquals("节点 a 执行失败: boom", result.getError());
+        assertFalse(submitted.contains("c"));
+        Map<String, String> status = statusOf(result);
+        assertEquals("failed", status.get("a"));
+        // 失败前已提交的独立分支仍等待其结束
+        assertEquals("success", status.get("b"));
+        assertEquals("skipped", status.get("c"));
+    }
+
+    @Test
+    void continueOnErrorReleasesDownstream() throws Exception {
+        WorkflowGraph graph = parse("""
+                {"nodes": [{"nodeId": "a", "pluginConfig": {"pluginId": "p", "operationId": "o", "continueOnError": true}},
+                           %s],
+                 "edges": [{"source": "a", "target": "b"}]}
+                """.formatted(plugin("b", null)));
+        outcomes.put("a", PluginNodeResult.failure("HTTP_500", "boom"));
+        outcomes.put("b", PluginNodeResult.success(Map.of("v", 2)));
+
+        WorkflowRunResultVO result = engine.run(graph, newContext());
+
+        assertEquals(WorkflowEngine.STATUS_COMPLETED, result.getStatus());
+        assertEquals(List.of("a", "b"), submitted);
+    }
+
+    @Test
+    void cancelsRunningNodesOnTimeout() throws Exception {
+        ReflectionTestUtils.setField(engine, "runTimeout", Duration.ofMillis(300));
+        WorkflowGraph graph = parse("""
+                {"nodes": ["start", %s, %s, %s],
+                 "edges": [{"source": "start", "target": "fast"}, {"source": "start", "target": "hang"},
+                           {"source": "hang", "target": "after"}]}
+                """.formatted(plugin("fast", null), plugin("hang", null), plugin("after", null)));
+        outcomes.put("fast", PluginNodeResult.success(Map.of("v", 1)));
+
+        WorkflowRunResultVO result = engine.run(graph, newContext());
+
+        assertEquals(WorkflowEngine.STATUS_FAILED, result.getStatus());
+        assertTrue(result.getError().contains("超时"));
+        assertTrue(executions.get("hang").isCancelled());
+        assertTrue(executions.get("hang").result().isDone());
+        Map<String, String> status = statusOf(result);
+        assertEquals("success", status.get("fast"));
+        assertEquals("cancelled", status.get("hang"));
+        assertEquals("skipped", status.get("after"));
+        assertFalse(result.getNodeOutputs().containsKey("hang"));
+    }
+
+    @Test
+    void resumesFromCheckpointWithoutInvokingCompletedNodes() throws Exception {
+        WorkflowGraph graph = parse("""
+                {"nodes": ["start", %s, %s, %s],
+                 "edges": [{"source": "start", "target": "a"}, {"source": "a", "target": "b"},
+                           {"source": "b", "target": "c"}]}
+                """.formatted(plugin("a", null), plugin("b", "{\"x\": \"${nodes.a.v}\"}"), plugin("c", null)));
+        Map<String, WorkflowNodeState> restored = new HashMap<>();
+        restored.put("a", new WorkflowNodeState(WorkflowNodeState.SUCCESS, true, Map.of("v", 1),
+                Map.of("fromA", "saved"), null, null, 200, 1, 40, 0));
+        // 失败且未计为完成的节点需要重新执行
+        restored.put("b", new WorkflowNodeState(WorkflowNodeState.FAILED, false, null, null,
+                "HTTP_500", "boom", 500, 0, 40, 0));
+        outcomes.put("b", PluginNodeResult.success(Map.of("v", 2)));
+        outcomes.put("c", PluginNodeResult.success(Map.of("v", 3)));
+        Map<String, WorkflowNodeState> saved = new ConcurrentHashMap<>();
+
+        WorkflowRunResultVO result = engine.run(graph, newContext(), restored, saved::put);
+
+        assertEquals(WorkflowEngine.STATUS_COMPLETED, result.getStatus());
+        assertEquals(List.of("b", "c"), submitted);
+        Map<String, String> status = statusOf(result);
+        assertEquals("restored", status.get("a"));
+        assertEquals(Map.of("v", 1), result.getNodeOutputs().get("a"));
+        assertEquals("saved", result.getOutputs().get("fromA"));
+        assertEquals(Map.of("b", true, "c", true), saved.entrySet().stream()
+                .collect(Collectors.toMap(Map.Entry::getKey, e -> e.getValue().completed())));
+        assertEquals(Map.of("v", 2), saved.get("b").output());
+    }
+
+    @Test
+    void ignoresCheckpointWhoseUpstreamWasNotRestored() throws Exception {
+        WorkflowGraph graph = parse("""
+                {"nodes": [%s, %s], "edges": [{"source": "a", "target": "b"}]}
+                """.formatted(plugin("a", null), plugin("b", null)));
+        // 定义变化后 b 多了一个未完成的上游 a，b 的旧检查点不能使用
+        Map<String, WorkflowNodeState> restored = Map.of("b", new WorkflowNodeState(WorkflowNodeState.SUCCESS, true,
+                Map.of("v", "stale"), null, null, null, 200, 0, 10, 0));
+        outcomes.put("a", PluginNodeResult.success(Map.of("v", 1)));
+        outcomes.put("b", PluginNodeResult.success(Map.of("v", 2)));
+
+        WorkflowRunResultVO result = engine.run(graph, newContext(), restored, null);
+
+        assertEquals(List.of("a", "b"), submitted);
+        assertEquals(Map.of("v", 2), result.getNodeOutputs().get("b"));
+    }
+
+    private WorkflowContext newContext() {
+        WorkflowContext context = new WorkflowContext();
+        context.setRunId("run-1");
+        context.setWorkflowId("wf-1");
+        context.setInput(Map.of());
+        return context;
+    }
+
+    private WorkflowGraph parse(String json) throws Exception {
+        WorkflowGraph graph = WorkflowGraph.parse(objectMapper.readTree(json), objectMapper);
+        assertNotNull(graph);
+        return graph;
+    }
+
+    private static String plugin(String id, String paramMappings) {
+        return "{\"nodeId\": \"" + id + "\", \"pluginConfig\": {\"pluginId\": \"p\", \"operationId\": \"o\""
+                + (paramMappings != null ? ", \"paramMappings\": " + paramMappings : "") + "}}";
+    }
+
+    private static Map<String, String> statusOf(WorkflowRunResultVO result) {
+        return result.getNodes().stream().collect(Collectors.toMap(WorkflowRunResultVO.NodeRun::getNodeId,
+                WorkflowRunResultVO.NodeRun::getStatus, (a, b) -> b));
+    }
+}
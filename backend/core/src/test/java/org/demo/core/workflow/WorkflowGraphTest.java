@@ -0,0 +1,112 @@
+package org.demo.core.workflow;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.demo.core.exception.WorkflowDefinitionException;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WorkflowGraphTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void parsesDiamondInTopologicalOrder() throws Exception {
+        WorkflowGraph graph = parse("""
+                {"nodes": ["start",
+                           {"nodeId": "a", "pluginConfig": {"pluginId": "p", "operationId": "o"}},
+                           {"nodeId": "b", "pluginConfig": {"pluginId": "p", "operationId": "o"}},
+                           {"nodeId": "c", "pluginConfig": {"pluginId": "p", "operationId": "o",
+                                "paramMappings": {"x": "${nodes.a.value}", "y": "${nodes.b.value}"}}},
+                           "end"],
+                 "edges": [{"source": "start", "target": "a"}, {"source": "start", "target": "b"},
+                           {"source": "a", "target": "c"}, {"source": "b", "target": "c"},
+                           {"source": "c", "target": "end"}]}
+                """);
+
+        List<String> order = graph.topologicalOrder();
+        assertEquals(List.of("start", "a", "b", "c", "end"), order);
+        assertEquals(5, graph.edgeCount());
+        assertEquals(4, graph.depth());
+        assertEquals(List.of("a", "b"), graph.predecessors("c"));
+        assertTrue(graph.node("a").isPlugin());
+    }
+
+    @Test
+    void rejectsCycle() {
+        WorkflowDefinitionException e = assertThrows(WorkflowDefinitionException.class, () -> parse("""
+                {"nodes": ["start", "a", "b", "end"],
+                 "edges": [{"source": "start", "target": "a"}, {"source": "a", "target": "b"},
+                           {"source": "b", "target": "a"}, {"source": "b", "target": "end"}]}
+                """));
+
+        assertEquals(1, e.getErrors().size());
+        assertTrue(e.getErrors().get(0).contains("环路"));
+        assertTrue(e.getErrors().get(0).contains("[a, b, end]"));
+    }
+
+    @Test
+    void rejectsSelfLoop() {
+        WorkflowDefinitionException e = assertThrows(WorkflowDefinitionException.class, () -> parse("""
+                {"nodes": ["a"], "edges": [{"source": "a", "target": "a"}]}
+                """));
+
+        assertEquals(List.of("节点不能连向自身: a"), e.getErrors());
+    }
+
+    @Test
+    void rejectsDanglingEdge() {
+        WorkflowDefinitionException e = assertThrows(WorkflowDefinitionException.class, () -> parse("""
+                {"nodes": ["start", "end"],
+                 "edges": [{"source": "start", "target": "missing"}, {"source": "start"}]}
+                """));
+
+        assertEquals(2, e.getErrors().size());
+        assertEquals("连线引用了不存在的节点: start -> missing", e.getErrors().get(0));
+        assertTrue(e.getErrors().get(1).startsWith("连线缺少 source 或 target"));
+    }
+
+    @Test
+    void rejectsReferenceToNonUpstreamNode() {
+        // a 与 b 是并行分支，b 执行时 a 的输出不保证已产生
+        WorkflowDefinitionException e = assertThrows(WorkflowDefinitionException.class, () -> parse("""
+                {"nodes": ["start",
+                           {"nodeId": "a", "pluginConfig": {"pluginId": "p", "operationId": "o"}},
+                           {"nodeId": "b", "pluginConfig": {"pluginId": "p", "operationId": "o",
+                                "paramMappings": {"x": "${nodes.a.value}", "y": "${nodes.ghost.value}"}}}],
+                 "edges": [{"source": "start", "target": "a"}, {"source": "start", "target": "b"}]}
+                """));
+
+        assertEquals(List.of("节点 b 引用的节点 a 不是其上游节点", "节点 b 引用了不存在的节点: ghost"), e.getErrors());
+    }
+
+    @Test
+    void acceptsReferenceToTransitiveUpstreamNode() throws Exception {
+        WorkflowGraph graph = parse("""
+                {"nodes": [{"nodeId": "a", "pluginConfig": {"pluginId": "p", "operationId": "o"}},
+                           "mid",
+                           {"nodeId": "b", "pluginConfig": {"pluginId": "p", "operationId": "o",
+                                "paramMappings": {"x": "${nodes.a.value}"}}}],
+                 "edges": [{"source": "a", "target": "mid"}, {"source": "mid", "target": "b"}]}
+                """);
+
+        assertEquals(List.of("a", "mid", "b"), graph.topologicalOrder());
+    }
+
+    @Test
+    void collectsAllNodeErrors() {
+        WorkflowDefinitionException e = assertThrows(WorkflowDefinitionException.class, () -> parse("""
+                {"nodes": ["a", "a", {"nodeId": "x", "nodeType": "llm"}, {"nodeId": "p", "nodeType": "plugin"}]}
+                """));
+
+        assertEquals(List.of("节点ID重复: a", "节点 x 的类型不受支持: llm", "插件节点 p 缺少 pluginConfig"), e.getErrors());
+    }
+
+    private WorkflowGraph parse(String json) throws Exception {
+        return WorkflowGraph.parse(objectMapper.readTree(json), objectMapper);
+    }
+}
@@ -295,6 +295,9 @@ CREATE TABLE IF NOT EXISTS `ai_agent_platform_db`.`llm_providers` (
     `icon` VARCHAR(200) DEFAULT NULL COMMENT '图标URL或图标名称',
     `tag_type` VARCHAR(20) DEFAULT NULL COMMENT '标签类型',
     `country` VARCHAR(20) DEFAULT NULL COMMENT '国家',
+    `rpm_limit` INT DEFAULT NULL COMMENT '每分钟请求数上限，为空不限制',
+    `tpm_limit` INT DEFAULT NULL COMMENT '每分钟Token数上限，为空不限制',
+    `max_concurrency` INT DEFAULT NULL COMMENT '最大并发请求数，为空不限制',
     `sort_order` INT NOT NULL DEFAULT 0 COMMENT '排序顺序',
     `is_active` TINYINT(1) NOT NULL DEFAULT 1 COMMENT '是否启用',
     `created_at` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
@@ -325,6 +328,9 @@ CREATE TABLE IF NOT EXISTS `ai_agent_platform_db`.`llm_models` (
     `frequency_penalty` DECIMAL(3,2) NOT NULL DEFAULT 0.00 COMMENT '频率惩罚参数',
     `presence_penalty` DECIMAL(3,2) NOT NULL DEFAULT 0.00 COMMENT '存在惩罚参数',
     `config` JSON DEFAULT NULL COMMENT '其他配置参数',
+    `rpm_limit` INT DEFAULT NULL COMMENT '每分钟请求数上限，为空不限制',
+    `tpm_limit` INT DEFAULT NULL COMMENT '每分钟Token数上限，为空不限制',
+    `max_concurrency` INT DEFAULT NULL COMMENT '最大并发请求数，为空不限制',
     `description` TEXT DEFAULT NULL COMMENT '模型描述',
     `is_active` TINYINT(1) NOT NULL DEFAULT 1 COMMENT '是否激活',
     `is_default` TINYINT(1) NOT NULL DEFAULT 0 COMMENT '是否默认模型',
@@ -337,6 +343,22 @@ CREATE TABLE IF NOT EXISTS `ai_agent_platform_db`.`llm_models` (
     KEY `idx_is_active_is_default` (`is_active`, `is_default`)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='LLM模型表';
 
+-- ============================================================
+-- 14. 会话摘要表 (conversation_summary)
+-- 功能: 存储长会话中较早轮次的滚动摘要，用于压缩发送给大模型的历史上下文
+-- ============================================================
+CREATE TABLE IF NOT EXISTS `ai_agent_platform_db`.`conversation_summary` (
+    `session_id` VARCHAR(64) NOT NULL COMMENT '会话ID',
+    `agent_id` VARCHAR(64) NOT NULL COMMENT '智能体ID',
+    `summary` TEXT NOT NULL COMMENT '摘要内容',
+    `covered_until` DATETIME NOT NULL COMMENT '已纳入摘要的最后一条对话的创建时间',
+    `covered_until_id` VARCHAR(64) DEFAULT NULL COMMENT '已纳入摘要的最后一条对话的ID，与 covered_until 组成游标',
+    `covered_turns` INT NOT NULL DEFAULT 0 COMMENT '已纳入摘要的对话轮数',
+    `update_time` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+    PRIMARY KEY (`session_id`),
+    KEY `idx_agent_id` (`agent_id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='会话摘要表';
+
 -- ============================================================
 -- 初始化系统配置数据
 -- ============================================================